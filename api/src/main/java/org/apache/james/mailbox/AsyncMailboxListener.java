@@ -0,0 +1,32 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox;
+
+/**
+ * A {@link MailboxListener} which does not need to receive the events in the thread which
+ * triggered them.
+ * 
+ * Implementations may get the events delivered asynchronously, and so after the lock on the
+ * mailbox was released. The events of one mailbox are still delivered in the order they were
+ * fired. If no asynchronous delivery is configured the events are delivered as for every other
+ * {@link MailboxListener}.
+ */
+public interface AsyncMailboxListener extends MailboxListener {
+
+}
@@ -0,0 +1,42 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox;
+
+/**
+ * A global {@link MailboxListener} which also wants to receive the events which were fired on
+ * other nodes of a cluster.
+ * 
+ * Listeners which are registered for a {@link org.apache.james.mailbox.model.MailboxPath} always
+ * receive the events of other nodes, if the implementation supports that. Global listeners only
+ * receive the events of their own node unless they implement this interface, as they often maintain
+ * shared state like an index or quota which must only be updated once.
+ * 
+ * The events of other nodes are passed to {@link #remoteEvent(org.apache.james.mailbox.MailboxListener.Event)}
+ * instead of {@link #event(org.apache.james.mailbox.MailboxListener.Event)}, so a listener can tell them
+ * apart from the changes done on its own node.
+ */
+public interface DistributedMailboxListener extends MailboxListener {
+
+    /**
+     * Informs this listener about an {@link Event} which was fired on another node
+     * 
+     * @param event not null
+     */
+    void remoteEvent(Event event);
+}
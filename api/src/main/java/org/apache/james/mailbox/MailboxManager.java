@@ -20,6 +20,7 @@
 package org.apache.james.mailbox;
 
 import java.util.List;
+import java.util.Set;
 
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -28,6 +29,8 @@ import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.model.MailboxMetaData;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MailboxQuery;
+import org.apache.james.mailbox.model.MailboxStatus;
+import org.apache.james.mailbox.model.MailboxStatus.StatusItem;
 import org.apache.james.mailbox.model.MessageRange;
 import org.slf4j.Logger;
 
@@ -172,6 +175,23 @@ public interface MailboxManager extends RequestAware, MailboxListenerSupport {
      */
     List<MailboxMetaData> search(MailboxQuery expression, MailboxSession session) throws MailboxException;
 
+    /**
+     * Return the status of all the given mailboxes at once. This allows to answer the STATUS requests of
+     * clients which poll all their folders with far less calls to the storage than getting the
+     * {@link MessageManager.MetaData} of every mailbox on its own.
+     * 
+     * @param paths
+     *            the mailboxes to get the status for, not null
+     * @param items
+     *            the values to fetch, not null
+     * @param session
+     *            the context for this call, not null
+     * @return the status of the mailboxes in the order of the given paths. Paths of mailboxes which do not
+     *         exist are skipped
+     * @throws MailboxException
+     */
+    List<MailboxStatus> getStatus(List<MailboxPath> paths, Set<StatusItem> items, MailboxSession session) throws MailboxException;
+
     /**
      * Does the given mailbox exist?
      * 
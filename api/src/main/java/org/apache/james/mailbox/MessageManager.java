@@ -30,6 +30,7 @@ import javax.mail.Flags;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.UnsupportedCriteriaException;
 import org.apache.james.mailbox.exception.UnsupportedRightException;
+import org.apache.james.mailbox.model.AppendRequest;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxACL.EditMode;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLEntryKey;
@@ -152,6 +153,24 @@ public interface MessageManager {
      */
     long appendMessage(InputStream msgIn, Date internalDate, MailboxSession mailboxSession, boolean isRecent, Flags flags) throws MailboxException;
 
+    /**
+     * Appends a batch of messages to this mailbox. All messages are appended
+     * as one unit, which allows the implementation to allocate the uids as one
+     * contiguous block and to notify the listeners only once.
+     * 
+     * The returned uids are in the same order as the given
+     * {@link AppendRequest}'s and are higher then any uid returned before.
+     * 
+     * @param requests
+     *            the messages to append, not null
+     * @param mailboxSession
+     *            not null
+     * @return uids for the newly added messages
+     * @throws MailboxException
+     *             when the messages cannot be appended
+     */
+    List<Long> appendMessages(Iterator<AppendRequest> requests, MailboxSession mailboxSession) throws MailboxException;
+
     /**
      * Gets messages in the given range. The messages may get fetched under
      * the-hood in batches so the caller should check if
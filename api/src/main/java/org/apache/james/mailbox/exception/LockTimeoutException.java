@@ -0,0 +1,63 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.exception;
+
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * Indicates that the lock on a mailbox could not be acquired within the configured timeout,
+ * see {@link org.apache.james.mailbox.MailboxPathLocker}.
+ */
+public class LockTimeoutException extends MailboxException {
+
+    private static final long serialVersionUID = 3196640722543283531L;
+
+    private final MailboxPath mailboxPath;
+    private final long timeout;
+
+    /**
+     * @param mailboxPath
+     *            path of the mailbox which could not be locked
+     * @param timeout
+     *            the timeout in milliseconds
+     */
+    public LockTimeoutException(MailboxPath mailboxPath, long timeout) {
+        super("Unable to lock mailbox " + mailboxPath + " within " + timeout + "ms");
+        this.mailboxPath = mailboxPath;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the path of the mailbox which could not be locked
+     * 
+     * @return path
+     */
+    public final MailboxPath getMailboxPath() {
+        return mailboxPath;
+    }
+
+    /**
+     * Gets the timeout in milliseconds which elapsed
+     * 
+     * @return timeout
+     */
+    public final long getTimeout() {
+        return timeout;
+    }
+}
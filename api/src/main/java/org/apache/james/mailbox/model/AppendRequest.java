@@ -0,0 +1,91 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.model;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+/**
+ * A single message which should get appended to a mailbox as part of a batch via
+ * {@link org.apache.james.mailbox.MessageManager#appendMessages(java.util.Iterator, org.apache.james.mailbox.MailboxSession)}
+ */
+public class AppendRequest {
+
+    private final InputStream msgIn;
+    private final Date internalDate;
+    private final boolean isRecent;
+    private final Flags flags;
+
+    /**
+     * @param msgIn
+     *            the content of the message, not null
+     * @param internalDate
+     *            the time of addition to be set, or null to use the current
+     *            time
+     * @param isRecent
+     *            true when the message should be marked recent, false otherwise
+     * @param flags
+     *            optionally set these flags on created message, or null when no
+     *            additional flags should be set
+     */
+    public AppendRequest(InputStream msgIn, Date internalDate, boolean isRecent, Flags flags) {
+        this.msgIn = msgIn;
+        this.internalDate = internalDate;
+        this.isRecent = isRecent;
+        this.flags = flags;
+    }
+
+    /**
+     * Return the content of the message
+     * 
+     * @return msgIn
+     */
+    public InputStream getMessage() {
+        return msgIn;
+    }
+
+    /**
+     * Return the internal date of the message or null if none was given
+     * 
+     * @return internalDate
+     */
+    public Date getInternalDate() {
+        return internalDate;
+    }
+
+    /**
+     * Return true if the message should be marked as recent
+     * 
+     * @return isRecent
+     */
+    public boolean isRecent() {
+        return isRecent;
+    }
+
+    /**
+     * Return the flags to set on the message or null if none were given
+     * 
+     * @return flags
+     */
+    public Flags getFlags() {
+        return flags;
+    }
+}
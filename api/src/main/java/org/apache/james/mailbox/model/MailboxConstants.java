@@ -40,4 +40,10 @@ public interface MailboxConstants {
     /** The name of the INBOX */
     public static final String INBOX = "INBOX";
 
+    /**
+     * The wildcard which matches any sequence of chars in the name of a {@link MailboxPath} passed to
+     * the MailboxMapper's findMailboxWithPathLike
+     */
+    public static final char SQL_WILDCARD_CHAR = '%';
+
 }
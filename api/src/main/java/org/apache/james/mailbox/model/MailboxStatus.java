@@ -0,0 +1,85 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.model;
+
+/**
+ * The status of a mailbox as returned by
+ * {@link org.apache.james.mailbox.MailboxManager#getStatus(java.util.List, java.util.Set, org.apache.james.mailbox.MailboxSession)}.
+ * Only the values of the requested {@link StatusItem}'s are filled in.
+ */
+public interface MailboxStatus {
+
+    /**
+     * The items which can be requested for a mailbox, as used by the IMAP STATUS command
+     */
+    public enum StatusItem {
+        MESSAGE_COUNT, RECENT_COUNT, UID_NEXT, UID_VALIDITY, UNSEEN_COUNT, HIGHEST_MODSEQ
+    }
+
+    /**
+     * Return the MailboxPath
+     * 
+     * @return path
+     */
+    MailboxPath getPath();
+
+    /**
+     * Gets the number of messages that this mailbox contains.
+     * 
+     * @return number of messages or -1 when {@link StatusItem#MESSAGE_COUNT} was not requested
+     */
+    long getMessageCount();
+
+    /**
+     * Gets the number of messages flagged RECENT in this mailbox.
+     * 
+     * @return number of recent messages or -1 when {@link StatusItem#RECENT_COUNT} was not requested
+     */
+    long getRecentCount();
+
+    /**
+     * Gets the next UID predicted.
+     * 
+     * @return the uid that will be assigned to the next appended message or -1 when
+     *         {@link StatusItem#UID_NEXT} was not requested
+     */
+    long getUidNext();
+
+    /**
+     * Gets the UIDVALIDITY.
+     * 
+     * @return UIDVALIDITY or -1 when {@link StatusItem#UID_VALIDITY} was not requested
+     */
+    long getUidValidity();
+
+    /**
+     * Gets the number of unseen messages contained in this mailbox.
+     * 
+     * @return number of unseen messages or -1 when {@link StatusItem#UNSEEN_COUNT} was not requested
+     */
+    long getUnseenCount();
+
+    /**
+     * Return the highest mod-sequence for the mailbox.
+     * 
+     * @return highestModSeq or -1 when {@link StatusItem#HIGHEST_MODSEQ} was not requested
+     */
+    long getHighestModSeq();
+}
@@ -41,4 +41,12 @@ public interface MessageResultIterator extends Iterator<MessageResult> {
      */
     public MailboxException getException();
 
+    /**
+     * Release the resources which are held by this iterator, like a batch which is fetched in the
+     * background. After this method was called {@link #hasNext()} returns <code>false</code>.
+     * 
+     * This method should get called if the iterator is not consumed till its end.
+     */
+    public void close();
+
 }
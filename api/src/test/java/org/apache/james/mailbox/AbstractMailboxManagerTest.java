@@ -20,7 +20,11 @@ package org.apache.james.mailbox;
 
 import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 
 import javax.mail.Flags;
 
@@ -29,8 +33,15 @@ import junit.framework.Assert;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.mock.MockMailboxManager;
+import org.apache.james.mailbox.model.AppendRequest;
+import org.apache.james.mailbox.model.FetchGroupImpl;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MailboxStatus;
+import org.apache.james.mailbox.model.MailboxStatus.StatusItem;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResultIterator;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +58,12 @@ public abstract class AbstractMailboxManagerTest {
     
     private final static String USER_1 = "USER_1";
     private final static String USER_2 = "USER_2";
+    private final static String USER_3 = "USER_3";
+    private final static String USER_4 = "USER_4";
+    private final static String USER_5 = "USER_5";
+    private final static String USER_6 = "USER_6";
+    private final static String USER_7 = "USER_7";
+    private final static String USER_8 = "USER_8";
 
     /**
      * The mailboxManager that needs to get instanciated
@@ -127,6 +144,232 @@ public abstract class AbstractMailboxManagerTest {
 
     }
 
+    /**
+     * Append some messages in one batch and assert that they got contiguous uids in the order of the requests.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testAppendMessages() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_3, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        getMailboxManager().createMailbox(inbox, session);
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+
+        List<AppendRequest> requests = new ArrayList<AppendRequest>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new AppendRequest(new ByteArrayInputStream(("Subject: test" + i + "\r\n\r\ntestmail").getBytes()), new Date(), false, new Flags()));
+        }
+        List<Long> uids = mailbox.appendMessages(requests.iterator(), session);
+
+        Assert.assertEquals(5, uids.size());
+        for (int i = 1; i < uids.size(); i++) {
+            Assert.assertEquals(uids.get(i - 1) + 1, uids.get(i).longValue());
+        }
+        Assert.assertEquals(5, mailbox.getMessageCount(session));
+        Assert.assertTrue(mailbox.appendMessages(new ArrayList<AppendRequest>().iterator(), session).isEmpty());
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    /**
+     * Copy a range of messages and assert that the copies got contiguous uids in the target mailbox.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testCopyMessages() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_4, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        MailboxPath archive = new MailboxPath(MailboxConstants.USER_NAMESPACE, USER_4, "INBOX.archive");
+        getMailboxManager().createMailbox(inbox, session);
+        getMailboxManager().createMailbox(archive, session);
+
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+        for (int i = 0; i < 5; i++) {
+            mailbox.appendMessage(new ByteArrayInputStream(("Subject: test" + i + "\r\n\r\ntestmail").getBytes()), new Date(), session, false, new Flags());
+        }
+
+        List<MessageRange> copied = getMailboxManager().copyMessages(MessageRange.all(), inbox, archive, session);
+        Assert.assertEquals(1, copied.size());
+        Assert.assertEquals(5, copied.get(0).getUidTo() - copied.get(0).getUidFrom() + 1);
+        Assert.assertEquals(5, getMailboxManager().getMailbox(archive, session).getMessageCount(session));
+        Assert.assertEquals(5, mailbox.getMessageCount(session));
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    /**
+     * Move a range of messages and assert that they were removed from the source mailbox
+     * and got contiguous uids in the target mailbox.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testMoveMessages() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_5, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        MailboxPath archive = new MailboxPath(MailboxConstants.USER_NAMESPACE, USER_5, "INBOX.archive");
+        getMailboxManager().createMailbox(inbox, session);
+        getMailboxManager().createMailbox(archive, session);
+
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+        for (int i = 0; i < 5; i++) {
+            mailbox.appendMessage(new ByteArrayInputStream(("Subject: test" + i + "\r\n\r\ntestmail").getBytes()), new Date(), session, false, new Flags());
+        }
+
+        List<MessageRange> moved = getMailboxManager().moveMessages(MessageRange.all(), inbox, archive, session);
+        Assert.assertEquals(1, moved.size());
+        Assert.assertEquals(5, moved.get(0).getUidTo() - moved.get(0).getUidFrom() + 1);
+        // the moved messages use the uids which were reserved in the empty target mailbox
+        Assert.assertEquals(1, moved.get(0).getUidFrom());
+        MessageManager archiveMailbox = getMailboxManager().getMailbox(archive, session);
+        Assert.assertEquals(5, archiveMailbox.getMessageCount(session));
+        Assert.assertEquals(0, mailbox.getMessageCount(session));
+
+        MessageResultIterator messages = archiveMailbox.getMessages(MessageRange.all(), FetchGroupImpl.FULL_CONTENT, session);
+        int count = 0;
+        while (messages.hasNext()) {
+            Assert.assertEquals(moved.get(0).getUidFrom() + count, messages.next().getUid());
+            count++;
+        }
+        Assert.assertEquals(5, count);
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    /**
+     * Assert that the counters of the {@link MessageManager.MetaData} match the content of the mailbox.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testGetMetaData() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_6, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        getMailboxManager().createMailbox(inbox, session);
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+
+        MessageManager.MetaData metaData = mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.FIRST_UNSEEN);
+        Assert.assertEquals(0, metaData.getMessageCount());
+        Assert.assertNull(metaData.getFirstUnseen());
+
+        long seen = mailbox.appendMessage(new ByteArrayInputStream("Subject: test1\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags(Flags.Flag.SEEN));
+        long unseen = mailbox.appendMessage(new ByteArrayInputStream("Subject: test2\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags());
+        long last = mailbox.appendMessage(new ByteArrayInputStream("Subject: test3\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags());
+        Assert.assertTrue(seen < unseen);
+
+        metaData = mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.FIRST_UNSEEN);
+        Assert.assertEquals(3, metaData.getMessageCount());
+        Assert.assertEquals(Long.valueOf(unseen), metaData.getFirstUnseen());
+        Assert.assertEquals(last + 1, metaData.getUidNext());
+
+        metaData = mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.UNSEEN_COUNT);
+        Assert.assertEquals(3, metaData.getMessageCount());
+        Assert.assertEquals(2, metaData.getUnseenCount());
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    /**
+     * Get the status of several mailboxes at once and assert that not existing mailboxes are skipped.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testGetStatus() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_7, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        MailboxPath archive = new MailboxPath(MailboxConstants.USER_NAMESPACE, USER_7, "INBOX.archive");
+        MailboxPath missing = new MailboxPath(MailboxConstants.USER_NAMESPACE, USER_7, "INBOX.missing");
+        getMailboxManager().createMailbox(inbox, session);
+        getMailboxManager().createMailbox(archive, session);
+
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+        mailbox.appendMessage(new ByteArrayInputStream("Subject: test1\r\n\r\ntestmail".getBytes()), new Date(), session, true, new Flags(Flags.Flag.SEEN));
+        long last = mailbox.appendMessage(new ByteArrayInputStream("Subject: test2\r\n\r\ntestmail".getBytes()), new Date(), session, true, new Flags());
+
+        List<MailboxPath> paths = new ArrayList<MailboxPath>();
+        paths.add(archive);
+        paths.add(missing);
+        paths.add(inbox);
+        List<MailboxStatus> status = getMailboxManager().getStatus(paths, EnumSet.allOf(StatusItem.class), session);
+        Assert.assertEquals(2, status.size());
+
+        Assert.assertEquals(archive, status.get(0).getPath());
+        Assert.assertEquals(0, status.get(0).getMessageCount());
+        Assert.assertEquals(0, status.get(0).getUnseenCount());
+
+        MailboxStatus inboxStatus = status.get(1);
+        Assert.assertEquals(inbox, inboxStatus.getPath());
+        Assert.assertEquals(2, inboxStatus.getMessageCount());
+        Assert.assertEquals(1, inboxStatus.getUnseenCount());
+        Assert.assertEquals(2, inboxStatus.getRecentCount());
+        Assert.assertEquals(last + 1, inboxStatus.getUidNext());
+        Assert.assertEquals(mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.NO_COUNT).getUidValidity(), inboxStatus.getUidValidity());
+
+        status = getMailboxManager().getStatus(paths, EnumSet.of(StatusItem.MESSAGE_COUNT), session);
+        Assert.assertEquals(2, status.get(1).getMessageCount());
+        Assert.assertEquals(-1, status.get(1).getUnseenCount());
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    /**
+     * Add, replace and remove system flags of message ranges and assert that the new flags are returned and stored.
+     * 
+     * @throws MailboxException 
+     */
+    @Test
+    public void testSetFlags() throws MailboxException {
+
+        MailboxSession session = getMailboxManager().createSystemSession(USER_8, LoggerFactory.getLogger("Test"));
+        getMailboxManager().startProcessingRequest(session);
+        MailboxPath inbox = MailboxPath.inbox(session);
+        getMailboxManager().createMailbox(inbox, session);
+        MessageManager mailbox = getMailboxManager().getMailbox(inbox, session);
+
+        long first = mailbox.appendMessage(new ByteArrayInputStream("Subject: test1\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags(Flags.Flag.SEEN));
+        long second = mailbox.appendMessage(new ByteArrayInputStream("Subject: test2\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags());
+        long third = mailbox.appendMessage(new ByteArrayInputStream("Subject: test3\r\n\r\ntestmail".getBytes()), new Date(), session, false, new Flags());
+
+        Map<Long, Flags> newFlags = mailbox.setFlags(new Flags(Flags.Flag.SEEN), true, false, MessageRange.all(), session);
+        Assert.assertEquals(3, newFlags.size());
+        Assert.assertTrue(newFlags.get(first).contains(Flags.Flag.SEEN));
+        Assert.assertTrue(newFlags.get(third).contains(Flags.Flag.SEEN));
+        Assert.assertEquals(0, mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.UNSEEN_COUNT).getUnseenCount());
+        Assert.assertTrue(getMessage(mailbox, second, session).getFlags().contains(Flags.Flag.SEEN));
+
+        newFlags = mailbox.setFlags(new Flags(Flags.Flag.FLAGGED), true, true, MessageRange.range(second, third), session);
+        Assert.assertEquals(2, newFlags.size());
+        Assert.assertFalse(newFlags.get(second).contains(Flags.Flag.SEEN));
+        Assert.assertTrue(newFlags.get(second).contains(Flags.Flag.FLAGGED));
+        Assert.assertEquals(2, mailbox.getMetaData(false, session, MessageManager.MetaData.FetchGroup.UNSEEN_COUNT).getUnseenCount());
+
+        mailbox.setFlags(new Flags(Flags.Flag.FLAGGED), false, false, MessageRange.one(third), session);
+        Assert.assertEquals(new Flags(Flags.Flag.SEEN), getMessage(mailbox, first, session).getFlags());
+        Assert.assertEquals(new Flags(Flags.Flag.FLAGGED), getMessage(mailbox, second, session).getFlags());
+        Assert.assertEquals(new Flags(), getMessage(mailbox, third, session).getFlags());
+
+        getMailboxManager().endProcessingRequest(session);
+    }
+
+    private MessageResult getMessage(MessageManager mailbox, long uid, MailboxSession session) throws MailboxException {
+        MessageResultIterator messages = mailbox.getMessages(MessageRange.one(uid), FetchGroupImpl.MINIMAL, session);
+        Assert.assertTrue(messages.hasNext());
+        return messages.next();
+    }
+
     /**
      * Implement this method to create the mailboxManager.
      * 
@@ -0,0 +1,109 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the messages per second which are copied from one mailbox to another with
+ * {@link MailboxManager#copyMessages(MessageRange, MailboxPath, MailboxPath, MailboxSession)}. Every backend
+ * has a sub-class which creates its {@link MailboxManager}, so the backends can be compared.
+ * 
+ * This is not run as part of the build. Run the sub-class of the backend via its main method.
+ */
+public abstract class AbstractMessageCopyBenchmark {
+
+    private final static int MESSAGES = 1000;
+    private final static int MESSAGE_SIZE = 4096;
+    private final static int ROUNDS = 5;
+
+    /**
+     * Create the {@link MailboxManager} of the backend
+     * 
+     * @return mailboxManager
+     * @throws Exception
+     */
+    protected abstract MailboxManager createMailboxManager() throws Exception;
+
+    /**
+     * Release the resources of the backend once the benchmark is done
+     * 
+     * @throws Exception
+     */
+    protected void destroy() throws Exception {
+    }
+
+    /**
+     * Append the messages to the INBOX and copy all of them to a new mailbox in every round
+     * 
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        MailboxManager manager = createMailboxManager();
+        try {
+            MailboxSession session = manager.createSystemSession("benchmark", LoggerFactory.getLogger("Benchmark"));
+            manager.startProcessingRequest(session);
+            try {
+                MailboxPath inbox = MailboxPath.inbox(session);
+                manager.createMailbox(inbox, session);
+                MessageManager mailbox = manager.getMailbox(inbox, session);
+                byte[] message = createMessage();
+                for (int i = 0; i < MESSAGES; i++) {
+                    mailbox.appendMessage(new ByteArrayInputStream(message), new Date(), session, false, new Flags());
+                }
+
+                long total = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    MailboxPath copy = new MailboxPath(inbox.getNamespace(), inbox.getUser(), inbox.getName() + session.getPathDelimiter() + "copy" + round);
+                    manager.createMailbox(copy, session);
+                    long start = System.nanoTime();
+                    manager.copyMessages(MessageRange.all(), inbox, copy, session);
+                    long duration = System.nanoTime() - start;
+                    total += duration;
+                    System.out.println(getClass().getSimpleName() + " round " + round + ": " + perSecond(MESSAGES, duration) + " messages/sec");
+                }
+                System.out.println(getClass().getSimpleName() + " average: " + perSecond(MESSAGES * ROUNDS, total) + " messages/sec");
+            } finally {
+                manager.endProcessingRequest(session);
+                manager.logout(session, true);
+            }
+        } finally {
+            destroy();
+        }
+    }
+
+    private static long perSecond(long messages, long nanos) {
+        return messages * 1000000000L / Math.max(1, nanos);
+    }
+
+    private static byte[] createMessage() {
+        StringBuilder message = new StringBuilder("Subject: benchmark\r\nContent-Type: text/plain\r\n\r\n");
+        while (message.length() < MESSAGE_SIZE) {
+            message.append("0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz\r\n");
+        }
+        return message.toString().getBytes();
+    }
+}
@@ -1,21 +1,33 @@
 package org.apache.james.mailbox.caching;
 
-import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.DistributedMailboxListener;
 import org.apache.james.mailbox.MailboxListenerSupport;
 import org.apache.james.mailbox.exception.MailboxException;
 /**
- * A MailboxListener that invalidates the configured caches in response to Events
+ * A MailboxListener that invalidates the configured caches in response to Events. It also receives
+ * the events of other nodes, so the caches are invalidated cluster wide.
+ * 
+ * The changes of messages done on this node were already applied to the MailboxMetadataCache by the
+ * CachingMessageMapper, so the metadata is only invalidated for events of other nodes. These can not be
+ * applied, as it is unknown if the cached values were loaded before or after the change. The same
+ * is true for the mailboxes in the MailboxTreeCache.
  * 
  * @param <Id>
  */
-public class CacheInvalidatingMailboxListener<Id> implements MailboxListener {
+public class CacheInvalidatingMailboxListener<Id> implements DistributedMailboxListener {
 
 	private MailboxByPathCache<Id> mailboxCacheByPath;
 	private MailboxMetadataCache<Id> mailboxMetadataCache;
+	private MailboxTreeCache<Id> mailboxTreeCache;
 
 	public CacheInvalidatingMailboxListener(MailboxByPathCache<Id> mailboxCacheByPath, MailboxMetadataCache<Id> mailboxMetadataCache) {
+		this(mailboxCacheByPath, mailboxMetadataCache, null);
+	}
+
+	public CacheInvalidatingMailboxListener(MailboxByPathCache<Id> mailboxCacheByPath, MailboxMetadataCache<Id> mailboxMetadataCache, MailboxTreeCache<Id> mailboxTreeCache) {
 		this.mailboxCacheByPath = mailboxCacheByPath;
 		this.mailboxMetadataCache = mailboxMetadataCache;
+		this.mailboxTreeCache = mailboxTreeCache;
 	}
 	
 	/**
@@ -31,18 +43,25 @@ public class CacheInvalidatingMailboxListener<Id> implements MailboxListener {
 	
 	@Override
 	public void event(Event event) {
-		// TODO this needs for sure to be smarter
+		if (!(event instanceof MessageEvent)) {
+			invalidateMailbox(event);
+		}
+	}
+
+	@Override
+	public void remoteEvent(Event event) {
 		try {
 			if (event instanceof MessageEvent) {
 				// invalidate the metadata caches
-					invalidateMetadata(event);
+				invalidateMetadata(event);
+			} else {
+				updateTree(event);
 			}
 			invalidateMailbox(event);
 		} catch (MailboxException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-
 	}
 
 	private void invalidateMetadata(Event event) throws MailboxException {
@@ -51,6 +70,24 @@ public class CacheInvalidatingMailboxListener<Id> implements MailboxListener {
 		
 	}
 
+	/**
+	 * Apply the mailbox changes of other nodes to the MailboxTreeCache. Only deletions can be applied,
+	 * as the events do not contain the Mailbox, so the tree of the user is dropped otherwise.
+	 */
+	private void updateTree(Event event) {
+		if (mailboxTreeCache == null) {
+			return;
+		}
+		if (event instanceof MailboxDeletion) {
+			mailboxTreeCache.deleted(event.getMailboxPath());
+		} else if (event instanceof MailboxRenamed) {
+			mailboxTreeCache.invalidate(event.getMailboxPath());
+			mailboxTreeCache.invalidate(((MailboxRenamed) event).getNewPath());
+		} else if (event instanceof MailboxAdded) {
+			mailboxTreeCache.invalidate(event.getMailboxPath());
+		}
+	}
+
 	private void invalidateMailbox(Event event) {
 		mailboxCacheByPath.invalidate(event.getMailboxPath());		
 	}
@@ -0,0 +1,43 @@
+package org.apache.james.mailbox.caching;
+
+/**
+ * JMX view of the hit, miss and load statistics of a cache. All times are in milliseconds.
+ */
+public interface CacheMetricsMBean {
+
+	long getHitCount();
+
+	long getMissCount();
+
+	/**
+	 * Return the number of lookups which were answered from the cache, including the
+	 * cached "not found" answers, divided by the number of all lookups
+	 * 
+	 * @return hitRate, 1.0 if there was no lookup yet
+	 */
+	double getHitRate();
+
+	/**
+	 * Return the number of lookups which were answered by a cached "not found"
+	 * 
+	 * @return negativeHits
+	 */
+	long getNegativeHitCount();
+
+	long getLoadCount();
+
+	long getLoadFailureCount();
+
+	long getTotalLoadTime();
+
+	double getAverageLoadTime();
+
+	long getEvictionCount();
+
+	long getSize();
+
+	/**
+	 * Reset all values, except the size
+	 */
+	void reset();
+}
@@ -0,0 +1,55 @@
+package org.apache.james.mailbox.caching;
+
+import java.nio.ByteBuffer;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.james.mailbox.caching.offheap.ByteBufferSharedInputStream;
+
+/**
+ * The full content of a message held by a {@link MessageContentCache}. The header and the body
+ * are returned as slices of the same buffer, so no copy of the content is made.
+ */
+public class CachedContent {
+
+	private final ByteBuffer content;
+	private final int bodyStartOctet;
+
+	/**
+	 * @param content the full content, from its position to its limit
+	 * @param bodyStartOctet
+	 */
+	public CachedContent(ByteBuffer content, int bodyStartOctet) {
+		this.content = content;
+		this.bodyStartOctet = bodyStartOctet;
+	}
+
+	public int getBodyStartOctet() {
+		return bodyStartOctet;
+	}
+
+	public int getSize() {
+		return content.remaining();
+	}
+
+	/**
+	 * Return the full content as read-only buffer
+	 * 
+	 * @return content
+	 */
+	public ByteBuffer asByteBuffer() {
+		return content.asReadOnlyBuffer();
+	}
+
+	public SharedInputStream getFullContent() {
+		return new ByteBufferSharedInputStream(content);
+	}
+
+	public SharedInputStream getHeaderContent() {
+		return (SharedInputStream) getFullContent().newStream(0, bodyStartOctet);
+	}
+
+	public SharedInputStream getBodyContent() {
+		return (SharedInputStream) getFullContent().newStream(bodyStartOctet, -1);
+	}
+}
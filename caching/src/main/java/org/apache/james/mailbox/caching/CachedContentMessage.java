@@ -0,0 +1,149 @@
+package org.apache.james.mailbox.caching;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.store.mail.model.AbstractMessage;
+import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.Property;
+
+/**
+ * A Message which returns its content from the {@link CachedContent}, and everything else from the
+ * Message it wraps. The wrapped Message may be fetched with FetchType.Metadata.
+ * 
+ * @param <Id>
+ */
+public class CachedContentMessage<Id> extends AbstractMessage<Id> {
+
+	private final Message<Id> message;
+	private final CachedContent content;
+
+	public CachedContentMessage(Message<Id> message, CachedContent content) {
+		this.message = message;
+		this.content = content;
+	}
+
+	@Override
+	public Date getInternalDate() {
+		return message.getInternalDate();
+	}
+
+	@Override
+	public Id getMailboxId() {
+		return message.getMailboxId();
+	}
+
+	@Override
+	public long getUid() {
+		return message.getUid();
+	}
+
+	@Override
+	public void setUid(long uid) {
+		message.setUid(uid);
+	}
+
+	@Override
+	public void setModSeq(long modSeq) {
+		message.setModSeq(modSeq);
+	}
+
+	@Override
+	public long getModSeq() {
+		return message.getModSeq();
+	}
+
+	@Override
+	public boolean isAnswered() {
+		return message.isAnswered();
+	}
+
+	@Override
+	public boolean isDeleted() {
+		return message.isDeleted();
+	}
+
+	@Override
+	public boolean isDraft() {
+		return message.isDraft();
+	}
+
+	@Override
+	public boolean isFlagged() {
+		return message.isFlagged();
+	}
+
+	@Override
+	public boolean isRecent() {
+		return message.isRecent();
+	}
+
+	@Override
+	public boolean isSeen() {
+		return message.isSeen();
+	}
+
+	@Override
+	public void setFlags(Flags flags) {
+		message.setFlags(flags);
+	}
+
+	@Override
+	protected String[] createUserFlags() {
+		return message.createFlags().getUserFlags();
+	}
+
+	@Override
+	public InputStream getBodyContent() throws IOException {
+		return (InputStream) content.getBodyContent();
+	}
+
+	@Override
+	public InputStream getHeaderContent() throws IOException {
+		return (InputStream) content.getHeaderContent();
+	}
+
+	@Override
+	public InputStream getFullContent() throws IOException {
+		return (InputStream) content.getFullContent();
+	}
+
+	@Override
+	public String getMediaType() {
+		return message.getMediaType();
+	}
+
+	@Override
+	public String getSubType() {
+		return message.getSubType();
+	}
+
+	@Override
+	public long getFullContentOctets() {
+		return message.getFullContentOctets();
+	}
+
+	@Override
+	protected int getBodyStartOctet() {
+		return content.getBodyStartOctet();
+	}
+
+	@Override
+	public Long getTextualLineCount() {
+		return message.getTextualLineCount();
+	}
+
+	@Override
+	public List<Property> getProperties() {
+		return message.getProperties();
+	}
+
+	@Override
+	public String toString() {
+		return message.toString();
+	}
+}
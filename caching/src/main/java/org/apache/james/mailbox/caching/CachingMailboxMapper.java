@@ -1,4 +1,5 @@
 package org.apache.james.mailbox.caching;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.james.mailbox.exception.MailboxException;
@@ -9,7 +10,11 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 
 /**
  * A MailboxMapper implementation that uses a MailboxByPathCache to cache the information
- * from the underlying MailboxMapper
+ * from the underlying MailboxMapper. If a MailboxTreeCache is given the mailbox hierarchy
+ * is answered from it as well.
+ * 
+ * Changes which are done inside {@link #execute(Transaction)} are applied to the MailboxTreeCache once the
+ * outermost transaction is committed. If it is rolled back, the tree of the user is dropped.
  * 
  * @param <Id>
  */
@@ -18,10 +23,23 @@ public class CachingMailboxMapper<Id> implements MailboxMapper<Id> {
 
 	private MailboxMapper<Id> underlying;
 	private MailboxByPathCache<Id> cache;
+	private MailboxTreeCache<Id> treeCache;
+	private int transactions;
+	private final List<TreeChange<Id>> pending = new ArrayList<TreeChange<Id>>();
 
 	public CachingMailboxMapper(MailboxMapper<Id> underlying, MailboxByPathCache<Id> cache) {
+		this(underlying, cache, null);
+	}
+
+	/**
+	 * @param underlying
+	 * @param cache
+	 * @param treeCache used to answer findMailboxWithPathLike and hasChildren, may be null
+	 */
+	public CachingMailboxMapper(MailboxMapper<Id> underlying, MailboxByPathCache<Id> cache, MailboxTreeCache<Id> treeCache) {
 		this.underlying = underlying;
 		this.cache = cache;
+		this.treeCache = treeCache;
 	}
 	
 	@Override
@@ -31,44 +49,65 @@ public class CachingMailboxMapper<Id> implements MailboxMapper<Id> {
 
 	@Override
 	public <T> T execute(Transaction<T> transaction) throws MailboxException {
-		return underlying.execute(transaction);
+		transactions++;
+		boolean committed = false;
+		try {
+			T value = underlying.execute(transaction);
+			committed = true;
+			return value;
+		} finally {
+			if (--transactions == 0) {
+				endChanges(committed);
+			}
+		}
 	}
 
 	@Override
 	public void save(Mailbox<Id> mailbox) throws MailboxException {
 		invalidate(mailbox);
-		underlying.save(mailbox);
+		boolean saved = false;
+		try {
+			underlying.save(mailbox);
+			saved = true;
+		} finally {
+			treeChanged(new TreeChange<Id>(mailbox, path(mailbox), saved, false));
+		}
 	}
 
 	@Override
 	public void delete(Mailbox<Id> mailbox) throws MailboxException {
 		invalidate(mailbox);
-		underlying.delete(mailbox);
+		boolean deleted = false;
+		try {
+			underlying.delete(mailbox);
+			deleted = true;
+		} finally {
+			treeChanged(new TreeChange<Id>(mailbox, path(mailbox), deleted, true));
+		}
 	}
 
 	@Override
 	public Mailbox<Id> findMailboxByPath(MailboxPath mailboxName)
 			throws MailboxException, MailboxNotFoundException {
-		try {
-			return cache.findMailboxByPath(mailboxName, underlying);
-		} catch (MailboxNotFoundException e) {
-			cache.invalidate(mailboxName);
-			throw e;
-		}
+		return cache.findMailboxByPath(mailboxName, underlying);
 	}
 
 	@Override
 	public List<Mailbox<Id>> findMailboxWithPathLike(MailboxPath mailboxPath)
 			throws MailboxException {
-		// TODO possible to meaningfully cache it?
-		return underlying.findMailboxWithPathLike(mailboxPath);
+		if (treeCache == null) {
+			return underlying.findMailboxWithPathLike(mailboxPath);
+		}
+		return treeCache.findMailboxWithPathLike(mailboxPath, underlying);
 	}
 
 	@Override
 	public boolean hasChildren(Mailbox<Id> mailbox, char delimiter)
 			throws MailboxException, MailboxNotFoundException {
-		// TODO possible to meaningfully cache it?
-		return underlying.hasChildren(mailbox, delimiter);
+		if (treeCache == null) {
+			return underlying.hasChildren(mailbox, delimiter);
+		}
+		return treeCache.hasChildren(mailbox, delimiter, underlying);
 	}
 
 	@Override
@@ -81,5 +120,61 @@ public class CachingMailboxMapper<Id> implements MailboxMapper<Id> {
 		cache.invalidate(mailbox);
 	}
 
+	private MailboxPath path(Mailbox<Id> mailbox) {
+		return new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName());
+	}
+
+	/**
+	 * Apply the change to the MailboxTreeCache, or keep it until the transaction is finished
+	 */
+	private void treeChanged(TreeChange<Id> change) {
+		if (treeCache == null) {
+			return;
+		}
+		if (transactions > 0) {
+			pending.add(change);
+		} else {
+			change.end(treeCache, true);
+		}
+	}
+
+	private void endChanges(boolean committed) {
+		try {
+			for (TreeChange<Id> change : pending) {
+				change.end(treeCache, committed);
+			}
+		} finally {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * A Mailbox which was saved or deleted in the underlying MailboxMapper. If the change is not known,
+	 * as the underlying MailboxMapper failed, the tree of the user is dropped.
+	 */
+	private final static class TreeChange<Id> {
+		private final Mailbox<Id> mailbox;
+		private final MailboxPath path;
+		private final boolean known;
+		private final boolean deleted;
+
+		public TreeChange(Mailbox<Id> mailbox, MailboxPath path, boolean known, boolean deleted) {
+			this.mailbox = mailbox;
+			this.path = path;
+			this.known = known;
+			this.deleted = deleted;
+		}
+
+		public void end(MailboxTreeCache<Id> treeCache, boolean committed) {
+			if (!committed || !known) {
+				treeCache.invalidate(path);
+			} else if (deleted) {
+				treeCache.deleted(path);
+			} else {
+				treeCache.saved(mailbox);
+			}
+		}
+	}
+
 
 }
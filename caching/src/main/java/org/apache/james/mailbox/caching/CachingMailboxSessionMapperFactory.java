@@ -21,23 +21,35 @@ public class CachingMailboxSessionMapperFactory<Id> extends
 	private MailboxSessionMapperFactory<Id> underlying;
 	private MailboxByPathCache<Id> mailboxByPathCache;
 	private MailboxMetadataCache<Id> mailboxMetadataCache;
+	private MailboxTreeCache<Id> mailboxTreeCache;
+	private MessageContentCache<Id> messageContentCache;
 
 	public CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory<Id> underlying, MailboxByPathCache<Id> mailboxByPathCache, MailboxMetadataCache<Id> mailboxMetadataCache) {
+		this(underlying, mailboxByPathCache, mailboxMetadataCache, null);
+	}
+
+	public CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory<Id> underlying, MailboxByPathCache<Id> mailboxByPathCache, MailboxMetadataCache<Id> mailboxMetadataCache, MailboxTreeCache<Id> mailboxTreeCache) {
+		this(underlying, mailboxByPathCache, mailboxMetadataCache, mailboxTreeCache, null);
+	}
+
+	public CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory<Id> underlying, MailboxByPathCache<Id> mailboxByPathCache, MailboxMetadataCache<Id> mailboxMetadataCache, MailboxTreeCache<Id> mailboxTreeCache, MessageContentCache<Id> messageContentCache) {
 		this.underlying = underlying;
 		this.mailboxByPathCache = mailboxByPathCache;
 		this.mailboxMetadataCache = mailboxMetadataCache;
+		this.mailboxTreeCache = mailboxTreeCache;
+		this.messageContentCache = messageContentCache;
 	}
 	
 	@Override
 	public MessageMapper<Id> createMessageMapper(MailboxSession session)
 			throws MailboxException {
-		return new CachingMessageMapper<Id>(underlying.createMessageMapper(session), mailboxMetadataCache);
+		return new CachingMessageMapper<Id>(underlying.createMessageMapper(session), mailboxMetadataCache, messageContentCache);
 	}
 
 	@Override
 	public MailboxMapper<Id> createMailboxMapper(MailboxSession session)
 			throws MailboxException {
-		return new CachingMailboxMapper<Id>(underlying.createMailboxMapper(session), mailboxByPathCache);
+		return new CachingMailboxMapper<Id>(underlying.createMailboxMapper(session), mailboxByPathCache, mailboxTreeCache);
 	}
 
 	@Override
@@ -1,7 +1,13 @@
 package org.apache.james.mailbox.caching;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.mail.Flags;
 
@@ -9,13 +15,21 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
 import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 
 /**
  * A MessageMapper implementation that uses a MailboxMetadataCache to cache the information
- * from the underlying MessageMapper
+ * from the underlying MessageMapper. Changes are applied to the cached information instead
+ * of dropping it. If a MessageContentCache is given the content of the messages is cached as well.
+ * 
+ * Changes which are done inside {@link #execute(Transaction)} are recorded and only applied to the cache
+ * once the outermost transaction is committed. If it is rolled back, the cached values of the changed
+ * Mailboxes are dropped.
  * 
  * @param <Id>
  */
@@ -24,10 +38,23 @@ public class CachingMessageMapper<Id> implements MessageMapper<Id> {
 	
 	private MessageMapper<Id> underlying;
 	private MailboxMetadataCache<Id> cache;
+	private MessageContentCache<Id> contentCache;
+	private int transactions;
+	private final List<PendingUpdate<Id>> pending = new ArrayList<PendingUpdate<Id>>();
 
 	public CachingMessageMapper(MessageMapper<Id> underlying, MailboxMetadataCache<Id> cache) {
+		this(underlying, cache, null);
+	}
+
+	/**
+	 * @param underlying
+	 * @param cache
+	 * @param contentCache used to cache the content of the messages, may be null
+	 */
+	public CachingMessageMapper(MessageMapper<Id> underlying, MailboxMetadataCache<Id> cache, MessageContentCache<Id> contentCache) {
 		this.underlying = underlying;
 		this.cache = cache;
+		this.contentCache = contentCache;
 	}
 	
 	@Override
@@ -37,22 +64,102 @@ public class CachingMessageMapper<Id> implements MessageMapper<Id> {
 
 	@Override
 	public <T> T execute(Transaction<T> transaction) throws MailboxException {
-		return underlying.execute(transaction);
+		transactions++;
+		boolean committed = false;
+		try {
+			T value = underlying.execute(transaction);
+			committed = true;
+			return value;
+		} finally {
+			if (--transactions == 0) {
+				endUpdates(committed);
+			}
+		}
 	}
 
+	/**
+	 * If a MessageContentCache is given and the content is requested, only the metadata of the messages is
+	 * fetched from the underlying MessageMapper first. The messages whose content is cached are returned with
+	 * the cached content, the others are fetched with the requested FetchType. The fetched content is added to
+	 * the cache for FetchType.Body and FetchType.Full, as the headers alone are not worth it.
+	 * 
+	 * The headers are never cached on their own and are cheap to fetch, so FetchType.Headers is passed to the
+	 * underlying MessageMapper directly instead of fetching the metadata first.
+	 */
 	@Override
 	public Iterator<Message<Id>> findInMailbox(Mailbox<Id> mailbox,
 			MessageRange set,
 			org.apache.james.mailbox.store.mail.MessageMapper.FetchType type,
 			int limit) throws MailboxException {
-		return underlying.findInMailbox(mailbox, set, type, limit);
+		if (contentCache == null || type == FetchType.Metadata || type == FetchType.Headers) {
+			return underlying.findInMailbox(mailbox, set, type, limit);
+		}
+		List<Message<Id>> messages = new ArrayList<Message<Id>>();
+		List<Long> missing = new ArrayList<Long>();
+		Iterator<Message<Id>> it = underlying.findInMailbox(mailbox, set, FetchType.Metadata, limit);
+		while (it.hasNext()) {
+			Message<Id> message = it.next();
+			CachedContent content = contentCache.get(mailbox, message.getUid());
+			if (content != null) {
+				messages.add(new CachedContentMessage<Id>(message, content));
+			} else {
+				messages.add(message);
+				missing.add(message.getUid());
+			}
+		}
+		if (missing.isEmpty()) {
+			return messages.iterator();
+		}
+
+		Map<Long, Message<Id>> fetched = new HashMap<Long, Message<Id>>();
+		if (missing.size() == messages.size()) {
+			fetch(mailbox, set, type, limit, fetched);
+		} else {
+			for (MessageRange range : MessageRange.toRanges(missing)) {
+				fetch(mailbox, range, type, -1, fetched);
+			}
+		}
+		for (int i = 0; i < messages.size(); i++) {
+			Message<Id> message = fetched.get(messages.get(i).getUid());
+			if (message != null) {
+				messages.set(i, message);
+			}
+		}
+		return messages.iterator();
+	}
+
+	private void fetch(Mailbox<Id> mailbox, MessageRange set, FetchType type, int limit, Map<Long, Message<Id>> fetched) throws MailboxException {
+		Iterator<Message<Id>> it = underlying.findInMailbox(mailbox, set, type, limit);
+		while (it.hasNext()) {
+			Message<Id> message = it.next();
+			try {
+				CachedContent content = contentCache.put(mailbox, message);
+				if (content != null) {
+					message = new CachedContentMessage<Id>(message, content);
+				}
+			} catch (IOException e) {
+				// not cached, the message is returned as fetched
+			}
+			fetched.put(message.getUid(), message);
+		}
 	}
 
 	@Override
 	public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(
 			Mailbox<Id> mailbox, MessageRange set) throws MailboxException {
-		invalidateMetadata(mailbox);
-		return underlying.expungeMarkedForDeletionInMailbox(mailbox, set);
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			Map<Long, MessageMetaData> expunged = underlying.expungeMarkedForDeletionInMailbox(mailbox, set);
+			update.expunged(expunged.values());
+			if (contentCache != null) {
+				for (Long uid : expunged.keySet()) {
+					contentCache.invalidate(mailbox, uid);
+				}
+			}
+			return expunged;
+		} finally {
+			endUpdate(update);
+		}
 	}
 
 	@Override
@@ -70,9 +177,16 @@ public class CachingMessageMapper<Id> implements MessageMapper<Id> {
 	@Override
 	public void delete(Mailbox<Id> mailbox, Message<Id> message)
 			throws MailboxException {
-		invalidateMetadata(mailbox);
-		underlying.delete(mailbox, message);
-		
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			underlying.delete(mailbox, message);
+			update.expunged(Collections.<MessageMetaData>singletonList(new SimpleMessageMetaData(message)));
+			if (contentCache != null) {
+				contentCache.invalidate(mailbox, message.getUid());
+			}
+		} finally {
+			endUpdate(update);
+		}
 	}
 
 	@Override
@@ -84,33 +198,96 @@ public class CachingMessageMapper<Id> implements MessageMapper<Id> {
 	@Override
 	public List<Long> findRecentMessageUidsInMailbox(Mailbox<Id> mailbox)
 			throws MailboxException {
-		// TODO can be meaningfully cached?
-		return underlying.findRecentMessageUidsInMailbox(mailbox);
+		return cache.findRecentMessageUidsInMailbox(mailbox, underlying);
 	}
 
 	@Override
 	public MessageMetaData add(Mailbox<Id> mailbox, Message<Id> message)
 			throws MailboxException {
-		invalidateMetadata(mailbox);
-		return underlying.add(mailbox, message);
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			MessageMetaData added = underlying.add(mailbox, message);
+			update.added(Collections.singletonList(added));
+			return added;
+		} finally {
+			endUpdate(update);
+		}
 	}
 
+	@Override
+	public List<MessageMetaData> add(Mailbox<Id> mailbox, List<Message<Id>> messages)
+			throws MailboxException {
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			List<MessageMetaData> added = underlying.add(mailbox, messages);
+			update.added(added);
+			return added;
+		} finally {
+			endUpdate(update);
+		}
+	}
+
+	/**
+	 * The returned {@link Iterator} is consumed before returning, as the changes can only be applied to the
+	 * cache once they are all known
+	 */
 	@Override
 	public Iterator<UpdatedFlags> updateFlags(Mailbox<Id> mailbox, Flags flags,
 			boolean value, boolean replace, MessageRange set)
 			throws MailboxException {
-		//check if there are in fact any updates
-		if (set.iterator().hasNext())
-			invalidateMetadata(mailbox);
-		return underlying.updateFlags(mailbox, flags, value, replace, set);
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			List<UpdatedFlags> updated = new ArrayList<UpdatedFlags>();
+			Iterator<UpdatedFlags> it = underlying.updateFlags(mailbox, flags, value, replace, set);
+			while (it.hasNext()) {
+				updated.add(it.next());
+			}
+			update.flagsUpdated(updated);
+			return updated.iterator();
+		} finally {
+			endUpdate(update);
+		}
+	}
+
+	@Override
+	public UpdatedFlagsList updateSystemFlags(Mailbox<Id> mailbox, Flags flags,
+			boolean value, boolean replace, MessageRange set)
+			throws MailboxException {
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			UpdatedFlagsList updated = underlying.updateSystemFlags(mailbox, flags, value, replace, set);
+			update.flagsUpdated(updated);
+			return updated;
+		} finally {
+			endUpdate(update);
+		}
 	}
 
 
 	@Override
 	public MessageMetaData copy(Mailbox<Id> mailbox, Message<Id> original)
 			throws MailboxException {
-		invalidateMetadata(mailbox);
-		return underlying.copy(mailbox, original);
+		PendingUpdate<Id> update = beginUpdate(mailbox);
+		try {
+			MessageMetaData copied = underlying.copy(mailbox, original);
+			update.added(Collections.singletonList(copied));
+			return copied;
+		} finally {
+			endUpdate(update);
+		}
+	}
+
+	@Override
+	public List<MessageMetaData> copy(Mailbox<Id> from, Mailbox<Id> to, MessageRange set)
+			throws MailboxException {
+		PendingUpdate<Id> update = beginUpdate(to);
+		try {
+			List<MessageMetaData> copied = underlying.copy(from, to, set);
+			update.added(copied);
+			return copied;
+		} finally {
+			endUpdate(update);
+		}
 	}
 
 	@Override
@@ -123,14 +300,113 @@ public class CachingMessageMapper<Id> implements MessageMapper<Id> {
 		return cache.getHighestModSeq(mailbox, underlying);
 	}
 
-	private void invalidateMetadata(Mailbox<Id> mailbox) {
-		cache.invalidate(mailbox);
-		
+	/**
+	 * Answers every counter from the cache, so only the counters which are not cached yet
+	 * are loaded from the underlying MessageMapper
+	 */
+	@Override
+	public MailboxCounters getMailboxCounters(Mailbox<Id> mailbox, Set<Counter> counters)
+			throws MailboxException {
+		return MailboxCounters.fetch(this, mailbox, counters);
 	}
 
-    @Override
-    public MessageMetaData move(Mailbox<Id> mailbox, Message<Id> original) throws MailboxException {
-        throw new UnsupportedOperationException("Move is not yet supported");
-    }
+	@Override
+	public List<MailboxCounters> getMailboxCounters(List<Mailbox<Id>> mailboxes, Set<Counter> counters)
+			throws MailboxException {
+		return MailboxCounters.fetch(this, mailboxes, counters);
+	}
+
+	/**
+	 * The moved messages are only known by their new uids, so the metadata of the source Mailbox is dropped
+	 */
+	@Override
+	public List<MessageMetaData> move(Mailbox<Id> from, Mailbox<Id> to, MessageRange set)
+			throws MailboxException {
+		// never known, so the source Mailbox is always dropped
+		PendingUpdate<Id> source = beginUpdate(from);
+		PendingUpdate<Id> update = beginUpdate(to);
+		try {
+			List<MessageMetaData> moved = underlying.move(from, to, set);
+			update.added(moved);
+			return moved;
+		} finally {
+			endUpdate(source);
+			endUpdate(update);
+		}
+	}
+
+	private PendingUpdate<Id> beginUpdate(Mailbox<Id> mailbox) {
+		cache.beginUpdate(mailbox);
+		return new PendingUpdate<Id>(mailbox);
+	}
+
+	/**
+	 * Apply the update to the cache, or keep it until the transaction is finished
+	 */
+	private void endUpdate(PendingUpdate<Id> update) {
+		if (transactions > 0) {
+			pending.add(update);
+		} else {
+			update.end(cache, true);
+		}
+	}
+
+	private void endUpdates(boolean committed) {
+		try {
+			for (PendingUpdate<Id> update : pending) {
+				update.end(cache, committed);
+			}
+		} finally {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * A change of one Mailbox which was done in the underlying MessageMapper but is not applied to the
+	 * cache yet. If the change is not known, as the underlying MessageMapper failed, the cached values
+	 * are dropped.
+	 */
+	private final static class PendingUpdate<Id> {
+		private final Mailbox<Id> mailbox;
+		private List<MessageMetaData> added;
+		private Collection<MessageMetaData> expunged;
+		private List<UpdatedFlags> updated;
+		private boolean known;
+
+		public PendingUpdate(Mailbox<Id> mailbox) {
+			this.mailbox = mailbox;
+		}
+
+		public void added(List<MessageMetaData> added) {
+			this.added = added;
+			this.known = true;
+		}
+
+		public void expunged(Collection<MessageMetaData> expunged) {
+			this.expunged = expunged;
+			this.known = true;
+		}
+
+		public void flagsUpdated(List<UpdatedFlags> updated) {
+			this.updated = updated;
+			this.known = true;
+		}
+
+		public void end(MailboxMetadataCache<Id> cache, boolean committed) {
+			boolean applied = committed && known;
+			if (applied) {
+				if (added != null) {
+					cache.added(mailbox, added);
+				}
+				if (expunged != null) {
+					cache.expunged(mailbox, expunged);
+				}
+				if (updated != null) {
+					cache.flagsUpdated(mailbox, updated);
+				}
+			}
+			cache.endUpdate(mailbox, applied);
+		}
+	}
 
 }
@@ -0,0 +1,294 @@
+package org.apache.james.mailbox.caching;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+
+/**
+ * The cached metadata of one Mailbox. Every value is loaded lazily and then kept up to date by
+ * applying the changes done through the CachingMessageMapper, so the underlying MessageMapper is
+ * not asked again after every write.
+ * 
+ * Every change increments the version. A loaded value is only stored if the version did not change
+ * while it was loaded and no update is in progress, as otherwise it is unknown if the value already
+ * contains the change or not. If a change can not be applied safely the affected values are dropped
+ * and loaded again on the next access.
+ * 
+ * If a {@link MailboxSnapshot} of the messages is loaded, it is kept up to date in the same way and the
+ * message count, unseen count, first unseen and recent count are answered from it.
+ */
+public class MailboxMetadata {
+
+	/**
+	 * The approximated memory used by the counters and the entry itself in bytes
+	 */
+	private static final int BASE_MEMORY_SIZE = 256;
+
+	private final Map<Counter, Long> values = new EnumMap<Counter, Long>(Counter.class);
+	private MailboxSnapshot snapshot;
+	private long weight;
+	private long version;
+	private int updates;
+
+	/**
+	 * Return <code>true</code> if the value of the counter is cached
+	 */
+	public synchronized boolean contains(Counter counter) {
+		return values.containsKey(counter) || (snapshot != null && isSnapshotCounter(counter));
+	}
+
+	/**
+	 * Return the cached value of the counter. A <code>null</code> value of {@link Counter#FirstUnseen}
+	 * means that there is no unseen message, use {@link #contains(Counter)} to check if the value is cached.
+	 */
+	public synchronized Long get(Counter counter) {
+		if (snapshot != null && !values.containsKey(counter)) {
+			switch (counter) {
+			case MessageCount:
+				return (long) snapshot.size();
+			case UnseenCount:
+				return snapshot.countUnseen();
+			case FirstUnseen:
+				return snapshot.findFirstUnseen();
+			case RecentCount:
+				return snapshot.countRecent();
+			default:
+				break;
+			}
+		}
+		return values.get(counter);
+	}
+
+	/**
+	 * Return the snapshot of the messages, or null if it is not loaded
+	 */
+	public synchronized MailboxSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Return the approximated memory used by this entry in bytes, which is mostly the snapshot if it is loaded
+	 */
+	public synchronized long getMemorySize() {
+		return snapshot == null ? BASE_MEMORY_SIZE : BASE_MEMORY_SIZE + snapshot.getMemorySize();
+	}
+
+	/**
+	 * Return the memory size as weight of the entry and remember it, see {@link #isWeightChanged()}
+	 */
+	public synchronized long weigh() {
+		weight = getMemorySize();
+		return weight;
+	}
+
+	/**
+	 * Return <code>true</code> if the memory size changed since the entry was weighed the last time
+	 */
+	public synchronized boolean isWeightChanged() {
+		return weight != getMemorySize();
+	}
+
+	/**
+	 * Return the version which needs to be passed to {@link #loaded(Counter, Long, long)} or -1 if
+	 * an update is in progress, which means that a loaded value must not be stored
+	 */
+	public synchronized long beginLoad() {
+		return updates > 0 ? -1 : version;
+	}
+
+	/**
+	 * Store the loaded value, if nothing changed since {@link #beginLoad()} returned the given version
+	 */
+	public synchronized void loaded(Counter counter, Long value, long loadVersion) {
+		if (loadVersion >= 0 && loadVersion == version && updates == 0) {
+			values.put(counter, value);
+		}
+	}
+
+	/**
+	 * Store the loaded snapshot, if nothing changed since {@link #beginLoad()} returned the given version
+	 */
+	public synchronized void loaded(MailboxSnapshot snapshot, long loadVersion) {
+		if (loadVersion >= 0 && loadVersion == version && updates == 0) {
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Mark the start of a change in the underlying MessageMapper
+	 */
+	public synchronized void beginUpdate() {
+		updates++;
+		version++;
+	}
+
+	/**
+	 * Mark the end of a change in the underlying MessageMapper. If the change could not be applied the
+	 * cached values are dropped.
+	 */
+	public synchronized void endUpdate(boolean applied) {
+		if (updates > 0) {
+			updates--;
+		}
+		if (!applied) {
+			values.clear();
+			snapshot = null;
+		}
+		version++;
+	}
+
+	/**
+	 * Drop all cached values
+	 */
+	public synchronized void clear() {
+		values.clear();
+		snapshot = null;
+		version++;
+	}
+
+	/**
+	 * Return <code>true</code> if a change in the underlying MessageMapper is in progress
+	 */
+	public synchronized boolean isUpdating() {
+		return updates > 0;
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Apply the messages which were added to the Mailbox
+	 */
+	public synchronized void added(List<MessageMetaData> added) {
+		long unseen = 0;
+		Long firstUnseen = null;
+		long lastUid = 0;
+		long highestModSeq = 0;
+		for (MessageMetaData data : added) {
+			if (!isSeen(data.getFlags())) {
+				unseen++;
+				if (firstUnseen == null || data.getUid() < firstUnseen) {
+					firstUnseen = data.getUid();
+				}
+			}
+			lastUid = Math.max(lastUid, data.getUid());
+			highestModSeq = Math.max(highestModSeq, data.getModSeq());
+			if (snapshot != null && !snapshot.add(data)) {
+				snapshot = null;
+			}
+		}
+		add(Counter.MessageCount, added.size());
+		add(Counter.UnseenCount, unseen);
+		if (firstUnseen != null && values.containsKey(Counter.FirstUnseen)) {
+			Long current = values.get(Counter.FirstUnseen);
+			if (current == null || firstUnseen < current) {
+				values.put(Counter.FirstUnseen, firstUnseen);
+			}
+		}
+		max(Counter.LastUid, lastUid);
+		max(Counter.HighestModSeq, highestModSeq);
+		version++;
+	}
+
+	/**
+	 * Apply the messages which were removed from the Mailbox
+	 */
+	public synchronized void expunged(Collection<MessageMetaData> expunged) {
+		long unseen = 0;
+		Long firstUnseen = values.get(Counter.FirstUnseen);
+		List<Long> uids = new ArrayList<Long>(expunged.size());
+		for (MessageMetaData data : expunged) {
+			if (!isSeen(data.getFlags())) {
+				unseen++;
+			}
+			if (firstUnseen != null && firstUnseen == data.getUid()) {
+				// the next unseen message is unknown
+				values.remove(Counter.FirstUnseen);
+			}
+			uids.add(data.getUid());
+		}
+		if (snapshot != null && snapshot.removeAll(uids) != uids.size()) {
+			snapshot = null;
+		}
+		add(Counter.MessageCount, -expunged.size());
+		add(Counter.UnseenCount, -unseen);
+		// not every mapper uses a new mod-sequence for expunges
+		values.remove(Counter.HighestModSeq);
+		version++;
+	}
+
+	/**
+	 * Apply the flag changes of messages in the Mailbox
+	 */
+	public synchronized void flagsUpdated(List<UpdatedFlags> updated) {
+		long highestModSeq = 0;
+		for (UpdatedFlags flags : updated) {
+			boolean wasSeen = isSeen(flags.getOldFlags());
+			boolean isSeen = isSeen(flags.getNewFlags());
+			if (wasSeen && !isSeen) {
+				add(Counter.UnseenCount, 1);
+				if (values.containsKey(Counter.FirstUnseen)) {
+					Long current = values.get(Counter.FirstUnseen);
+					if (current == null || flags.getUid() < current) {
+						values.put(Counter.FirstUnseen, flags.getUid());
+					}
+				}
+			} else if (!wasSeen && isSeen) {
+				add(Counter.UnseenCount, -1);
+				Long current = values.get(Counter.FirstUnseen);
+				if (current != null && current == flags.getUid()) {
+					values.remove(Counter.FirstUnseen);
+				}
+			}
+			highestModSeq = Math.max(highestModSeq, flags.getModSeq());
+			if (snapshot != null && !snapshot.update(flags.getUid(), flags.getNewFlags(), flags.getModSeq())) {
+				snapshot = null;
+			}
+		}
+		max(Counter.HighestModSeq, highestModSeq);
+		version++;
+	}
+
+	private void add(Counter counter, long delta) {
+		Long current = values.get(counter);
+		if (current != null && delta != 0) {
+			long value = current + delta;
+			if (value < 0) {
+				// the cached value was wrong, so load it again
+				values.remove(counter);
+			} else {
+				values.put(counter, value);
+			}
+		}
+	}
+
+	private void max(Counter counter, long value) {
+		Long current = values.get(counter);
+		if (current != null && value > current) {
+			values.put(counter, value);
+		}
+	}
+
+	/**
+	 * Return true if the counter can be computed from the snapshot. The last uid and the highest mod-sequence
+	 * of the Mailbox may belong to expunged messages, so they can not.
+	 */
+	private static boolean isSnapshotCounter(Counter counter) {
+		return counter == Counter.MessageCount || counter == Counter.UnseenCount
+				|| counter == Counter.FirstUnseen || counter == Counter.RecentCount;
+	}
+
+	private static boolean isSeen(Flags flags) {
+		return flags != null && flags.contains(Flag.SEEN);
+	}
+}
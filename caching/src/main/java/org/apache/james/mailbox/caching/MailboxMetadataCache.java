@@ -1,6 +1,11 @@
 package org.apache.james.mailbox.caching;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 
@@ -8,6 +13,10 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
  * Caches the simple yet possibly expensive to compute metadata info 
  * about a Mailbox like all/unseen messages count and similar
  * 
+ * Changes done through the CachingMessageMapper are applied to the cached values, see
+ * {@link MailboxMetadata}. Every change is enclosed in {@link #beginUpdate(Mailbox)} and
+ * {@link #endUpdate(Mailbox, boolean)}.
+ * 
  * @param <Id>
  */
 public interface MailboxMetadataCache<Id> {
@@ -27,8 +36,37 @@ public interface MailboxMetadataCache<Id> {
 	public abstract long getHighestModSeq(Mailbox<Id> mailbox,
 			MessageMapper<Id> underlying) throws MailboxException;
 
+	public abstract List<Long> findRecentMessageUidsInMailbox(Mailbox<Id> mailbox,
+			MessageMapper<Id> underlying) throws MailboxException;
+
+	/**
+	 * Return the {@link MailboxSnapshot} of the messages of the Mailbox, which is loaded from the
+	 * underlying MessageMapper if needed
+	 * 
+	 * @return snapshot, or null if no snapshot can be kept for the Mailbox
+	 */
+	public abstract MailboxSnapshot getSnapshot(Mailbox<Id> mailbox,
+			MessageMapper<Id> underlying) throws MailboxException;
+
 	public abstract void invalidate(Mailbox<Id> mailbox);
 
+	/**
+	 * Mark the start of a change of the Mailbox, so values which are loaded meanwhile are not cached
+	 */
+	public abstract void beginUpdate(Mailbox<Id> mailbox);
+
+	/**
+	 * Mark the end of a change of the Mailbox. If applied is <code>false</code> the change is unknown
+	 * and the cached values are dropped.
+	 */
+	public abstract void endUpdate(Mailbox<Id> mailbox, boolean applied);
+
+	public abstract void added(Mailbox<Id> mailbox, List<MessageMetaData> added);
+
+	public abstract void expunged(Mailbox<Id> mailbox, Collection<MessageMetaData> expunged);
+
+	public abstract void flagsUpdated(Mailbox<Id> mailbox, List<UpdatedFlags> updated);
+
 //	public abstract void invalidate(MailboxPath mailboxPath);
 
 }
\ No newline at end of file
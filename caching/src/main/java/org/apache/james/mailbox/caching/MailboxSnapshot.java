@@ -0,0 +1,392 @@
+package org.apache.james.mailbox.caching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+
+/**
+ * The metadata of all messages of one Mailbox, stored in parallel primitive arrays sorted by uid. This
+ * needs about 44 bytes per message, instead of a Message object per message.
+ *
+ * The system flags of a message are packed into an int and its user flags into a long, in which every bit
+ * stands for one user flag of the Mailbox. As only 64 user flags can be stored, {@link #add(long, Flags, long, long, Date)}
+ * and {@link #update(long, Flags, long)} fail if a Mailbox uses more, in which case the snapshot must be dropped.
+ *
+ * The message sequence number of a message is its index + 1, so the uid and the msn are mapped by a binary
+ * search. All methods are synchronized, so queries always see a consistent snapshot.
+ */
+public class MailboxSnapshot {
+
+	private static final int ANSWERED = 1;
+	private static final int DELETED = 1 << 1;
+	private static final int DRAFT = 1 << 2;
+	private static final int FLAGGED = 1 << 3;
+	private static final int RECENT = 1 << 4;
+	private static final int SEEN = 1 << 5;
+	private static final int MAX_USER_FLAGS = 64;
+	private static final int BYTES_PER_MESSAGE = 44;
+
+	private long[] uids;
+	private int[] systemFlags;
+	private long[] userFlags;
+	private long[] modSeqs;
+	private long[] sizes;
+	private long[] internalDates;
+	private int count;
+	private final List<String> userFlagNames = new ArrayList<String>();
+
+	public MailboxSnapshot() {
+		this(16);
+	}
+
+	public MailboxSnapshot(int capacity) {
+		uids = new long[capacity];
+		systemFlags = new int[capacity];
+		userFlags = new long[capacity];
+		modSeqs = new long[capacity];
+		sizes = new long[capacity];
+		internalDates = new long[capacity];
+	}
+
+	/**
+	 * Return the count of messages
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Return the approximated memory used by the arrays in bytes
+	 */
+	public synchronized long getMemorySize() {
+		return (long) uids.length * BYTES_PER_MESSAGE;
+	}
+
+	/**
+	 * Return the uid of the message with the given message sequence number, or -1 if there is none
+	 */
+	public synchronized long getUid(int msn) {
+		if (msn < 1 || msn > count) {
+			return -1;
+		}
+		return uids[msn - 1];
+	}
+
+	/**
+	 * Return the message sequence number of the message with the given uid, or -1 if there is none
+	 */
+	public synchronized int getMsn(long uid) {
+		int index = indexOf(uid);
+		return index < 0 ? -1 : index + 1;
+	}
+
+	/**
+	 * Return the metadata of the message with the given uid, or null if there is none
+	 */
+	public synchronized MessageMetaData getMetaData(long uid) {
+		int index = indexOf(uid);
+		if (index < 0) {
+			return null;
+		}
+		return new SimpleMessageMetaData(uid, modSeqs[index], flags(index), sizes[index], new Date(internalDates[index]));
+	}
+
+	/**
+	 * Return the flags of the message with the given uid, or null if there is none
+	 */
+	public synchronized Flags getFlags(long uid) {
+		int index = indexOf(uid);
+		return index < 0 ? null : flags(index);
+	}
+
+	public synchronized long countUnseen() {
+		long unseen = 0;
+		for (int i = 0; i < count; i++) {
+			unseen += (systemFlags[i] & SEEN) == 0 ? 1 : 0;
+		}
+		return unseen;
+	}
+
+	/**
+	 * Return the uid of the first message without the \Seen flag, or null if all messages are seen
+	 */
+	public synchronized Long findFirstUnseen() {
+		for (int i = 0; i < count; i++) {
+			if ((systemFlags[i] & SEEN) == 0) {
+				return uids[i];
+			}
+		}
+		return null;
+	}
+
+	public synchronized long countRecent() {
+		long recent = 0;
+		for (int i = 0; i < count; i++) {
+			recent += (systemFlags[i] & RECENT) != 0 ? 1 : 0;
+		}
+		return recent;
+	}
+
+	/**
+	 * Return the uids of the messages with the \Recent flag in ascending order
+	 */
+	public synchronized List<Long> findRecent() {
+		return find(RECENT, 0, 0, 0);
+	}
+
+	/**
+	 * Return the uids of the messages which have all flags of set and none of unset, in ascending order
+	 *
+	 * @param set the flags the messages must have, may be null
+	 * @param unset the flags the messages must not have, may be null
+	 * @return uids
+	 */
+	public synchronized List<Long> findUids(Flags set, Flags unset) {
+		long requiredUser = 0;
+		if (set != null) {
+			for (String flag : set.getUserFlags()) {
+				int id = userFlagNames.indexOf(flag);
+				if (id < 0) {
+					// no message has the flag
+					return new ArrayList<Long>();
+				}
+				requiredUser |= 1L << id;
+			}
+		}
+		long forbiddenUser = 0;
+		if (unset != null) {
+			for (String flag : unset.getUserFlags()) {
+				int id = userFlagNames.indexOf(flag);
+				if (id >= 0) {
+					forbiddenUser |= 1L << id;
+				}
+			}
+		}
+		return find(set == null ? 0 : systemFlags(set), unset == null ? 0 : systemFlags(unset), requiredUser, forbiddenUser);
+	}
+
+	/**
+	 * Add a message. Messages are usually added in the order of their uids, which is cheap.
+	 *
+	 * @return false if the flags could not be stored, as there are too many user flags
+	 */
+	public synchronized boolean add(long uid, Flags flags, long modSeq, long size, Date internalDate) {
+		long user = userFlags(flags);
+		if (user < 0 && tooManyUserFlags(flags)) {
+			return false;
+		}
+		int index = indexOf(uid);
+		if (index < 0) {
+			index = -(index + 1);
+			ensureCapacity(count + 1);
+			if (index < count) {
+				shift(index, index + 1, count - index);
+			}
+			count++;
+		}
+		uids[index] = uid;
+		systemFlags[index] = systemFlags(flags);
+		userFlags[index] = user;
+		modSeqs[index] = modSeq;
+		sizes[index] = size;
+		internalDates[index] = internalDate == null ? 0 : internalDate.getTime();
+		return true;
+	}
+
+	public synchronized boolean add(MessageMetaData data) {
+		return add(data.getUid(), data.getFlags(), data.getModSeq(), data.getSize(), data.getInternalDate());
+	}
+
+	/**
+	 * Remove the message with the given uid
+	 *
+	 * @return false if there was no such message
+	 */
+	public synchronized boolean remove(long uid) {
+		int index = indexOf(uid);
+		if (index < 0) {
+			return false;
+		}
+		shift(index + 1, index, count - index - 1);
+		count--;
+		return true;
+	}
+
+	/**
+	 * Remove the messages with the given uids, compacting the arrays in one pass
+	 *
+	 * @return the count of removed messages, which is less than the count of uids if some did not exist
+	 */
+	public synchronized int removeAll(Collection<Long> uids) {
+		long[] removed = new long[uids.size()];
+		int length = 0;
+		for (Long uid : uids) {
+			removed[length++] = uid;
+		}
+		Arrays.sort(removed);
+		int next = 0;
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			while (next < length && removed[next] < this.uids[i]) {
+				next++;
+			}
+			if (next < length && removed[next] == this.uids[i]) {
+				continue;
+			}
+			if (kept != i) {
+				move(i, kept);
+			}
+			kept++;
+		}
+		int result = count - kept;
+		count = kept;
+		return result;
+	}
+
+	/**
+	 * Update the flags and the mod-sequence of the message with the given uid
+	 *
+	 * @return false if there was no such message or the flags could not be stored
+	 */
+	public synchronized boolean update(long uid, Flags flags, long modSeq) {
+		int index = indexOf(uid);
+		if (index < 0) {
+			return false;
+		}
+		long user = userFlags(flags);
+		if (user < 0 && tooManyUserFlags(flags)) {
+			return false;
+		}
+		systemFlags[index] = systemFlags(flags);
+		userFlags[index] = user;
+		modSeqs[index] = modSeq;
+		return true;
+	}
+
+	private List<Long> find(int requiredSystem, int forbiddenSystem, long requiredUser, long forbiddenUser) {
+		List<Long> result = new ArrayList<Long>();
+		for (int i = 0; i < count; i++) {
+			if ((systemFlags[i] & requiredSystem) == requiredSystem && (systemFlags[i] & forbiddenSystem) == 0
+					&& (userFlags[i] & requiredUser) == requiredUser && (userFlags[i] & forbiddenUser) == 0) {
+				result.add(uids[i]);
+			}
+		}
+		return result;
+	}
+
+	private int indexOf(long uid) {
+		return Arrays.binarySearch(uids, 0, count, uid);
+	}
+
+	private void shift(int from, int to, int length) {
+		System.arraycopy(uids, from, uids, to, length);
+		System.arraycopy(systemFlags, from, systemFlags, to, length);
+		System.arraycopy(userFlags, from, userFlags, to, length);
+		System.arraycopy(modSeqs, from, modSeqs, to, length);
+		System.arraycopy(sizes, from, sizes, to, length);
+		System.arraycopy(internalDates, from, internalDates, to, length);
+	}
+
+	private void move(int from, int to) {
+		uids[to] = uids[from];
+		systemFlags[to] = systemFlags[from];
+		userFlags[to] = userFlags[from];
+		modSeqs[to] = modSeqs[from];
+		sizes[to] = sizes[from];
+		internalDates[to] = internalDates[from];
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > uids.length) {
+			int length = Math.max(capacity, uids.length + (uids.length >> 1) + 1);
+			uids = Arrays.copyOf(uids, length);
+			systemFlags = Arrays.copyOf(systemFlags, length);
+			userFlags = Arrays.copyOf(userFlags, length);
+			modSeqs = Arrays.copyOf(modSeqs, length);
+			sizes = Arrays.copyOf(sizes, length);
+			internalDates = Arrays.copyOf(internalDates, length);
+		}
+	}
+
+	private Flags flags(int index) {
+		Flags flags = new Flags();
+		int system = systemFlags[index];
+		if ((system & ANSWERED) != 0) {
+			flags.add(Flag.ANSWERED);
+		}
+		if ((system & DELETED) != 0) {
+			flags.add(Flag.DELETED);
+		}
+		if ((system & DRAFT) != 0) {
+			flags.add(Flag.DRAFT);
+		}
+		if ((system & FLAGGED) != 0) {
+			flags.add(Flag.FLAGGED);
+		}
+		if ((system & RECENT) != 0) {
+			flags.add(Flag.RECENT);
+		}
+		if ((system & SEEN) != 0) {
+			flags.add(Flag.SEEN);
+		}
+		long user = userFlags[index];
+		for (int id = 0; user != 0; id++, user >>>= 1) {
+			if ((user & 1) != 0) {
+				flags.add(userFlagNames.get(id));
+			}
+		}
+		return flags;
+	}
+
+	private static int systemFlags(Flags flags) {
+		int system = 0;
+		if (flags != null) {
+			system |= flags.contains(Flag.ANSWERED) ? ANSWERED : 0;
+			system |= flags.contains(Flag.DELETED) ? DELETED : 0;
+			system |= flags.contains(Flag.DRAFT) ? DRAFT : 0;
+			system |= flags.contains(Flag.FLAGGED) ? FLAGGED : 0;
+			system |= flags.contains(Flag.RECENT) ? RECENT : 0;
+			system |= flags.contains(Flag.SEEN) ? SEEN : 0;
+		}
+		return system;
+	}
+
+	/**
+	 * Return the bits of the user flags, interning new user flags. The result is negative if the last
+	 * bit is used, so the caller needs to check with {@link #tooManyUserFlags(Flags)} in that case.
+	 */
+	private long userFlags(Flags flags) {
+		long user = 0;
+		if (flags != null) {
+			for (String flag : flags.getUserFlags()) {
+				int id = userFlagNames.indexOf(flag);
+				if (id < 0) {
+					if (userFlagNames.size() == MAX_USER_FLAGS) {
+						return -1;
+					}
+					id = userFlagNames.size();
+					userFlagNames.add(flag);
+				}
+				user |= 1L << id;
+			}
+		}
+		return user;
+	}
+
+	private boolean tooManyUserFlags(Flags flags) {
+		for (String flag : flags.getUserFlags()) {
+			if (!userFlagNames.contains(flag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
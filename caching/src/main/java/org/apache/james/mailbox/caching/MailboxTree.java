@@ -0,0 +1,198 @@
+package org.apache.james.mailbox.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * The mailboxes of one user, stored as a trie which is split on the hierarchy delimiter. It answers
+ * {@link org.apache.james.mailbox.store.mail.MailboxMapper#findMailboxWithPathLike(org.apache.james.mailbox.model.MailboxPath)}
+ * and {@link org.apache.james.mailbox.store.mail.MailboxMapper#hasChildren(Mailbox, char)} in memory.
+ * 
+ * The '%' wildcard of findMailboxWithPathLike matches any sequence of characters, including the
+ * delimiter, like the SQL LIKE operator. The part of the pattern before the first wildcard is looked
+ * up in the trie, and only the mailboxes below it are matched against the whole pattern.
+ * 
+ * @param <Id>
+ */
+public class MailboxTree<Id> {
+
+	public static final char WILDCARD = '%';
+
+	private final char delimiter;
+	private final Node<Id> root = new Node<Id>();
+	private final Map<Id, String> namesById = new HashMap<Id, String>();
+
+	public MailboxTree(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	public MailboxTree(char delimiter, List<Mailbox<Id>> mailboxes) {
+		this(delimiter);
+		for (Mailbox<Id> mailbox : mailboxes) {
+			put(mailbox);
+		}
+	}
+
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Add the Mailbox, or move it if it is already stored with another name
+	 */
+	public synchronized void put(Mailbox<Id> mailbox) {
+		Id id = mailbox.getMailboxId();
+		if (id != null) {
+			String oldName = namesById.get(id);
+			if (oldName != null && !oldName.equals(mailbox.getName())) {
+				remove(oldName);
+			}
+			namesById.put(id, mailbox.getName());
+		}
+		Node<Id> node = root;
+		for (String segment : split(mailbox.getName())) {
+			Node<Id> child = node.children.get(segment);
+			if (child == null) {
+				child = new Node<Id>();
+				node.children.put(segment, child);
+			}
+			node = child;
+		}
+		node.mailbox = mailbox;
+	}
+
+	/**
+	 * Remove the Mailbox with the given name. Its children are kept.
+	 */
+	public synchronized void remove(String name) {
+		List<String> segments = split(name);
+		List<Node<Id>> nodes = new ArrayList<Node<Id>>(segments.size() + 1);
+		Node<Id> node = root;
+		nodes.add(node);
+		for (String segment : segments) {
+			node = node.children.get(segment);
+			if (node == null) {
+				return;
+			}
+			nodes.add(node);
+		}
+		if (node.mailbox != null && node.mailbox.getMailboxId() != null) {
+			namesById.remove(node.mailbox.getMailboxId());
+		}
+		node.mailbox = null;
+		// prune the nodes which neither hold a mailbox nor have children
+		for (int i = segments.size(); i > 0; i--) {
+			Node<Id> current = nodes.get(i);
+			if (current.mailbox != null || !current.children.isEmpty()) {
+				break;
+			}
+			nodes.get(i - 1).children.remove(segments.get(i - 1));
+		}
+	}
+
+	/**
+	 * Return the mailboxes whose name match the given pattern, which may contain {@link #WILDCARD}
+	 */
+	public synchronized List<Mailbox<Id>> findLike(String pattern) {
+		List<Mailbox<Id>> result = new ArrayList<Mailbox<Id>>();
+		int wildcard = pattern.indexOf(WILDCARD);
+		if (wildcard < 0) {
+			Node<Id> node = find(split(pattern));
+			if (node != null && node.mailbox != null) {
+				result.add(node.mailbox);
+			}
+			return result;
+		}
+		// only the complete segments before the wildcard can be looked up
+		String prefix = pattern.substring(0, wildcard);
+		int lastDelimiter = prefix.lastIndexOf(delimiter);
+		Node<Id> node = lastDelimiter < 0 ? root : find(split(prefix.substring(0, lastDelimiter)));
+		if (node != null) {
+			collect(node, toRegex(pattern), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Return <code>true</code> if there is at least one Mailbox below the Mailbox with the given name
+	 */
+	public synchronized boolean hasChildren(String name) {
+		Node<Id> node = find(split(name));
+		return node != null && !node.children.isEmpty();
+	}
+
+	/**
+	 * Return the number of stored mailboxes
+	 */
+	public synchronized int size() {
+		return count(root);
+	}
+
+	private Node<Id> find(List<String> segments) {
+		Node<Id> node = root;
+		for (String segment : segments) {
+			node = node.children.get(segment);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	private void collect(Node<Id> node, Pattern pattern, List<Mailbox<Id>> result) {
+		if (node.mailbox != null && pattern.matcher(node.mailbox.getName()).matches()) {
+			result.add(node.mailbox);
+		}
+		for (Node<Id> child : node.children.values()) {
+			collect(child, pattern, result);
+		}
+	}
+
+	private int count(Node<Id> node) {
+		int count = node.mailbox == null ? 0 : 1;
+		for (Node<Id> child : node.children.values()) {
+			count += count(child);
+		}
+		return count;
+	}
+
+	private List<String> split(String name) {
+		List<String> segments = new ArrayList<String>();
+		int start = 0;
+		int index;
+		while ((index = name.indexOf(delimiter, start)) >= 0) {
+			segments.add(name.substring(start, index));
+			start = index + 1;
+		}
+		segments.add(name.substring(start));
+		return segments;
+	}
+
+	private static Pattern toRegex(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		int start = 0;
+		int index;
+		while ((index = pattern.indexOf(WILDCARD, start)) >= 0) {
+			if (index > start) {
+				regex.append(Pattern.quote(pattern.substring(start, index)));
+			}
+			regex.append(".*");
+			start = index + 1;
+		}
+		if (start < pattern.length()) {
+			regex.append(Pattern.quote(pattern.substring(start)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private final static class Node<Id> {
+		private Mailbox<Id> mailbox;
+		private final Map<String, Node<Id>> children = new TreeMap<String, Node<Id>>();
+	}
+}
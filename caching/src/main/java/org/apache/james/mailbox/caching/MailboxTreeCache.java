@@ -0,0 +1,38 @@
+package org.apache.james.mailbox.caching;
+
+import java.util.List;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * Caches the mailbox hierarchy of each user as {@link MailboxTree}, so LIST and the child lookups
+ * which follow it do not hit the underlying MailboxMapper. The tree of a user is loaded with one call
+ * of the underlying MailboxMapper and then kept up to date by the CachingMailboxMapper and the
+ * CacheInvalidatingMailboxListener.
+ * 
+ * @param <Id>
+ */
+public interface MailboxTreeCache<Id> {
+
+	public abstract List<Mailbox<Id>> findMailboxWithPathLike(MailboxPath mailboxPath,
+			MailboxMapper<Id> underlying) throws MailboxException;
+
+	public abstract boolean hasChildren(Mailbox<Id> mailbox, char delimiter,
+			MailboxMapper<Id> underlying) throws MailboxException;
+
+	/**
+	 * The Mailbox was created or renamed
+	 */
+	public abstract void saved(Mailbox<Id> mailbox);
+
+	public abstract void deleted(MailboxPath mailboxPath);
+
+	/**
+	 * Drop the tree of the user the given MailboxPath belongs to
+	 */
+	public abstract void invalidate(MailboxPath mailboxPath);
+
+}
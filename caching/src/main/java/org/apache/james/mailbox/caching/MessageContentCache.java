@@ -0,0 +1,38 @@
+package org.apache.james.mailbox.caching;
+
+import java.io.IOException;
+
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
+
+/**
+ * Caches the content of recently read messages, so fetching it again does not need to read it
+ * from the underlying store. The content of a message never changes for its uid, so the content
+ * is keyed by the mailbox id, its uid validity and the uid of the message.
+ * 
+ * @param <Id>
+ */
+public interface MessageContentCache<Id> {
+
+	/**
+	 * Return the cached content of the message with the given uid, or null if it is not cached
+	 * 
+	 * @param mailbox
+	 * @param uid
+	 * @return content or null
+	 */
+	public abstract CachedContent get(Mailbox<Id> mailbox, long uid);
+
+	/**
+	 * Read the full content of the message and cache it
+	 * 
+	 * @param mailbox
+	 * @param message
+	 * @return the cached content, or null if the message was not cached, for example because it is too big
+	 * @throws IOException
+	 */
+	public abstract CachedContent put(Mailbox<Id> mailbox, Message<Id> message) throws IOException;
+
+	public abstract void invalidate(Mailbox<Id> mailbox, long uid);
+
+}
@@ -1,16 +1,60 @@
 package org.apache.james.mailbox.caching.guava;
 
-import java.util.concurrent.TimeUnit;
+import org.apache.james.mailbox.caching.CacheMetricsMBean;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.Weigher;
 
-public class AbstractGuavaCache {
+/**
+ * Base of the Guava caches. Every cache is configured by its own {@link CacheBuilderSpec}, for example
+ * <code>maximumSize=100000,expireAfterWrite=15m</code> or <code>maximumSize=10000,expireAfterAccess=30m</code>.
+ * 
+ * refreshAfterWrite is not supported, as the values are loaded from the underlying mapper of the
+ * calling session, which is not available for a reload in the background.
+ */
+public abstract class AbstractGuavaCache {
 
-	// TODO this can probably be instantiated more elegant way
-	protected static final CacheBuilder<Object, Object> BUILDER = 
-			CacheBuilder.newBuilder()			
-			.maximumSize(100000)
-			.recordStats()
-			.expireAfterWrite(15, TimeUnit.MINUTES);
+	public static final String DEFAULT_SPEC = "maximumSize=100000,expireAfterWrite=15m";
 
+	/**
+	 * Return the statistics of this cache
+	 * 
+	 * @return metrics
+	 */
+	public abstract CacheMetricsMBean getMetrics();
+
+	protected static CacheBuilder<Object, Object> builder(String spec) {
+		CacheBuilderSpec builderSpec = parse(spec);
+		if (builderSpec.toParsableString().contains("maximumWeight")) {
+			throw new IllegalArgumentException("maximumWeight is not supported by this cache: " + spec);
+		}
+		return CacheBuilder.from(builderSpec).recordStats();
+	}
+
+	/**
+	 * Return a builder for the given spec. The weigher is only used if the spec contains a maximumWeight.
+	 * 
+	 * @param spec
+	 * @param weigher
+	 * @return builder
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <K, V> CacheBuilder<K, V> builder(String spec, Weigher<? super K, ? super V> weigher) {
+		CacheBuilderSpec builderSpec = parse(spec);
+		CacheBuilder<Object, Object> builder = CacheBuilder.from(builderSpec).recordStats();
+		if (builderSpec.toParsableString().contains("maximumWeight")) {
+			return builder.weigher(weigher);
+		}
+		// the builder is not typed without a weigher
+		return (CacheBuilder<K, V>) (CacheBuilder<?, ?>) builder;
+	}
+
+	private static CacheBuilderSpec parse(String spec) {
+		CacheBuilderSpec builderSpec = CacheBuilderSpec.parse(spec);
+		if (builderSpec.toParsableString().contains("refreshAfterWrite")) {
+			throw new IllegalArgumentException("refreshAfterWrite is not supported by this cache: " + spec);
+		}
+		return builderSpec;
+	}
 }
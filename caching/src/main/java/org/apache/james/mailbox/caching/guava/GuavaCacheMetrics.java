@@ -0,0 +1,121 @@
+package org.apache.james.mailbox.caching.guava;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.caching.CacheMetricsMBean;
+
+import com.google.common.cache.Cache;
+
+/**
+ * Records the hits, misses and load times of a Guava {@link Cache}. The caches are filled from the
+ * underlying mapper of the calling session and not by a CacheLoader, so the load statistics are
+ * recorded here instead of by Guava. The size and eviction count are read from the Cache itself.
+ * It can be registered as MBean to expose the values via JMX.
+ */
+public class GuavaCacheMetrics implements CacheMetricsMBean {
+
+	private final Cache<?, ?> cache;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+	private volatile long evictionsAtReset;
+
+	public GuavaCacheMetrics(Cache<?, ?> cache) {
+		this.cache = cache;
+	}
+
+	public void hit() {
+		hits.incrementAndGet();
+	}
+
+	public void negativeHit() {
+		negativeHits.incrementAndGet();
+	}
+
+	public void miss() {
+		misses.incrementAndGet();
+	}
+
+	/**
+	 * Record a load from the underlying store
+	 * 
+	 * @param nanos the time the load took in nanoseconds
+	 * @param success false if the load failed with an exception
+	 */
+	public void loaded(long nanos, boolean success) {
+		if (success) {
+			loads.incrementAndGet();
+		} else {
+			loadFailures.incrementAndGet();
+		}
+		loadTime.addAndGet(nanos);
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRate() {
+		long answered = hits.get() + negativeHits.get();
+		long requests = answered + misses.get();
+		return requests == 0 ? 1.0 : (double) answered / requests;
+	}
+
+	@Override
+	public long getNegativeHitCount() {
+		return negativeHits.get();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	@Override
+	public long getLoadFailureCount() {
+		return loadFailures.get();
+	}
+
+	@Override
+	public long getTotalLoadTime() {
+		return TimeUnit.NANOSECONDS.toMillis(loadTime.get());
+	}
+
+	@Override
+	public double getAverageLoadTime() {
+		long count = loads.get() + loadFailures.get();
+		return count == 0 ? 0 : (double) loadTime.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public long getEvictionCount() {
+		return cache.stats().evictionCount() - evictionsAtReset;
+	}
+
+	@Override
+	public long getSize() {
+		return cache.size();
+	}
+
+	@Override
+	public void reset() {
+		hits.set(0);
+		negativeHits.set(0);
+		misses.set(0);
+		loads.set(0);
+		loadFailures.set(0);
+		loadTime.set(0);
+		evictionsAtReset = cache.stats().evictionCount();
+	}
+}
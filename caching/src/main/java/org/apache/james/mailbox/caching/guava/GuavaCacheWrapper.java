@@ -8,21 +8,36 @@ public abstract class GuavaCacheWrapper<Key, Value, Underlying, KeyRepresentatio
 	implements CacheLoaderFromUnderlying<Key, Value, Underlying, Except> {
 
 	private final Cache<KeyRepresentation, Value> cache;
+	private final GuavaCacheMetrics metrics;
 //	private final CacheLoaderFromUnderlying<Key, Value, Underlying, Except> loader;
 
 	public GuavaCacheWrapper(Cache<KeyRepresentation, Value> cache/*, CacheLoaderFromUnderlying<Key, Value, Underlying, Except> loader*/) {
+		this(cache, new GuavaCacheMetrics(cache));
+	}
+
+	public GuavaCacheWrapper(Cache<KeyRepresentation, Value> cache, GuavaCacheMetrics metrics) {
 		this.cache = cache;
+		this.metrics = metrics;
 //		this.loader = loader;
 	}
 	
 	public Value get(Key key, Underlying underlying) throws Except {
 		Value value = cache.getIfPresent(getKeyRepresentation(key));
-		if (value != null)
+		if (value != null) {
+			metrics.hit();
 			return value;
-		else {
-			value = load(key, underlying);
+		} else {
+			metrics.miss();
+			long start = System.nanoTime();
+			boolean loaded = false;
+			try {
+				value = load(key, underlying);
+				loaded = true;
+			} finally {
+				metrics.loaded(System.nanoTime() - start, loaded);
+			}
 			if (value != null)
-				cache.put(getKeyRepresentation(key), value);
+				cache.put(getStoredKeyRepresentation(key), value);
 			return value;
 		}
 
@@ -33,6 +48,21 @@ public abstract class GuavaCacheWrapper<Key, Value, Underlying, KeyRepresentatio
 			cache.invalidate(getKeyRepresentation(key));
 	}
 
+	public GuavaCacheMetrics getMetrics() {
+		return metrics;
+	}
+
 	public abstract KeyRepresentation getKeyRepresentation(Key key);
 
+	/**
+	 * Return the representation of the key which is stored in the cache. Override this if the
+	 * representation used for the lookups is mutable.
+	 * 
+	 * @param key
+	 * @return keyRepresentation
+	 */
+	public KeyRepresentation getStoredKeyRepresentation(Key key) {
+		return getKeyRepresentation(key);
+	}
+
 }
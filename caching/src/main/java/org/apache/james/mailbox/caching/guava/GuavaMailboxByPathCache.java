@@ -1,5 +1,8 @@
 package org.apache.james.mailbox.caching.guava;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.caching.CacheMetricsMBean;
 import org.apache.james.mailbox.caching.MailboxByPathCache;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
@@ -11,41 +14,69 @@ import com.google.common.cache.Cache;
 
 /**
  * Guava-based implementation of MailboxByPathCache.
- * Note: for efficiency/simplicity reasons the cache key is MailboxPath.toString()
- * That may help also make it compatible with other cache backends in the future.
+ * Note: the cache key is the MailboxPath itself, so a lookup does not need to allocate a key. As
+ * MailboxPath is mutable a copy of it is stored on a miss.
+ * 
+ * Paths for which the underlying mapper threw a {@link MailboxNotFoundException} can be remembered in a
+ * second, short lived cache, as for example creating a mailbox checks every level of the hierarchy
+ * first. The "not found" entry is dropped on the invalidation of the path, so it does not hide a
+ * mailbox created by this node. A mailbox created by another node stays hidden until the entry expires,
+ * so this cache is off by default and should only be enabled, e.g. with {@link #DEFAULT_NOT_FOUND_SPEC},
+ * on a single node.
  *
  * @param <Id>
  */
 public class GuavaMailboxByPathCache<Id> extends AbstractGuavaCache implements MailboxByPathCache<Id> {
-	
-	private final Cache<String, Mailbox<Id>> findMailboxByPathCache = BUILDER.build();
+
+	public static final String DEFAULT_NOT_FOUND_SPEC = "maximumSize=10000,expireAfterWrite=30s";
+
+	private final Cache<MailboxPath, Mailbox<Id>> findMailboxByPathCache;
+	private final Cache<MailboxPath, Boolean> notFoundCache;
+	// incremented on every invalidation, so a "not found" which was loaded meanwhile is not cached
+	private final AtomicLong generation = new AtomicLong();
 
 	private final MailboxByPathCacheWrapper wrapper;
 
 	
 	public GuavaMailboxByPathCache() {
+		this(DEFAULT_SPEC, null);
+	}
+
+	/**
+	 * @param spec the spec of the cache of the found mailboxes
+	 * @param notFoundSpec the spec of the cache of the not found paths, or null to not remember them. Only
+	 *        use it on a single node
+	 */
+	public GuavaMailboxByPathCache(String spec, String notFoundSpec) {
+		this.findMailboxByPathCache = builder(spec).build();
+		this.notFoundCache = notFoundSpec == null ? null : builder(notFoundSpec).<MailboxPath, Boolean>build();
 		this.wrapper = new MailboxByPathCacheWrapper(findMailboxByPathCache);
 	}
 	
 	@Override
 	public Mailbox<Id> findMailboxByPath(MailboxPath mailboxName, MailboxMapper<Id> underlying) throws MailboxNotFoundException, MailboxException {
-		
-		return wrapper.get(mailboxName, underlying);
+		if (notFoundCache == null) {
+			return wrapper.get(mailboxName, underlying);
+		}
+		if (notFoundCache.getIfPresent(mailboxName) != null) {
+			wrapper.getMetrics().negativeHit();
+			throw new MailboxNotFoundException(mailboxName);
+		}
+		long loadGeneration = generation.get();
+		try {
+			return wrapper.get(mailboxName, underlying);
+		} catch (MailboxNotFoundException e) {
+			if (loadGeneration == generation.get()) {
+				MailboxPath key = new MailboxPath(mailboxName);
+				notFoundCache.put(key, Boolean.TRUE);
+				if (loadGeneration != generation.get()) {
+					// invalidated while it was stored
+					notFoundCache.invalidate(key);
+				}
+			}
+			throw e;
+		}
 	}
-	
-//	alternative plain implementation - review and choose the better
-//	public Mailbox<Id> findMailboxByPath(MailboxPath mailboxName, MailboxMapper<Id> underlying) throws MailboxNotFoundException, MailboxException {
-//		Mailbox<Id> mailbox = findMailboxByPathCache.getIfPresent(mailboxName.toString());
-//		if (mailbox != null)
-//			return mailbox;
-//		else {
-//			mailbox = new MailboxByPathCacheLoaderFromUnderlying().load(mailboxName, underlying);
-//			findMailboxByPathCache.put(mailboxName.toString(), mailbox);
-//			return mailbox;
-//		}
-//	}
-
-	
 
 	@Override
 	public void invalidate(Mailbox<Id> mailbox) {
@@ -54,23 +85,21 @@ public class GuavaMailboxByPathCache<Id> extends AbstractGuavaCache implements M
 	
 	@Override
 	public void invalidate(MailboxPath mailboxPath) {
+		if (notFoundCache != null) {
+			generation.incrementAndGet();
+			notFoundCache.invalidate(mailboxPath);
+		}
 		wrapper.invalidate(mailboxPath);
 	}
 
+	@Override
+	public CacheMetricsMBean getMetrics() {
+		return wrapper.getMetrics();
+	}
 
-	//Does it make sense to define such loaders as separate classes for reuse?
-//	class MailboxByPathCacheLoaderFromUnderlying implements CacheLoaderFromUnderlying<MailboxPath, Mailbox<Id>, MailboxMapper<Id>, MailboxException> {
-//		@Override
-//		public Mailbox<Id> load(MailboxPath mailboxName, MailboxMapper<Id> underlying) throws MailboxException {
-//			return underlying.findMailboxByPath(mailboxName);
-//		}
-//	}
-
-	class MailboxByPathCacheWrapper extends GuavaCacheWrapper<MailboxPath, Mailbox<Id>, MailboxMapper<Id>, String, MailboxException> {
+	class MailboxByPathCacheWrapper extends GuavaCacheWrapper<MailboxPath, Mailbox<Id>, MailboxMapper<Id>, MailboxPath, MailboxException> {
 
-		public MailboxByPathCacheWrapper(
-				Cache<String, Mailbox<Id>> cache/*,
-				MailboxByPathCacheLoaderFromUnderlying loader*/) {
+		public MailboxByPathCacheWrapper(Cache<MailboxPath, Mailbox<Id>> cache) {
 			super(cache);
 		}
 
@@ -80,8 +109,13 @@ public class GuavaMailboxByPathCache<Id> extends AbstractGuavaCache implements M
 		}
 
 		@Override
-		public String getKeyRepresentation(MailboxPath key) {
-			return key.toString();
+		public MailboxPath getKeyRepresentation(MailboxPath key) {
+			return key;
+		}
+
+		@Override
+		public MailboxPath getStoredKeyRepresentation(MailboxPath key) {
+			return new MailboxPath(key);
 		}
 		
 	}
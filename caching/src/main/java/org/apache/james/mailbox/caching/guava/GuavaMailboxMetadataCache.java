@@ -1,140 +1,323 @@
 package org.apache.james.mailbox.caching.guava;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.james.mailbox.caching.CacheMetricsMBean;
+import org.apache.james.mailbox.caching.MailboxMetadata;
 import org.apache.james.mailbox.caching.MailboxMetadataCache;
+import org.apache.james.mailbox.caching.MailboxSnapshot;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
 
 import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
 /**
- * Guava-based implementation of MailboxMetadataCache.
+ * Guava-based implementation of MailboxMetadataCache. All values of a Mailbox are kept
+ * in one {@link MailboxMetadata} entry.
  * Note: for efficiency/simplicity reasons the cache key is Mailbox.getMailboxId()
+ * 
+ * If the spec contains a maximumWeight, an entry weighs its approximated memory size in bytes, so
+ * the cache is bounded by the memory used by the snapshots. The entry is only stored again to update
+ * its weight if the memory size changed, so it is not kept alive by every applied change.
+ * 
+ * The {@link MailboxSnapshot} of a Mailbox is loaded for the unseen count, the first unseen message and
+ * the recent messages, as the underlying MessageMapper needs to look at all messages for them anyway.
+ * The message count, last uid and highest mod-sequence are loaded on their own, as they are cheap to
+ * compute, but the message count is answered from the snapshot once it is loaded.
+ * 
+ * An entry is pinned while an update of its Mailbox is in progress, so the version and the count of
+ * updates in progress are not lost if the entry is evicted meanwhile. Once the last update ended the
+ * entry is stored in the cache again.
  *
  * @param <Id>
  */
 
 public class GuavaMailboxMetadataCache<Id> extends AbstractGuavaCache implements MailboxMetadataCache<Id> {
 
-	// TODO these can probably be instantiated more elegant way
-	private final Cache<Id, Long> cacheCountMessagesInMailbox = BUILDER.build();
-	private final Cache<Id, Long> cacheCountUnseenMessagesInMailbox = BUILDER.build();
-	private final Cache<Id, Long> cacheFindFirstUnseenMessageUid = BUILDER.build();
-	private final Cache<Id, Long> cacheGetLastUid = BUILDER.build();
-	private final Cache<Id, Long> cacheGetHighestModSeq = BUILDER.build();
-
-	private final MetadataCacheWrapper countMessagesInMailboxWrapper = new CountMessagesInMailboxWrapper(cacheCountMessagesInMailbox);
-	private final MetadataCacheWrapper countUnseenMessagesInMailboxWrapper = new CountUnseenMessagesInMailboxWrapper(cacheCountUnseenMessagesInMailbox);
-	private final MetadataCacheWrapper findFirstUnseenMessageUid = new FindFirstUnseenMessageUidWrapper(cacheFindFirstUnseenMessageUid);
-	private final MetadataCacheWrapper highestModSeqWrapper = new HighestModseqCacheWrapper(cacheGetHighestModSeq);
-	private final MetadataCacheWrapper lastUidWrapper = new LastUidCacheWrapper(cacheGetLastUid);
-	
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 256L * 1024 * 1024;
+	public static final String DEFAULT_METADATA_SPEC = "maximumWeight=" + DEFAULT_MAXIMUM_WEIGHT + ",expireAfterWrite=15m";
+
+	private final Cache<Id, MailboxMetadata> cache;
+	// the entries with an update in progress, guarded by its own monitor
+	private final Map<Id, MailboxMetadata> updating = new HashMap<Id, MailboxMetadata>();
+	private final GuavaCacheMetrics metrics;
+
+	public GuavaMailboxMetadataCache() {
+		this(DEFAULT_METADATA_SPEC);
+	}
+
+	public GuavaMailboxMetadataCache(String spec) {
+		this.cache = AbstractGuavaCache.<Id, MailboxMetadata>builder(spec, new Weigher<Id, MailboxMetadata>() {
+			@Override
+			public int weigh(Id key, MailboxMetadata metadata) {
+				return (int) Math.min(Integer.MAX_VALUE, metadata.weigh());
+			}
+		}).build();
+		this.metrics = new GuavaCacheMetrics(cache);
+	}
+
 	@Override
 	public long countMessagesInMailbox(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
-		return countMessagesInMailboxWrapper.get(mailbox, underlying);
+		return get(mailbox, underlying, Counter.MessageCount);
 	}
 	
 	@Override
 	public long countUnseenMessagesInMailbox(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
 			throws MailboxException {
-		return countUnseenMessagesInMailboxWrapper.get(mailbox, underlying);
+		return get(mailbox, underlying, Counter.UnseenCount);
 	}
 	
 	@Override
 	public Long findFirstUnseenMessageUid(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
 			throws MailboxException {
-		return findFirstUnseenMessageUid.get(mailbox, underlying);
+		return get(mailbox, underlying, Counter.FirstUnseen);
 	}
 	
 	@Override
 	public long getLastUid(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
-		return lastUidWrapper.get(mailbox, underlying);
+		return get(mailbox, underlying, Counter.LastUid);
 
 	}
 	
 	@Override
 	public long getHighestModSeq(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
-		return highestModSeqWrapper.get(mailbox, underlying);
+		return get(mailbox, underlying, Counter.HighestModSeq);
 	}
 	
 	@Override
-	public void invalidate(Mailbox<Id> mailbox) {
-		cacheCountMessagesInMailbox.invalidate(mailbox);
-		cacheCountUnseenMessagesInMailbox.invalidate(mailbox);
-		cacheFindFirstUnseenMessageUid.invalidate(mailbox);
-		lastUidWrapper.invalidate(mailbox);
-		highestModSeqWrapper.invalidate(mailbox);
+	public List<Long> findRecentMessageUidsInMailbox(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
+			throws MailboxException {
+		MailboxSnapshot snapshot = getSnapshot(mailbox, underlying);
+		if (snapshot == null) {
+			return underlying.findRecentMessageUidsInMailbox(mailbox);
+		}
+		return snapshot.findRecent();
 	}
 
-	
-	abstract class MetadataCacheWrapper extends GuavaCacheWrapper<Mailbox<Id>, Long, MessageMapper<Id>, Id, MailboxException> {
+	@Override
+	public MailboxSnapshot getSnapshot(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
+		MailboxMetadata metadata = getOrCreate(mailbox);
+		if (metadata == null) {
+			return null;
+		}
+		MailboxSnapshot snapshot = metadata.getSnapshot();
+		if (snapshot != null) {
+			metrics.hit();
+			return snapshot;
+		}
+		metrics.miss();
+		long version = metadata.beginLoad();
+		long start = System.nanoTime();
+		boolean loaded = false;
+		try {
+			snapshot = loadSnapshot(mailbox, underlying);
+			loaded = true;
+		} finally {
+			metrics.loaded(System.nanoTime() - start, loaded);
+		}
+		if (snapshot != null) {
+			metadata.loaded(snapshot, version);
+			reweigh(mailbox, metadata);
+		}
+		return snapshot;
+	}
 
-		public MetadataCacheWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	@Override
+	public void invalidate(Mailbox<Id> mailbox) {
+		MailboxMetadata metadata = getIfPresent(mailbox);
+		if (metadata != null) {
+			// keep the entry, as an update may be in progress
+			metadata.clear();
 		}
+	}
 
-		@Override
-		public Id getKeyRepresentation(Mailbox<Id> key) {
-			return key.getMailboxId();
-		}		
-		
+	@Override
+	public void beginUpdate(Mailbox<Id> mailbox) {
+		if (mailbox == null || mailbox.getMailboxId() == null) {
+			return;
+		}
+		synchronized (updating) {
+			MailboxMetadata metadata = updating.get(mailbox.getMailboxId());
+			if (metadata == null) {
+				metadata = getOrCreate(mailbox);
+				updating.put(mailbox.getMailboxId(), metadata);
+			}
+			metadata.beginUpdate();
+		}
 	}
 
-	class CountMessagesInMailboxWrapper extends MetadataCacheWrapper {
+	@Override
+	public void endUpdate(Mailbox<Id> mailbox, boolean applied) {
+		if (mailbox == null || mailbox.getMailboxId() == null) {
+			return;
+		}
+		MailboxMetadata metadata;
+		synchronized (updating) {
+			metadata = updating.get(mailbox.getMailboxId());
+			if (metadata == null) {
+				return;
+			}
+			metadata.endUpdate(applied);
+			if (!metadata.isUpdating()) {
+				updating.remove(mailbox.getMailboxId());
+				if (cache.getIfPresent(mailbox.getMailboxId()) != metadata) {
+					// evicted while pinned, the pinned entry is the one which is up to date
+					cache.put(mailbox.getMailboxId(), metadata);
+					return;
+				}
+			}
+		}
+		reweigh(mailbox, metadata);
+	}
 
-		public CountMessagesInMailboxWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	@Override
+	public void added(Mailbox<Id> mailbox, List<MessageMetaData> added) {
+		MailboxMetadata metadata = getIfPresent(mailbox);
+		if (metadata != null) {
+			metadata.added(added);
 		}
-		@Override
-		public Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
-				throws MailboxException {
-			return underlying.countMessagesInMailbox(mailbox);
+	}
+
+	@Override
+	public void expunged(Mailbox<Id> mailbox, Collection<MessageMetaData> expunged) {
+		MailboxMetadata metadata = getIfPresent(mailbox);
+		if (metadata != null) {
+			metadata.expunged(expunged);
 		}
+	}
 
+	@Override
+	public void flagsUpdated(Mailbox<Id> mailbox, List<UpdatedFlags> updated) {
+		MailboxMetadata metadata = getIfPresent(mailbox);
+		if (metadata != null) {
+			metadata.flagsUpdated(updated);
+		}
 	}
-	
-	class CountUnseenMessagesInMailboxWrapper extends MetadataCacheWrapper {
 
-		public CountUnseenMessagesInMailboxWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	private Long get(Mailbox<Id> mailbox, MessageMapper<Id> underlying, Counter counter) throws MailboxException {
+		MailboxMetadata metadata = getOrCreate(mailbox);
+		if (metadata == null) {
+			return load(mailbox, underlying, counter);
 		}
-		@Override
-		public Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
-				throws MailboxException {
-			return underlying.countUnseenMessagesInMailbox(mailbox);
+		synchronized (metadata) {
+			if (metadata.contains(counter)) {
+				metrics.hit();
+				return metadata.get(counter);
+			}
+		}
+		if (counter == Counter.UnseenCount || counter == Counter.FirstUnseen) {
+			MailboxSnapshot snapshot = getSnapshot(mailbox, underlying);
+			if (snapshot != null) {
+				return counter == Counter.UnseenCount ? Long.valueOf(snapshot.countUnseen()) : snapshot.findFirstUnseen();
+			}
+		}
+		metrics.miss();
+		long version = metadata.beginLoad();
+		long start = System.nanoTime();
+		boolean loaded = false;
+		Long value;
+		try {
+			value = load(mailbox, underlying, counter);
+			loaded = true;
+		} finally {
+			metrics.loaded(System.nanoTime() - start, loaded);
 		}
+		metadata.loaded(counter, value, version);
+		return value;
+	}
 
+	@Override
+	public CacheMetricsMBean getMetrics() {
+		return metrics;
 	}
 
-	class FindFirstUnseenMessageUidWrapper extends MetadataCacheWrapper {
+	private Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying, Counter counter) throws MailboxException {
+		switch (counter) {
+		case MessageCount:
+			return underlying.countMessagesInMailbox(mailbox);
+		case UnseenCount:
+			return underlying.countUnseenMessagesInMailbox(mailbox);
+		case FirstUnseen:
+			return underlying.findFirstUnseenMessageUid(mailbox);
+		case LastUid:
+			return underlying.getLastUid(mailbox);
+		case HighestModSeq:
+			return underlying.getHighestModSeq(mailbox);
+		default:
+			throw new IllegalArgumentException("Counter " + counter + " is not cached");
+		}
+	}
 
-		public FindFirstUnseenMessageUidWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	private MailboxSnapshot loadSnapshot(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
+		MailboxSnapshot snapshot = new MailboxSnapshot();
+		Iterator<Message<Id>> messages = underlying.findInMailbox(mailbox, MessageRange.all(), FetchType.Metadata, -1);
+		while (messages.hasNext()) {
+			Message<Id> message = messages.next();
+			if (!snapshot.add(message.getUid(), message.createFlags(), message.getModSeq(), message.getFullContentOctets(), message.getInternalDate())) {
+				// too many user flags
+				return null;
+			}
 		}
-		@Override
-		public Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying)
-				throws MailboxException {
-			return underlying.findFirstUnseenMessageUid(mailbox);
+		return snapshot;
+	}
+
+	/**
+	 * Store the entry again if the size of its snapshot changed, so its weight matches it
+	 */
+	private void reweigh(Mailbox<Id> mailbox, MailboxMetadata metadata) {
+		if (metadata.isWeightChanged()) {
+			cache.asMap().replace(mailbox.getMailboxId(), metadata, metadata);
 		}
+	}
 
+	private MailboxMetadata getPinned(Mailbox<Id> mailbox) {
+		synchronized (updating) {
+			return updating.get(mailbox.getMailboxId());
+		}
 	}
 
-	class LastUidCacheWrapper extends MetadataCacheWrapper {
-		public LastUidCacheWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	private MailboxMetadata getIfPresent(Mailbox<Id> mailbox) {
+		if (mailbox == null || mailbox.getMailboxId() == null) {
+			return null;
 		}
-		@Override
-		public Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
-			return underlying.getLastUid(mailbox);
+		MailboxMetadata metadata = getPinned(mailbox);
+		if (metadata != null) {
+			return metadata;
 		}
+		return cache.getIfPresent(mailbox.getMailboxId());
 	}
 
-	class HighestModseqCacheWrapper extends MetadataCacheWrapper {
-		public HighestModseqCacheWrapper(Cache<Id, Long> cache) {
-			super(cache);
+	private MailboxMetadata getOrCreate(Mailbox<Id> mailbox) {
+		if (mailbox == null || mailbox.getMailboxId() == null) {
+			return null;
 		}
-		@Override
-		public Long load(Mailbox<Id> mailbox, MessageMapper<Id> underlying) throws MailboxException {
-			return underlying.getHighestModSeq(mailbox);
+		MailboxMetadata metadata = getPinned(mailbox);
+		if (metadata != null) {
+			return metadata;
+		}
+		try {
+			return cache.get(mailbox.getMailboxId(), new Callable<MailboxMetadata>() {
+				@Override
+				public MailboxMetadata call() {
+					return new MailboxMetadata();
+				}
+			});
+		} catch (ExecutionException e) {
+			// can not happen, as creating the entry does not throw
+			throw new IllegalStateException(e);
 		}
 	}
 
@@ -0,0 +1,136 @@
+package org.apache.james.mailbox.caching.guava;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.caching.CacheMetricsMBean;
+import org.apache.james.mailbox.caching.MailboxTree;
+import org.apache.james.mailbox.caching.MailboxTreeCache;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+
+/**
+ * Guava-based implementation of MailboxTreeCache. The trees of users which were not active for some
+ * time, or which were used least recently once the maximum number of users is reached, are evicted.
+ * Note: the cache key is the namespace and user of the MailboxPath
+ * 
+ * If the spec contains a maximumWeight, a tree weighs the number of its mailboxes at the time it
+ * was loaded.
+ *
+ * @param <Id>
+ */
+public class GuavaMailboxTreeCache<Id> extends AbstractGuavaCache implements MailboxTreeCache<Id> {
+
+	public static final int DEFAULT_MAXIMUM_USERS = 10000;
+	public static final long DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES = 30;
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	private final Cache<String, MailboxTree<Id>> trees;
+	private final GuavaCacheMetrics metrics;
+	private final char delimiter;
+	// incremented on every change, so a tree which was loaded meanwhile is not cached
+	private final AtomicLong generation = new AtomicLong();
+
+	public GuavaMailboxTreeCache() {
+		this(MailboxConstants.DEFAULT_DELIMITER, DEFAULT_MAXIMUM_USERS, DEFAULT_EXPIRE_AFTER_ACCESS_MINUTES);
+	}
+
+	public GuavaMailboxTreeCache(char delimiter, int maximumUsers, long expireAfterAccessMinutes) {
+		this(delimiter, "maximumSize=" + maximumUsers + ",expireAfterAccess=" + expireAfterAccessMinutes + "m");
+	}
+
+	public GuavaMailboxTreeCache(char delimiter, String spec) {
+		this.delimiter = delimiter;
+		this.trees = AbstractGuavaCache.<String, MailboxTree<Id>>builder(spec, new Weigher<String, MailboxTree<Id>>() {
+			@Override
+			public int weigh(String key, MailboxTree<Id> tree) {
+				return tree.size() + 1;
+			}
+		}).build();
+		this.metrics = new GuavaCacheMetrics(trees);
+	}
+
+	@Override
+	public List<Mailbox<Id>> findMailboxWithPathLike(MailboxPath mailboxPath, MailboxMapper<Id> underlying) throws MailboxException {
+		return getTree(mailboxPath, underlying).findLike(mailboxPath.getName());
+	}
+
+	@Override
+	public boolean hasChildren(Mailbox<Id> mailbox, char delimiter, MailboxMapper<Id> underlying) throws MailboxException {
+		if (delimiter != this.delimiter) {
+			return underlying.hasChildren(mailbox, delimiter);
+		}
+		MailboxPath path = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName());
+		return getTree(path, underlying).hasChildren(mailbox.getName());
+	}
+
+	@Override
+	public void saved(Mailbox<Id> mailbox) {
+		generation.incrementAndGet();
+		MailboxTree<Id> tree = trees.getIfPresent(key(mailbox.getNamespace(), mailbox.getUser()));
+		if (tree != null) {
+			tree.put(mailbox);
+		}
+	}
+
+	@Override
+	public void deleted(MailboxPath mailboxPath) {
+		generation.incrementAndGet();
+		MailboxTree<Id> tree = trees.getIfPresent(key(mailboxPath.getNamespace(), mailboxPath.getUser()));
+		if (tree != null) {
+			tree.remove(mailboxPath.getName());
+		}
+	}
+
+	@Override
+	public void invalidate(MailboxPath mailboxPath) {
+		generation.incrementAndGet();
+		trees.invalidate(key(mailboxPath.getNamespace(), mailboxPath.getUser()));
+	}
+
+	private MailboxTree<Id> getTree(MailboxPath path, MailboxMapper<Id> underlying) throws MailboxException {
+		String key = key(path.getNamespace(), path.getUser());
+		MailboxTree<Id> tree = trees.getIfPresent(key);
+		if (tree != null) {
+			metrics.hit();
+		} else {
+			metrics.miss();
+			long loadGeneration = generation.get();
+			MailboxPath all = new MailboxPath(path.getNamespace(), path.getUser(), String.valueOf(MailboxTree.WILDCARD));
+			long start = System.nanoTime();
+			boolean loaded = false;
+			try {
+				tree = new MailboxTree<Id>(delimiter, underlying.findMailboxWithPathLike(all));
+				loaded = true;
+			} finally {
+				metrics.loaded(System.nanoTime() - start, loaded);
+			}
+			if (loadGeneration == generation.get()) {
+				MailboxTree<Id> existing = trees.asMap().putIfAbsent(key, tree);
+				if (existing != null) {
+					tree = existing;
+				} else if (loadGeneration != generation.get()) {
+					// changed while it was stored
+					trees.asMap().remove(key, tree);
+				}
+			}
+		}
+		return tree;
+	}
+
+	@Override
+	public CacheMetricsMBean getMetrics() {
+		return metrics;
+	}
+
+	private String key(String namespace, String user) {
+		return namespace + KEY_SEPARATOR + user;
+	}
+
+}
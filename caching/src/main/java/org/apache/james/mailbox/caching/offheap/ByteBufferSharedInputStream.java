@@ -0,0 +1,97 @@
+package org.apache.james.mailbox.caching.offheap;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * {@link SharedInputStream} which reads from a {@link ByteBuffer}, which may be a direct or a mapped
+ * buffer. New streams are slices of the same buffer, so the content is never copied to the heap as
+ * a whole.
+ */
+public class ByteBufferSharedInputStream extends InputStream implements SharedInputStream {
+
+	private final ByteBuffer buffer;
+	// the position in the buffer at which this stream starts
+	private final int start;
+
+	/**
+	 * Create a stream of the content between the position and the limit of the buffer. The buffer
+	 * itself is not modified.
+	 * 
+	 * @param buffer
+	 */
+	public ByteBufferSharedInputStream(ByteBuffer buffer) {
+		this.buffer = buffer.duplicate();
+		this.start = buffer.position();
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int read = Math.min(len, buffer.remaining());
+		buffer.get(b, off, read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		int skipped = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		buffer.mark();
+	}
+
+	@Override
+	public synchronized void reset() {
+		buffer.reset();
+	}
+
+	@Override
+	public long getPosition() {
+		return buffer.position() - start;
+	}
+
+	@Override
+	public InputStream newStream(long start, long end) {
+		if (start < 0) {
+			throw new IllegalArgumentException("start < 0");
+		}
+		int limit = end == -1 ? buffer.limit() : (int) Math.min(this.start + end, buffer.limit());
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(limit);
+		slice.position((int) Math.min(this.start + start, limit));
+		return new ByteBufferSharedInputStream(slice);
+	}
+}
@@ -0,0 +1,373 @@
+package org.apache.james.mailbox.caching.offheap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.mailbox.caching.CachedContent;
+import org.apache.james.mailbox.caching.MessageContentCache;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
+
+/**
+ * MessageContentCache which keeps the content in direct ByteBuffers outside of the heap. The cache is
+ * bounded by the size of the cached content, and the least recently used content is evicted first.
+ * 
+ * If a directory is given, evicted content is written to a file in it and mapped into memory again on a
+ * hit. The files are bounded by their size as well. Files left over from a previous run are removed when
+ * the cache is created.
+ * 
+ * The memory of evicted content is only freed once its buffer is garbage collected, so the direct memory
+ * of the JVM (-XX:MaxDirectMemorySize) should leave some room above the maximal memory size.
+ *
+ * @param <Id>
+ */
+public class OffHeapMessageContentCache<Id> implements MessageContentCache<Id>, OffHeapMessageContentCacheMBean {
+
+	public static final long DEFAULT_MAX_MEMORY_SIZE = 64 * 1024 * 1024;
+	public static final int DEFAULT_MAX_CONTENT_SIZE = 1024 * 1024;
+	private static final String PREFIX = "content";
+	private static final String SUFFIX = ".msg";
+	private static final int CHUNK_SIZE = 8192;
+
+	private final long maxMemorySize;
+	private final int maxContentSize;
+	private final File directory;
+	private final long maxDiskSize;
+
+	// both maps are in access order and guarded by this
+	private final LinkedHashMap<Key, CachedContent> memory = new LinkedHashMap<Key, CachedContent>(16, 0.75f, true);
+	private final LinkedHashMap<Key, DiskEntry> disk = new LinkedHashMap<Key, DiskEntry>(16, 0.75f, true);
+	private long memorySize;
+	private long diskSize;
+
+	private long hits;
+	private long diskHits;
+	private long misses;
+	private long evictions;
+
+	public OffHeapMessageContentCache() {
+		this(DEFAULT_MAX_MEMORY_SIZE, DEFAULT_MAX_CONTENT_SIZE);
+	}
+
+	public OffHeapMessageContentCache(long maxMemorySize, int maxContentSize) {
+		this(maxMemorySize, maxContentSize, null, 0);
+	}
+
+	/**
+	 * @param maxMemorySize the maximal size of the content kept in memory
+	 * @param maxContentSize the maximal size of the content of one message, bigger messages are not cached
+	 * @param directory the directory to which evicted content is written, or null to drop it
+	 * @param maxDiskSize the maximal size of the content kept in the directory
+	 */
+	public OffHeapMessageContentCache(long maxMemorySize, int maxContentSize, File directory, long maxDiskSize) {
+		this.maxMemorySize = maxMemorySize;
+		this.maxContentSize = maxContentSize;
+		this.directory = directory;
+		this.maxDiskSize = maxDiskSize;
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IllegalArgumentException("Unable to create directory " + directory);
+			}
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX)) {
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public CachedContent get(Mailbox<Id> mailbox, long uid) {
+		Key key = new Key(mailbox, uid);
+		DiskEntry entry;
+		synchronized (this) {
+			CachedContent content = memory.get(key);
+			if (content != null) {
+				hits++;
+				return content;
+			}
+			entry = disk.get(key);
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			diskHits++;
+		}
+		try {
+			return entry.map();
+		} catch (IOException e) {
+			// the file was evicted meanwhile
+			return null;
+		}
+	}
+
+	@Override
+	public CachedContent put(Mailbox<Id> mailbox, Message<Id> message) throws IOException {
+		long size = message.getFullContentOctets();
+		if (size > maxContentSize || size > maxMemorySize) {
+			return null;
+		}
+		ByteBuffer buffer = read(message, (int) size);
+		if (buffer == null) {
+			return null;
+		}
+		CachedContent content = new CachedContent(buffer, (int) (size - message.getBodyOctets()));
+
+		Key key = new Key(mailbox, message.getUid());
+		List<Key> evictedKeys = new ArrayList<Key>();
+		List<CachedContent> evictedContents = new ArrayList<CachedContent>();
+		synchronized (this) {
+			CachedContent previous = memory.put(key, content);
+			if (previous != null) {
+				memorySize -= previous.getSize();
+			}
+			memorySize += content.getSize();
+			removeFromDisk(key);
+
+			Iterator<Map.Entry<Key, CachedContent>> eldest = memory.entrySet().iterator();
+			while (memorySize > maxMemorySize && eldest.hasNext()) {
+				Map.Entry<Key, CachedContent> entry = eldest.next();
+				eldest.remove();
+				memorySize -= entry.getValue().getSize();
+				evictedKeys.add(entry.getKey());
+				evictedContents.add(entry.getValue());
+			}
+		}
+		for (int i = 0; i < evictedKeys.size(); i++) {
+			spill(evictedKeys.get(i), evictedContents.get(i));
+		}
+		return content;
+	}
+
+	@Override
+	public synchronized void invalidate(Mailbox<Id> mailbox, long uid) {
+		Key key = new Key(mailbox, uid);
+		CachedContent content = memory.remove(key);
+		if (content != null) {
+			memorySize -= content.getSize();
+		}
+		removeFromDisk(key);
+	}
+
+	@Override
+	public synchronized void clear() {
+		memory.clear();
+		memorySize = 0;
+		for (DiskEntry entry : disk.values()) {
+			entry.file.delete();
+		}
+		disk.clear();
+		diskSize = 0;
+	}
+
+	/**
+	 * Write the evicted content to the directory. This is done without holding the lock, the content
+	 * is not found in the meantime.
+	 */
+	private void spill(Key key, CachedContent content) {
+		if (directory == null || content.getSize() > maxDiskSize) {
+			synchronized (this) {
+				evictions++;
+			}
+			return;
+		}
+		File file;
+		try {
+			file = write(content);
+		} catch (IOException e) {
+			synchronized (this) {
+				evictions++;
+			}
+			return;
+		}
+		synchronized (this) {
+			if (memory.containsKey(key)) {
+				// cached again meanwhile
+				file.delete();
+				return;
+			}
+			removeFromDisk(key);
+			disk.put(key, new DiskEntry(file, content.getBodyStartOctet(), content.getSize()));
+			diskSize += content.getSize();
+
+			Iterator<DiskEntry> eldest = disk.values().iterator();
+			while (diskSize > maxDiskSize && eldest.hasNext()) {
+				DiskEntry entry = eldest.next();
+				eldest.remove();
+				diskSize -= entry.size;
+				entry.file.delete();
+				evictions++;
+			}
+		}
+	}
+
+	private void removeFromDisk(Key key) {
+		DiskEntry entry = disk.remove(key);
+		if (entry != null) {
+			diskSize -= entry.size;
+			// readers which mapped the file already can still read it
+			entry.file.delete();
+		}
+	}
+
+	private File write(CachedContent content) throws IOException {
+		File file = File.createTempFile(PREFIX, SUFFIX, directory);
+		FileOutputStream out = new FileOutputStream(file);
+		boolean written = false;
+		try {
+			ByteBuffer buffer = content.asByteBuffer();
+			FileChannel channel = out.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				file.delete();
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Read the full content of the message into a direct buffer
+	 * 
+	 * @return buffer, or null if the content does not have the expected size
+	 */
+	private ByteBuffer read(Message<Id> message, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+		InputStream in = message.getFullContent();
+		try {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				if (read > buffer.remaining()) {
+					return null;
+				}
+				buffer.put(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		if (buffer.hasRemaining()) {
+			return null;
+		}
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	@Override
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	@Override
+	public synchronized long getDiskHitCount() {
+		return diskHits;
+	}
+
+	@Override
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	@Override
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	@Override
+	public synchronized long getMemoryCount() {
+		return memory.size();
+	}
+
+	@Override
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	@Override
+	public synchronized long getDiskCount() {
+		return disk.size();
+	}
+
+	@Override
+	public synchronized void reset() {
+		hits = 0;
+		diskHits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	private static final class DiskEntry {
+		private final File file;
+		private final int bodyStartOctet;
+		private final int size;
+
+		private DiskEntry(File file, int bodyStartOctet, int size) {
+			this.file = file;
+			this.bodyStartOctet = bodyStartOctet;
+			this.size = size;
+		}
+
+		private CachedContent map() throws IOException {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				// the mapping stays valid after the file is closed
+				return new CachedContent(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size), bodyStartOctet);
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	private static final class Key {
+		private final Object mailboxId;
+		private final long uidValidity;
+		private final long uid;
+
+		private Key(Mailbox<?> mailbox, long uid) {
+			this.mailboxId = mailbox.getMailboxId();
+			this.uidValidity = mailbox.getUidValidity();
+			this.uid = uid;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = mailboxId.hashCode();
+			result = 31 * result + (int) (uidValidity ^ (uidValidity >>> 32));
+			return 31 * result + (int) (uid ^ (uid >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return uid == other.uid && uidValidity == other.uidValidity && mailboxId.equals(other.mailboxId);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package org.apache.james.mailbox.caching.offheap;
+
+/**
+ * JMX view of an {@link OffHeapMessageContentCache}. All sizes are in bytes.
+ */
+public interface OffHeapMessageContentCacheMBean {
+
+	long getHitCount();
+
+	/**
+	 * Return the number of hits which were answered from the disk
+	 * 
+	 * @return diskHits
+	 */
+	long getDiskHitCount();
+
+	long getMissCount();
+
+	/**
+	 * Return the number of contents which were dropped from the cache because of its size
+	 * 
+	 * @return evictions
+	 */
+	long getEvictionCount();
+
+	long getMemorySize();
+
+	long getMemoryCount();
+
+	long getDiskSize();
+
+	long getDiskCount();
+
+	/**
+	 * Reset all counts, except the sizes
+	 */
+	void reset();
+
+	/**
+	 * Remove all content from the cache
+	 */
+	void clear();
+}
@@ -0,0 +1,110 @@
+package org.apache.james.mailbox.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.mailbox.caching.guava.GuavaMailboxByPathCache;
+import org.apache.james.mailbox.caching.guava.GuavaMailboxTreeCache;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.transaction.Mapper.Transaction;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class CachingMailboxMapperTest {
+
+	private Mockery mockery = new JUnit4Mockery();
+	private MailboxMapper<Long> underlying;
+	private CachingMailboxMapper<Long> mapper;
+	private MailboxPath all = new MailboxPath("#private", "user", "%");
+	private List<Mailbox<Long>> mailboxes;
+	private Mailbox<Long> sent;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() {
+		underlying = mockery.mock(MailboxMapper.class);
+		mapper = new CachingMailboxMapper<Long>(underlying, new GuavaMailboxByPathCache<Long>(), new GuavaMailboxTreeCache<Long>());
+		mailboxes = new ArrayList<Mailbox<Long>>();
+		mailboxes.add(mailbox("INBOX", 1));
+		sent = mailbox("Sent", 2);
+	}
+
+	@Test
+	public void testSavedMailboxIsAddedAfterCommit() throws Exception {
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findMailboxWithPathLike(with(any(MailboxPath.class))); will(returnValue(mailboxes));
+			oneOf(underlying).save(sent);
+			oneOf(underlying).execute(with(any(Transaction.class))); will(runTransaction(false));
+		}});
+		assertEquals(1, mapper.findMailboxWithPathLike(all).size());
+
+		mapper.execute(new Transaction<Void>() {
+			public Void run() throws MailboxException {
+				mapper.save(sent);
+				// not committed yet
+				assertEquals(1, mapper.findMailboxWithPathLike(all).size());
+				return null;
+			}
+		});
+		assertEquals(2, mapper.findMailboxWithPathLike(all).size());
+	}
+
+	@Test
+	public void testTreeIsDroppedOnRollback() throws Exception {
+		mockery.checking(new Expectations() {{
+			exactly(2).of(underlying).findMailboxWithPathLike(with(any(MailboxPath.class))); will(returnValue(mailboxes));
+			oneOf(underlying).save(sent);
+			oneOf(underlying).execute(with(any(Transaction.class))); will(runTransaction(true));
+		}});
+		assertEquals(1, mapper.findMailboxWithPathLike(all).size());
+
+		try {
+			mapper.execute(new Transaction<Void>() {
+				public Void run() throws MailboxException {
+					mapper.save(sent);
+					return null;
+				}
+			});
+			fail("Commit must fail");
+		} catch (MailboxException e) {
+			// expected
+		}
+		assertEquals(1, mapper.findMailboxWithPathLike(all).size());
+	}
+
+	private static Mailbox<Long> mailbox(String name, long id) {
+		SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", name), 1);
+		mailbox.setMailboxId(id);
+		return mailbox;
+	}
+
+	/**
+	 * Run the transaction like a TransactionalMapper, failing in the commit if requested
+	 */
+	private static CustomAction runTransaction(final boolean failCommit) {
+		return new CustomAction("run transaction") {
+			public Object invoke(Invocation invocation) throws Throwable {
+				Object value = ((Transaction<?>) invocation.getParameter(0)).run();
+				if (failCommit) {
+					throw new MailboxException("Commit failed");
+				}
+				return value;
+			}
+		};
+	}
+}
@@ -0,0 +1,249 @@
+package org.apache.james.mailbox.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.caching.guava.GuavaMailboxMetadataCache;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.transaction.Mapper.Transaction;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class CachingMessageMapperTest {
+
+	private Mockery mockery = new JUnit4Mockery();
+	private MessageMapper<Long> underlying;
+	private Message<Long> message;
+	private CachingMessageMapper<Long> mapper;
+	private Mailbox<Long> mailbox;
+	private MessageMetaData added;
+	private MessageContentCache<Long> contentCache;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() {
+		underlying = mockery.mock(MessageMapper.class);
+		message = mockery.mock(Message.class);
+		contentCache = mockery.mock(MessageContentCache.class);
+		mapper = new CachingMessageMapper<Long>(underlying, new GuavaMailboxMetadataCache<Long>());
+		SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "INBOX"), 1);
+		mailbox.setMailboxId(1L);
+		this.mailbox = mailbox;
+		added = new SimpleMessageMetaData(2, 2, new Flags(), 10, new Date());
+	}
+
+	@Test
+	public void testChangeIsAppliedAfterCommit() throws Exception {
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).countMessagesInMailbox(mailbox); will(returnValue(1L));
+			oneOf(underlying).add(mailbox, message); will(returnValue(added));
+			oneOf(underlying).execute(with(any(Transaction.class))); will(runTransaction(false));
+		}});
+		assertEquals(1, mapper.countMessagesInMailbox(mailbox));
+
+		mapper.execute(new Transaction<Void>() {
+			public Void run() throws MailboxException {
+				mapper.add(mailbox, message);
+				// not committed yet
+				assertEquals(1, mapper.countMessagesInMailbox(mailbox));
+				return null;
+			}
+		});
+		assertEquals(2, mapper.countMessagesInMailbox(mailbox));
+	}
+
+	@Test
+	public void testCacheIsDroppedOnRollback() throws Exception {
+		mockery.checking(new Expectations() {{
+			exactly(2).of(underlying).countMessagesInMailbox(mailbox); will(returnValue(1L));
+			oneOf(underlying).add(mailbox, message); will(returnValue(added));
+			oneOf(underlying).execute(with(any(Transaction.class))); will(runTransaction(true));
+		}});
+		assertEquals(1, mapper.countMessagesInMailbox(mailbox));
+
+		try {
+			mapper.execute(new Transaction<Void>() {
+				public Void run() throws MailboxException {
+					mapper.add(mailbox, message);
+					return null;
+				}
+			});
+			fail("Commit must fail");
+		} catch (MailboxException e) {
+			// expected
+		}
+		assertEquals(1, mapper.countMessagesInMailbox(mailbox));
+	}
+
+	@Test
+	public void testHeadersAreFetchedWithoutMetadata() throws Exception {
+		mapper = new CachingMessageMapper<Long>(underlying, new GuavaMailboxMetadataCache<Long>(), contentCache);
+		final MessageRange set = MessageRange.all();
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findInMailbox(mailbox, set, FetchType.Headers, -1); will(returnIterator(message));
+		}});
+
+		Iterator<Message<Long>> it = mapper.findInMailbox(mailbox, set, FetchType.Headers, -1);
+		assertSame(message, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testUncachedMessagesAreFetchedWithRequestedRange() throws Exception {
+		mapper = new CachingMessageMapper<Long>(underlying, new GuavaMailboxMetadataCache<Long>(), contentCache);
+		final MessageRange set = MessageRange.from(1);
+		final Message<Long> metadata1 = message("metadata1", 1);
+		final Message<Long> metadata2 = message("metadata2", 2);
+		final Message<Long> full1 = message("full1", 1);
+		final Message<Long> full2 = message("full2", 2);
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findInMailbox(mailbox, set, FetchType.Metadata, 10); will(returnIterator(metadata1, metadata2));
+			allowing(contentCache).get(mailbox, 1L); will(returnValue(null));
+			allowing(contentCache).get(mailbox, 2L); will(returnValue(null));
+			oneOf(underlying).findInMailbox(mailbox, set, FetchType.Full, 10); will(returnIterator(full1, full2));
+			allowing(contentCache).put(with(same(mailbox)), with(any(Message.class))); will(returnValue(null));
+		}});
+
+		Iterator<Message<Long>> it = mapper.findInMailbox(mailbox, set, FetchType.Full, 10);
+		assertSame(full1, it.next());
+		assertSame(full2, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testCachedContentIsMergedWithFetchedMessages() throws Exception {
+		mapper = new CachingMessageMapper<Long>(underlying, new GuavaMailboxMetadataCache<Long>(), contentCache);
+		final MessageRange set = MessageRange.range(1, 3);
+		final Message<Long> metadata1 = message("metadata1", 1);
+		final Message<Long> metadata2 = message("metadata2", 2);
+		final Message<Long> metadata3 = message("metadata3", 3);
+		final Message<Long> body1 = message("body1", 1);
+		final Message<Long> body3 = message("body3", 3);
+		final CachedContent content = new CachedContent(ByteBuffer.wrap("Subject: test\r\n\r\nbody".getBytes()), 17);
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findInMailbox(mailbox, set, FetchType.Metadata, -1); will(returnIterator(metadata1, metadata2, metadata3));
+			allowing(contentCache).get(mailbox, 1L); will(returnValue(null));
+			allowing(contentCache).get(mailbox, 2L); will(returnValue(content));
+			allowing(contentCache).get(mailbox, 3L); will(returnValue(null));
+			// only the missing messages are fetched, in one range each
+			oneOf(underlying).findInMailbox(with(same(mailbox)), with(any(MessageRange.class)), with(equal(FetchType.Body)), with(equal(-1)));
+			will(returnIterator(body1));
+			oneOf(underlying).findInMailbox(with(same(mailbox)), with(any(MessageRange.class)), with(equal(FetchType.Body)), with(equal(-1)));
+			will(returnIterator(body3));
+			allowing(contentCache).put(with(same(mailbox)), with(any(Message.class))); will(returnValue(null));
+		}});
+
+		Iterator<Message<Long>> it = mapper.findInMailbox(mailbox, set, FetchType.Body, -1);
+		assertSame(body1, it.next());
+		Message<Long> cached = it.next();
+		assertTrue(cached instanceof CachedContentMessage);
+		assertEquals(2, cached.getUid());
+		assertSame(body3, it.next());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testUnseenAndRecentAreAnsweredFromSnapshot() throws Exception {
+		final List<Message<Long>> messages = new ArrayList<Message<Long>>();
+		messages.add(metadata("message1", 1, new Flags(Flags.Flag.SEEN)));
+		messages.add(metadata("message2", 2, new Flags(Flags.Flag.RECENT)));
+		messages.add(metadata("message3", 3, new Flags()));
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findInMailbox(with(same(mailbox)), with(any(MessageRange.class)), with(equal(FetchType.Metadata)), with(equal(-1)));
+			will(returnIterator(messages));
+		}});
+
+		assertEquals(2, mapper.countUnseenMessagesInMailbox(mailbox));
+		assertEquals(Long.valueOf(2), mapper.findFirstUnseenMessageUid(mailbox));
+		assertEquals(Arrays.asList(2L), mapper.findRecentMessageUidsInMailbox(mailbox));
+		assertEquals(3, mapper.countMessagesInMailbox(mailbox));
+	}
+
+	@Test
+	public void testSnapshotLargerThanMaximumWeightIsEvicted() throws Exception {
+		mapper = new CachingMessageMapper<Long>(underlying, new GuavaMailboxMetadataCache<Long>("maximumWeight=1000"));
+		final List<Message<Long>> messages = new ArrayList<Message<Long>>();
+		for (int uid = 1; uid <= 100; uid++) {
+			messages.add(metadata("message" + uid, uid));
+		}
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).findInMailbox(with(same(mailbox)), with(any(MessageRange.class)), with(equal(FetchType.Metadata)), with(equal(-1)));
+			will(returnIterator(messages));
+			oneOf(underlying).countMessagesInMailbox(mailbox); will(returnValue(100L));
+		}});
+
+		assertEquals(100, mapper.countUnseenMessagesInMailbox(mailbox));
+		// answered by the underlying MessageMapper, as the snapshot was evicted
+		assertEquals(100, mapper.countMessagesInMailbox(mailbox));
+	}
+
+	private Message<Long> metadata(String name, long uid) {
+		return metadata(name, uid, new Flags());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Message<Long> metadata(String name, final long uid, final Flags flags) {
+		final Message<Long> message = mockery.mock(Message.class, name);
+		mockery.checking(new Expectations() {{
+			allowing(message).getUid(); will(returnValue(uid));
+			allowing(message).createFlags(); will(returnValue(flags));
+			allowing(message).getModSeq(); will(returnValue(uid));
+			allowing(message).getFullContentOctets(); will(returnValue(100L));
+			allowing(message).getInternalDate(); will(returnValue(new Date()));
+		}});
+		return message;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Message<Long> message(String name, final long uid) {
+		final Message<Long> message = mockery.mock(Message.class, name);
+		mockery.checking(new Expectations() {{
+			allowing(message).getUid(); will(returnValue(uid));
+		}});
+		return message;
+	}
+
+	/**
+	 * Run the transaction like a TransactionalMapper, failing in the commit if requested
+	 */
+	private static CustomAction runTransaction(final boolean failCommit) {
+		return new CustomAction("run transaction") {
+			public Object invoke(Invocation invocation) throws Throwable {
+				Object value = ((Transaction<?>) invocation.getParameter(0)).run();
+				if (failCommit) {
+					throw new MailboxException("Commit failed");
+				}
+				return value;
+			}
+		};
+	}
+}
@@ -0,0 +1,104 @@
+package org.apache.james.mailbox.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MailboxMetadataTest {
+
+	private MailboxMetadata metadata;
+
+	@Before
+	public void setUp() {
+		metadata = new MailboxMetadata();
+		load(Counter.MessageCount, 2L);
+		load(Counter.UnseenCount, 0L);
+		load(Counter.FirstUnseen, null);
+		load(Counter.LastUid, 2L);
+		load(Counter.HighestModSeq, 5L);
+	}
+
+	private void load(Counter counter, Long value) {
+		metadata.loaded(counter, value, metadata.beginLoad());
+	}
+
+	@Test
+	public void testAddedUpdatesAllCounters() {
+		metadata.beginUpdate();
+		metadata.added(Arrays.<MessageMetaData>asList(message(3, 6, false), message(4, 7, true)));
+		metadata.endUpdate(true);
+
+		assertEquals(Long.valueOf(4), metadata.get(Counter.MessageCount));
+		assertEquals(Long.valueOf(1), metadata.get(Counter.UnseenCount));
+		assertEquals(Long.valueOf(3), metadata.get(Counter.FirstUnseen));
+		assertEquals(Long.valueOf(4), metadata.get(Counter.LastUid));
+		assertEquals(Long.valueOf(7), metadata.get(Counter.HighestModSeq));
+	}
+
+	@Test
+	public void testFlagsUpdated() {
+		metadata.flagsUpdated(Collections.singletonList(new UpdatedFlags(2, 8, new Flags(Flag.SEEN), new Flags())));
+		assertEquals(Long.valueOf(1), metadata.get(Counter.UnseenCount));
+		assertEquals(Long.valueOf(2), metadata.get(Counter.FirstUnseen));
+		assertEquals(Long.valueOf(8), metadata.get(Counter.HighestModSeq));
+
+		// the first unseen message is seen now, so it needs to be loaded again
+		metadata.flagsUpdated(Collections.singletonList(new UpdatedFlags(2, 9, new Flags(), new Flags(Flag.SEEN))));
+		assertEquals(Long.valueOf(0), metadata.get(Counter.UnseenCount));
+		assertFalse(metadata.contains(Counter.FirstUnseen));
+	}
+
+	@Test
+	public void testExpunged() {
+		metadata.expunged(Collections.<MessageMetaData>singletonList(message(1, 1, true)));
+		assertEquals(Long.valueOf(1), metadata.get(Counter.MessageCount));
+		assertEquals(Long.valueOf(2), metadata.get(Counter.LastUid));
+		assertFalse(metadata.contains(Counter.HighestModSeq));
+	}
+
+	@Test
+	public void testValueLoadedDuringUpdateIsNotCached() {
+		metadata.clear();
+		metadata.beginUpdate();
+		long version = metadata.beginLoad();
+		metadata.loaded(Counter.MessageCount, 3L, version);
+		metadata.endUpdate(true);
+		assertFalse(metadata.contains(Counter.MessageCount));
+
+		version = metadata.beginLoad();
+		metadata.beginUpdate();
+		metadata.endUpdate(true);
+		metadata.loaded(Counter.MessageCount, 3L, version);
+		assertFalse(metadata.contains(Counter.MessageCount));
+	}
+
+	@Test
+	public void testFailedUpdateDropsValues() {
+		metadata.beginUpdate();
+		metadata.endUpdate(false);
+		assertFalse(metadata.contains(Counter.MessageCount));
+		assertNull(metadata.get(Counter.LastUid));
+	}
+
+	private MessageMetaData message(long uid, long modSeq, boolean seen) {
+		Flags flags = new Flags();
+		if (seen) {
+			flags.add(Flag.SEEN);
+		}
+		return new SimpleMessageMetaData(uid, modSeq, flags, 10, new Date());
+	}
+}
@@ -0,0 +1,136 @@
+package org.apache.james.mailbox.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MailboxSnapshotTest {
+
+	private MailboxSnapshot snapshot;
+
+	@Before
+	public void setUp() {
+		snapshot = new MailboxSnapshot(2);
+		snapshot.add(1, new Flags(Flag.SEEN), 1, 100, new Date());
+		snapshot.add(5, new Flags(Flag.RECENT), 2, 200, new Date());
+		snapshot.add(3, flags(Flag.SEEN, "work"), 3, 300, new Date());
+		snapshot.add(8, flags(Flag.RECENT, "work"), 4, 400, new Date());
+	}
+
+	@Test
+	public void testUidsAreMappedToMsns() {
+		assertEquals(4, snapshot.size());
+		assertEquals(2, snapshot.getMsn(3));
+		assertEquals(5, snapshot.getUid(3));
+		assertEquals(-1, snapshot.getMsn(4));
+		assertEquals(-1, snapshot.getUid(5));
+
+		assertTrue(snapshot.remove(3));
+		assertEquals(2, snapshot.getMsn(5));
+		assertEquals(8, snapshot.getUid(3));
+		assertFalse(snapshot.remove(3));
+	}
+
+	@Test
+	public void testFlagsAreAnswered() {
+		assertEquals(2, snapshot.countUnseen());
+		assertEquals(Long.valueOf(5), snapshot.findFirstUnseen());
+		assertEquals(Arrays.asList(5L, 8L), snapshot.findRecent());
+		assertEquals(Arrays.asList(3L, 8L), snapshot.findUids(new Flags("work"), null));
+		assertEquals(Arrays.asList(8L), snapshot.findUids(new Flags("work"), new Flags(Flag.SEEN)));
+		assertEquals(Collections.<Long>emptyList(), snapshot.findUids(new Flags("unknown"), null));
+		assertEquals(flags(Flag.SEEN, "work"), snapshot.getFlags(3));
+
+		MessageMetaData data = snapshot.getMetaData(8);
+		assertEquals(4, data.getModSeq());
+		assertEquals(400, data.getSize());
+	}
+
+	@Test
+	public void testRemoveAllCompactsRemainingMessages() {
+		assertEquals(2, snapshot.removeAll(Arrays.asList(5L, 1L, 4L)));
+		assertEquals(2, snapshot.size());
+		assertEquals(3, snapshot.getUid(1));
+		assertEquals(8, snapshot.getUid(2));
+		assertEquals(4, snapshot.getMetaData(8).getModSeq());
+		assertEquals(Arrays.asList(8L), snapshot.findRecent());
+	}
+
+	@Test
+	public void testUpdateChangesFlagsAndModSeq() {
+		assertTrue(snapshot.update(5, new Flags(Flag.SEEN), 9));
+		assertEquals(Long.valueOf(8), snapshot.findFirstUnseen());
+		assertEquals(9, snapshot.getMetaData(5).getModSeq());
+		assertFalse(snapshot.update(4, new Flags(Flag.SEEN), 10));
+	}
+
+	@Test
+	public void testTooManyUserFlagsAreRejected() {
+		Flags flags = new Flags();
+		for (int i = 0; i < 63; i++) {
+			flags.add("flag" + i);
+		}
+		assertTrue(snapshot.add(10, flags, 5, 10, new Date()));
+		assertFalse(snapshot.add(11, new Flags("one-too-many"), 6, 10, new Date()));
+		assertTrue(snapshot.update(10, flags, 7));
+	}
+
+	@Test
+	public void testMetadataAnswersCountersFromSnapshot() {
+		MailboxMetadata metadata = new MailboxMetadata();
+		metadata.loaded(snapshot, metadata.beginLoad());
+		assertEquals(Long.valueOf(4), metadata.get(Counter.MessageCount));
+		assertEquals(Long.valueOf(2), metadata.get(Counter.RecentCount));
+		assertFalse(metadata.contains(Counter.LastUid));
+
+		metadata.beginUpdate();
+		metadata.added(Collections.<MessageMetaData>singletonList(new SimpleMessageMetaData(9, 5, new Flags(), 10, new Date())));
+		metadata.flagsUpdated(Collections.singletonList(new UpdatedFlags(5, 6, new Flags(Flag.RECENT), new Flags(Flag.SEEN))));
+		metadata.endUpdate(true);
+		assertEquals(Long.valueOf(5), metadata.get(Counter.MessageCount));
+		assertEquals(Long.valueOf(8), metadata.get(Counter.FirstUnseen));
+		assertEquals(Long.valueOf(2), metadata.get(Counter.UnseenCount));
+
+		metadata.clear();
+		assertNull(metadata.getSnapshot());
+		assertFalse(metadata.contains(Counter.MessageCount));
+	}
+
+	@Test
+	public void testWeightOnlyChangesWithSnapshotSize() {
+		MailboxMetadata metadata = new MailboxMetadata();
+		metadata.loaded(snapshot, metadata.beginLoad());
+		assertTrue(metadata.isWeightChanged());
+		metadata.weigh();
+
+		metadata.flagsUpdated(Collections.singletonList(new UpdatedFlags(5, 6, new Flags(Flag.RECENT), new Flags(Flag.SEEN))));
+		assertFalse(metadata.isWeightChanged());
+
+		// the snapshot is full, so it grows
+		metadata.added(Collections.<MessageMetaData>singletonList(new SimpleMessageMetaData(9, 7, new Flags(), 10, new Date())));
+		assertTrue(metadata.isWeightChanged());
+		metadata.weigh();
+		assertFalse(metadata.isWeightChanged());
+	}
+
+	private Flags flags(Flag flag, String userFlag) {
+		Flags flags = new Flags(flag);
+		flags.add(userFlag);
+		return flags;
+	}
+}
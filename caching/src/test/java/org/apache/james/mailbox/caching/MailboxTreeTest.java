@@ -0,0 +1,94 @@
+package org.apache.james.mailbox.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MailboxTreeTest {
+
+	private MailboxTree<Long> tree;
+	private long nextId;
+
+	@Before
+	public void setUp() {
+		tree = new MailboxTree<Long>('.');
+		for (String name : Arrays.asList("INBOX", "INBOX.work", "INBOX.work.2014", "INBOX.private", "Sent", "Archive.2013.Q1")) {
+			tree.put(mailbox(name));
+		}
+	}
+
+	@Test
+	public void testFindLike() {
+		assertEquals(Arrays.asList("INBOX"), names(tree.findLike("INBOX")));
+		assertEquals(Arrays.asList("INBOX.private", "INBOX.work", "INBOX.work.2014"), names(tree.findLike("INBOX.%")));
+		assertEquals(Arrays.asList("INBOX.work", "INBOX.work.2014"), names(tree.findLike("INBOX.w%")));
+		assertEquals(6, tree.findLike("%").size());
+		assertEquals(Arrays.asList("INBOX.work.2014"), names(tree.findLike("%2014")));
+		assertTrue(tree.findLike("Archive").isEmpty());
+		assertTrue(tree.findLike("Drafts.%").isEmpty());
+	}
+
+	@Test
+	public void testHasChildren() {
+		assertTrue(tree.hasChildren("INBOX"));
+		assertTrue(tree.hasChildren("INBOX.work"));
+		assertFalse(tree.hasChildren("INBOX.private"));
+		assertFalse(tree.hasChildren("Sent"));
+		// there is no mailbox named Archive, but one below it
+		assertTrue(tree.hasChildren("Archive"));
+	}
+
+	@Test
+	public void testRemovePrunesEmptyNodes() {
+		tree.remove("Archive.2013.Q1");
+		assertFalse(tree.hasChildren("Archive"));
+		assertEquals(5, tree.size());
+
+		tree.remove("INBOX.work");
+		assertTrue(tree.hasChildren("INBOX.work"));
+		assertEquals(4, tree.size());
+	}
+
+	@Test
+	public void testPutMovesRenamedMailbox() {
+		Mailbox<Long> sent = tree.findLike("Sent").get(0);
+		sent.setName("INBOX.Sent");
+		tree.put(sent);
+		assertTrue(tree.findLike("Sent").isEmpty());
+		assertEquals(Arrays.asList("INBOX.Sent"), names(tree.findLike("INBOX.S%")));
+		assertEquals(6, tree.size());
+	}
+
+	@Test
+	public void testRegexCharactersAreLiteral() {
+		tree.put(mailbox("a+b.(c)"));
+		assertEquals(Arrays.asList("a+b.(c)"), names(tree.findLike("a+b.%")));
+		assertTrue(tree.findLike("aab.%").isEmpty());
+	}
+
+	private SimpleMailbox<Long> mailbox(String name) {
+		SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", name), 1);
+		mailbox.setMailboxId(++nextId);
+		return mailbox;
+	}
+
+	private List<String> names(List<Mailbox<Long>> mailboxes) {
+		List<String> names = new ArrayList<String>();
+		for (Mailbox<Long> mailbox : mailboxes) {
+			names.add(mailbox.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
+}
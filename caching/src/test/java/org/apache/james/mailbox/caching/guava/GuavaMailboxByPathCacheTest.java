@@ -0,0 +1,94 @@
+package org.apache.james.mailbox.caching.guava;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class GuavaMailboxByPathCacheTest {
+
+	private Mockery mockery = new JUnit4Mockery();
+	private MailboxMapper<Long> mapper;
+	private GuavaMailboxByPathCache<Long> cache;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() {
+		mapper = mockery.mock(MailboxMapper.class);
+		cache = new GuavaMailboxByPathCache<Long>();
+	}
+
+	@Test
+	public void testFoundMailboxIsCachedUnderCopyOfPath() throws Exception {
+		final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+		final Mailbox<Long> mailbox = new SimpleMailbox<Long>(path, 1);
+		mockery.checking(new Expectations() {{
+			oneOf(mapper).findMailboxByPath(path); will(returnValue(mailbox));
+		}});
+
+		assertSame(mailbox, cache.findMailboxByPath(path, mapper));
+		path.setName("Sent");
+		assertSame(mailbox, cache.findMailboxByPath(new MailboxPath("#private", "user", "INBOX"), mapper));
+
+		assertEquals(1, cache.getMetrics().getHitCount());
+		assertEquals(1, cache.getMetrics().getMissCount());
+		assertEquals(1, cache.getMetrics().getLoadCount());
+	}
+
+	@Test
+	public void testNotFoundIsCachedUntilInvalidated() throws Exception {
+		cache = new GuavaMailboxByPathCache<Long>(AbstractGuavaCache.DEFAULT_SPEC, GuavaMailboxByPathCache.DEFAULT_NOT_FOUND_SPEC);
+		final MailboxPath path = new MailboxPath("#private", "user", "INBOX.missing");
+		final Mailbox<Long> mailbox = new SimpleMailbox<Long>(path, 1);
+		mockery.checking(new Expectations() {{
+			oneOf(mapper).findMailboxByPath(path); will(throwException(new MailboxNotFoundException(path)));
+			oneOf(mapper).findMailboxByPath(path); will(returnValue(mailbox));
+		}});
+
+		assertNotFound(path);
+		assertNotFound(path);
+		assertEquals(1, cache.getMetrics().getNegativeHitCount());
+		assertEquals(1, cache.getMetrics().getLoadFailureCount());
+
+		cache.invalidate(mailbox);
+		assertSame(mailbox, cache.findMailboxByPath(path, mapper));
+	}
+
+	@Test
+	public void testNotFoundIsNotCachedByDefault() throws Exception {
+		final MailboxPath path = new MailboxPath("#private", "user", "INBOX.missing");
+		mockery.checking(new Expectations() {{
+			exactly(2).of(mapper).findMailboxByPath(path); will(throwException(new MailboxNotFoundException(path)));
+		}});
+
+		assertNotFound(path);
+		assertNotFound(path);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRefreshAfterWriteIsRejected() {
+		new GuavaMailboxByPathCache<Long>("maximumSize=10,refreshAfterWrite=1m", null);
+	}
+
+	private void assertNotFound(MailboxPath path) throws Exception {
+		try {
+			cache.findMailboxByPath(path, mapper);
+			fail();
+		} catch (MailboxNotFoundException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.apache.james.mailbox.caching.guava;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Date;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class GuavaMailboxMetadataCacheTest {
+
+	private Mockery mockery = new JUnit4Mockery();
+	private MessageMapper<Long> underlying;
+	private GuavaMailboxMetadataCache<Long> cache;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setUp() {
+		underlying = mockery.mock(MessageMapper.class);
+		cache = new GuavaMailboxMetadataCache<Long>("maximumSize=1,concurrencyLevel=1");
+	}
+
+	@Test
+	public void testEntryIsNotLostByEvictionDuringUpdate() throws Exception {
+		final Mailbox<Long> inbox = mailbox(1L, "INBOX");
+		final Mailbox<Long> sent = mailbox(2L, "Sent");
+		mockery.checking(new Expectations() {{
+			oneOf(underlying).countMessagesInMailbox(inbox); will(returnValue(5L));
+			oneOf(underlying).countMessagesInMailbox(sent); will(returnValue(1L));
+		}});
+
+		assertEquals(5, cache.countMessagesInMailbox(inbox, underlying));
+		cache.beginUpdate(inbox);
+		// evicts the entry of the inbox
+		assertEquals(1, cache.countMessagesInMailbox(sent, underlying));
+		cache.added(inbox, Collections.<MessageMetaData>singletonList(new SimpleMessageMetaData(6, 6, new Flags(), 10, new Date())));
+		cache.endUpdate(inbox, true);
+
+		assertEquals(6, cache.countMessagesInMailbox(inbox, underlying));
+	}
+
+	private Mailbox<Long> mailbox(long id, String name) {
+		SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", name), 1);
+		mailbox.setMailboxId(id);
+		return mailbox;
+	}
+}
@@ -0,0 +1,123 @@
+package org.apache.james.mailbox.caching.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.caching.CachedContent;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffHeapMessageContentCacheTest {
+
+	private static final String HEADER = "Subject: test\r\n\r\n";
+	private static final String BODY = "body of the message";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SimpleMailbox<Long> mailbox;
+
+	@Before
+	public void setUp() {
+		mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "INBOX"), 1);
+		mailbox.setMailboxId(1L);
+	}
+
+	@Test
+	public void testContentIsServedAsSlices() throws IOException {
+		OffHeapMessageContentCache<Long> cache = new OffHeapMessageContentCache<Long>();
+		assertNull(cache.get(mailbox, 1));
+		cache.put(mailbox, message(1));
+
+		CachedContent content = cache.get(mailbox, 1);
+		assertContent(content);
+		SharedInputStream body = content.getBodyContent();
+		assertEquals("of", IOUtils.toString(body.newStream(5, 7)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedContentIsEvicted() throws IOException {
+		int size = HEADER.length() + BODY.length();
+		OffHeapMessageContentCache<Long> cache = new OffHeapMessageContentCache<Long>(2 * size, size);
+		cache.put(mailbox, message(1));
+		cache.put(mailbox, message(2));
+		cache.get(mailbox, 1);
+		cache.put(mailbox, message(3));
+
+		assertNotNull(cache.get(mailbox, 1));
+		assertNull(cache.get(mailbox, 2));
+		assertNotNull(cache.get(mailbox, 3));
+		assertEquals(2 * size, cache.getMemorySize());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testEvictedContentIsSpilledToDisk() throws IOException {
+		int size = HEADER.length() + BODY.length();
+		File directory = folder.newFolder("content");
+		OffHeapMessageContentCache<Long> cache = new OffHeapMessageContentCache<Long>(size, size, directory, size);
+		cache.put(mailbox, message(1));
+		cache.put(mailbox, message(2));
+		assertEquals(1, cache.getDiskCount());
+		assertEquals(1, directory.list().length);
+
+		assertContent(cache.get(mailbox, 1));
+		assertEquals(1, cache.getDiskHitCount());
+
+		cache.put(mailbox, message(3));
+		assertNull(cache.get(mailbox, 1));
+		assertEquals(1, directory.list().length);
+
+		cache.invalidate(mailbox, 2);
+		assertEquals(0, directory.list().length);
+	}
+
+	@Test
+	public void testBigContentIsNotCached() throws IOException {
+		OffHeapMessageContentCache<Long> cache = new OffHeapMessageContentCache<Long>(1024, 8);
+		assertNull(cache.put(mailbox, message(1)));
+		assertNull(cache.get(mailbox, 1));
+	}
+
+	@Test
+	public void testOtherUidValidityIsNotFound() throws IOException {
+		OffHeapMessageContentCache<Long> cache = new OffHeapMessageContentCache<Long>();
+		cache.put(mailbox, message(1));
+		SimpleMailbox<Long> recreated = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "INBOX"), 2);
+		recreated.setMailboxId(1L);
+		assertNull(cache.get(recreated, 1));
+	}
+
+	private void assertContent(CachedContent content) throws IOException {
+		assertEquals(HEADER + BODY, IOUtils.toString((InputStream) content.getFullContent()));
+		assertEquals(HEADER, IOUtils.toString((InputStream) content.getHeaderContent()));
+		assertEquals(BODY, IOUtils.toString((InputStream) content.getBodyContent()));
+	}
+
+	private SimpleMessage<Long> message(long uid) {
+		byte[] content = (HEADER + BODY).getBytes();
+		SimpleMessage<Long> message = new SimpleMessage<Long>(new Date(), content.length, HEADER.length(),
+				new SharedByteArrayInputStream(content), new Flags(), new PropertyBuilder(), mailbox.getMailboxId());
+		message.setUid(uid);
+		return message;
+	}
+}
@@ -0,0 +1,116 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMAP_UID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+/**
+ * Content of a message which was fetched without its content. The header and body content is only read
+ * from Cassandra when the content is accessed the first time. Streams returned by {@link #newStream(long, long)}
+ * are lazy as well and share the content read by this stream. If the message was expunged meanwhile, reading
+ * fails with an {@link IOException}.
+ */
+class CassandraLazyContent extends InputStream implements SharedInputStream {
+
+    private final Session session;
+    private final UUID mailboxId;
+    private final long uid;
+    private final CassandraLazyContent parent;
+    private final long start;
+    private final long end;
+    private SharedByteArrayInputStream content;
+
+    CassandraLazyContent(Session session, UUID mailboxId, long uid) {
+        this(session, mailboxId, uid, null, 0, -1);
+    }
+
+    private CassandraLazyContent(Session session, UUID mailboxId, long uid, CassandraLazyContent parent, long start, long end) {
+        this.session = session;
+        this.mailboxId = mailboxId;
+        this.uid = uid;
+        this.parent = parent;
+        this.start = start;
+        this.end = end;
+    }
+
+    private synchronized SharedByteArrayInputStream content() throws IOException {
+        if (content == null) {
+            if (parent != null) {
+                content = (SharedByteArrayInputStream) parent.content().newStream(start, end);
+            } else {
+                Row row = session.execute(select(HEADER_CONTENT, BODY_CONTENT).from(TABLE_NAME).where(eq(MAILBOX_ID, mailboxId)).and(eq(IMAP_UID, uid))).one();
+                if (row == null) {
+                    throw new IOException("Message " + uid + " of mailbox " + mailboxId + " does not exist anymore");
+                }
+                content = new SharedByteArrayInputStream(CassandraMessageMapper.getFullContent(row));
+            }
+        }
+        return content;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return content().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return content().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return content().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return content().available();
+    }
+
+    /**
+     * Nothing was read before the content is loaded, so the position is 0 then
+     */
+    @Override
+    public synchronized long getPosition() {
+        return content == null ? 0 : content.getPosition();
+    }
+
+    @Override
+    public InputStream newStream(long start, long end) {
+        return new CassandraLazyContent(session, mailboxId, uid, this, start, end);
+    }
+}
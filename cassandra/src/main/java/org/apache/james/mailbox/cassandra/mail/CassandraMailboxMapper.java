@@ -37,6 +37,7 @@ import java.util.UUID;
 
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
@@ -84,8 +85,10 @@ public class CassandraMailboxMapper implements MailboxMapper<UUID> {
 
     @Override
     public List<Mailbox<UUID>> findMailboxWithPathLike(MailboxPath path) throws MailboxException {
-        final String regexWithUser = ".*" + path.getNamespace() + ".*" + path.getUser() + ".*" + path.getName() + ".*";
-        final String regexWithoutUser = ".*" + path.getNamespace() + ".*null.*" + path.getName() + ".*";
+        // the name may contain SQL wildcards, as used by StoreMailboxManager
+        final String name = path.getName().replace(String.valueOf(MailboxConstants.SQL_WILDCARD_CHAR), ".*");
+        final String regexWithUser = ".*" + path.getNamespace() + ".*" + path.getUser() + ".*" + name + ".*";
+        final String regexWithoutUser = ".*" + path.getNamespace() + ".*null.*" + name + ".*";
         Builder<Mailbox<UUID>> result = ImmutableList.<Mailbox<UUID>> builder();
         for (Row row : session.execute(select(FIELDS).from(TABLE_NAME))) {
             if (row.getString(PATH).matches(regexWithUser) || row.getString(PATH).matches(regexWithoutUser)) {
@@ -23,11 +23,12 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.asc;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.decr;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.lt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
@@ -39,6 +40,7 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.IMA
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MAILBOX_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MEDIA_TYPE;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.METADATA_FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.MOD_SEQ;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.SUB_TYPE;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TABLE_NAME;
@@ -55,13 +57,16 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.Fla
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
+import javax.mail.internet.SharedInputStream;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.apache.james.mailbox.MailboxSession;
@@ -72,47 +77,64 @@ import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
+import org.apache.james.mailbox.store.mail.MessageBatchReader;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Assignment;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select.Where;
+import com.datastax.driver.core.querybuilder.Update;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.ImmutableSortedSet.Builder;
 import com.google.common.io.ByteStreams;
-import com.google.common.primitives.Bytes;
 
 /**
  * Cassandra implementation of a {@link MessageMapper}.
  */
 public class CassandraMessageMapper implements MessageMapper<UUID> {
 
+    /**
+     * Maximal count of statements which are sent together in one unlogged batch
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Count of rows fetched per page when the flags of a mailbox are scanned
+     */
+    private static final int FLAGS_FETCH_SIZE = 500;
+
     private Session session;
     private ModSeqProvider<UUID> modSeqProvider;
     private MailboxSession mailboxSession;
     private UidProvider<UUID> uidProvider;
+    private PreparedStatement insertStatement;
 
-    public CassandraMessageMapper(Session session, CassandraUidProvider uidProvider, ModSeqProvider<UUID> modSeqProvider) {
+    public CassandraMessageMapper(Session session, UidProvider<UUID> uidProvider, ModSeqProvider<UUID> modSeqProvider) {
         this.session = session;
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
     }
 
-    public CassandraMessageMapper(Session session, CassandraUidProvider uidProvider, CassandraModSeqProvider modSeqProvider, MailboxSession mailboxSession) {
+    public CassandraMessageMapper(Session session, UidProvider<UUID> uidProvider, ModSeqProvider<UUID> modSeqProvider, MailboxSession mailboxSession) {
         this(session, uidProvider, modSeqProvider);
         this.mailboxSession = mailboxSession;
     }
@@ -142,6 +164,9 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         if (!message.isSeen()) {
             decrementUnseen(mailbox);
         }
+        if (message.isRecent()) {
+            updateMailbox(mailbox, decr(CassandraMailboxCountersTable.RECENT));
+        }
     }
 
     private void decrementCount(Mailbox<UUID> mailbox) {
@@ -164,22 +189,38 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         session.execute(update(CassandraMailboxCountersTable.TABLE_NAME).with(operation).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailbox.getMailboxId())));
     }
 
+    /**
+     * For {@link FetchType#Metadata} the content columns are not selected. The content of these messages is
+     * read on its first access, see {@link CassandraLazyContent}.
+     */
     @Override
     public Iterator<Message<UUID>> findInMailbox(Mailbox<UUID> mailbox, MessageRange set, FetchType ftype, int max) throws MailboxException {
         Builder<Message<UUID>> result = ImmutableSortedSet.<Message<UUID>> naturalOrder();
-        ResultSet rows = session.execute(buildQuery(mailbox, set));
-        for (Row row : rows) {
-            result.add(message(row));
+        if (ftype == FetchType.Metadata) {
+            ResultSet rows = session.execute(buildQuery(mailbox, set, METADATA_FIELDS));
+            for (Row row : rows) {
+                result.add(message(row, new CassandraLazyContent(session, row.getUUID(MAILBOX_ID), row.getLong(IMAP_UID))));
+            }
+        } else {
+            ResultSet rows = session.execute(buildQuery(mailbox, set));
+            for (Row row : rows) {
+                result.add(message(row));
+            }
         }
         return result.build().iterator();
     }
 
-    private byte[] getFullContent(Row row) {
-        byte[] headerContent = new byte[row.getBytes(HEADER_CONTENT).remaining()];
-        byte[] bodyContent = new byte[row.getBytes(BODY_CONTENT).remaining()];
-        row.getBytes(HEADER_CONTENT).get(headerContent);
-        row.getBytes(BODY_CONTENT).get(bodyContent);
-        return Bytes.concat(headerContent, bodyContent);
+    /**
+     * Return the header and the body content of the row in one array
+     */
+    static byte[] getFullContent(Row row) {
+        ByteBuffer header = row.getBytes(HEADER_CONTENT);
+        ByteBuffer body = row.getBytes(BODY_CONTENT);
+        byte[] fullContent = new byte[header.remaining() + body.remaining()];
+        int headerLength = header.remaining();
+        header.get(fullContent, 0, headerLength);
+        body.get(fullContent, headerLength, body.remaining());
+        return fullContent;
     }
 
     private Flags getFlags(Row row) {
@@ -201,46 +242,52 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
     }
 
     private Message<UUID> message(Row row) {
-        SimpleMessage<UUID> message = new SimpleMessage<UUID>(row.getDate(INTERNAL_DATE), row.getInt(FULL_CONTENT_OCTETS), row.getInt(BODY_START_OCTET), new SharedByteArrayInputStream(getFullContent(row)), getFlags(row), getPropertyBuilder(row), row.getUUID(MAILBOX_ID));
+        return message(row, new SharedByteArrayInputStream(getFullContent(row)));
+    }
+
+    private Message<UUID> message(Row row, SharedInputStream content) {
+        SimpleMessage<UUID> message = new SimpleMessage<UUID>(row.getDate(INTERNAL_DATE), row.getInt(FULL_CONTENT_OCTETS), row.getInt(BODY_START_OCTET), content, getFlags(row), getPropertyBuilder(row), row.getUUID(MAILBOX_ID));
         message.setUid(row.getLong(IMAP_UID));
         return message;
     }
 
     private Where buildQuery(Mailbox<UUID> mailbox, MessageRange set) {
+        return buildQuery(mailbox, set, FIELDS);
+    }
+
+    /**
+     * Build the query for the messages of the range. The bounds of a range are inclusive.
+     */
+    private Where buildQuery(Mailbox<UUID> mailbox, MessageRange set, String[] fields) {
         final MessageRange.Type type = set.getType();
         switch (type) {
         case ALL:
-            return selectAll(mailbox);
+            return selectAll(mailbox, fields);
         case FROM:
-            return selectFrom(mailbox, set.getUidFrom());
+            return selectAll(mailbox, fields).and(gte(IMAP_UID, set.getUidFrom()));
         case RANGE:
-            return selectRange(mailbox, set.getUidFrom(), set.getUidTo());
+            return selectAll(mailbox, fields).and(gte(IMAP_UID, set.getUidFrom())).and(lte(IMAP_UID, set.getUidTo()));
         case ONE:
-            return selectMessage(mailbox, set.getUidFrom());
+            return selectAll(mailbox, fields).and(eq(IMAP_UID, set.getUidFrom()));
         }
         throw new UnsupportedOperationException();
     }
 
     private Where selectAll(Mailbox<UUID> mailbox) {
-        return select(FIELDS).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId()));
-    }
-
-    private Where selectFrom(Mailbox<UUID> mailbox, long uid) {
-        return select(FIELDS).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())).and(gt(IMAP_UID, uid));
-    }
-
-    private Where selectRange(Mailbox<UUID> mailbox, long from, long to) {
-        return select(FIELDS).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())).and(gt(IMAP_UID, from)).and(lt(IMAP_UID, to));
+        return selectAll(mailbox, FIELDS);
     }
 
-    private Where selectMessage(Mailbox<UUID> mailbox, long uid) {
-        return select(FIELDS).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())).and(eq(IMAP_UID, uid));
+    private Where selectAll(Mailbox<UUID> mailbox, String[] fields) {
+        return select(fields).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId()));
     }
 
+    /**
+     * Read only the uid and the recent flag of the messages, page by page.
+     */
     @Override
     public List<Long> findRecentMessageUidsInMailbox(Mailbox<UUID> mailbox) throws MailboxException {
         ImmutableList.Builder<Long> result = ImmutableList.<Long> builder();
-        ResultSet rows = session.execute(selectAll(mailbox).orderBy(asc(IMAP_UID)));
+        ResultSet rows = session.execute(select(IMAP_UID, RECENT).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())).orderBy(asc(IMAP_UID)).setFetchSize(FLAGS_FETCH_SIZE));
         for (Row row : rows) {
             if (row.getBool(RECENT)) {
                 result.add(row.getLong(IMAP_UID));
@@ -249,10 +296,23 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         return result.build();
     }
 
+    /**
+     * Nothing is read if the unseen counter of the mailbox is 0, otherwise see {@link #scanFirstUnseen(Mailbox)}.
+     */
     @Override
     public Long findFirstUnseenMessageUid(Mailbox<UUID> mailbox) throws MailboxException {
-        ResultSet rows = session.execute(selectAll(mailbox).orderBy(asc(IMAP_UID)));
-        for (Row row : rows) {
+        if (countUnseenMessagesInMailbox(mailbox) == 0) {
+            return null;
+        }
+        return scanFirstUnseen(mailbox);
+    }
+
+    /**
+     * Read only the uid and the seen flag of the messages, page by page, and stop at the first unseen message.
+     */
+    private Long scanFirstUnseen(Mailbox<UUID> mailbox) {
+        Statement statement = select(IMAP_UID, SEEN).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())).orderBy(asc(IMAP_UID)).setFetchSize(FLAGS_FETCH_SIZE);
+        for (Row row : session.execute(statement)) {
             if (!row.getBool(SEEN)) {
                 return row.getLong(IMAP_UID);
             }
@@ -274,11 +334,6 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         return deletedMessages.build();
     }
 
-    @Override
-    public MessageMetaData move(Mailbox<UUID> mailbox, Message<UUID> original) throws MailboxException {
-        throw new UnsupportedOperationException("Not implemented - see https://issues.apache.org/jira/browse/IMAP-370");
-    }
-
     @Override
     public void endRequest() {
         // Do nothing
@@ -289,6 +344,53 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         return modSeqProvider.highestModSeq(mailboxSession, mailbox);
     }
 
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox<UUID> mailbox, Set<Counter> counters) throws MailboxException {
+        return getMailboxCounters(ImmutableList.of(mailbox), counters).get(0);
+    }
+
+    /**
+     * Read the counters rows of all mailboxes in parallel. The last uid and the highest mod-sequence are asked
+     * from the providers, as a leasing provider hands out values which are below the stored ones. The first
+     * unseen message is only searched in mailboxes whose unseen counter is not 0.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(java.util.List, java.util.Set)
+     */
+    @Override
+    public List<MailboxCounters> getMailboxCounters(List<Mailbox<UUID>> mailboxes, Set<Counter> counters) throws MailboxException {
+        List<ResultSetFuture> countersFutures = new ArrayList<ResultSetFuture>(mailboxes.size());
+        for (Mailbox<UUID> mailbox : mailboxes) {
+            countersFutures.add(session.executeAsync(select(CassandraMailboxCountersTable.COUNT, CassandraMailboxCountersTable.UNSEEN, CassandraMailboxCountersTable.RECENT)
+                    .from(CassandraMailboxCountersTable.TABLE_NAME).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, mailbox.getMailboxId()))));
+        }
+
+        ImmutableList.Builder<MailboxCounters> result = ImmutableList.builder();
+        for (int i = 0; i < mailboxes.size(); i++) {
+            MailboxCounters mailboxCounters = new MailboxCounters();
+            ResultSet counterRows = countersFutures.get(i).getUninterruptibly();
+            Row counterRow = counterRows.isExhausted() ? null : counterRows.one();
+            mailboxCounters.set(Counter.MessageCount, getCounter(counterRow, CassandraMailboxCountersTable.COUNT));
+            long unseen = getCounter(counterRow, CassandraMailboxCountersTable.UNSEEN);
+            mailboxCounters.set(Counter.UnseenCount, unseen);
+            mailboxCounters.set(Counter.RecentCount, Math.max(0, getCounter(counterRow, CassandraMailboxCountersTable.RECENT)));
+            if (counters.contains(Counter.HighestModSeq)) {
+                mailboxCounters.set(Counter.HighestModSeq, modSeqProvider.highestModSeq(mailboxSession, mailboxes.get(i)));
+            }
+            if (counters.contains(Counter.LastUid)) {
+                mailboxCounters.set(Counter.LastUid, uidProvider.lastUid(mailboxSession, mailboxes.get(i)));
+            }
+            if (counters.contains(Counter.FirstUnseen)) {
+                mailboxCounters.set(Counter.FirstUnseen, unseen == 0 ? null : scanFirstUnseen(mailboxes.get(i)));
+            }
+            result.add(mailboxCounters);
+        }
+        return result.build();
+    }
+
+    private long getCounter(Row row, String column) {
+        return row == null || row.isNull(column) ? 0 : row.getLong(column);
+    }
+
     @Override
     public <T> T execute(Transaction<T> transaction) throws MailboxException {
         return transaction.run();
@@ -302,25 +404,74 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         if (!message.isSeen()) {
             incrementUnseen(mailbox);
         }
+        if (message.isRecent()) {
+            updateMailbox(mailbox, incr(CassandraMailboxCountersTable.RECENT));
+        }
         incrementCount(mailbox);
         return messageMetaData;
     }
 
+    @Override
+    public List<MessageMetaData> add(Mailbox<UUID> mailbox, List<Message<UUID>> messages) throws MailboxException {
+        ImmutableList.Builder<MessageMetaData> result = ImmutableList.builder();
+        if (messages.isEmpty()) {
+            return result.build();
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size());
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        int unseen = 0;
+        int recent = 0;
+        for (Message<UUID> message : messages) {
+            message.setUid(uid++);
+            message.setModSeq(modSeq);
+            result.add(save(mailbox, message));
+            if (!message.isSeen()) {
+                unseen++;
+            }
+            if (message.isRecent()) {
+                recent++;
+            }
+        }
+        if (unseen > 0) {
+            updateMailbox(mailbox, incr(CassandraMailboxCountersTable.UNSEEN, unseen));
+        }
+        if (recent > 0) {
+            updateMailbox(mailbox, incr(CassandraMailboxCountersTable.RECENT, recent));
+        }
+        updateMailbox(mailbox, incr(CassandraMailboxCountersTable.COUNT, messages.size()));
+        return result.build();
+    }
+
     private MessageMetaData save(Mailbox<UUID> mailbox, Message<UUID> message) throws MailboxException {
         try {
-            Insert query = insertInto(TABLE_NAME).value(MAILBOX_ID, mailbox.getMailboxId()).value(IMAP_UID, message.getUid()).value(MOD_SEQ, message.getModSeq()).value(INTERNAL_DATE, message.getInternalDate()).value(MEDIA_TYPE, message.getMediaType())
-                    .value(BODY_START_OCTET, message.getFullContentOctets() - message.getBodyOctets()).value(SUB_TYPE, message.getSubType()).value(FULL_CONTENT_OCTETS, message.getFullContentOctets()).value(BODY_OCTECTS, message.getBodyOctets()).value(ANSWERED, message.isAnswered())
-                    .value(DELETED, message.isDeleted()).value(DRAFT, message.isDraft()).value(FLAGGED, message.isFlagged()).value(RECENT, message.isRecent()).value(SEEN, message.isSeen()).value(USER, message.createFlags().contains(Flag.USER)).value(BODY_CONTENT, bindMarker())
-                    .value(HEADER_CONTENT, bindMarker()).value(TEXTUAL_LINE_COUNT, message.getTextualLineCount());
-            PreparedStatement preparedStatement = session.prepare(query.toString());
-            BoundStatement boundStatement = preparedStatement.bind(toByteBuffer(message.getBodyContent()), toByteBuffer(message.getHeaderContent()));
-            session.execute(boundStatement);
+            session.execute(bindInsert(mailbox, message));
             return new SimpleMessageMetaData(message);
         } catch (IOException e) {
             throw new MailboxException("Error saving mail", e);
         }
     }
 
+    /**
+     * Return the statement used to insert a message. It is prepared only once per mapper.
+     */
+    private PreparedStatement getInsertStatement() {
+        if (insertStatement == null) {
+            Insert query = insertInto(TABLE_NAME).value(MAILBOX_ID, bindMarker()).value(IMAP_UID, bindMarker()).value(MOD_SEQ, bindMarker()).value(INTERNAL_DATE, bindMarker()).value(MEDIA_TYPE, bindMarker())
+                    .value(BODY_START_OCTET, bindMarker()).value(SUB_TYPE, bindMarker()).value(FULL_CONTENT_OCTETS, bindMarker()).value(BODY_OCTECTS, bindMarker()).value(ANSWERED, bindMarker())
+                    .value(DELETED, bindMarker()).value(DRAFT, bindMarker()).value(FLAGGED, bindMarker()).value(RECENT, bindMarker()).value(SEEN, bindMarker()).value(USER, bindMarker()).value(BODY_CONTENT, bindMarker())
+                    .value(HEADER_CONTENT, bindMarker()).value(TEXTUAL_LINE_COUNT, bindMarker());
+            insertStatement = session.prepare(query.toString());
+        }
+        return insertStatement;
+    }
+
+    private BoundStatement bindInsert(Mailbox<UUID> mailbox, Message<UUID> message) throws IOException {
+        return getInsertStatement().bind(mailbox.getMailboxId(), message.getUid(), message.getModSeq(), message.getInternalDate(), message.getMediaType(),
+                (int) (message.getFullContentOctets() - message.getBodyOctets()), message.getSubType(), (int) message.getFullContentOctets(), (int) message.getBodyOctets(), message.isAnswered(),
+                message.isDeleted(), message.isDraft(), message.isFlagged(), message.isRecent(), message.isSeen(), message.createFlags().contains(Flag.USER), toByteBuffer(message.getBodyContent()),
+                toByteBuffer(message.getHeaderContent()), message.getTextualLineCount());
+    }
+
     private ByteBuffer toByteBuffer(InputStream stream) throws IOException {
         return ByteBuffer.wrap(ByteStreams.toByteArray(stream));
     }
@@ -340,6 +491,88 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         return result.build().iterator();
     }
 
+    /**
+     * Read only the uid, mod-sequence and flag columns of the messages and update the changed flag columns of the
+     * changed messages with unlogged batches. All messages belong to the same partition, so every batch is applied
+     * as a single mutation. As user flags are not stored, they are never part of the old or new flags.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#updateSystemFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
+     */
+    @Override
+    public UpdatedFlagsList updateSystemFlags(Mailbox<UUID> mailbox, Flags flags, boolean value, boolean replace, MessageRange set) throws MailboxException {
+        Where query = select().column(IMAP_UID).column(MOD_SEQ).column(ANSWERED).column(DELETED).column(DRAFT).column(FLAGGED).column(RECENT).column(SEEN).column(USER)
+                .from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId()));
+        switch (set.getType()) {
+        case ONE:
+            query = query.and(eq(IMAP_UID, set.getUidFrom()));
+            break;
+        case FROM:
+            query = query.and(gte(IMAP_UID, set.getUidFrom()));
+            break;
+        case RANGE:
+            query = query.and(gte(IMAP_UID, set.getUidFrom())).and(lte(IMAP_UID, set.getUidTo()));
+            break;
+        case ALL:
+            break;
+        }
+        List<Row> rows = session.execute(query).all();
+        long modSeq = -1;
+        if (!rows.isEmpty()) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        UpdatedFlagsList updatedFlags = new UpdatedFlagsList(flags, value, replace);
+        int unseenDelta = 0;
+        int recentDelta = 0;
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        for (Row row : rows) {
+            int oldBits = 0;
+            for (String flag : CassandraMessageTable.Flag.ALL) {
+                if (row.getBool(flag)) {
+                    oldBits |= UpdatedFlagsList.toBit(JAVAX_MAIL_FLAG.get(flag));
+                }
+            }
+            long uid = row.getLong(IMAP_UID);
+            if (!updatedFlags.isChanged(oldBits, false)) {
+                updatedFlags.add(uid, row.getLong(MOD_SEQ), oldBits, null);
+            } else {
+                updatedFlags.add(uid, modSeq, oldBits, null);
+                int newBits = updatedFlags.apply(oldBits);
+                Update.Assignments assignments = update(TABLE_NAME).with(set(MOD_SEQ, modSeq));
+                for (String flag : CassandraMessageTable.Flag.ALL) {
+                    Flag javaxMailFlag = JAVAX_MAIL_FLAG.get(flag);
+                    if (UpdatedFlagsList.contains(oldBits ^ newBits, javaxMailFlag)) {
+                        assignments.and(set(flag, UpdatedFlagsList.contains(newBits, javaxMailFlag)));
+                    }
+                }
+                if (UpdatedFlagsList.contains(oldBits ^ newBits, Flag.SEEN)) {
+                    unseenDelta += UpdatedFlagsList.contains(newBits, Flag.SEEN) ? -1 : 1;
+                }
+                if (UpdatedFlagsList.contains(oldBits ^ newBits, Flag.RECENT)) {
+                    recentDelta += UpdatedFlagsList.contains(newBits, Flag.RECENT) ? 1 : -1;
+                }
+                batch.add(assignments.where(eq(MAILBOX_ID, mailbox.getMailboxId())).and(eq(IMAP_UID, uid)));
+                if (batch.getStatements().size() == BATCH_SIZE) {
+                    session.execute(batch);
+                    batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                }
+            }
+        }
+        if (!batch.getStatements().isEmpty()) {
+            session.execute(batch);
+        }
+        if (unseenDelta > 0) {
+            updateMailbox(mailbox, incr(CassandraMailboxCountersTable.UNSEEN, unseenDelta));
+        } else if (unseenDelta < 0) {
+            updateMailbox(mailbox, decr(CassandraMailboxCountersTable.UNSEEN, -unseenDelta));
+        }
+        if (recentDelta > 0) {
+            updateMailbox(mailbox, incr(CassandraMailboxCountersTable.RECENT, recentDelta));
+        } else if (recentDelta < 0) {
+            updateMailbox(mailbox, decr(CassandraMailboxCountersTable.RECENT, -recentDelta));
+        }
+        return updatedFlags;
+    }
+
     private Flags buildFlags(Message<UUID> message, Flags flags, boolean value, boolean replace) {
         if (replace) {
             return message.createFlags();
@@ -361,6 +594,119 @@ public class CassandraMessageMapper implements MessageMapper<UUID> {
         return save(mailbox, original);
     }
 
+    /**
+     * Copy the messages of the range using unlogged batches of inserts. As all copies belong to the same partition
+     * each batch is applied as a single mutation. The originals are read in batches of the same size.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
+     */
+    @Override
+    public List<MessageMetaData> copy(Mailbox<UUID> from, Mailbox<UUID> to, MessageRange set) throws MailboxException {
+        return copy(to, new MessageBatchReader<UUID>(this, from, set, FetchType.Full, BATCH_SIZE), null);
+    }
+
+    /**
+     * As the messages are partitioned by mailbox, they are copied to the target mailbox and deleted from the
+     * source mailbox afterwards, both using unlogged batches.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
+     */
+    @Override
+    public List<MessageMetaData> move(Mailbox<UUID> from, Mailbox<UUID> to, MessageRange set) throws MailboxException {
+        List<MessageMetaData> originals = new ArrayList<MessageMetaData>();
+        List<MessageMetaData> result = copy(to, new MessageBatchReader<UUID>(this, from, set, FetchType.Full, BATCH_SIZE), originals);
+        if (result.isEmpty()) {
+            return result;
+        }
+        int unseen = 0;
+        int recent = 0;
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        for (MessageMetaData original : originals) {
+            if (!original.getFlags().contains(Flag.SEEN)) {
+                unseen++;
+            }
+            if (original.getFlags().contains(Flag.RECENT)) {
+                recent++;
+            }
+            batch.add(QueryBuilder.delete().from(TABLE_NAME).where(eq(MAILBOX_ID, from.getMailboxId())).and(eq(IMAP_UID, original.getUid())));
+            if (batch.getStatements().size() == BATCH_SIZE) {
+                session.execute(batch);
+                batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            }
+        }
+        if (!batch.getStatements().isEmpty()) {
+            session.execute(batch);
+        }
+        if (unseen > 0) {
+            updateMailbox(from, decr(CassandraMailboxCountersTable.UNSEEN, unseen));
+        }
+        if (recent > 0) {
+            updateMailbox(from, decr(CassandraMailboxCountersTable.RECENT, recent));
+        }
+        updateMailbox(from, decr(CassandraMailboxCountersTable.COUNT, result.size()));
+        return result;
+    }
+
+    /**
+     * Copy the messages read by the {@link MessageBatchReader}, so only one batch of originals is held at a time
+     * 
+     * @param to
+     * @param originals
+     * @param originalData if not null the metadata of the copied originals is added to it
+     * @return the metadata of the copies
+     */
+    private List<MessageMetaData> copy(Mailbox<UUID> to, MessageBatchReader<UUID> originals, List<MessageMetaData> originalData) throws MailboxException {
+        ImmutableList.Builder<MessageMetaData> result = ImmutableList.builder();
+        if (originals.size() == 0) {
+            return result.build();
+        }
+        long uid = uidProvider.nextUids(mailboxSession, to, originals.size());
+        long modSeq = modSeqProvider.nextModSeq(mailboxSession, to);
+        int count = 0;
+        int unseen = 0;
+        try {
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            while (originals.hasNext()) {
+                for (Message<UUID> original : originals.next()) {
+                    if (originalData != null) {
+                        // remember the original, as the copy reuses the message instance
+                        originalData.add(new SimpleMessageMetaData(original));
+                    }
+                    count++;
+                    original.setUid(uid++);
+                    original.setModSeq(modSeq);
+                    // A copy of a message is recent, see MAILBOX-85
+                    Flags flags = original.createFlags();
+                    flags.add(Flag.RECENT);
+                    original.setFlags(flags);
+                    if (!original.isSeen()) {
+                        unseen++;
+                    }
+                    batch.add(bindInsert(to, original));
+                    result.add(new SimpleMessageMetaData(original));
+                    if (batch.getStatements().size() == BATCH_SIZE) {
+                        session.execute(batch);
+                        batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                    }
+                }
+            }
+            if (!batch.getStatements().isEmpty()) {
+                session.execute(batch);
+            }
+        } catch (IOException e) {
+            throw new MailboxException("Error copying mails", e);
+        }
+        if (unseen > 0) {
+            updateMailbox(to, incr(CassandraMailboxCountersTable.UNSEEN, unseen));
+        }
+        if (count > 0) {
+            // all copies are recent
+            updateMailbox(to, incr(CassandraMailboxCountersTable.RECENT, count));
+            updateMailbox(to, incr(CassandraMailboxCountersTable.COUNT, count));
+        }
+        return result.build();
+    }
+
     @Override
     public long getLastUid(Mailbox<UUID> mailbox) throws MailboxException {
         return uidProvider.lastUid(mailboxSession, mailbox);
@@ -20,40 +20,67 @@
 package org.apache.james.mailbox.cassandra.mail;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.incr;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
-import static org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable.MAILBOX_ID;
-import static org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable.NEXT_MOD_SEQ;
-import static org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable.TABLE_NAME;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqTable.NEXT_MODSEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqTable.TABLE_NAME;
 
 import java.util.UUID;
 
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.cassandra.table.CassandraMailboxCountersTable;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 
+/**
+ * {@link ModSeqProvider} which reserves the mod-sequences with lightweight transactions, see {@link CassandraSequence}.
+ * 
+ * The mod-sequences used to be stored in a counter column of {@link CassandraMailboxCountersTable}. Counters can
+ * not be incremented and read atomically, so concurrent callers could get the same mod-sequence. A {@link Mailbox}
+ * which has no row in the new table yet continues with the value of the old counter.
+ */
 public class CassandraModSeqProvider implements ModSeqProvider<UUID> {
 
-    private Session session;
+    private final Session session;
+    private final CassandraSequence sequence;
 
     public CassandraModSeqProvider(Session session) {
         this.session = session;
+        this.sequence = new CassandraSequence(session, TABLE_NAME, MAILBOX_ID, NEXT_MODSEQ) {
+
+            @Override
+            protected long initialValue(UUID id) throws MailboxException {
+                return legacyModSeq(id);
+            }
+        };
     }
 
     @Override
     public long nextModSeq(MailboxSession mailboxSession, Mailbox<UUID> mailbox) throws MailboxException {
-        session.execute(update(TABLE_NAME).with(incr(NEXT_MOD_SEQ)).where(eq(MAILBOX_ID, mailbox.getMailboxId())));
-        return highestModSeq(mailboxSession, mailbox);
+        return nextModSeqs(mailboxSession, mailbox, 1);
+    }
+
+    @Override
+    public long nextModSeqs(MailboxSession mailboxSession, Mailbox<UUID> mailbox, int count) throws MailboxException {
+        return sequence.reserve(mailbox.getMailboxId(), count);
     }
 
     @Override
     public long highestModSeq(MailboxSession mailboxSession, Mailbox<UUID> mailbox) throws MailboxException {
-        ResultSet result = session.execute(select(NEXT_MOD_SEQ).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())));
-        return result.isExhausted() ? 0 : result.one().getLong(NEXT_MOD_SEQ);
+        return sequence.current(mailbox.getMailboxId());
+    }
+
+    private long legacyModSeq(UUID id) {
+        ResultSet result = session.execute(select(CassandraMailboxCountersTable.NEXT_MOD_SEQ).from(CassandraMailboxCountersTable.TABLE_NAME).where(eq(CassandraMailboxCountersTable.MAILBOX_ID, id)));
+        if (result.isExhausted()) {
+            return 0;
+        }
+        Row row = result.one();
+        return row.isNull(CassandraMailboxCountersTable.NEXT_MOD_SEQ) ? 0 : row.getLong(CassandraMailboxCountersTable.NEXT_MOD_SEQ);
     }
 }
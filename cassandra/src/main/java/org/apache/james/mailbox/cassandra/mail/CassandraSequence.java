@@ -0,0 +1,173 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.james.mailbox.exception.MailboxException;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+/**
+ * Sequence which is stored as bigint column and is only modified with lightweight transactions, so
+ * every reserved range is unique even if many nodes allocate at the same time.
+ * 
+ * The current value is read once. After that a failed conditional write returns the current value in its
+ * result row, which is used for the next attempt, so no extra read is needed under contention. Between the
+ * attempts a randomized, growing backoff is applied to spread competing writers.
+ */
+class CassandraSequence {
+
+    private static final String APPLIED = "[applied]";
+    private static final int DEFAULT_MAX_RETRIES = 100;
+    private static final long DEFAULT_MAX_BACKOFF = 100;
+
+    private final Session session;
+    private final String table;
+    private final String keyColumn;
+    private final String valueColumn;
+    private final int maxRetries;
+    private final long maxBackoff;
+    private final Random random = new Random();
+
+    public CassandraSequence(Session session, String table, String keyColumn, String valueColumn) {
+        this(session, table, keyColumn, valueColumn, DEFAULT_MAX_RETRIES, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param session
+     * @param table
+     * @param keyColumn
+     * @param valueColumn
+     * @param maxRetries the number of conditional writes after which the reservation fails
+     * @param maxBackoff the maximum time in milliseconds to wait between two attempts
+     */
+    public CassandraSequence(Session session, String table, String keyColumn, String valueColumn, int maxRetries, long maxBackoff) {
+        this.session = session;
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.valueColumn = valueColumn;
+        this.maxRetries = maxRetries;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Reserve count values and return the first of them
+     * 
+     * @param id
+     * @param count
+     * @return first
+     * @throws MailboxException
+     */
+    public long reserve(UUID id, int count) throws MailboxException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be > 0");
+        }
+        Long expected = read(id);
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            ResultSet result;
+            if (expected == null) {
+                long initial = initialValue(id);
+                result = session.execute(insertInto(table).value(keyColumn, id).value(valueColumn, initial + count).ifNotExists());
+                Row row = result.one();
+                if (row.getBool(APPLIED)) {
+                    return initial + 1;
+                }
+                expected = value(row);
+            } else {
+                result = session.execute(update(table).with(set(valueColumn, expected + count)).where(eq(keyColumn, id)).onlyIf(eq(valueColumn, expected)));
+                Row row = result.one();
+                if (row.getBool(APPLIED)) {
+                    return expected + 1;
+                }
+                expected = value(row);
+            }
+            backoff(attempt);
+        }
+        throw new MailboxException("Unable to reserve " + count + " values of " + table + " for " + id + " after " + maxRetries + " attempts");
+    }
+
+    /**
+     * Return the current value, which is the last reserved one, or <code>0</code> if nothing was reserved yet
+     * 
+     * @param id
+     * @return current
+     * @throws MailboxException
+     */
+    public long current(UUID id) throws MailboxException {
+        Long value = read(id);
+        if (value == null) {
+            return initialValue(id);
+        }
+        return value;
+    }
+
+    /**
+     * Return the value to start with if there is no row for the given id yet. This implementation returns <code>0</code>.
+     * 
+     * @param id
+     * @return initial
+     * @throws MailboxException
+     */
+    protected long initialValue(UUID id) throws MailboxException {
+        return 0;
+    }
+
+    private Long read(UUID id) {
+        ResultSet result = session.execute(select(valueColumn).from(table).where(eq(keyColumn, id)));
+        if (result.isExhausted()) {
+            return null;
+        }
+        Row row = result.one();
+        return row.isNull(valueColumn) ? null : row.getLong(valueColumn);
+    }
+
+    /**
+     * Return the current value out of the result row of a failed conditional write
+     */
+    private Long value(Row row) {
+        if (!row.getColumnDefinitions().contains(valueColumn) || row.isNull(valueColumn)) {
+            return null;
+        }
+        return row.getLong(valueColumn);
+    }
+
+    private void backoff(int attempt) throws MailboxException {
+        long max = Math.min(maxBackoff, 1L << Math.min(attempt, 16));
+        long sleep = (long) (random.nextDouble() * max);
+        if (sleep > 0) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailboxException("Interrupted while reserving values of " + table, e);
+            }
+        }
+    }
+}
@@ -19,10 +19,6 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
-import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
-import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable.MAILBOX_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable.NEXT_UID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageUidTable.TABLE_NAME;
@@ -34,36 +30,31 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 
-import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
 
+/**
+ * {@link UidProvider} which reserves the uids with lightweight transactions, see {@link CassandraSequence}.
+ */
 public class CassandraUidProvider implements UidProvider<UUID> {
-    private Session session;
-    private final int applied = 0;
+    private final CassandraSequence sequence;
 
     public CassandraUidProvider(Session session) {
-        this.session = session;
+        this.sequence = new CassandraSequence(session, TABLE_NAME, MAILBOX_ID, NEXT_UID);
     }
 
     @Override
     public long nextUid(MailboxSession mailboxSession, Mailbox<UUID> mailbox) throws MailboxException {
-        ResultSet resultat = null;
-        long lastUid = lastUid(mailboxSession, mailbox);
-        if (lastUid == 0) {
-            resultat = session.execute(update(TABLE_NAME).with(set(NEXT_UID, ++lastUid)).where(eq(MAILBOX_ID, mailbox.getMailboxId())));
-        } else {
-            do {
-                lastUid = lastUid(mailboxSession, mailbox);
-                resultat = session.execute(update(TABLE_NAME).onlyIf(eq(NEXT_UID, lastUid)).with(set(NEXT_UID, ++lastUid)).where(eq(MAILBOX_ID, mailbox.getMailboxId())));
-            } while (!resultat.one().getBool(applied));
-        }
-        return lastUid;
+        return nextUids(mailboxSession, mailbox, 1);
+    }
+
+    @Override
+    public long nextUids(MailboxSession mailboxSession, Mailbox<UUID> mailbox, int count) throws MailboxException {
+        return sequence.reserve(mailbox.getMailboxId(), count);
     }
 
     @Override
     public long lastUid(MailboxSession mailboxSession, Mailbox<UUID> mailbox) throws MailboxException {
-        ResultSet result = session.execute(select(NEXT_UID).from(TABLE_NAME).where(eq(MAILBOX_ID, mailbox.getMailboxId())));
-        return result.isExhausted() ? 0 : result.one().getLong(NEXT_UID);
+        return sequence.current(mailbox.getMailboxId());
     }
 
 }
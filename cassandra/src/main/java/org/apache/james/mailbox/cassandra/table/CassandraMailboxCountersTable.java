@@ -24,5 +24,14 @@ public interface CassandraMailboxCountersTable {
     String MAILBOX_ID = "mailboxId";
     String COUNT = "count";
     String UNSEEN = "unseen";
+    /**
+     * The count of messages with the recent flag. Mailboxes which existed before this counter was added start
+     * with 0, so the value is never read as negative.
+     */
+    String RECENT = "recent";
+    /**
+     * Mod-sequences are stored in {@link CassandraModSeqTable} now. This counter is only read for mailboxes
+     * which have no row there yet.
+     */
     String NEXT_MOD_SEQ = "nextModSeq";
 }
\ No newline at end of file
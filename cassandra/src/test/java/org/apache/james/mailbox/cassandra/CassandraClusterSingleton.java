@@ -87,7 +87,9 @@ public final class CassandraClusterSingleton {
         } else if (tableName.equals("messageCounter")) {
             session.execute("CREATE TABLE IF NOT EXISTS " + session.getLoggedKeyspace() + ".messageCounter (" + "mailboxId UUID PRIMARY KEY," + "nextUid bigint," + ");");
         } else if (tableName.equals("mailboxCounters")) {
-            session.execute("CREATE TABLE IF NOT EXISTS " + session.getLoggedKeyspace() + ".mailboxCounters (" + "mailboxId UUID PRIMARY KEY," + "count counter," + "unseen counter," + "nextModSeq counter" + ");");
+            session.execute("CREATE TABLE IF NOT EXISTS " + session.getLoggedKeyspace() + ".mailboxCounters (" + "mailboxId UUID PRIMARY KEY," + "count counter," + "unseen counter," + "recent counter," + "nextModSeq counter" + ");");
+        } else if (tableName.equals("modseq")) {
+            session.execute("CREATE TABLE IF NOT EXISTS " + session.getLoggedKeyspace() + ".modseq (" + "mailboxId UUID PRIMARY KEY," + "nextModSeq bigint" + ");");
         } else if (tableName.equals("message")) {
             session.execute("CREATE TABLE IF NOT EXISTS " + session.getLoggedKeyspace() + ".message (" + "mailboxId UUID," + "uid bigint," + "internalDate timestamp," + "bodyStartOctet int," + "content blob," + "modSeq bigint," + "mediaType text," + "subType text," + "fullContentOctets int,"
                     + "bodyOctets int," + "textualLineCount bigint," + "bodyContent blob," + "headerContent blob," + "flagAnswered boolean," + "flagDeleted boolean," + "flagDraft boolean," + "flagRecent boolean," + "flagSeen boolean," + "flagFlagged boolean," + "flagUser boolean,"
@@ -105,6 +107,7 @@ public final class CassandraClusterSingleton {
     public void ensureAllTables() {
         ensureTable("mailbox");
         ensureTable("mailboxCounters");
+        ensureTable("modseq");
         ensureTable("message");
         ensureTable("subscription");
     }
@@ -124,6 +127,7 @@ public final class CassandraClusterSingleton {
     public void clearAllTables() {
         clearTable("mailbox");
         clearTable("mailboxCounters");
+        clearTable("modseq");
         clearTable("message");
         clearTable("subscription");
     }
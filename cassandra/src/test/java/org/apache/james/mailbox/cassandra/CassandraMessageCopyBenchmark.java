@@ -0,0 +1,54 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra;
+
+import org.apache.james.mailbox.AbstractMessageCopyBenchmark;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.cassandra.mail.CassandraModSeqProvider;
+import org.apache.james.mailbox.cassandra.mail.CassandraUidProvider;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
+
+import com.datastax.driver.core.Session;
+
+/**
+ * Measures the copy of messages between two Cassandra mailboxes, stored in the embedded Cassandra of the tests.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class CassandraMessageCopyBenchmark extends AbstractMessageCopyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new CassandraMessageCopyBenchmark().run();
+        // the embedded Cassandra does not stop on its own
+        System.exit(0);
+    }
+
+    @Override
+    protected MailboxManager createMailboxManager() throws Exception {
+        CassandraClusterSingleton cluster = CassandraClusterSingleton.build();
+        cluster.ensureAllTables();
+        cluster.clearAllTables();
+        Session session = cluster.getConf();
+        CassandraMailboxSessionMapperFactory mapperFactory = new CassandraMailboxSessionMapperFactory(new CassandraUidProvider(session),
+                new CassandraModSeqProvider(session), (CassandraSession) session);
+        CassandraMailboxManager manager = new CassandraMailboxManager(mapperFactory, null, new ReferenceCountingMailboxPathLocker());
+        manager.init();
+        return manager;
+    }
+}
@@ -19,9 +19,14 @@
 package org.apache.james.mailbox.cassandra.mail;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -34,6 +39,12 @@ import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.CassandraClusterSingleton;
 import org.apache.james.mailbox.mock.MockMailboxSession;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.LeasingModSeqProvider;
+import org.apache.james.mailbox.store.mail.LeasingUidProvider;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
@@ -136,6 +147,10 @@ public class CassandraMessageMapperTest {
         testAdd();
         testGetLastUid();
         testGetHighestModSeq();
+        testFindInMailboxIncludesBoundsOfRange();
+        testLazyContentIsReadOnAccess();
+        testLazyContentOfExpungedMessageFailsWithIOException();
+        testMailboxCountersWithLeasingProviders();
     }
 
     /**
@@ -205,4 +220,65 @@ public class CassandraMessageMapperTest {
         long highestModSeq = messageMapper.getHighestModSeq(MBOXES.get(1));
         assertEquals(MESSAGE_NO.size(), highestModSeq);
     }
+
+    /**
+     * Test of findInMailbox method, of class CassandraMessageMapper. The bounds of the ranges are inclusive.
+     */
+    private void testFindInMailboxIncludesBoundsOfRange() throws Exception {
+        LOG.info("findInMailbox");
+        assertUids(messageMapper.findInMailbox(MBOXES.get(1), MessageRange.from(3), FetchType.Full, -1), 3, 10);
+        assertUids(messageMapper.findInMailbox(MBOXES.get(1), MessageRange.range(3, 5), FetchType.Full, -1), 3, 5);
+        assertUids(messageMapper.findInMailbox(MBOXES.get(1), MessageRange.range(4, 4), FetchType.Metadata, -1), 4, 4);
+        assertUids(messageMapper.findInMailbox(MBOXES.get(1), MessageRange.one(7), FetchType.Metadata, -1), 7, 7);
+        assertUids(messageMapper.findInMailbox(MBOXES.get(1), MessageRange.all(), FetchType.Metadata, -1), 1, MESSAGE_NO.size());
+    }
+
+    /**
+     * Test of the content of messages which were fetched with {@link FetchType#Metadata} and expunged meanwhile.
+     */
+    private void testLazyContentOfExpungedMessageFailsWithIOException() throws Exception {
+        LOG.info("lazy content of expunged message");
+        Message<UUID> message = messageMapper.findInMailbox(MBOXES.get(1), MessageRange.one(2), FetchType.Metadata, -1).next();
+        messageMapper.delete(MBOXES.get(1), message);
+        try {
+            message.getFullContent().read();
+            fail("Content of an expunged message must not be readable");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test of the content of messages which were fetched with {@link FetchType#Metadata}.
+     */
+    private void testLazyContentIsReadOnAccess() throws Exception {
+        LOG.info("lazy content");
+        Message<UUID> message = messageMapper.findInMailbox(MBOXES.get(1), MessageRange.one(2), FetchType.Metadata, -1).next();
+        assertEquals(messageTemplate.charAt(0), message.getFullContent().read());
+        assertEquals(messageTemplate.charAt((int) (message.getFullContentOctets() - message.getBodyOctets())), message.getBodyContent().read());
+    }
+
+    /**
+     * Test of getMailboxCounters method, of class CassandraMessageMapper. With leasing providers the stored
+     * last uid and highest mod-sequence are the end of the leased blocks, not the values handed out.
+     */
+    private void testMailboxCountersWithLeasingProviders() throws Exception {
+        LOG.info("getMailboxCounters");
+        Mailbox<UUID> mailbox = MBOXES.get(2);
+        CassandraMessageMapper mapper = new CassandraMessageMapper(session, new LeasingUidProvider<UUID>(uidProvider), new LeasingModSeqProvider<UUID>(modSeqProvider), new MockMailboxSession("ieugen"));
+        mapper.add(mailbox, new SimpleMessage<UUID>(new Date(), messageTemplate.getBytes().length, messageTemplate.getBytes().length - 20, content, new Flags(), new PropertyBuilder(), mailbox.getMailboxId()));
+
+        MailboxCounters counters = mapper.getMailboxCounters(Collections.singletonList(mailbox), EnumSet.allOf(Counter.class)).get(0);
+        assertEquals(Long.valueOf(1), counters.get(Counter.LastUid));
+        assertEquals(Long.valueOf(1), counters.get(Counter.HighestModSeq));
+        assertEquals(Long.valueOf(1), counters.get(Counter.MessageCount));
+        assertEquals(Long.valueOf(1), counters.get(Counter.FirstUnseen));
+    }
+
+    private void assertUids(Iterator<Message<UUID>> messages, long from, long to) {
+        for (long uid = from; uid <= to; uid++) {
+            assertEquals(uid, messages.next().getUid());
+        }
+        assertEquals(false, messages.hasNext());
+    }
 }
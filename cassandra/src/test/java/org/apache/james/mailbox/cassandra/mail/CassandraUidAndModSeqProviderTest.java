@@ -19,12 +19,22 @@
 package org.apache.james.mailbox.cassandra.mail;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.james.mailbox.cassandra.CassandraClusterSingleton;
+import org.apache.james.mailbox.store.mail.ModSeqProvider;
+import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.junit.Before;
@@ -160,4 +170,50 @@ public class CassandraUidAndModSeqProviderTest {
             assertEquals(i, result);
         }
     }
+
+    /**
+     * Allocate uids and mod-sequences from several threads at once, each with its own providers like separate
+     * nodes would do, and check that no value is handed out twice.
+     */
+    @Test
+    public void testConcurrentAllocation() throws Exception {
+        LOG.info("concurrentAllocation");
+        final SimpleMailbox<UUID> mailbox = new SimpleMailbox<UUID>(new MailboxPath("gsoc", "ieugen", "Concurrent"), 1234);
+        mapper.save(mailbox);
+        final int threads = 4;
+        final int rounds = 20;
+        final int blockSize = 3;
+        final Set<Long> uids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final Set<Long> modSeqs = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        UidProvider<UUID> uidProvider = new CassandraUidProvider(session);
+                        ModSeqProvider<UUID> modSeqProvider = new CassandraModSeqProvider(session);
+                        for (int i = 0; i < rounds; i++) {
+                            long first = uidProvider.nextUids(null, mailbox, blockSize);
+                            for (long uid = first; uid < first + blockSize; uid++) {
+                                assertTrue("Duplicated uid " + uid, uids.add(uid));
+                            }
+                            long modSeq = modSeqProvider.nextModSeq(null, mailbox);
+                            assertTrue("Duplicated mod-seq " + modSeq, modSeqs.add(modSeq));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * rounds * blockSize, uids.size());
+        assertEquals(threads * rounds * blockSize, uidProvider.lastUid(null, mailbox));
+        assertEquals(threads * rounds, modSeqs.size());
+        assertEquals(threads * rounds, modSeqProvider.highestModSeq(null, mailbox));
+    }
 }
@@ -22,14 +22,17 @@ import org.apache.hadoop.conf.Configuration;
 import java.io.BufferedInputStream;
 import org.apache.hadoop.hbase.client.Put;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import javax.mail.Flags;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
@@ -37,6 +40,7 @@ import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.PrefixFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueExcludeFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
@@ -50,9 +54,12 @@ import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.model.MessageRange.Type;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
 import org.apache.james.mailbox.store.transaction.NonTransactionalMapper;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
+import org.apache.james.mailbox.store.mail.MessageBatchReader;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 
@@ -67,6 +74,9 @@ import static org.apache.james.mailbox.hbase.FlagConvertor.*;
  */
 public class HBaseMessageMapper extends NonTransactionalMapper implements MessageMapper<UUID> {
 
+    private static final Flags.Flag[] SYSTEM_FLAGS = { Flags.Flag.ANSWERED, Flags.Flag.DELETED, Flags.Flag.DRAFT, Flags.Flag.FLAGGED, Flags.Flag.RECENT, Flags.Flag.SEEN, Flags.Flag.USER };
+    private static final int COPY_BUFFER_SIZE = 8192;
+
     private final Configuration conf;
     private final MailboxSession mailboxSession;
     private final UidProvider<UUID> uidProvider;
@@ -471,6 +481,32 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return data;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#add(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    @Override
+    public List<MessageMetaData> add(Mailbox<UUID> mailbox, List<Message<UUID>> messages) throws MailboxException {
+        List<MessageMetaData> data = new ArrayList<MessageMetaData>(messages.size());
+        if (messages.isEmpty()) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size());
+        // if a mailbox does not support mod-sequences the provider may be null
+        long modSeq = -1;
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        for (Message<UUID> message : messages) {
+            message.setUid(uid++);
+            if (modSeqProvider != null) {
+                message.setModSeq(modSeq);
+            }
+            data.add(save(mailbox, message));
+        }
+        return data;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.james.mailbox.store.mail.MessageMapper#updateFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.MessageRange)
@@ -536,6 +572,107 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return updatedFlags.iterator();
     }
 
+    /**
+     * Scan only the mod-sequence and flag columns of the messages and write the changed flags with one batch of
+     * {@link Put}s. For a replace the user flags of the messages are deleted with one batch of {@link Delete}s.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#updateSystemFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
+     */
+    @Override
+    public UpdatedFlagsList updateSystemFlags(Mailbox<UUID> mailbox, Flags flags, boolean value, boolean replace, MessageRange set) throws MailboxException {
+        long from = set.getType() == Type.ALL ? 1 : set.getUidFrom();
+        long to;
+        switch (set.getType()) {
+        case ONE:
+            to = from;
+            break;
+        case RANGE:
+            to = set.getUidTo();
+            break;
+        default:
+            to = Long.MAX_VALUE;
+            break;
+        }
+        HTable messages = null;
+        ResultScanner scanner = null;
+        try {
+            messages = new HTable(conf, MESSAGES_TABLE);
+            // uids are stored in reverse order
+            Scan scan = new Scan(messageRowKey(mailbox.getMailboxId(), to), messageRowKey(mailbox.getMailboxId(), from - 1));
+            scan.addFamily(MESSAGES_META_CF);
+            scan.setFilter(new MultipleColumnPrefixFilter(new byte[][] { MESSAGE_MODSEQ, PREFIX_SFLAGS_B, PREFIX_UFLAGS_B }));
+            scan.setCaching(messages.getScannerCaching() * 2);
+            scan.setMaxVersions(1);
+            scanner = messages.getScanner(scan);
+            Result result = scanner.next();
+            long modSeq = -1;
+            if (result != null && modSeqProvider != null) {
+                modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+            }
+            UpdatedFlagsList updatedFlags = new UpdatedFlagsList(flags, value, replace);
+            List<Put> puts = new ArrayList<Put>();
+            List<Delete> deletes = new ArrayList<Delete>();
+            for (; result != null; result = scanner.next()) {
+                long uid = Long.MAX_VALUE - Bytes.toLong(result.getRow(), 16, 8);
+                byte[] oldModSeq = result.getValue(MESSAGES_META_CF, MESSAGE_MODSEQ);
+                int oldBits = 0;
+                List<String> userFlags = new ArrayList<String>();
+                for (KeyValue keyValue : result.raw()) {
+                    byte[] qualifier = keyValue.getQualifier();
+                    if (Bytes.startsWith(qualifier, PREFIX_SFLAGS_B)) {
+                        if (Bytes.equals(MARKER_PRESENT, keyValue.getValue())) {
+                            oldBits |= UpdatedFlagsList.toBit(systemFlagFromBytes(qualifier));
+                        }
+                    } else if (Bytes.startsWith(qualifier, PREFIX_UFLAGS_B)) {
+                        userFlags.add(userFlagFromBytes(qualifier));
+                    }
+                }
+                if (!updatedFlags.isChanged(oldBits, !userFlags.isEmpty())) {
+                    updatedFlags.add(uid, oldModSeq == null ? 0 : Bytes.toLong(oldModSeq), oldBits, userFlags.toArray(new String[userFlags.size()]));
+                } else {
+                    updatedFlags.add(uid, modSeq, oldBits, userFlags.toArray(new String[userFlags.size()]));
+                    int newBits = updatedFlags.apply(oldBits);
+                    Put put = new Put(result.getRow());
+                    for (Flags.Flag flag : SYSTEM_FLAGS) {
+                        if (UpdatedFlagsList.contains(oldBits ^ newBits, flag)) {
+                            put.add(MESSAGES_META_CF, systemFlagToBytes(flag), UpdatedFlagsList.contains(newBits, flag) ? MARKER_PRESENT : MARKER_MISSING);
+                        }
+                    }
+                    put.add(MESSAGES_META_CF, MESSAGE_MODSEQ, Bytes.toBytes(modSeq));
+                    puts.add(put);
+                    if (replace && !userFlags.isEmpty()) {
+                        Delete delete = new Delete(result.getRow());
+                        for (String userFlag : userFlags) {
+                            delete.deleteColumns(MESSAGES_META_CF, userFlagToBytes(userFlag));
+                        }
+                        deletes.add(delete);
+                    }
+                }
+            }
+            if (!puts.isEmpty()) {
+                messages.put(puts);
+                messages.flushCommits();
+            }
+            if (!deletes.isEmpty()) {
+                messages.delete(deletes);
+            }
+            return updatedFlags;
+        } catch (IOException e) {
+            throw new MailboxException("Error setting flags for messages in " + mailbox, e);
+        } finally {
+            if (scanner != null) {
+                scanner.close();
+            }
+            if (messages != null) {
+                try {
+                    messages.close();
+                } catch (IOException e) {
+                    throw new MailboxException("Error setting flags for messages in " + mailbox, e);
+                }
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Message)
@@ -553,14 +690,144 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return save(mailbox, message);
     }
 
-    /*
-     * (non-Javadoc)
-     * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Message)
+    /**
+     * Copy the messages of the range with one multi-put for the metadata of every batch of copies and a single
+     * increment of the message count. The originals are read in batches and their content is streamed from
+     * their rows.
+     *
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
+     */
+    @Override
+    public List<MessageMetaData> copy(Mailbox<UUID> from, Mailbox<UUID> to, MessageRange set) throws MailboxException {
+        return copy(to, new MessageBatchReader<UUID>(this, from, set, FetchType.Full), null);
+    }
+
+    /**
+     * As the row key of a message contains the mailbox, the messages are copied to the target
+     * {@link Mailbox} and the original rows get deleted afterwards with a single batch of deletes.
+     *
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
      */
     @Override
-    public MessageMetaData move(Mailbox<UUID> mailbox, Message<UUID> original) throws MailboxException {
-    	//TODO implement if possible
-    	throw new UnsupportedOperationException();
+    public List<MessageMetaData> move(Mailbox<UUID> from, Mailbox<UUID> to, MessageRange set) throws MailboxException {
+        List<Delete> deletes = new ArrayList<Delete>();
+        List<MessageMetaData> data = copy(to, new MessageBatchReader<UUID>(this, from, set, FetchType.Full), deletes);
+        if (deletes.isEmpty()) {
+            return data;
+        }
+        HTable messages = null;
+        HTable mailboxes = null;
+        try {
+            messages = new HTable(conf, MESSAGES_TABLE);
+            mailboxes = new HTable(conf, MAILBOXES_TABLE);
+            int count = deletes.size();
+            messages.delete(deletes);
+            mailboxes.incrementColumnValue(mailboxRowKey(from.getMailboxId()), MAILBOX_CF, MAILBOX_MESSAGE_COUNT, -count);
+            return data;
+        } catch (IOException ex) {
+            throw new MailboxException("Error deleting moved messages in " + from, ex);
+        } finally {
+            if (messages != null) {
+                try {
+                    messages.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + messages, ex);
+                }
+            }
+            if (mailboxes != null) {
+                try {
+                    mailboxes.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + mailboxes, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the messages read by the {@link MessageBatchReader}, so only one batch of originals is held at a time
+     *
+     * @param to
+     * @param originals
+     * @param deletes if not null a {@link Delete} of every copied original is added to it
+     * @return the metadata of the copies
+     */
+    private List<MessageMetaData> copy(Mailbox<UUID> to, MessageBatchReader<UUID> originals, List<Delete> deletes) throws MailboxException {
+        List<MessageMetaData> data = new ArrayList<MessageMetaData>(originals.size());
+        if (originals.size() == 0) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, to, originals.size());
+        long modSeq = -1;
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, to);
+        }
+
+        HTable messages = null;
+        HTable mailboxes = null;
+        try {
+            messages = new HTable(conf, MESSAGES_TABLE);
+            mailboxes = new HTable(conf, MAILBOXES_TABLE);
+            while (originals.hasNext()) {
+                List<Message<UUID>> batch = originals.next();
+                List<Put> puts = new ArrayList<Put>(batch.size());
+                for (Message<UUID> original : batch) {
+                    HBaseMessage copy = new HBaseMessage(conf, to.getMailboxId(), uid++, modSeq, original);
+                    copyContent(original.getBodyContent(), MESSAGE_DATA_BODY_CF, copy);
+                    copyContent(original.getHeaderContent(), MESSAGE_DATA_HEADERS_CF, copy);
+                    puts.add(metadataToPut(copy));
+                    data.add(new SimpleMessageMetaData(copy));
+                    if (deletes != null) {
+                        deletes.add(new Delete(messageRowKey(original)));
+                    }
+                }
+                messages.put(puts);
+            }
+            // increase the message count for the target mailbox
+            if (!data.isEmpty()) {
+                mailboxes.incrementColumnValue(mailboxRowKey(to.getMailboxId()), MAILBOX_CF, MAILBOX_MESSAGE_COUNT, data.size());
+            }
+            return data;
+        } catch (IOException ex) {
+            throw new MailboxException("Error copying messages to " + to, ex);
+        } finally {
+            if (messages != null) {
+                try {
+                    messages.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + messages, ex);
+                }
+            }
+            if (mailboxes != null) {
+                try {
+                    mailboxes.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + mailboxes, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the content read from the given {@link InputStream} to the column family of the target message row.
+     *
+     * @param content
+     * @param cf
+     * @param target
+     * @throws IOException
+     */
+    private void copyContent(InputStream content, byte[] cf, Message<UUID> target) throws IOException {
+        ChunkOutputStream out = new ChunkOutputStream(conf, MESSAGES_TABLE, cf, messageRowKey(target), MAX_COLUMN_SIZE);
+        try {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            content.close();
+            out.close();
+        }
     }
 
     /*
@@ -581,6 +848,118 @@ public class HBaseMessageMapper extends NonTransactionalMapper implements Messag
         return modSeqProvider.highestModSeq(mailboxSession, mailbox);
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.Set)
+     */
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox<UUID> mailbox, Set<Counter> counters) throws MailboxException {
+        return getMailboxCounters(Collections.singletonList(mailbox), counters).get(0);
+    }
+
+    /**
+     * Read the last uid, highest mod-sequence and message count of all mailboxes with one multi Get on the
+     * mailbox rows. The unseen and recent counts and the first unseen message are not stored in the mailbox
+     * row, so all of them are computed with a single scan over the messages of each mailbox if requested.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(java.util.List, java.util.Set)
+     */
+    @Override
+    public List<MailboxCounters> getMailboxCounters(List<Mailbox<UUID>> mailboxes, Set<Counter> counters) throws MailboxException {
+        List<MailboxCounters> result = new ArrayList<MailboxCounters>(mailboxes.size());
+        if (mailboxes.isEmpty()) {
+            return result;
+        }
+        HTable mailboxesTable = null;
+        HTable messages = null;
+        try {
+            mailboxesTable = new HTable(conf, MAILBOXES_TABLE);
+            List<Get> gets = new ArrayList<Get>(mailboxes.size());
+            for (Mailbox<UUID> mailbox : mailboxes) {
+                Get get = new Get(mailboxRowKey(mailbox.getMailboxId()));
+                get.addColumn(MAILBOX_CF, MAILBOX_LASTUID);
+                get.addColumn(MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ);
+                get.addColumn(MAILBOX_CF, MAILBOX_MESSAGE_COUNT);
+                get.setMaxVersions(1);
+                gets.add(get);
+            }
+            Result[] mailboxRows = mailboxesTable.get(gets);
+
+            boolean scan = counters.contains(Counter.UnseenCount) || counters.contains(Counter.FirstUnseen) || counters.contains(Counter.RecentCount);
+            if (scan) {
+                messages = new HTable(conf, MESSAGES_TABLE);
+            }
+            for (int i = 0; i < mailboxes.size(); i++) {
+                Mailbox<UUID> mailbox = mailboxes.get(i);
+                Result mailboxRow = mailboxRows[i];
+                if (mailboxRow == null || mailboxRow.isEmpty()) {
+                    throw new MailboxException("Row or column not found for mailbox " + mailbox);
+                }
+                MailboxCounters mailboxCounters = new MailboxCounters();
+                mailboxCounters.set(Counter.LastUid, Bytes.toLong(mailboxRow.getValue(MAILBOX_CF, MAILBOX_LASTUID)));
+                mailboxCounters.set(Counter.HighestModSeq, Bytes.toLong(mailboxRow.getValue(MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ)));
+                mailboxCounters.set(Counter.MessageCount, Bytes.toLong(mailboxRow.getValue(MAILBOX_CF, MAILBOX_MESSAGE_COUNT)));
+                if (scan) {
+                    scanFlagCounters(messages, mailbox, mailboxCounters);
+                }
+                result.add(mailboxCounters);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new MailboxException("Fetch of counters failed in mailboxes " + mailboxes, e);
+        } finally {
+            if (messages != null) {
+                try {
+                    messages.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + messages, ex);
+                }
+            }
+            if (mailboxesTable != null) {
+                try {
+                    mailboxesTable.close();
+                } catch (IOException ex) {
+                    throw new MailboxException("Error closing table " + mailboxesTable, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scan the seen and recent flags of all messages in the mailbox and set the unseen count, the recent count
+     * and the first unseen message on the given {@link MailboxCounters}.
+     */
+    private void scanFlagCounters(HTable messages, Mailbox<UUID> mailbox, MailboxCounters mailboxCounters) throws IOException {
+        /* Limit the number of entries scanned to just the mails in this mailbox */
+        Scan scan = new Scan(messageRowKey(mailbox.getMailboxId(), Long.MAX_VALUE), messageRowKey(mailbox.getMailboxId(), 0));
+        // the flag columns are missing for flags which were never set, so the whole family is needed
+        scan.addFamily(MESSAGES_META_CF);
+        scan.setCaching(messages.getScannerCaching() * 2);
+        scan.setMaxVersions(1);
+        ResultScanner scanner = messages.getScanner(scan);
+        try {
+            long unseen = 0;
+            long recent = 0;
+            byte[] firstUnseenRow = null;
+            Result message;
+            while ((message = scanner.next()) != null) {
+                byte[] seen = message.getValue(MESSAGES_META_CF, FLAGS_SEEN);
+                if (seen == null || Bytes.equals(seen, MARKER_MISSING)) {
+                    // the rows are sorted by descending uid, so the last unseen row is the first unseen message
+                    firstUnseenRow = message.getRow();
+                    unseen++;
+                }
+                if (Bytes.equals(message.getValue(MESSAGES_META_CF, FLAGS_RECENT), MARKER_PRESENT)) {
+                    recent++;
+                }
+            }
+            mailboxCounters.set(Counter.UnseenCount, unseen);
+            mailboxCounters.set(Counter.RecentCount, recent);
+            mailboxCounters.set(Counter.FirstUnseen, firstUnseenRow == null ? null : Long.MAX_VALUE - Bytes.toLong(firstUnseenRow, 16, 8));
+        } finally {
+            scanner.close();
+        }
+    }
+
     /**
      * Save the {@link Message} for the given {@link Mailbox} and return the {@link MessageMetaData}
      *
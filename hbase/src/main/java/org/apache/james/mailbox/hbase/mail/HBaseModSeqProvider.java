@@ -75,11 +75,19 @@ public class HBaseModSeqProvider implements ModSeqProvider<UUID> {
 
     @Override
     public long nextModSeq(MailboxSession session, Mailbox<UUID> mailbox) throws MailboxException {
+        return nextModSeqs(session, mailbox, 1);
+    }
+
+    /**
+     * Reserve count mod-sequences with a single HTable.incrementColumnValue(row, family, qualifier, amount) call.
+     */
+    @Override
+    public long nextModSeqs(MailboxSession session, Mailbox<UUID> mailbox, int count) throws MailboxException {
         HTable mailboxes = null;
         try {
             mailboxes = new HTable(conf, MAILBOXES_TABLE);
-            long newValue = mailboxes.incrementColumnValue(mailboxRowKey(mailbox.getMailboxId()), MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ, 1);
-            return newValue;
+            long newValue = mailboxes.incrementColumnValue(mailboxRowKey(mailbox.getMailboxId()), MAILBOX_CF, MAILBOX_HIGHEST_MODSEQ, count);
+            return newValue - count + 1;
         } catch (IOException e) {
             throw new MailboxException("lastUid", e);
         } finally {
@@ -91,12 +91,26 @@ public class HBaseUidProvider implements UidProvider<UUID> {
      */
     @Override
     public long nextUid(MailboxSession session, Mailbox<UUID> mailbox) throws MailboxException {
+        return nextUids(session, mailbox, 1);
+    }
+
+    /**
+     * Reserve count uids with a single HTable.incrementColumnValue(row, family, qualifier, amount) call.
+     * 
+     * @param session the mailbox session
+     * @param mailbox the mailbox for which we are reserving the uids.
+     * @param count the number of uids to reserve
+     * @return the first of the reserved uids.
+     * @throws MailboxException 
+     */
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<UUID> mailbox, int count) throws MailboxException {
         HTable mailboxes = null;
         try {
             mailboxes = new HTable(conf, MAILBOXES_TABLE);
-            long newValue = mailboxes.incrementColumnValue(mailboxRowKey(mailbox.getMailboxId()), MAILBOX_CF, MAILBOX_LASTUID, 1);
+            long newValue = mailboxes.incrementColumnValue(mailboxRowKey(mailbox.getMailboxId()), MAILBOX_CF, MAILBOX_LASTUID, count);
             mailboxes.close();
-            return newValue;
+            return newValue - count + 1;
         } catch (IOException e) {
             throw new MailboxException("lastUid", e);
         } finally {
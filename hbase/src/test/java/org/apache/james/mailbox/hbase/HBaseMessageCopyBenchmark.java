@@ -0,0 +1,63 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.hbase;
+
+import static org.apache.james.mailbox.hbase.HBaseNames.MAILBOXES;
+import static org.apache.james.mailbox.hbase.HBaseNames.MAILBOXES_TABLE;
+import static org.apache.james.mailbox.hbase.HBaseNames.MAILBOX_CF;
+import static org.apache.james.mailbox.hbase.HBaseNames.MESSAGES;
+import static org.apache.james.mailbox.hbase.HBaseNames.MESSAGES_META_CF;
+import static org.apache.james.mailbox.hbase.HBaseNames.MESSAGES_TABLE;
+import static org.apache.james.mailbox.hbase.HBaseNames.MESSAGE_DATA_BODY_CF;
+import static org.apache.james.mailbox.hbase.HBaseNames.MESSAGE_DATA_HEADERS_CF;
+
+import org.apache.james.mailbox.AbstractMessageCopyBenchmark;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
+import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.hbase.mail.HBaseModSeqProvider;
+import org.apache.james.mailbox.hbase.mail.HBaseUidProvider;
+
+/**
+ * Measures the copy of messages between two HBase mailboxes, stored in the mini cluster of the tests.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class HBaseMessageCopyBenchmark extends AbstractMessageCopyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new HBaseMessageCopyBenchmark().run();
+        // the mini cluster is only stopped by the shutdown hook
+        System.exit(0);
+    }
+
+    @Override
+    protected MailboxManager createMailboxManager() throws Exception {
+        HBaseClusterSingleton cluster = HBaseClusterSingleton.build();
+        cluster.ensureTable(MAILBOXES_TABLE, new byte[][] { MAILBOX_CF });
+        cluster.ensureTable(MESSAGES_TABLE, new byte[][] { MESSAGES_META_CF, MESSAGE_DATA_HEADERS_CF, MESSAGE_DATA_BODY_CF });
+        cluster.clearTable(MAILBOXES);
+        cluster.clearTable(MESSAGES);
+        HBaseMailboxSessionMapperFactory mapperFactory = new HBaseMailboxSessionMapperFactory(cluster.getConf(),
+                new HBaseUidProvider(cluster.getConf()), new HBaseModSeqProvider(cluster.getConf()));
+        HBaseMailboxManager manager = new HBaseMailboxManager(mapperFactory, null, new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver());
+        manager.init();
+        return manager;
+    }
+}
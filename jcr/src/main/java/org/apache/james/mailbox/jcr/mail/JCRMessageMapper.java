@@ -418,14 +418,37 @@ public class JCRMessageMapper extends AbstractMessageMapper<String> implements J
     }
 
     /**
-     * (non-Javadoc)
+     * Move the node of the message below the node of the target mailbox, so the content is not copied.
+     * 
+     * @see org.apache.james.mailbox.store.mail.AbstractMessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox,
+     *      org.apache.james.mailbox.store.mail.model.Mailbox, long, long, org.apache.james.mailbox.store.mail.model.Message)
+     */
+    @Override
+    protected MessageMetaData move(Mailbox<String> from, Mailbox<String> to, long uid, long modSeq, Message<String> original)
+            throws MailboxException {
+        try {
+            Node node = ((JCRMessage) original).getNode();
+            getSession().move(node.getPath(),
+                    getSession().getNodeByIdentifier(to.getMailboxId()).getPath() + NODE_DELIMITER + String.valueOf(uid));
+            node.setProperty(JCRMessage.MAILBOX_UUID_PROPERTY, to.getMailboxId());
+            node.setProperty(JCRMessage.UID_PROPERTY, uid);
+            node.setProperty(JCRMessage.MODSEQ_PROPERTY, modSeq);
+            // A moved message is recent in the target mailbox, like a copy
+            node.setProperty(JCRMessage.RECENT_PROPERTY, true);
+            return new SimpleMessageMetaData(new JCRMessage(node, mailboxSession.getLog()));
+        } catch (RepositoryException e) {
+            throw new MailboxException("Unable to move message " + original + " to mailbox " + to, e);
+        }
+    }
+
+    /**
+     * The node is moved, so the content is not needed
      * 
-     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox,
-     *      org.apache.james.mailbox.store.mail.model.Message)
+     * @see org.apache.james.mailbox.store.mail.AbstractMessageMapper#getMoveFetchType()
      */
     @Override
-    public MessageMetaData move(Mailbox<String> mailbox, Message<String> original) throws MailboxException {
-        throw new UnsupportedOperationException("Not implemented - see https://issues.apache.org/jira/browse/IMAP-370");
+    protected FetchType getMoveFetchType() {
+        return FetchType.Metadata;
     }
 
     @Override
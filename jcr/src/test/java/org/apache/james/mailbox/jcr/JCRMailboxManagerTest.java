@@ -30,7 +30,7 @@ import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.jcr.mail.JCRModSeqProvider;
 import org.apache.james.mailbox.jcr.mail.JCRUidProvider;
-import org.apache.james.mailbox.store.JVMMailboxPathLocker;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
 import org.junit.After;
 import static org.junit.Assert.fail;
 import org.junit.Before;
@@ -86,7 +86,7 @@ public class JCRMailboxManagerTest extends AbstractMailboxManagerTest {
         // Register imap cnd file
         JCRUtils.registerCnd(repository, workspace, user, pass);
         MailboxSessionJCRRepository sessionRepos = new GlobalMailboxSessionJCRRepository(repository, workspace, user, pass);
-        JVMMailboxPathLocker locker = new JVMMailboxPathLocker();
+        ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
         JCRUidProvider uidProvider = new JCRUidProvider(locker, sessionRepos);
         JCRModSeqProvider modSeqProvider = new JCRModSeqProvider(locker, sessionRepos);
         JCRMailboxSessionMapperFactory mf = new JCRMailboxSessionMapperFactory(sessionRepos, uidProvider, modSeqProvider);
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.jcr;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+import org.apache.james.mailbox.AbstractMessageCopyBenchmark;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
+import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.jcr.mail.JCRModSeqProvider;
+import org.apache.james.mailbox.jcr.mail.JCRUidProvider;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
+import org.xml.sax.InputSource;
+
+/**
+ * Measures the copy of messages between two JCR mailboxes. The repository is created below target/jackrabbit-benchmark.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class JCRMessageCopyBenchmark extends AbstractMessageCopyBenchmark {
+
+    private static final String JACKRABBIT_HOME = "target/jackrabbit-benchmark";
+
+    private RepositoryImpl repository;
+
+    public static void main(String[] args) throws Exception {
+        new JCRMessageCopyBenchmark().run();
+    }
+
+    @Override
+    protected MailboxManager createMailboxManager() throws Exception {
+        FileUtils.deleteDirectory(new File(JACKRABBIT_HOME));
+        String user = "user";
+        String pass = "pass";
+        String workspace = null;
+        RepositoryConfig config = RepositoryConfig.create(new InputSource(JCRMessageCopyBenchmark.class.getClassLoader().getResourceAsStream("test-repository.xml")), JACKRABBIT_HOME);
+        repository = RepositoryImpl.create(config);
+        JCRUtils.registerCnd(repository, workspace, user, pass);
+
+        MailboxSessionJCRRepository sessionRepos = new GlobalMailboxSessionJCRRepository(repository, workspace, user, pass);
+        ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
+        JCRMailboxSessionMapperFactory mf = new JCRMailboxSessionMapperFactory(sessionRepos, new JCRUidProvider(locker, sessionRepos),
+                new JCRModSeqProvider(locker, sessionRepos));
+        JCRMailboxManager manager = new JCRMailboxManager(mf, null, locker, new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver());
+        manager.init();
+        return manager;
+    }
+
+    @Override
+    protected void destroy() throws Exception {
+        repository.shutdown();
+        FileUtils.deleteDirectory(new File(JACKRABBIT_HOME));
+    }
+}
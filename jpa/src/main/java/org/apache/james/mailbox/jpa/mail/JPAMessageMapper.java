@@ -18,11 +18,17 @@
  ****************************************************************/
 package org.apache.james.mailbox.jpa.mail;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
@@ -41,17 +47,25 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageRange.Type;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
 import org.apache.james.mailbox.store.mail.AbstractMessageMapper;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 import org.apache.openjpa.persistence.ArgumentException;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
 
 /**
  * JPA implementation of a {@link MessageMapper}. This class is not thread-safe!
  */
 public class JPAMessageMapper extends AbstractMessageMapper<Long> implements MessageMapper<Long> {
+    private static final String[] SYSTEM_FLAG_FIELDS = { "answered", "deleted", "draft", "flagged", "recent", "seen" };
+    private static final Flag[] SYSTEM_FLAGS = { Flag.ANSWERED, Flag.DELETED, Flag.DRAFT, Flag.FLAGGED, Flag.RECENT, Flag.SEEN };
+    private static final String[] SYSTEM_FLAG_UPDATE_QUERIES = { "updateAnsweredInMailboxBetweenUIDs", "updateDeletedInMailboxBetweenUIDs",
+            "updateDraftInMailboxBetweenUIDs", "updateFlaggedInMailboxBetweenUIDs", "updateRecentInMailboxBetweenUIDs", "updateSeenInMailboxBetweenUIDs" };
+
     protected EntityManagerFactory entityManagerFactory;
     protected EntityManager entityManager;
 
@@ -178,6 +192,81 @@ public class JPAMessageMapper extends AbstractMessageMapper<Long> implements Mes
         }
     }
 
+    /**
+     * Fetch all counters with one aggregate query. Only if the mailbox is empty the last uid and highest mod-sequence
+     * need to be read from the mailbox on their own. As JPQL does not allow conditional expressions in MIN, the first
+     * unseen message is looked up with an extra query if requested.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(Mailbox, Set)
+     */
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox<Long> mailbox, Set<Counter> counters) throws MailboxException {
+        return getMailboxCounters(Collections.singletonList(mailbox), counters).get(0);
+    }
+
+    /**
+     * Fetch the counters of all mailboxes with one aggregate query. The last uid and highest mod-sequence are
+     * asked from the providers if requested, as a leasing provider hands out values which are below the ones
+     * stored in the mailbox. As JPQL does not allow conditional expressions in MIN, the first unseen message
+     * is looked up with an extra query per mailbox if requested.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(List, Set)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<MailboxCounters> getMailboxCounters(List<Mailbox<Long>> mailboxes, Set<Counter> counters) throws MailboxException {
+        if (mailboxes.isEmpty()) {
+            return new ArrayList<MailboxCounters>();
+        }
+        List<Long> ids = new ArrayList<Long>(mailboxes.size());
+        for (Mailbox<Long> mailbox : mailboxes) {
+            ids.add(mailbox.getMailboxId());
+        }
+        try {
+            List<Object[]> rows = getEntityManager().createNamedQuery("findCountersOfMailboxes")
+                    .setParameter("idsParam", ids).getResultList();
+            Map<Long, Object[]> rowsById = new HashMap<Long, Object[]>();
+            for (Object[] row : rows) {
+                rowsById.put(toLong(row[0]), row);
+            }
+
+            List<MailboxCounters> result = new ArrayList<MailboxCounters>(mailboxes.size());
+            for (Mailbox<Long> mailbox : mailboxes) {
+                MailboxCounters mailboxCounters = new MailboxCounters();
+                if (counters.contains(Counter.LastUid)) {
+                    mailboxCounters.set(Counter.LastUid, getLastUid(mailbox));
+                }
+                if (counters.contains(Counter.HighestModSeq)) {
+                    mailboxCounters.set(Counter.HighestModSeq, getHighestModSeq(mailbox));
+                }
+                Object[] row = rowsById.get(mailbox.getMailboxId());
+                if (row == null) {
+                    // there are no messages in the mailbox
+                    mailboxCounters.set(Counter.MessageCount, 0L);
+                    mailboxCounters.set(Counter.UnseenCount, 0L);
+                    mailboxCounters.set(Counter.RecentCount, 0L);
+                    mailboxCounters.set(Counter.FirstUnseen, null);
+                } else {
+                    long unseen = toLong(row[2]);
+                    mailboxCounters.set(Counter.MessageCount, toLong(row[1]));
+                    mailboxCounters.set(Counter.UnseenCount, unseen);
+                    mailboxCounters.set(Counter.RecentCount, toLong(row[3]));
+                    if (counters.contains(Counter.FirstUnseen)) {
+                        mailboxCounters.set(Counter.FirstUnseen, unseen == 0 ? null : findFirstUnseenMessageUid(mailbox));
+                    }
+                }
+                result.add(mailboxCounters);
+            }
+            return result;
+        } catch (PersistenceException e) {
+            throw new MailboxException("Fetch of counters failed in mailboxes " + mailboxes, e);
+        }
+    }
+
+    private long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#delete(org.apache.james.mailbox.store.mail.model.Mailbox,
      *      org.apache.james.mailbox.store.mail.model.Message)
@@ -264,14 +353,133 @@ public class JPAMessageMapper extends AbstractMessageMapper<Long> implements Mes
     }
 
     /**
-     * (non-Javadoc)
+     * Read the uid, mod-sequence and flags of the messages with projection queries and update all changed messages
+     * with JPQL UPDATEs: one for replacing the flags and one per added or removed flag. As user flags can not be
+     * removed by a JPQL statement, replacing the flags of messages which have user flags falls back to update every
+     * message on its own.
      * 
-     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox,
-     *      org.apache.james.mailbox.store.mail.model.Message)
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#updateSystemFlags(Mailbox, Flags, boolean, boolean, MessageRange)
      */
+    @SuppressWarnings("unchecked")
     @Override
-    public MessageMetaData move(Mailbox<Long> mailbox, Message<Long> original) throws MailboxException {
-        throw new UnsupportedOperationException("Not implemented - see https://issues.apache.org/jira/browse/IMAP-370");
+    public UpdatedFlagsList updateSystemFlags(Mailbox<Long> mailbox, Flags flags, boolean value, boolean replace, MessageRange set)
+            throws MailboxException {
+        try {
+            Map<Long, List<String>> userFlagsByUid = new HashMap<Long, List<String>>();
+            List<Object[]> userFlagRows = bindRange(getEntityManager().createNamedQuery("findUserFlagsInMailboxBetweenUIDs"),
+                    mailbox, set).getResultList();
+            if (replace && !userFlagRows.isEmpty()) {
+                return super.updateSystemFlags(mailbox, flags, value, replace, set);
+            }
+            for (Object[] row : userFlagRows) {
+                Long uid = toLong(row[0]);
+                List<String> userFlags = userFlagsByUid.get(uid);
+                if (userFlags == null) {
+                    userFlags = new ArrayList<String>();
+                    userFlagsByUid.put(uid, userFlags);
+                }
+                userFlags.add((String) row[1]);
+            }
+
+            List<Object[]> rows = bindRange(getEntityManager().createNamedQuery("findSystemFlagsInMailboxBetweenUIDs"),
+                    mailbox, set).getResultList();
+            UpdatedFlagsList updatedFlags = new UpdatedFlagsList(flags, value, replace);
+            List<Flags> oldFlagsOfRows = new ArrayList<Flags>(rows.size());
+            List<Long> changedUids = new ArrayList<Long>();
+            for (Object[] row : rows) {
+                long uid = toLong(row[0]);
+                Flags oldFlags = new Flags();
+                for (int i = 0; i < SYSTEM_FLAG_FIELDS.length; i++) {
+                    if (Boolean.TRUE.equals(row[i + 2])) {
+                        oldFlags.add(SYSTEM_FLAGS[i]);
+                    }
+                }
+                List<String> userFlags = userFlagsByUid.get(uid);
+                if (userFlags != null) {
+                    for (String userFlag : userFlags) {
+                        oldFlags.add(userFlag);
+                    }
+                }
+                oldFlagsOfRows.add(oldFlags);
+                if (updatedFlags.isChanged(oldFlags)) {
+                    changedUids.add(uid);
+                }
+            }
+            // only allocate a mod-sequence if a message is changed
+            long modSeq = changedUids.isEmpty() ? -1 : nextModSeq(mailbox);
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                Flags oldFlags = oldFlagsOfRows.get(i);
+                updatedFlags.add(toLong(row[0]), updatedFlags.isChanged(oldFlags) ? modSeq : toLong(row[1]), oldFlags);
+            }
+
+            if (!changedUids.isEmpty()) {
+                if (replace) {
+                    Query update = bindRange(getEntityManager().createNamedQuery("replaceSystemFlagsInMailboxBetweenUIDs"), mailbox, set);
+                    update.setParameter("modSeqParam", modSeq);
+                    for (int i = 0; i < SYSTEM_FLAG_FIELDS.length; i++) {
+                        update.setParameter(SYSTEM_FLAG_FIELDS[i] + "Param", flags.contains(SYSTEM_FLAGS[i]));
+                    }
+                    update.executeUpdate();
+                } else {
+                    for (int i = 0; i < SYSTEM_FLAG_FIELDS.length; i++) {
+                        if (flags.contains(SYSTEM_FLAGS[i])) {
+                            bindRange(getEntityManager().createNamedQuery(SYSTEM_FLAG_UPDATE_QUERIES[i]), mailbox, set)
+                                    .setParameter("modSeqParam", modSeq).setParameter("valueParam", value).executeUpdate();
+                        }
+                    }
+                }
+                // the bulk update bypasses the already loaded messages, so make sure the changed ones are reloaded
+                refreshLoadedMessages(mailbox, changedUids);
+            }
+            return updatedFlags;
+        } catch (PersistenceException e) {
+            throw new MailboxException("Update of flags failed for MessageRange " + set + " in mailbox " + mailbox, e);
+        }
+    }
+
+    /**
+     * Refresh the messages of the mailbox with the given uids which are managed by the EntityManager
+     */
+    private void refreshLoadedMessages(Mailbox<Long> mailbox, List<Long> uids) {
+        EntityManager entityManager = getEntityManager();
+        Set<Long> uidSet = new HashSet<Long>(uids);
+        for (Object managed : OpenJPAPersistence.cast(entityManager).getManagedObjects()) {
+            if (managed instanceof AbstractJPAMessage) {
+                AbstractJPAMessage message = (AbstractJPAMessage) managed;
+                if (mailbox.getMailboxId().equals(message.getMailboxId()) && uidSet.contains(message.getUid())) {
+                    entityManager.refresh(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bind the id of the mailbox and the bounds of the range to the parameters of a query which selects the
+     * messages with <code>message.uid BETWEEN :fromParam AND :toParam</code>
+     */
+    private Query bindRange(Query query, Mailbox<Long> mailbox, MessageRange set) {
+        query.setParameter("idParam", mailbox.getMailboxId());
+        switch (set.getType()) {
+        case ONE:
+            query.setParameter("fromParam", set.getUidFrom());
+            query.setParameter("toParam", set.getUidFrom());
+            break;
+        case FROM:
+            query.setParameter("fromParam", set.getUidFrom());
+            query.setParameter("toParam", Long.MAX_VALUE);
+            break;
+        case RANGE:
+            query.setParameter("fromParam", set.getUidFrom());
+            query.setParameter("toParam", set.getUidTo());
+            break;
+        default:
+        case ALL:
+            query.setParameter("fromParam", 0L);
+            query.setParameter("toParam", Long.MAX_VALUE);
+            break;
+        }
+        return query;
     }
 
     /**
@@ -61,12 +61,17 @@ public class JPAModSeqProvider extends AbstractLockingModSeqProvider<Long>{
 
     @Override
     protected long lockedNextModSeq(MailboxSession session, Mailbox<Long> mailbox) throws MailboxException {
+        return lockedNextModSeqs(session, mailbox, 1);
+    }
+
+    @Override
+    protected long lockedNextModSeqs(MailboxSession session, Mailbox<Long> mailbox, int count) throws MailboxException {
         EntityManager manager = null;
         try {
             manager = factory.createEntityManager();
             manager.getTransaction().begin();
             JPAMailbox m = manager.find(JPAMailbox.class, mailbox.getMailboxId());
-            long modSeq = m.consumeModSeq();
+            long modSeq = m.consumeModSeqs(count);
             manager.persist(m);
             manager.getTransaction().commit();
             return modSeq;
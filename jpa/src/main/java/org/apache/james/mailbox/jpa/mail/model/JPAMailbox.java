@@ -211,9 +211,33 @@ public class JPAMailbox implements Mailbox<Long> {
         return ++lastUid;
     }
     
+    /**
+     * Consume count uids and return the first of them
+     * 
+     * @param count
+     * @return firstUid
+     */
+    public long consumeUids(int count) {
+        long first = lastUid + 1;
+        lastUid += count;
+        return first;
+    }
+
     public long consumeModSeq() {
         return ++highestModSeq;
     }
+
+    /**
+     * Consume count mod-sequences and return the first of them
+     * 
+     * @param count
+     * @return firstModSeq
+     */
+    public long consumeModSeqs(int count) {
+        long first = highestModSeq + 1;
+        highestModSeq += count;
+        return first;
+    }
     
     /* (non-Javadoc)
      * @see org.apache.james.mailbox.store.mail.model.Mailbox#getACL()
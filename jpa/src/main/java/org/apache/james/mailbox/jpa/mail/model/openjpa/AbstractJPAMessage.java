@@ -88,6 +88,26 @@ import org.apache.openjpa.persistence.jdbc.Index;
             query="SELECT COUNT(message) FROM Message message WHERE message.mailbox.mailboxId = :idParam AND message.seen=FALSE"),                     
     @NamedQuery(name="countMessagesInMailbox",
             query="SELECT COUNT(message) FROM Message message WHERE message.mailbox.mailboxId = :idParam"),                    
+    @NamedQuery(name="findCountersOfMailboxes",
+            query="SELECT message.mailbox.mailboxId, COUNT(message), SUM(CASE WHEN message.seen = FALSE THEN 1 ELSE 0 END), SUM(CASE WHEN message.recent = TRUE THEN 1 ELSE 0 END) FROM Message message WHERE message.mailbox.mailboxId IN :idsParam GROUP BY message.mailbox.mailboxId"),
+    @NamedQuery(name="findUserFlagsInMailboxBetweenUIDs",
+            query="SELECT message.uid, flag.name FROM Message message JOIN message.userFlags flag WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam"),
+    @NamedQuery(name="findSystemFlagsInMailboxBetweenUIDs",
+            query="SELECT message.uid, message.modSeq, message.answered, message.deleted, message.draft, message.flagged, message.recent, message.seen FROM Message message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam ORDER BY message.uid"),
+    @NamedQuery(name="replaceSystemFlagsInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.answered = :answeredParam, message.deleted = :deletedParam, message.draft = :draftParam, message.flagged = :flaggedParam, message.recent = :recentParam, message.seen = :seenParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND (message.answered <> :answeredParam OR message.deleted <> :deletedParam OR message.draft <> :draftParam OR message.flagged <> :flaggedParam OR message.recent <> :recentParam OR message.seen <> :seenParam)"),
+    @NamedQuery(name="updateAnsweredInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.answered = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.answered <> :valueParam"),
+    @NamedQuery(name="updateDeletedInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.deleted = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.deleted <> :valueParam"),
+    @NamedQuery(name="updateDraftInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.draft = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.draft <> :valueParam"),
+    @NamedQuery(name="updateFlaggedInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.flagged = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.flagged <> :valueParam"),
+    @NamedQuery(name="updateRecentInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.recent = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.recent <> :valueParam"),
+    @NamedQuery(name="updateSeenInMailboxBetweenUIDs",
+            query="UPDATE Message message SET message.modSeq = :modSeqParam, message.seen = :valueParam WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.seen <> :valueParam"),
     @NamedQuery(name="deleteMessages",
             query="DELETE FROM Message message WHERE message.mailbox.mailboxId = :idParam"),
     @NamedQuery(name="findLastUidInMailbox",
@@ -735,6 +735,52 @@ public class MaildirFolder {
         return fileName.substring(0, end);
     }
 
+    /**
+     * Reserves the given number of uids by increasing the last uid in the header of the uidlist.
+     * The reserved uids can be passed to {@link #appendMessage(MailboxSession, String, long)}.
+     * @param session
+     * @param count The number of uids to reserve
+     * @return The first reserved uid
+     * @throws MailboxException
+     */
+    public long reserveUids(final MailboxSession session, final int count) throws MailboxException {
+        return locker.executeWithLock(session, path, new LockAwareExecution<Long>() {
+
+            @Override
+            public Long execute() throws MailboxException {
+                File uidList = uidFile;
+                FileReader fileReader = null;
+                BufferedReader reader = null;
+                PrintWriter pw = null;
+                try {
+                    if (!uidList.isFile())
+                        createUidFile();
+                    fileReader = new FileReader(uidList);
+                    reader = new BufferedReader(fileReader);
+                    String line = reader.readLine();
+                    if (line != null)
+                        readUidListHeader(line);
+                    ArrayList<String> lines = new ArrayList<String>();
+                    while ((line = reader.readLine()) != null)
+                        lines.add(line);
+                    long first = lastUid + 1;
+                    lastUid += count;
+                    pw = new PrintWriter(uidList);
+                    pw.println(createUidListHeader());
+                    for (String entry : lines)
+                        pw.println(entry);
+                    return first;
+                } catch (IOException e) {
+                    throw new MailboxException("Unable to reserve uids", e);
+                } finally {
+                    IOUtils.closeQuietly(pw);
+                    IOUtils.closeQuietly(reader);
+                    IOUtils.closeQuietly(fileReader);
+                }
+            }
+        }, true);
+    }
+
     /**
      * Appends a message to the uidlist and returns its uid.
      * @param session
@@ -743,6 +789,20 @@ public class MaildirFolder {
      * @throws IOException
      */
     public long appendMessage(final MailboxSession session, final String name) throws MailboxException {
+        return appendMessage(session, name, 0);
+    }
+
+    /**
+     * Appends a message to the uidlist with the given uid, which was reserved by
+     * {@link #reserveUids(MailboxSession, int)} before. If the uid is not valid or already
+     * used by another message the next free uid is used instead.
+     * @param session
+     * @param name The name of the message's file
+     * @param reservedUid The uid to use for the message
+     * @return The uid of the message
+     * @throws MailboxException
+     */
+    public long appendMessage(final MailboxSession session, final String name, final long reservedUid) throws MailboxException {
         return locker.executeWithLock(session, path, new LockAwareExecution<Long>() {
             
             @Override
@@ -761,9 +821,18 @@ public class MaildirFolder {
                         if (line != null)
                             readUidListHeader(line);
                         ArrayList<String> lines = new ArrayList<String>();
-                        while ((line = reader.readLine()) != null)
+                        boolean used = reservedUid <= 0;
+                        String prefix = String.valueOf(reservedUid) + " ";
+                        while ((line = reader.readLine()) != null) {
                             lines.add(line);
-                        uid = getNextUid();
+                            used = used || line.startsWith(prefix);
+                        }
+                        if (used) {
+                            uid = getNextUid();
+                        } else {
+                            uid = reservedUid;
+                            lastUid = Math.max(lastUid, uid);
+                        }
                         lines.add(String.valueOf(uid) + " " + name);
                         messageCount++;
                         pw = new PrintWriter(uidList);
@@ -861,6 +930,21 @@ public class MaildirFolder {
      * @throws MailboxException If the file cannot be deleted of there is a problem with the uid list
      */
     public MaildirMessageName delete(final MailboxSession session, final long uid) throws MailboxException {        
+        return removeFromUidList(session, uid, true);
+    }
+
+    /**
+     * Removes the entry of the given uid from the uid list, but keeps the file. This is used once the
+     * file was moved to another folder.
+     * @param uid The uid of the message to remove
+     * @return The {@link MaildirMessageName} of the removed message
+     * @throws MailboxException If there is a problem with the uid list
+     */
+    public MaildirMessageName remove(final MailboxSession session, final long uid) throws MailboxException {
+        return removeFromUidList(session, uid, false);
+    }
+
+    private MaildirMessageName removeFromUidList(final MailboxSession session, final long uid, final boolean deleteFile) throws MailboxException {
         return locker.executeWithLock(session, path, new LockAwareExecution<MaildirMessageName>() {
             
             @Override
@@ -896,7 +980,7 @@ public class MaildirFolder {
                         }
                     }
                     if (deletedMessage != null) {
-                        if (!deletedMessage.getFile().delete())
+                        if (deleteFile && !deletedMessage.getFile().delete())
                             throw new IOException("Cannot delete file " + deletedMessage.getFile().getAbsolutePath());
                         writer = new PrintWriter(uidList);
                         writer.println(createUidListHeader());
@@ -21,6 +21,7 @@ package org.apache.james.mailbox.maildir;
 import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
@@ -29,7 +30,7 @@ import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.maildir.mail.model.MaildirMailbox;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
-import org.apache.james.mailbox.store.JVMMailboxPathLocker;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
@@ -50,6 +51,9 @@ public class MaildirStore implements UidProvider<Integer>, ModSeqProvider<Intege
 
     private boolean messageNameStrictParse = false;
 
+    // the last mod-sequence which was handed out, so blocks requested within the same millisecond do not overlap
+    private final AtomicLong lastModSeq = new AtomicLong();
+
     /**
      * Construct a MaildirStore with a location. The location String
      * currently may contain the
@@ -66,7 +70,7 @@ public class MaildirStore implements UidProvider<Integer>, ModSeqProvider<Intege
     }
     
     public MaildirStore(String maildirLocation) {
-        this(maildirLocation, new JVMMailboxPathLocker());
+        this(maildirLocation, new ReferenceCountingMailboxPathLocker());
     }
     
     
@@ -247,9 +251,37 @@ public class MaildirStore implements UidProvider<Integer>, ModSeqProvider<Intege
         }
     }
 
+    /**
+     * The uids are reserved in the uidlist of the {@link MaildirFolder}, so they are not used
+     * by other appends until the messages are saved with them.
+     * 
+     * @see org.apache.james.mailbox.store.mail.UidProvider#nextUids(org.apache.james.mailbox.MailboxSession, org.apache.james.mailbox.store.mail.model.Mailbox, int)
+     */
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<Integer> mailbox, int count) throws MailboxException {
+        return createMaildirFolder(mailbox).reserveUids(session, count);
+    }
+
     @Override
     public long nextModSeq(MailboxSession session, Mailbox<Integer> mailbox) throws MailboxException {
-        return System.currentTimeMillis();
+        return nextModSeqs(session, mailbox, 1);
+    }
+
+    /**
+     * The mod-sequences are based on the current time. The whole block is reserved, so the next
+     * call returns a mod-sequence after it, even within the same millisecond.
+     * 
+     * @see org.apache.james.mailbox.store.mail.ModSeqProvider#nextModSeqs(org.apache.james.mailbox.MailboxSession, org.apache.james.mailbox.store.mail.model.Mailbox, int)
+     */
+    @Override
+    public long nextModSeqs(MailboxSession session, Mailbox<Integer> mailbox, int count) throws MailboxException {
+        while (true) {
+            long last = lastModSeq.get();
+            long first = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastModSeq.compareAndSet(last, first + count - 1)) {
+                return first;
+            }
+        }
     }
 
     @Override
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedMap;
 
 import javax.mail.Flags;
@@ -47,6 +48,7 @@ import org.apache.james.mailbox.model.MessageRange.Type;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
 import org.apache.james.mailbox.store.mail.AbstractMessageMapper;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
@@ -95,6 +97,73 @@ public class MaildirMessageMapper extends AbstractMessageMapper<Integer> {
         return count;
     }
 
+    /**
+     * Fetch all counters with one pass over the new and cur folder of the mailbox. The uid list is only read
+     * if the first unseen message was requested, as it is needed to map the message to its uid. The recent
+     * messages are the ones in the new folder.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.Set)
+     */
+    @Override
+    public MailboxCounters getMailboxCounters(Mailbox<Integer> mailbox, Set<Counter> counters) throws MailboxException {
+        MaildirFolder folder = maildirStore.createMaildirFolder(mailbox);
+        MailboxCounters result = new MailboxCounters();
+        if (counters.contains(Counter.FirstUnseen)) {
+            SortedMap<Long, MaildirMessageName> uidMap = folder.getUidMap(mailboxSession, 0, -1);
+            long unseen = 0;
+            Long firstUnseen = null;
+            for (Entry<Long, MaildirMessageName> entry : uidMap.entrySet()) {
+                if (MaildirMessageName.FILTER_UNSEEN_MESSAGES.accept(null, entry.getValue().getFullName())) {
+                    if (firstUnseen == null) {
+                        firstUnseen = entry.getKey();
+                    }
+                    unseen++;
+                }
+            }
+            result.set(Counter.MessageCount, (long) uidMap.size());
+            result.set(Counter.UnseenCount, unseen);
+            result.set(Counter.FirstUnseen, firstUnseen);
+            if (counters.contains(Counter.RecentCount)) {
+                String[] newFiles = folder.getNewFolder().list();
+                if (newFiles == null)
+                    throw new MailboxException("Unable to count recent messages in Mailbox " + mailbox, new IOException(
+                            "Not a valid Maildir folder: " + maildirStore.getFolderName(mailbox)));
+                result.set(Counter.RecentCount, (long) newFiles.length);
+            }
+        } else if (counters.contains(Counter.MessageCount) || counters.contains(Counter.UnseenCount) || counters.contains(Counter.RecentCount)) {
+            String[] newFiles = folder.getNewFolder().list();
+            String[] curFiles = folder.getCurFolder().list();
+            if (newFiles == null || curFiles == null)
+                throw new MailboxException("Unable to count messages in Mailbox " + mailbox, new IOException(
+                        "Not a valid Maildir folder: " + maildirStore.getFolderName(mailbox)));
+            long unseen = 0;
+            for (String name : newFiles) {
+                if (MaildirMessageName.FILTER_UNSEEN_MESSAGES.accept(null, name)) {
+                    unseen++;
+                }
+            }
+            for (String name : curFiles) {
+                if (MaildirMessageName.FILTER_UNSEEN_MESSAGES.accept(null, name)) {
+                    unseen++;
+                }
+            }
+            result.set(Counter.MessageCount, (long) (newFiles.length + curFiles.length));
+            result.set(Counter.UnseenCount, unseen);
+            result.set(Counter.RecentCount, (long) newFiles.length);
+        }
+        if (counters.contains(Counter.LastUid)) {
+            result.set(Counter.LastUid, folder.getLastUid(mailboxSession));
+        }
+        if (counters.contains(Counter.HighestModSeq)) {
+            try {
+                result.set(Counter.HighestModSeq, folder.getHighestModSeq());
+            } catch (IOException e) {
+                throw new MailboxException("Unable to get highest mod-sequence for mailbox " + mailbox, e);
+            }
+        }
+        return result;
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#delete(org.apache.james.mailbox.store.mail.model.Mailbox,
      *      org.apache.james.mailbox.store.mail.model.Message)
@@ -274,14 +343,47 @@ public class MaildirMessageMapper extends AbstractMessageMapper<Integer> {
     }
 
     /**
-     * (non-Javadoc)
+     * Rename the file of the message into the "new" folder of the target mailbox, so the content is not copied.
+     * The uid which was reserved for the message is used, unless the target folder already listed it.
      * 
-     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox,
+     * @see org.apache.james.mailbox.store.mail.AbstractMessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox,
+     *      org.apache.james.mailbox.store.mail.model.Mailbox, long, long,
      *      org.apache.james.mailbox.store.mail.model.Message)
      */
     @Override
-    public MessageMetaData move(Mailbox<Integer> mailbox, Message<Integer> original) throws MailboxException {
-        throw new UnsupportedOperationException("Not implemented - see https://issues.apache.org/jira/browse/IMAP-370");
+    protected MessageMetaData move(Mailbox<Integer> from, Mailbox<Integer> to, long uid, long modSeq, Message<Integer> original)
+            throws MailboxException {
+        MaildirFolder fromFolder = maildirStore.createMaildirFolder(from);
+        MaildirFolder toFolder = maildirStore.createMaildirFolder(to);
+        MaildirMessageName originalName = fromFolder.getMessageNameByUid(mailboxSession, original.getUid());
+        if (originalName == null) {
+            throw new MailboxException("Unable to find message with uid " + original.getUid() + " in mailbox " + from);
+        }
+        MaildirMessageName messageName = MaildirMessageName.createUniqueName(toFolder, original.getFullContentOctets());
+        // A moved message is recent in the target mailbox, like a copy
+        Flags flags = original.createFlags();
+        flags.add(Flag.RECENT);
+        messageName.setFlags(flags);
+        File newMessageFile = new File(toFolder.getNewFolder(), messageName.getFullName());
+        try {
+            FileUtils.moveFile(originalName.getFile(), newMessageFile);
+        } catch (IOException e) {
+            throw new MailboxException("Failure while moving Message " + original + " to Mailbox " + to, e);
+        }
+        fromFolder.remove(mailboxSession, original.getUid());
+
+        long newUid = toFolder.appendMessage(mailboxSession, newMessageFile.getName(), uid);
+        return new SimpleMessageMetaData(newUid, newMessageFile.lastModified(), flags, original.getFullContentOctets(), original.getInternalDate());
+    }
+
+    /**
+     * The file is renamed, so the content is not needed
+     * 
+     * @see org.apache.james.mailbox.store.mail.AbstractMessageMapper#getMoveFetchType()
+     */
+    @Override
+    protected FetchType getMoveFetchType() {
+        return FetchType.Metadata;
     }
 
     /**
@@ -293,6 +395,7 @@ public class MaildirMessageMapper extends AbstractMessageMapper<Integer> {
     protected MessageMetaData copy(Mailbox<Integer> mailbox, long uid, long modSeq, Message<Integer> original)
             throws MailboxException {
         SimpleMessage<Integer> theCopy = new SimpleMessage<Integer>(mailbox, original);
+        theCopy.setUid(uid);
         Flags flags = theCopy.createFlags();
         flags.add(Flag.RECENT);
         theCopy.setFlags(flags);
@@ -371,7 +474,7 @@ public class MaildirMessageMapper extends AbstractMessageMapper<Integer> {
             throw new MailboxException("Failure while save Message " + message + " in Mailbox " + mailbox, e);
         }
         try {
-            uid = folder.appendMessage(mailboxSession, newMessageFile.getName());
+            uid = folder.appendMessage(mailboxSession, newMessageFile.getName(), message.getUid());
             message.setUid(uid);
             message.setModSeq(newMessageFile.lastModified());
             return new SimpleMessageMetaData(message);
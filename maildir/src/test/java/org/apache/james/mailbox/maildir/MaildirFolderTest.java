@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.maildir;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaildirFolderTest {
+
+    private static final String MAILDIR_HOME = "target/MaildirFolder";
+
+    private MailboxSession session = new MockMailboxSession("test");
+    private MaildirFolder folder;
+
+    @Before
+    public void setUp() {
+        folder = new MaildirFolder(MAILDIR_HOME, new MailboxPath("#private", "test", "INBOX"), new ReferenceCountingMailboxPathLocker());
+        folder.getCurFolder().mkdirs();
+        folder.getNewFolder().mkdirs();
+        folder.getTmpFolder().mkdirs();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(new File(MAILDIR_HOME));
+    }
+
+    @Test
+    public void testReservedUidsAreNotUsedByOtherAppends() throws Exception {
+        long first = folder.reserveUids(session, 3);
+        assertEquals(1, first);
+        assertEquals(3, folder.getLastUid(session));
+
+        // an append without reserved uid gets an uid after the reserved block
+        assertEquals(4, folder.appendMessage(session, "other"));
+        assertEquals(2, folder.appendMessage(session, "second", first + 1));
+        assertEquals(1, folder.appendMessage(session, "first", first));
+        assertEquals(4, folder.getLastUid(session));
+    }
+
+    @Test
+    public void testUsedUidIsNotAppendedTwice() throws Exception {
+        long uid = folder.reserveUids(session, 1);
+        assertEquals(uid, folder.appendMessage(session, "first", uid));
+        assertEquals(uid + 1, folder.appendMessage(session, "second", uid));
+    }
+}
@@ -33,7 +33,7 @@ import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxExistsException;
-import org.apache.james.mailbox.store.JVMMailboxPathLocker;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
 import org.apache.james.mailbox.store.StoreMailboxManager;
 import org.junit.After;
 import org.junit.Before;
@@ -112,13 +112,13 @@ public class MaildirMailboxManagerTest extends AbstractMailboxManagerTest {
             System.out.println("Maildir tests work only on non-windows systems. So skip the test");
         } else {
 
-            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new JVMMailboxPathLocker());
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
             MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
             
             MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
             GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
 
-            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new JVMMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
             manager.init();
             setMailboxManager(manager);
             try {
@@ -146,12 +146,12 @@ public class MaildirMailboxManagerTest extends AbstractMailboxManagerTest {
             System.out.println("Maildir tests work only on non-windows systems. So skip the test");
         } else {
 
-            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new JVMMailboxPathLocker());
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
             MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
             MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
             GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
 
-            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new JVMMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
             manager.init();
             setMailboxManager(manager);
             try {
@@ -169,6 +169,204 @@ public class MaildirMailboxManagerTest extends AbstractMailboxManagerTest {
 
     }
 
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testAppendMessages()
+     */
+    @Test
+    @Override
+    public void testAppendMessages() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testAppendMessages();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testCopyMessages()
+     */
+    @Test
+    @Override
+    public void testCopyMessages() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testCopyMessages();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testMoveMessages()
+     */
+    @Test
+    @Override
+    public void testMoveMessages() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testMoveMessages();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testGetMetaData()
+     */
+    @Test
+    @Override
+    public void testGetMetaData() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testGetMetaData();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testGetStatus()
+     */
+    @Test
+    @Override
+    public void testGetStatus() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testGetStatus();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.AbstractMailboxManagerTest#testSetFlags()
+     */
+    @Test
+    @Override
+    public void testSetFlags() throws MailboxException {
+
+        if (OsDetector.isWindows()) {
+            System.out.println("Maildir tests work only on non-windows systems. So skip the test");
+        } else {
+
+            MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", new ReferenceCountingMailboxPathLocker());
+            MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
+            MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
+            GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
+
+            StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
+            manager.init();
+            setMailboxManager(manager);
+            try {
+                super.testSetFlags();
+            } finally {
+                try {
+                    deleteMaildirTestDirectory();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        }
+
+    }
+
     /**
      * Create the maildirStore with the provided configuration and executes the list() tests.
      * Cleans the generated artifacts.
@@ -178,12 +376,12 @@ public class MaildirMailboxManagerTest extends AbstractMailboxManagerTest {
      * @throws UnsupportedEncodingException
      */
     private void doTestListWithMaildirStoreConfiguration(String maildirStoreConfiguration) throws MailboxException, UnsupportedEncodingException {
-        MaildirStore store = new MaildirStore(MAILDIR_HOME + maildirStoreConfiguration, new JVMMailboxPathLocker());
+        MaildirStore store = new MaildirStore(MAILDIR_HOME + maildirStoreConfiguration, new ReferenceCountingMailboxPathLocker());
         MaildirMailboxSessionMapperFactory mf = new MaildirMailboxSessionMapperFactory(store);
         MailboxACLResolver aclResolver = new UnionMailboxACLResolver();
         GroupMembershipResolver groupMembershipResolver = new SimpleGroupMembershipResolver();
 
-        StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new JVMMailboxPathLocker(), aclResolver, groupMembershipResolver);
+        StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(mf, null, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
         manager.init();
         setMailboxManager(manager);
         try {
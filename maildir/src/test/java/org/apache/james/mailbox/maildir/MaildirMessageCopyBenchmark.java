@@ -0,0 +1,59 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.maildir;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.mailbox.AbstractMessageCopyBenchmark;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.acl.SimpleGroupMembershipResolver;
+import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
+import org.apache.james.mailbox.store.StoreMailboxManager;
+
+/**
+ * Measures the copy of messages between two Maildir mailboxes. The files are written below target/Maildir-benchmark.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class MaildirMessageCopyBenchmark extends AbstractMessageCopyBenchmark {
+
+    private static final String MAILDIR_HOME = "target/Maildir-benchmark";
+
+    public static void main(String[] args) throws Exception {
+        new MaildirMessageCopyBenchmark().run();
+    }
+
+    @Override
+    protected MailboxManager createMailboxManager() throws Exception {
+        FileUtils.deleteDirectory(new File(MAILDIR_HOME));
+        ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
+        MaildirStore store = new MaildirStore(MAILDIR_HOME + "/%domain/%user", locker);
+        StoreMailboxManager<Integer> manager = new StoreMailboxManager<Integer>(new MaildirMailboxSessionMapperFactory(store), null, locker,
+                new UnionMailboxACLResolver(), new SimpleGroupMembershipResolver());
+        manager.init();
+        return manager;
+    }
+
+    @Override
+    protected void destroy() throws Exception {
+        FileUtils.deleteDirectory(new File(MAILDIR_HOME));
+    }
+}
@@ -20,14 +20,14 @@ package org.apache.james.mailbox.maildir;
 
 import org.apache.james.mailbox.AbstractSubscriptionManagerTest;
 import org.apache.james.mailbox.SubscriptionManager;
-import org.apache.james.mailbox.store.JVMMailboxPathLocker;
+import org.apache.james.mailbox.store.ReferenceCountingMailboxPathLocker;
 import org.apache.james.mailbox.store.StoreSubscriptionManager;
 
 public class MaildirSubscriptionManagerTest extends AbstractSubscriptionManagerTest{
 
     @Override
     public SubscriptionManager createSubscriptionManager() {
-        MaildirStore store = new MaildirStore("target/Maildir/%domain/%user", new JVMMailboxPathLocker());
+        MaildirStore store = new MaildirStore("target/Maildir/%domain/%user", new ReferenceCountingMailboxPathLocker());
         MaildirMailboxSessionMapperFactory factory = new MaildirMailboxSessionMapperFactory(store);
         StoreSubscriptionManager sm = new StoreSubscriptionManager(factory);
         return sm;
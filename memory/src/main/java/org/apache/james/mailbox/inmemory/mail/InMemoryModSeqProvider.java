@@ -37,6 +37,11 @@ public class InMemoryModSeqProvider implements ModSeqProvider<Long>{
 
     }
 
+    @Override
+    public long nextModSeqs(MailboxSession session, Mailbox<Long> mailbox, int count) throws MailboxException {
+        return getHighest(mailbox.getMailboxId()).addAndGet(count) - count + 1;
+    }
+
     @Override
     public long highestModSeq(MailboxSession session, Mailbox<Long> mailbox) throws MailboxException {
         return getHighest(mailbox.getMailboxId()).get();
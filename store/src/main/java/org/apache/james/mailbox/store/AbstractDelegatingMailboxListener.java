@@ -18,26 +18,95 @@
  ****************************************************************/
 package org.apache.james.mailbox.store;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.james.mailbox.AsyncMailboxListener;
+import org.apache.james.mailbox.DistributedMailboxListener;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxListenerSupport;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.event.AsynchronousEventDelivery;
+import org.apache.james.mailbox.store.event.EventBus;
+import org.apache.james.mailbox.store.event.EventCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public abstract class AbstractDelegatingMailboxListener implements MailboxListener, MailboxListenerSupport{
     
+    private final static Logger LOGGER = LoggerFactory.getLogger(AbstractDelegatingMailboxListener.class);
+
+    private AsynchronousEventDelivery asyncDelivery;
+    private EventBus eventBus;
+
     protected AbstractDelegatingMailboxListener() {
     }
     
     /**
-     * Receive the event and dispatch it to the right {@link MailboxListener} depending on
-     * {@link org.apache.james.mailbox.MailboxListener.Event#getMailboxPath()}
+     * Set the {@link AsynchronousEventDelivery} which is used to deliver events to {@link AsyncMailboxListener}'s. If
+     * none is set all events are delivered synchronously
+     * 
+     * @param asyncDelivery
+     */
+    public void setAsynchronousEventDelivery(AsynchronousEventDelivery asyncDelivery) {
+        this.asyncDelivery = asyncDelivery;
+    }
+    
+    /**
+     * Set the {@link EventBus} which is used to exchange events with other nodes. Every event is published
+     * to the other nodes after it was dispatched locally. The events of other nodes are dispatched to the
+     * listeners of the {@link MailboxPath} and to the global listeners which implement
+     * {@link DistributedMailboxListener}.
+     * 
+     * @param eventBus
+     */
+    public void setEventBus(EventBus eventBus) {
+        this.eventBus = eventBus;
+        eventBus.subscribe(new EventBus.Subscriber() {
+            public void receive(byte[] message) {
+                try {
+                    dispatch(EventCodec.decode(message), true);
+                } catch (IOException e) {
+                    LOGGER.error("Unable to decode event of other node", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Receive the event, dispatch it to the registered {@link MailboxListener}'s and publish it to
+     * the other nodes if an {@link EventBus} is set
      */
     public void event(Event event) {
+        dispatch(event, false);
+
+        final EventBus bus = eventBus;
+        if (bus != null) {
+            try {
+                byte[] message = EventCodec.encode(event);
+                if (message != null) {
+                    bus.publish(message);
+                }
+            } catch (IOException e) {
+                LOGGER.error("Unable to encode event for mailbox " + event.getMailboxPath(), e);
+            } catch (MailboxException e) {
+                LOGGER.error("Unable to publish event for mailbox " + event.getMailboxPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Dispatch the event to the right {@link MailboxListener} depending on
+     * {@link org.apache.james.mailbox.MailboxListener.Event#getMailboxPath()}
+     * 
+     * @param event
+     * @param remote <code>true</code> if the event was fired on another node
+     */
+    protected void dispatch(Event event, boolean remote) {
         MailboxPath path = event.getMailboxPath();
         Map<MailboxPath, List<MailboxListener>> listeners = getListeners();
         List<MailboxListener> mListeners = null;
@@ -67,7 +136,7 @@ public abstract class AbstractDelegatingMailboxListener implements MailboxListen
             int sz = mListeners.size();
             for (int i = 0; i < sz; i++) {
                 MailboxListener l = mListeners.get(i);
-                l.event(event);
+                deliver(l, event);
             }
         }
         
@@ -80,7 +149,7 @@ public abstract class AbstractDelegatingMailboxListener implements MailboxListen
                     int sz = globalListeners.size();
                     for (int i = 0; i < sz; i++) {
                         MailboxListener l = globalListeners.get(i);
-                        l.event(event);
+                        deliverGlobal(l, event, remote);
                         
                     }
                     
@@ -94,6 +163,30 @@ public abstract class AbstractDelegatingMailboxListener implements MailboxListen
         
     }
     
+    /**
+     * Deliver the event to the listener, asynchronously if the listener allows it
+     */
+    protected final void deliver(MailboxListener listener, Event event) {
+        final AsynchronousEventDelivery delivery = asyncDelivery;
+        if (delivery != null && listener instanceof AsyncMailboxListener) {
+            delivery.deliver(listener, event);
+        } else {
+            listener.event(event);
+        }
+    }
+
+    /**
+     * Deliver the event to the global listener. Events which were fired on another node are only
+     * passed to {@link DistributedMailboxListener#remoteEvent(Event)}.
+     */
+    protected final void deliverGlobal(MailboxListener listener, Event event, boolean remote) {
+        if (!remote) {
+            deliver(listener, event);
+        } else if (listener instanceof DistributedMailboxListener) {
+            ((DistributedMailboxListener) listener).remoteEvent(event);
+        }
+    }
+
     /**
      * @see org.apache.james.mailbox.MailboxListenerSupport#addListener(org.apache.james.mailbox.model.MailboxPath, org.apache.james.mailbox.MailboxListener, org.apache.james.mailbox.MailboxSession)
      */
@@ -20,12 +20,57 @@ package org.apache.james.mailbox.store;
 
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.LockTimeoutException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 
 
+/**
+ * Base class for {@link MailboxPathLocker} implementations which records the wait and hold times
+ * of the locks in {@link MailboxPathLockerMetrics}. Optional a timeout can be set after which the
+ * attempt to get a lock fails with a {@link LockTimeoutException}. A {@link MailboxPathLockListener} can
+ * be set to get notified about acquired and released locks.
+ */
 public abstract class AbstractMailboxPathLocker implements MailboxPathLocker{
 
+    private final MailboxPathLockerMetrics metrics = new MailboxPathLockerMetrics();
+    private long lockTimeout;
+    private MailboxPathLockListener lockListener;
+
+    /**
+     * Set the time in milliseconds to wait for a lock. Use <code>0</code> to wait without limit, which
+     * is the default
+     * 
+     * @param lockTimeout
+     */
+    public void setLockTimeout(long lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    public long getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Set the {@link MailboxPathLockListener} which gets notified after a lock was acquired and released,
+     * for example the {@link org.apache.james.mailbox.store.event.AsynchronousEventDelivery}
+     * 
+     * @param lockListener
+     */
+    public void setLockListener(MailboxPathLockListener lockListener) {
+        this.lockListener = lockListener;
+    }
+
+    /**
+     * Return the {@link MailboxPathLockerMetrics} of this locker. They can be registered as MBean, for example with
+     * <code>ManagementFactory.getPlatformMBeanServer().registerMBean(locker.getMetrics(), name)</code>
+     * 
+     * @return metrics
+     */
+    public MailboxPathLockerMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public <T> T executeWithLock(MailboxSession session, MailboxPath path, LockAwareExecution<T> execution) throws MailboxException {
         return executeWithLock(session, path, execution, true);
@@ -33,11 +78,34 @@ public abstract class AbstractMailboxPathLocker implements MailboxPathLocker{
     
     @Override
     public <T> T executeWithLock(MailboxSession session, MailboxPath path, LockAwareExecution<T> execution, boolean writeLock) throws MailboxException {
-        try {
+        final long timeout = lockTimeout;
+        final long start = System.nanoTime();
+        // only unlock if the lock was acquired
+        if (timeout > 0) {
+            if (!tryLock(session, path, writeLock, timeout)) {
+                metrics.timedOut(path, writeLock, System.nanoTime() - start);
+                throw new LockTimeoutException(path, timeout);
+            }
+        } else {
             lock(session, path, writeLock);
+        }
+        final long acquired = System.nanoTime();
+        metrics.acquired(path, writeLock, acquired - start);
+        final MailboxPathLockListener listener = lockListener;
+        if (listener != null) {
+            listener.lockAcquired(path);
+        }
+        try {
             return execution.execute();
         } finally {
-            unlock(session, path, writeLock);
+            try {
+                unlock(session, path, writeLock);
+                metrics.released(writeLock, System.nanoTime() - acquired);
+            } finally {
+                if (listener != null) {
+                    listener.lockReleased(path);
+                }
+            }
         }
     }
 
@@ -51,6 +119,22 @@ public abstract class AbstractMailboxPathLocker implements MailboxPathLocker{
      */
     protected abstract void lock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException;
 
+    /**
+     * Perform lock, but wait at most the given time. Implementations which can not wait for a limited
+     * time use {@link #lock(MailboxSession, MailboxPath, boolean)}, which is the default.
+     * 
+     * @param session
+     * @param path
+     * @param writeLock
+     * @param timeout time in milliseconds
+     * @return locked <code>true</code> if the lock was acquired
+     * @throws MailboxException
+     */
+    protected boolean tryLock(MailboxSession session, MailboxPath path, boolean writeLock, long timeout) throws MailboxException {
+        lock(session, path, writeLock);
+        return true;
+    }
+
     /**
      * Release lock
      * 
@@ -0,0 +1,216 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * {@link AbstractDelegatingMailboxListener} which does not need any lock to dispatch an event.
+ * 
+ * The listeners of a {@link MailboxPath} are stored as copy-on-write array in a {@link ConcurrentMap},
+ * the global listeners in a {@link CopyOnWriteArrayList}. Registering a listener is more expensive
+ * than with a {@link HashMapDelegatingMailboxListener}, but dispatching events from many threads
+ * does not contend on a shared monitor.
+ */
+public class ConcurrentDelegatingMailboxListener extends AbstractDelegatingMailboxListener {
+
+    private final ConcurrentMap<MailboxPath, MailboxListener[]> listeners = new ConcurrentHashMap<MailboxPath, MailboxListener[]>();
+    private final List<MailboxListener> globalListeners = new CopyOnWriteArrayList<MailboxListener>();
+
+    /**
+     * Dispatch the event to the right {@link MailboxListener} depending on
+     * {@link org.apache.james.mailbox.MailboxListener.Event#getMailboxPath()}
+     */
+    @Override
+    protected void dispatch(Event event, boolean remote) {
+        final MailboxPath path = event.getMailboxPath();
+        final MailboxListener[] mListeners;
+        if (event instanceof MailboxDeletion) {
+            // remove listeners if the mailbox was deleted
+            mListeners = listeners.remove(path);
+        } else if (event instanceof MailboxRenamed) {
+            // move the listeners to the new path
+            mListeners = move(path, ((MailboxRenamed) event).getNewPath());
+        } else {
+            mListeners = listeners.get(path);
+        }
+
+        if (mListeners != null) {
+            for (MailboxListener listener : mListeners) {
+                deliver(listener, event);
+            }
+        }
+        for (MailboxListener listener : globalListeners) {
+            deliverGlobal(listener, event, remote);
+        }
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MailboxListenerSupport#addListener(org.apache.james.mailbox.model.MailboxPath, org.apache.james.mailbox.MailboxListener, org.apache.james.mailbox.MailboxSession)
+     */
+    @Override
+    public void addListener(MailboxPath path, MailboxListener listener, MailboxSession session) throws MailboxException {
+        add(path, listener);
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MailboxListenerSupport#removeListener(org.apache.james.mailbox.model.MailboxPath, org.apache.james.mailbox.MailboxListener, org.apache.james.mailbox.MailboxSession)
+     */
+    @Override
+    public void removeListener(MailboxPath mailboxPath, MailboxListener listener, MailboxSession session) throws MailboxException {
+        while (true) {
+            final MailboxListener[] current = listeners.get(mailboxPath);
+            if (current == null) {
+                return;
+            }
+            final int index = indexOf(current, listener);
+            if (index == -1) {
+                return;
+            }
+            if (current.length == 1) {
+                if (listeners.remove(mailboxPath, current)) {
+                    return;
+                }
+            } else {
+                final MailboxListener[] updated = new MailboxListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                if (listeners.replace(mailboxPath, current, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MailboxListenerSupport#addGlobalListener(org.apache.james.mailbox.MailboxListener, org.apache.james.mailbox.MailboxSession)
+     */
+    @Override
+    public void addGlobalListener(MailboxListener listener, MailboxSession session) throws MailboxException {
+        globalListeners.add(listener);
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MailboxListenerSupport#removeGlobalListener(org.apache.james.mailbox.MailboxListener, org.apache.james.mailbox.MailboxSession)
+     */
+    @Override
+    public void removeGlobalListener(MailboxListener listener, MailboxSession session) throws MailboxException {
+        globalListeners.remove(listener);
+    }
+
+    /**
+     * Return a snapshot of the registered {@link MailboxListener}'s
+     */
+    @Override
+    protected Map<MailboxPath, List<MailboxListener>> getListeners() {
+        final Map<MailboxPath, List<MailboxListener>> snapshot = new HashMap<MailboxPath, List<MailboxListener>>();
+        for (Map.Entry<MailboxPath, MailboxListener[]> entry : listeners.entrySet()) {
+            snapshot.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    @Override
+    protected List<MailboxListener> getGlobalListeners() {
+        return Collections.unmodifiableList(globalListeners);
+    }
+
+    private void add(MailboxPath path, MailboxListener listener) {
+        while (true) {
+            final MailboxListener[] current = listeners.get(path);
+            if (current == null) {
+                if (listeners.putIfAbsent(path, new MailboxListener[] { listener }) == null) {
+                    return;
+                }
+            } else {
+                if (indexOf(current, listener) != -1) {
+                    return;
+                }
+                final MailboxListener[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = listener;
+                if (listeners.replace(path, current, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the listeners of a path to another path. The merged listeners are installed under the new path
+     * before the old entry is removed, so they are registered for at least one of the paths at any time.
+     * 
+     * @return the moved listeners or <code>null</code> if there were none
+     */
+    private MailboxListener[] move(MailboxPath from, MailboxPath to) {
+        while (true) {
+            final MailboxListener[] moved = listeners.get(from);
+            if (moved == null) {
+                return null;
+            }
+            addAll(to, moved);
+            // retry if listeners were added or removed for the old path in the meantime
+            if (listeners.remove(from, moved)) {
+                return moved;
+            }
+        }
+    }
+
+    private void addAll(MailboxPath path, MailboxListener[] added) {
+        while (true) {
+            final MailboxListener[] current = listeners.get(path);
+            if (current == null) {
+                if (listeners.putIfAbsent(path, added) == null) {
+                    return;
+                }
+            } else {
+                final MailboxListener[] merged = Arrays.copyOf(current, current.length + added.length);
+                int length = current.length;
+                for (MailboxListener listener : added) {
+                    if (indexOf(current, listener) == -1) {
+                        merged[length++] = listener;
+                    }
+                }
+                if (length == current.length || listeners.replace(path, current, Arrays.copyOf(merged, length))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int indexOf(MailboxListener[] listeners, MailboxListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
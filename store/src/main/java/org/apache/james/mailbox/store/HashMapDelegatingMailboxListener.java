@@ -29,8 +29,10 @@ import org.apache.james.mailbox.model.MailboxPath;
 
 /**
  * Receive a {@link org.apache.james.mailbox.MailboxListener.Event} and delegate it to an other
- * {@link MailboxListener} depending on the registered name
+ * {@link MailboxListener} depending on the registered name.
  *
+ * Every event is dispatched while holding one lock, so {@link ConcurrentDelegatingMailboxListener}
+ * is used by default.
  */
 public class HashMapDelegatingMailboxListener extends AbstractDelegatingMailboxListener{
 
@@ -25,6 +25,7 @@ import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -33,7 +34,11 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * {@link MailboxPathLocker} implementation which helps to synchronize the access the
  * same MailboxPath. This is done using one {@link ReentrantReadWriteLock}
  * per {@link MailboxPath} so its only usable in a single JVM.
+ * 
+ * @deprecated the locks are never removed, so the memory used grows with every {@link MailboxPath}.
+ * Use {@link ReferenceCountingMailboxPathLocker}
  */
+@Deprecated
 public final class JVMMailboxPathLocker extends AbstractMailboxPathLocker {
 
     private final ConcurrentHashMap<MailboxPath, ReadWriteLock> paths = new ConcurrentHashMap<MailboxPath, ReadWriteLock>();
@@ -41,6 +46,20 @@ public final class JVMMailboxPathLocker extends AbstractMailboxPathLocker {
 
     @Override
     protected void lock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
+        getLock(getReadWriteLock(path), writeLock).lock();
+    }
+
+    @Override
+    protected boolean tryLock(MailboxSession session, MailboxPath path, boolean writeLock, long timeout) throws MailboxException {
+        try {
+            return getLock(getReadWriteLock(path), writeLock).tryLock(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private ReadWriteLock getReadWriteLock(MailboxPath path) {
         ReadWriteLock lock = paths.get(path);
         if (lock == null) {
             lock = new ReentrantReadWriteLock();
@@ -49,7 +68,7 @@ public final class JVMMailboxPathLocker extends AbstractMailboxPathLocker {
                 lock = storedLock;
             }
         }
-        getLock(lock, writeLock).lock();
+        return lock;
     }
 
 
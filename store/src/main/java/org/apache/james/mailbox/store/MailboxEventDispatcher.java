@@ -27,23 +27,54 @@ import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxListener.MailboxAdded;
 import org.apache.james.mailbox.MailboxListener.MailboxDeletion;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.event.EventJournal;
+import org.apache.james.mailbox.store.event.JournalRecord;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Helper class to dispatch {@link org.apache.james.mailbox.MailboxListener.Event}'s to registerend MailboxListener
+ * 
+ * If an {@link EventJournal} is given every event is appended to it before it is dispatched. If the append
+ * fails, the failure is logged and the event is dispatched anyway.
  */
 public class MailboxEventDispatcher<Id> {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(MailboxEventDispatcher.class);
     
     private final MailboxListener listener;
+    private final EventJournal journal;
 
     public MailboxEventDispatcher(MailboxListener listener) {
-        this.listener = listener;
+        this(listener, null);
     }
     
+    public MailboxEventDispatcher(MailboxListener listener, EventJournal journal) {
+        this.listener = listener;
+        this.journal = journal;
+    }
+
+    /**
+     * Append the record to the {@link EventJournal} if one is configured and dispatch the event. Append failures
+     * are only logged, as the data was already committed to the mailbox. Failing the caller would make a
+     * client retry a change which was done, and would skip the events which still need to be dispatched.
+     */
+    private void dispatch(MailboxSession session, MailboxListener.Event event, JournalRecord record) {
+        if (record != null) {
+            try {
+                journal.append(record);
+            } catch (MailboxException e) {
+                Logger log = session != null ? session.getLog() : LOGGER;
+                log.error("Unable to append event for mailbox " + record.getMailboxPath() + " to the journal", e);
+            }
+        }
+        listener.event(event);
+    }
 
     /**
      * Should get called when a new message was added to a Mailbox. All
@@ -55,7 +86,7 @@ public class MailboxEventDispatcher<Id> {
      */
     public void added(MailboxSession session, SortedMap<Long, MessageMetaData> uids, Mailbox<Id> mailbox) {
         final AddedImpl added = new AddedImpl(session, mailbox, uids);
-        listener.event(added);
+        dispatch(session, added, journal != null ? JournalRecord.added(session, mailbox, uids.values()) : null);
     }
 
     /**
@@ -68,7 +99,7 @@ public class MailboxEventDispatcher<Id> {
      */
     public void expunged(final MailboxSession session,  Map<Long, MessageMetaData> uids, Mailbox<Id> mailbox) {
         final ExpungedImpl expunged = new ExpungedImpl(session, mailbox, uids);
-        listener.event(expunged);
+        dispatch(session, expunged, journal != null ? JournalRecord.expunged(session, mailbox, uids.values()) : null);
     }
 
     /**
@@ -82,7 +113,7 @@ public class MailboxEventDispatcher<Id> {
      */
     public void flagsUpdated(MailboxSession session, final List<Long> uids, final Mailbox<Id> mailbox, final List<UpdatedFlags> uflags) {
         final FlagsUpdatedImpl flags = new FlagsUpdatedImpl(session, mailbox, uids, uflags);
-        listener.event(flags);
+        dispatch(session, flags, journal != null ? JournalRecord.flagsUpdated(session, mailbox, uids, uflags) : null);
     }
 
 
@@ -96,7 +127,7 @@ public class MailboxEventDispatcher<Id> {
      * @param to
      */
     public void mailboxRenamed(MailboxSession session, MailboxPath from, Mailbox<Id> to) {
-        listener.event(new MailboxRenamedEventImpl(session, from, to));
+        dispatch(session, new MailboxRenamedEventImpl(session, from, to), journal != null ? JournalRecord.mailboxRenamed(session, from, to) : null);
     }
 
     public final class AddedImpl extends MailboxListener.Added {
@@ -251,7 +282,7 @@ public class MailboxEventDispatcher<Id> {
      */
     public void mailboxDeleted(MailboxSession session, Mailbox<Id> mailbox) {
         final MailboxDeletion event = new MailboxDeletionImpl(session, mailbox);
-        listener.event(event);
+        dispatch(session, event, journal != null ? JournalRecord.mailboxDeleted(session, mailbox) : null);
     }
 
     /**
@@ -263,7 +294,7 @@ public class MailboxEventDispatcher<Id> {
      */
     public void mailboxAdded(MailboxSession session, Mailbox<Id> mailbox) {
         final MailboxAdded event = new MailboxAddedImpl(session, mailbox);
-        listener.event(event);
+        dispatch(session, event, journal != null ? JournalRecord.mailboxAdded(session, mailbox) : null);
     }
 
     public final class MailboxRenamedEventImpl extends MailboxListener.MailboxRenamed {
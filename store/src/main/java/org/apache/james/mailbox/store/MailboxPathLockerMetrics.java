@@ -0,0 +1,239 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * Records the time threads wait for and hold the locks of an {@link AbstractMailboxPathLocker}, per
+ * lock mode. It can be registered as MBean to expose the values via JMX.
+ * 
+ * Lock requests which wait longer then the contention threshold are also recorded per {@link MailboxPath}.
+ * To keep the memory bounded only a fixed number of paths is tracked. Once the limit is reached the path
+ * with the lowest wait time is replaced, and the new path inherits its wait time. This is the space-saving
+ * algorithm, which finds the most contended paths with an error of at most the wait time of the replaced
+ * path.
+ */
+public class MailboxPathLockerMetrics implements MailboxPathLockerMetricsMBean {
+
+    public final static long DEFAULT_CONTENTION_THRESHOLD = 1;
+    public final static int DEFAULT_TRACKED_PATHS = 100;
+    public final static int DEFAULT_TOP_PATHS = 10;
+
+    private final Mode read = new Mode();
+    private final Mode write = new Mode();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final long contentionThreshold;
+    private final int trackedPaths;
+    private final int topPaths;
+    private final Map<String, long[]> contended = new HashMap<String, long[]>();
+
+    public MailboxPathLockerMetrics() {
+        this(DEFAULT_CONTENTION_THRESHOLD, DEFAULT_TRACKED_PATHS, DEFAULT_TOP_PATHS);
+    }
+
+    /**
+     * @param contentionThreshold the wait time in milliseconds after which a lock request is recorded for its path
+     * @param trackedPaths the maximal number of paths to track
+     * @param topPaths the number of paths returned by {@link #getMostContendedPaths()}
+     */
+    public MailboxPathLockerMetrics(long contentionThreshold, int trackedPaths, int topPaths) {
+        this.contentionThreshold = TimeUnit.MILLISECONDS.toNanos(contentionThreshold);
+        this.trackedPaths = trackedPaths;
+        this.topPaths = topPaths;
+    }
+
+    /**
+     * Record that a lock was acquired
+     * 
+     * @param path
+     * @param writeLock
+     * @param waitNanos the time waited for the lock in nanoseconds
+     */
+    public void acquired(MailboxPath path, boolean writeLock, long waitNanos) {
+        Mode mode = writeLock ? write : read;
+        mode.count.incrementAndGet();
+        mode.waitTime.addAndGet(waitNanos);
+        max(mode.maxWaitTime, waitNanos);
+        if (waitNanos >= contentionThreshold) {
+            contended(path, waitNanos);
+        }
+    }
+
+    /**
+     * Record that a lock was released
+     * 
+     * @param writeLock
+     * @param holdNanos the time the lock was held in nanoseconds
+     */
+    public void released(boolean writeLock, long holdNanos) {
+        Mode mode = writeLock ? write : read;
+        mode.holdTime.addAndGet(holdNanos);
+        max(mode.maxHoldTime, holdNanos);
+    }
+
+    /**
+     * Record that the lock could not be acquired within the timeout
+     * 
+     * @param path
+     * @param writeLock
+     * @param waitNanos
+     */
+    public void timedOut(MailboxPath path, boolean writeLock, long waitNanos) {
+        timeouts.incrementAndGet();
+        contended(path, waitNanos);
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void contended(MailboxPath path, long waitNanos) {
+        String key = path.toString();
+        long[] values = contended.get(key);
+        if (values == null) {
+            long inherited = 0;
+            if (contended.size() >= trackedPaths) {
+                // replace the path with the lowest wait time
+                String minKey = null;
+                long[] min = null;
+                for (Map.Entry<String, long[]> entry : contended.entrySet()) {
+                    if (min == null || entry.getValue()[0] < min[0]) {
+                        minKey = entry.getKey();
+                        min = entry.getValue();
+                    }
+                }
+                contended.remove(minKey);
+                inherited = min[0];
+            }
+            values = new long[] { inherited, 0 };
+            contended.put(key, values);
+        }
+        values[0] += waitNanos;
+        values[1]++;
+    }
+
+    public long getReadLockCount() {
+        return read.count.get();
+    }
+
+    public long getReadWaitTime() {
+        return toMillis(read.waitTime);
+    }
+
+    public long getMaxReadWaitTime() {
+        return toMillis(read.maxWaitTime);
+    }
+
+    public long getReadHoldTime() {
+        return toMillis(read.holdTime);
+    }
+
+    public long getMaxReadHoldTime() {
+        return toMillis(read.maxHoldTime);
+    }
+
+    public long getWriteLockCount() {
+        return write.count.get();
+    }
+
+    public long getWriteWaitTime() {
+        return toMillis(write.waitTime);
+    }
+
+    public long getMaxWriteWaitTime() {
+        return toMillis(write.maxWaitTime);
+    }
+
+    public long getWriteHoldTime() {
+        return toMillis(write.holdTime);
+    }
+
+    public long getMaxWriteHoldTime() {
+        return toMillis(write.maxHoldTime);
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public synchronized String[] getMostContendedPaths() {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(contended.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+                long w1 = o1.getValue()[0];
+                long w2 = o2.getValue()[0];
+                return w1 > w2 ? -1 : (w1 == w2 ? 0 : 1);
+            }
+        });
+        int size = Math.min(topPaths, entries.size());
+        String[] paths = new String[size];
+        Iterator<Map.Entry<String, long[]>> it = entries.iterator();
+        for (int i = 0; i < size; i++) {
+            Map.Entry<String, long[]> entry = it.next();
+            paths[i] = entry.getKey() + " waited " + TimeUnit.NANOSECONDS.toMillis(entry.getValue()[0]) + "ms (" + entry.getValue()[1] + " times)";
+        }
+        return paths;
+    }
+
+    public void reset() {
+        read.reset();
+        write.reset();
+        timeouts.set(0);
+        synchronized (this) {
+            contended.clear();
+        }
+    }
+
+    private static long toMillis(AtomicLong nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+    }
+
+    private final static class Mode {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong waitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+        private final AtomicLong holdTime = new AtomicLong();
+        private final AtomicLong maxHoldTime = new AtomicLong();
+
+        private void reset() {
+            count.set(0);
+            waitTime.set(0);
+            maxWaitTime.set(0);
+            holdTime.set(0);
+            maxHoldTime.set(0);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+/**
+ * JMX view of the {@link MailboxPathLockerMetrics} of an {@link AbstractMailboxPathLocker}. All times
+ * are in milliseconds.
+ */
+public interface MailboxPathLockerMetricsMBean {
+
+    long getReadLockCount();
+
+    long getReadWaitTime();
+
+    long getMaxReadWaitTime();
+
+    long getReadHoldTime();
+
+    long getMaxReadHoldTime();
+
+    long getWriteLockCount();
+
+    long getWriteWaitTime();
+
+    long getMaxWriteWaitTime();
+
+    long getWriteHoldTime();
+
+    long getMaxWriteHoldTime();
+
+    /**
+     * Return the number of lock requests which failed because of the lock timeout
+     * 
+     * @return timeouts
+     */
+    long getTimeoutCount();
+
+    /**
+     * Return the paths which caused the most wait time, ordered by the wait time. The values are
+     * approximated, as only a limited number of paths is tracked.
+     * 
+     * @return paths
+     */
+    String[] getMostContendedPaths();
+
+    /**
+     * Reset all values
+     */
+    void reset();
+}
@@ -35,6 +35,7 @@ import org.apache.james.mailbox.model.Headers;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.streaming.InputStreamContent;
 import org.apache.james.mailbox.store.streaming.InputStreamContent.Type;
 import org.apache.james.mime4j.MimeException;
@@ -341,16 +342,26 @@ public class MessageResultImpl implements MessageResult {
         // check if we need to create the MimeDescriptor which is done in a lazy fashion because
         // it can be relative expensive on big messages and slow mailbox implementations
         if (mimeDescriptor == null) {
-            try {
-                if (MimeDescriptorImpl.isComposite(message.getMediaType())) {
-                    mimeDescriptor = MimeDescriptorImpl.build(getFullContent().getInputStream());
-                } else {
-                    mimeDescriptor = new LazyMimeDescriptor(this, message);
+            final String structure = new PropertyBuilder(message.getProperties()).getMimeStructure();
+            if (structure != null) {
+                try {
+                    mimeDescriptor = MimeDescriptorCodec.decode(structure);
+                } catch (IOException e) {
+                    // the stored structure is not usable, so compute it from the content
+                }
+            }
+            if (mimeDescriptor == null) {
+                try {
+                    if (MimeDescriptorImpl.isComposite(message.getMediaType())) {
+                        mimeDescriptor = MimeDescriptorImpl.build(getFullContent().getInputStream());
+                    } else {
+                        mimeDescriptor = new LazyMimeDescriptor(this, message);
+                    }
+                } catch (IOException e) {
+                    throw new MailboxException("Unable to create the MimeDescriptor", e);
+                } catch (MimeException e) {
+                    throw new MailboxException("Unable to create the MimeDescriptor", e);
                 }
-            } catch (IOException e) {
-                throw new MailboxException("Unable to create the MimeDescriptor", e);
-            } catch (MimeException e) {
-                throw new MailboxException("Unable to create the MimeDescriptor", e);
             }
         }
         return mimeDescriptor;
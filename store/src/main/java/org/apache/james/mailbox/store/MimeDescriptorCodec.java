@@ -0,0 +1,252 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.apache.james.mime4j.codec.Base64OutputStream;
+
+/**
+ * Encodes a {@link MimeDescriptor} tree to a compact string and back.
+ * 
+ * The tree is written as deflated binary and encoded as base64 so it can be stored
+ * as property of the message. This allows to serve the BODYSTRUCTURE of a message
+ * without reading and parsing its content again. Only the headers which are needed for the
+ * BODYSTRUCTURE and the ENVELOPE of embedded messages are kept, see {@link #STORED_HEADERS}.
+ */
+public class MimeDescriptorCodec {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final static byte VERSION = 1;
+
+    /**
+     * The lower case names of the headers which are encoded, all others are dropped. The full headers
+     * of a part can still be read from the content.
+     */
+    private final static Set<String> STORED_HEADERS = new HashSet<String>(Arrays.asList("content-type", "content-id",
+            "content-description", "content-transfer-encoding", "content-disposition", "content-language", "content-location",
+            "content-md5", "date", "subject", "from", "sender", "reply-to", "to", "cc", "bcc", "in-reply-to", "message-id"));
+
+    private MimeDescriptorCodec() {
+    }
+
+    /**
+     * Encode the given {@link MimeDescriptor} and all its parts
+     * 
+     * @param descriptor
+     * @return encoded
+     * @throws IOException
+     */
+    public static String encode(MimeDescriptor descriptor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new Base64OutputStream(bytes, 0)));
+        try {
+            out.writeByte(VERSION);
+            writeDescriptor(out, descriptor);
+        } finally {
+            out.close();
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Decode a {@link MimeDescriptor} which was encoded by {@link #encode(MimeDescriptor)}
+     * 
+     * @param encoded
+     * @return descriptor
+     * @throws IOException if the given value could not be decoded
+     */
+    public static MimeDescriptor decode(String encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new Base64InputStream(new ByteArrayInputStream(encoded.getBytes(UTF_8)), true)));
+        try {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported mime structure version " + version);
+            }
+            return readDescriptor(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeDescriptor(DataOutputStream out, MimeDescriptor descriptor) throws IOException {
+        writeString(out, descriptor.getMimeType());
+        writeString(out, descriptor.getMimeSubType());
+        writeString(out, descriptor.getContentID());
+        writeString(out, descriptor.getContentDescription());
+        writeString(out, descriptor.getContentLocation());
+        writeString(out, descriptor.getContentMD5());
+        writeString(out, descriptor.getTransferContentEncoding());
+        writeString(out, descriptor.getDisposition());
+        writeMap(out, descriptor.getDispositionParams());
+        writeMap(out, descriptor.contentTypeParameters());
+        List<String> languages = descriptor.getLanguages();
+        if (languages == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(languages.size());
+            for (String language : languages) {
+                writeString(out, language);
+            }
+        }
+        out.writeLong(descriptor.getBodyOctets());
+        out.writeLong(descriptor.getLines());
+
+        try {
+            List<MessageResult.Header> headers = new ArrayList<MessageResult.Header>();
+            Iterator<MessageResult.Header> hIt = descriptor.headers();
+            while (hIt.hasNext()) {
+                MessageResult.Header header = hIt.next();
+                if (STORED_HEADERS.contains(header.getName().toLowerCase(Locale.US))) {
+                    headers.add(header);
+                }
+            }
+            out.writeInt(headers.size());
+            for (MessageResult.Header header : headers) {
+                writeString(out, header.getName());
+                writeString(out, header.getValue());
+            }
+        } catch (MailboxException e) {
+            throw new IOException("Unable to read headers", e);
+        }
+
+        MimeDescriptor embedded = descriptor.embeddedMessage();
+        out.writeBoolean(embedded != null);
+        if (embedded != null) {
+            writeDescriptor(out, embedded);
+        }
+
+        List<MimeDescriptor> parts = new ArrayList<MimeDescriptor>();
+        Iterator<MimeDescriptor> pIt = descriptor.parts();
+        while (pIt.hasNext()) {
+            parts.add(pIt.next());
+        }
+        out.writeInt(parts.size());
+        for (MimeDescriptor part : parts) {
+            writeDescriptor(out, part);
+        }
+    }
+
+    private static MimeDescriptor readDescriptor(DataInputStream in) throws IOException {
+        String type = readString(in);
+        String subType = readString(in);
+        String contentId = readString(in);
+        String contentDescription = readString(in);
+        String location = readString(in);
+        String md5 = readString(in);
+        String transferEncoding = readString(in);
+        String disposition = readString(in);
+        Map<String, String> dispositionParams = readMap(in, new LinkedHashMap<String, String>());
+        Map<String, String> contentTypeParameters = readMap(in, new TreeMap<String, String>());
+        List<String> languages = null;
+        int languageCount = in.readInt();
+        if (languageCount >= 0) {
+            languages = new ArrayList<String>(languageCount);
+            for (int i = 0; i < languageCount; i++) {
+                languages.add(readString(in));
+            }
+        }
+        long bodyOctets = in.readLong();
+        long lines = in.readLong();
+
+        int headerCount = in.readInt();
+        Collection<MessageResult.Header> headers = new ArrayList<MessageResult.Header>(headerCount);
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(new ResultHeader(readString(in), readString(in)));
+        }
+
+        MimeDescriptor embedded = null;
+        if (in.readBoolean()) {
+            embedded = readDescriptor(in);
+        }
+
+        int partCount = in.readInt();
+        Collection<MimeDescriptor> parts = new ArrayList<MimeDescriptor>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            parts.add(readDescriptor(in));
+        }
+        return new MimeDescriptorImpl(bodyOctets, contentDescription, contentId, lines, subType, type, transferEncoding, headers, contentTypeParameters, languages, disposition, dispositionParams, embedded, parts, location, md5);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(map.size());
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in, Map<String, String> map) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -89,9 +89,25 @@ public class MimeDescriptorImpl implements MimeDescriptor {
             }
             next = parser.next();
         }
+        return build(parser, next, headers);
+    }
 
+    /**
+     * Build the descriptor of an entity whose headers were already read from the given parser, so the
+     * structure can be built in the same pass which reads the headers. The parser must not recurse into
+     * embedded messages.
+     * 
+     * @param parser
+     * @param state the state of the parser after the headers
+     * @param headers the headers of the entity
+     * @return descriptor
+     * @throws IOException
+     * @throws MimeException
+     */
+    public static MimeDescriptorImpl build(final MimeTokenStream parser, final EntityState state,
+            final Collection<MessageResult.Header> headers) throws IOException, MimeException {
         final MimeDescriptorImpl mimeDescriptorImpl;
-        switch (next) {
+        switch (state) {
             case T_BODY:
                 mimeDescriptorImpl = simplePartDescriptor(parser, headers);
                 break;
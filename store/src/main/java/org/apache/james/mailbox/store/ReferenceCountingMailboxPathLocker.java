@@ -0,0 +1,186 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.james.mailbox.MailboxPathLocker;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * {@link MailboxPathLocker} implementation which uses one {@link ReentrantReadWriteLock} per
+ * {@link MailboxPath}, so its only usable in a single JVM.
+ * 
+ * Unlike {@link JVMMailboxPathLocker} a lock is only kept as long as at least one thread holds or
+ * waits for it, so the memory used does not grow with every {@link MailboxPath} ever locked. The
+ * locks are stored with an immutable copy of the path as key, as {@link MailboxPath} is mutable.
+ * 
+ * Optional the locks can be fair, and a timeout can be set after which the attempt to get a lock
+ * fails with a {@link org.apache.james.mailbox.exception.LockTimeoutException}.
+ */
+public class ReferenceCountingMailboxPathLocker extends AbstractMailboxPathLocker {
+
+    private final ConcurrentHashMap<PathKey, Entry> locks = new ConcurrentHashMap<PathKey, Entry>();
+    private final boolean fair;
+
+    public ReferenceCountingMailboxPathLocker() {
+        this(false, 0);
+    }
+
+    /**
+     * @param fair if <code>true</code> the locks use a fair ordering policy, see {@link ReentrantReadWriteLock#ReentrantReadWriteLock(boolean)}
+     * @param timeout the time in milliseconds to wait for a lock. Use <code>0</code> to wait without limit
+     */
+    public ReferenceCountingMailboxPathLocker(boolean fair, long timeout) {
+        this.fair = fair;
+        setLockTimeout(timeout);
+    }
+
+    @Override
+    protected void lock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
+        getLock(acquire(new PathKey(path)), writeLock).lock();
+    }
+
+    @Override
+    protected boolean tryLock(MailboxSession session, MailboxPath path, boolean writeLock, long timeout) throws MailboxException {
+        PathKey key = new PathKey(path);
+        Entry entry = acquire(key);
+        boolean locked = false;
+        try {
+            locked = getLock(entry, writeLock).tryLock(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!locked) {
+                release(key, entry);
+            }
+        }
+        return locked;
+    }
+
+    @Override
+    protected void unlock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
+        PathKey key = new PathKey(path);
+        Entry entry = locks.get(key);
+        if (entry != null) {
+            getLock(entry, writeLock).unlock();
+            release(key, entry);
+        }
+    }
+
+    /**
+     * Return the number of {@link MailboxPath}'s for which a lock is held or requested right now
+     * 
+     * @return count
+     */
+    public int getLockCount() {
+        return locks.size();
+    }
+
+    /**
+     * Return the {@link Entry} for the key with its reference count incremented
+     */
+    private Entry acquire(PathKey key) {
+        while (true) {
+            Entry entry = locks.get(key);
+            if (entry == null) {
+                Entry newEntry = new Entry(fair);
+                entry = locks.putIfAbsent(key, newEntry);
+                if (entry == null) {
+                    return newEntry;
+                }
+            }
+            int references = entry.references.get();
+            if (references == 0) {
+                // the entry was released by its last user and is about to be removed
+                locks.remove(key, entry);
+            } else if (entry.references.compareAndSet(references, references + 1)) {
+                return entry;
+            }
+        }
+    }
+
+    private void release(PathKey key, Entry entry) {
+        if (entry.references.decrementAndGet() == 0) {
+            locks.remove(key, entry);
+        }
+    }
+
+    private Lock getLock(Entry entry, boolean writeLock) {
+        if (writeLock) {
+            return entry.lock.writeLock();
+        } else {
+            return entry.lock.readLock();
+        }
+    }
+
+    private final static class Entry {
+        private final ReentrantReadWriteLock lock;
+        // starts with the reference of the creating thread
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Entry(boolean fair) {
+            this.lock = new ReentrantReadWriteLock(fair);
+        }
+    }
+
+    /**
+     * Immutable copy of a {@link MailboxPath}
+     */
+    private final static class PathKey {
+        private final String namespace;
+        private final String user;
+        private final String name;
+        private final int hash;
+
+        private PathKey(MailboxPath path) {
+            this.namespace = path.getNamespace();
+            this.user = path.getUser();
+            this.name = path.getName();
+            this.hash = path.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PathKey)) {
+                return false;
+            }
+            PathKey that = (PathKey) obj;
+            return hash == that.hash && equal(namespace, that.namespace) && equal(user, that.user) && equal(name, that.name);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
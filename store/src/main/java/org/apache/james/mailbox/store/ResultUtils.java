@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.store;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -26,13 +27,20 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.Content;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResult.MimePath;
 import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.streaming.ByteContent;
+import org.apache.james.mailbox.store.streaming.FullByteContent;
 import org.apache.james.mailbox.store.streaming.PartContentBuilder;
+import org.apache.james.mailbox.store.streaming.PartOffsetIndex;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
 import org.apache.james.mime4j.parser.MimeStreamParser;
@@ -149,33 +157,86 @@ public class ResultUtils {
             MimeException {
         Collection<FetchGroup.PartContentDescriptor> partContent = fetchGroup.getPartContentDescriptors();
         if (partContent != null) {
+            final PartOffsetIndex index = partOffsetIndex(message);
             for (FetchGroup.PartContentDescriptor descriptor: partContent) {
-                addPartContent(descriptor, message, messageResult);
+                addPartContent(descriptor, message, messageResult, index);
             }
         }
     }
 
     private static void addPartContent(
             FetchGroup.PartContentDescriptor descriptor, Message<?> message,
-            MessageResultImpl messageResult) throws 
+            MessageResultImpl messageResult, PartOffsetIndex index) throws 
             MailboxException, IOException, MimeException {
         final MimePath mimePath = descriptor.path();
         final int content = descriptor.content();
         if ((content & MessageResult.FetchGroup.FULL_CONTENT) > 0) {
-            addFullContent(message, messageResult, mimePath);
+            addFullContent(message, messageResult, mimePath, index);
         }
         if ((content & MessageResult.FetchGroup.BODY_CONTENT) > 0) {
             addBodyContent(message, messageResult, mimePath);
         }
         if ((content & MessageResult.FetchGroup.MIME_CONTENT) > 0) {
-            addMimeBodyContent(message, messageResult, mimePath);
+            addMimeBodyContent(message, messageResult, mimePath, index);
         }
         if ((content & MessageResult.FetchGroup.HEADERS) > 0) {
             addHeaders(message, messageResult, mimePath);
         }
         if ((content & MessageResult.FetchGroup.MIME_HEADERS) > 0) {
-            addMimeHeaders(message, messageResult, mimePath);
+            addMimeHeaders(message, messageResult, mimePath, index);
+        }
+    }
+
+    /**
+     * Return the {@link PartOffsetIndex} which was stored for the message on append, or null if
+     * there is none. The index is only used if the content of the message is a {@link SharedInputStream},
+     * as only then a part can be read without reading everything in front of it. For any other content
+     * the part is looked up via {@link PartContentBuilder}, see {@link #read(Message, long, long)}.
+     */
+    private static PartOffsetIndex partOffsetIndex(Message<?> message) throws IOException {
+        final String offsets = new PropertyBuilder(message.getProperties()).getPartOffsets();
+        if (offsets == null) {
+            return null;
+        }
+        return PartOffsetIndex.decode(offsets);
+    }
+
+    private static PartOffsetIndex.PartRange range(PartOffsetIndex index, int[] path) {
+        if (index == null) {
+            return null;
         }
+        return index.get(path);
+    }
+
+    /**
+     * Read the given range of the message content without reading anything in front of it. Return null
+     * if the content is no {@link SharedInputStream}, so the caller has to parse the content instead.
+     */
+    private static byte[] read(Message<?> message, long start, long end) throws IOException {
+        final InputStream in = message.getFullContent();
+        try {
+            if (!(in instanceof SharedInputStream)) {
+                return null;
+            }
+            final InputStream range = ((SharedInputStream) in).newStream(start, end);
+            try {
+                return IOUtils.toByteArray(range);
+            } finally {
+                IOUtils.closeQuietly(range);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static List<MessageResult.Header> readMimeHeaders(Message<?> message, PartOffsetIndex.PartRange range) throws IOException, MimeException {
+        final byte[] headers = read(message, range.getHeaderStart(), range.getBodyStart());
+        if (headers == null) {
+            return null;
+        }
+        final PartContentBuilder builder = new PartContentBuilder();
+        builder.parse(new ByteArrayInputStream(headers));
+        return builder.getMimeHeaders();
     }
 
     private static PartContentBuilder build(int[] path, final Message<?> message)
@@ -221,12 +282,19 @@ public class ResultUtils {
     }
 
     private static void addMimeHeaders(Message<?> message,
-            MessageResultImpl messageResult, MimePath mimePath)
+            MessageResultImpl messageResult, MimePath mimePath, PartOffsetIndex index)
             throws IOException, MimeException {
         final int[] path = path(mimePath);
         if (path != null) {
-            final PartContentBuilder builder = build(path, message);
-            final List<MessageResult.Header> headers = builder.getMimeHeaders();
+            final PartOffsetIndex.PartRange range = range(index, path);
+            List<MessageResult.Header> headers = null;
+            if (range != null) {
+                headers = readMimeHeaders(message, range);
+            }
+            if (headers == null) {
+                final PartContentBuilder builder = build(path, message);
+                headers = builder.getMimeHeaders();
+            }
             messageResult.setMimeHeaders(mimePath, headers.iterator());
         }
     }
@@ -242,22 +310,36 @@ public class ResultUtils {
     }
 
     private static void addMimeBodyContent(Message<?> message,
-            MessageResultImpl messageResult, MimePath mimePath)
+            MessageResultImpl messageResult, MimePath mimePath, PartOffsetIndex index)
             throws IOException, MimeException {
         final int[] path = path(mimePath);
-        final PartContentBuilder builder = build(path, message);
-        final Content content = builder.getMimeBodyContent();
+        final PartOffsetIndex.PartRange range = range(index, path);
+        final byte[] body = range == null ? null : read(message, range.getBodyStart(), range.getBodyEnd());
+        final Content content;
+        if (body != null) {
+            content = new ByteContent(body);
+        } else {
+            final PartContentBuilder builder = build(path, message);
+            content = builder.getMimeBodyContent();
+        }
         messageResult.setMimeBodyContent(mimePath, content);
     }
 
     private static void addFullContent(Message<?> message,
-            MessageResultImpl messageResult, MimePath mimePath)
+            MessageResultImpl messageResult, MimePath mimePath, PartOffsetIndex index)
             throws MailboxException, IOException,
             MimeException {
         final int[] path = path(mimePath);
         if (path != null) {
-            final PartContentBuilder builder = build(path, message);
-            final Content content = builder.getFullContent();
+            final PartOffsetIndex.PartRange range = range(index, path);
+            final byte[] body = range == null ? null : read(message, range.getBodyStart(), range.getBodyEnd());
+            final Content content;
+            if (body != null) {
+                content = new FullByteContent(body, readMimeHeaders(message, range));
+            } else {
+                final PartContentBuilder builder = build(path, message);
+                content = builder.getFullContent();
+            }
             messageResult.setFullContent(mimePath, content);
         }
     }
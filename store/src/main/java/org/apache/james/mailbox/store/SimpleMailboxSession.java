@@ -84,6 +84,19 @@ public class SimpleMailboxSession implements MailboxSession, MailboxSession.User
         this.attributes = new HashMap<Object, Object>();
         this.pathSeparator = pathSeparator;
     }
+
+    /**
+     * Create a {@link SessionType#System} session for the user of the given {@link MailboxSession}. It does not share the
+     * attributes, and so not the mappers, of the given session, so it can be used in another thread.
+     * 
+     * @param session
+     * @return systemSession
+     */
+    public static SimpleMailboxSession createSystemSession(MailboxSession session) {
+        return new SimpleMailboxSession(session.getSessionId(), session.getUser().getUserName(), null, session.getLog(),
+                new ArrayList<Locale>(session.getUser().getLocalePreferences()), new ArrayList<String>(session.getSharedSpaces()),
+                session.getOtherUsersSpace(), session.getPathDelimiter(), SessionType.System);
+    }
     
     /**
      * @see org.apache.james.mailbox.MailboxSession#getLog()
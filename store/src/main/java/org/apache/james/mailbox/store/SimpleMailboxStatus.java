@@ -0,0 +1,99 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store;
+
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MailboxStatus;
+
+public class SimpleMailboxStatus implements MailboxStatus {
+
+    private final MailboxPath path;
+    private final long messageCount;
+    private final long recentCount;
+    private final long uidNext;
+    private final long uidValidity;
+    private final long unseenCount;
+    private final long highestModSeq;
+
+    public SimpleMailboxStatus(MailboxPath path, long messageCount, long recentCount, long uidNext, long uidValidity, long unseenCount, long highestModSeq) {
+        this.path = path;
+        this.messageCount = messageCount;
+        this.recentCount = recentCount;
+        this.uidNext = uidNext;
+        this.uidValidity = uidValidity;
+        this.unseenCount = unseenCount;
+        this.highestModSeq = highestModSeq;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getPath()
+     */
+    public MailboxPath getPath() {
+        return path;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getMessageCount()
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getRecentCount()
+     */
+    public long getRecentCount() {
+        return recentCount;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getUidNext()
+     */
+    public long getUidNext() {
+        return uidNext;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getUidValidity()
+     */
+    public long getUidValidity() {
+        return uidValidity;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getUnseenCount()
+     */
+    public long getUnseenCount() {
+        return unseenCount;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.model.MailboxStatus#getHighestModSeq()
+     */
+    public long getHighestModSeq() {
+        return highestModSeq;
+    }
+
+    @Override
+    public String toString() {
+        return "MailboxStatus ( " + path + " messages=" + messageCount + " recent=" + recentCount + " uidNext=" + uidNext
+                + " uidValidity=" + uidValidity + " unseen=" + unseenCount + " highestModSeq=" + highestModSeq + " )";
+    }
+}
@@ -39,8 +39,15 @@ import org.apache.james.mailbox.model.MailboxMetaData;
 import org.apache.james.mailbox.model.MailboxMetaData.Selectability;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MailboxQuery;
+import org.apache.james.mailbox.model.MailboxStatus;
+import org.apache.james.mailbox.model.MailboxStatus.StatusItem;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.event.CoalescingMailboxListener;
+import org.apache.james.mailbox.store.event.EventJournal;
+import org.apache.james.mailbox.store.event.JournalConsumer;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
 import org.apache.james.mailbox.store.search.ListeningMessageSearchIndex;
@@ -52,10 +59,17 @@ import org.slf4j.Logger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This base class of an {@link MailboxManager} implementation provides a high-level api for writing your own
@@ -68,8 +82,9 @@ import java.util.Random;
  */
 public class StoreMailboxManager<Id> implements MailboxManager {
 
-    public static final char SQL_WILDCARD_CHAR = '%';
+    public static final char SQL_WILDCARD_CHAR = MailboxConstants.SQL_WILDCARD_CHAR;
     public static final int DEFAULT_FETCH_BATCH_SIZE = 200;
+    public static final String INDEX_JOURNAL_CONSUMER = "index";
 
     private MailboxEventDispatcher<Id> dispatcher;
     private AbstractDelegatingMailboxListener delegatingListener = null;
@@ -95,6 +110,17 @@ public class StoreMailboxManager<Id> implements MailboxManager {
 
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
 
+    private ExecutorService fetchExecutor;
+
+    private long fetchMemoryLimit = StoreMessageResultIterator.DEFAULT_FETCH_MEMORY_LIMIT;
+
+    private int appendBufferThreshold = StoreMessageManager.DEFAULT_APPEND_BUFFER_THRESHOLD;
+
+    private ScheduledExecutorService indexEventScheduler;
+
+    private long indexEventWindow = CoalescingMailboxListener.DEFAULT_WINDOW;
+
+    private EventJournal eventJournal;
 
     public StoreMailboxManager(MailboxSessionMapperFactory<Id> mailboxSessionMapperFactory, final Authenticator authenticator, final MailboxPathLocker locker, final MailboxACLResolver aclResolver, final GroupMembershipResolver groupMembershipResolver) {
         this.authenticator = authenticator;
@@ -105,7 +131,7 @@ public class StoreMailboxManager<Id> implements MailboxManager {
     }
 
     public StoreMailboxManager(MailboxSessionMapperFactory<Id> mailboxSessionMapperFactory, final Authenticator authenticator, final MailboxACLResolver aclResolver, final GroupMembershipResolver groupMembershipResolver) {
-        this(mailboxSessionMapperFactory, authenticator, new JVMMailboxPathLocker(), aclResolver, groupMembershipResolver);
+        this(mailboxSessionMapperFactory, authenticator, new ReferenceCountingMailboxPathLocker(), aclResolver, groupMembershipResolver);
     }
 
     public void setMailboxSessionIdGenerator(MailboxSessionIdGenerator idGenerator) {
@@ -124,6 +150,71 @@ public class StoreMailboxManager<Id> implements MailboxManager {
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Set the {@link ExecutorService} which is used to prefetch the next batch of messages while the
+     * current one is consumed. The message mapper is then used by more than one thread, so only
+     * set it if the {@link org.apache.james.mailbox.store.mail.MessageMapper} implementation allows that.
+     * By default no prefetching is done.
+     * 
+     * @param fetchExecutor
+     */
+    public void setFetchExecutor(ExecutorService fetchExecutor) {
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /**
+     * Set the maximal size (in bytes) of the message content which is held by the current and the
+     * prefetched batch while fetching messages. This is only used if a fetch executor is set.
+     * 
+     * @param fetchMemoryLimit
+     */
+    public void setFetchMemoryLimit(long fetchMemoryLimit) {
+        this.fetchMemoryLimit = fetchMemoryLimit;
+    }
+
+    /**
+     * Set the maximal size (in bytes) of messages which are buffered in memory while appending.
+     * Bigger messages are spilled to a temporary file.
+     *
+     * @param appendBufferThreshold
+     */
+    public void setAppendBufferThreshold(int appendBufferThreshold) {
+        this.appendBufferThreshold = appendBufferThreshold;
+    }
+
+    /**
+     * Set the {@link ScheduledExecutorService} which is used to merge the events for a {@link ListeningMessageSearchIndex}
+     * before they are delivered, so the index can apply many changes at once. By default every event is delivered
+     * on its own.
+     * 
+     * @param indexEventScheduler
+     */
+    public void setIndexEventScheduler(ScheduledExecutorService indexEventScheduler) {
+        this.indexEventScheduler = indexEventScheduler;
+    }
+
+    /**
+     * Set the time (in milliseconds) for which events for a {@link ListeningMessageSearchIndex} are merged. This is
+     * only used if an index event scheduler is set.
+     * 
+     * @param indexEventWindow
+     */
+    public void setIndexEventWindow(long indexEventWindow) {
+        this.indexEventWindow = indexEventWindow;
+    }
+
+    /**
+     * Set the {@link EventJournal} to which all events are appended before they are dispatched. If an index
+     * event scheduler is set too, the {@link ListeningMessageSearchIndex} is fed from the journal by a
+     * {@link JournalConsumer} instead of listening for the events directly. It then resumes with the first
+     * unprocessed event after a restart.
+     * 
+     * @param eventJournal
+     */
+    public void setEventJournal(EventJournal eventJournal) {
+        this.eventJournal = eventJournal;
+    }
+
 
     /**
      * Init the {@link MailboxManager}
@@ -133,13 +224,20 @@ public class StoreMailboxManager<Id> implements MailboxManager {
     @SuppressWarnings("rawtypes")
     public void init() throws MailboxException {
         // The dispatcher need to have the delegating listener added
-        dispatcher = new MailboxEventDispatcher<Id>(getDelegationListener());
+        dispatcher = new MailboxEventDispatcher<Id>(getDelegationListener(), eventJournal);
 
         if (index == null) {
             index = new SimpleMessageSearchIndex<Id>(mailboxSessionMapperFactory);
         }
         if (index instanceof ListeningMessageSearchIndex) {
-            addGlobalListener((ListeningMessageSearchIndex) index, null);
+            if (indexEventScheduler != null && eventJournal != null) {
+                JournalConsumer<Id> consumer = new JournalConsumer<Id>(INDEX_JOURNAL_CONSUMER, eventJournal, (ListeningMessageSearchIndex) index, this);
+                indexEventScheduler.scheduleWithFixedDelay(consumer, 0, indexEventWindow, TimeUnit.MILLISECONDS);
+            } else if (indexEventScheduler != null) {
+                addGlobalListener(new CoalescingMailboxListener<Id>((ListeningMessageSearchIndex) index, indexEventScheduler, indexEventWindow, CoalescingMailboxListener.DEFAULT_MAX_BATCH_SIZE), null);
+            } else {
+                addGlobalListener((ListeningMessageSearchIndex) index, null);
+            }
         }
 
         if (idGenerator == null) {
@@ -154,7 +252,7 @@ public class StoreMailboxManager<Id> implements MailboxManager {
      */
     public AbstractDelegatingMailboxListener getDelegationListener() {
         if (delegatingListener == null) {
-            delegatingListener = new HashMapDelegatingMailboxListener();
+            delegatingListener = new ConcurrentDelegatingMailboxListener();
         }
         return delegatingListener;
     }
@@ -201,14 +299,14 @@ public class StoreMailboxManager<Id> implements MailboxManager {
     }
 
     /**
-     * Set the {@link AbstractDelegatingMailboxListener} to use with this {@link MailboxManager} instance. If none is set here a {@link HashMapDelegatingMailboxListener} instance will
+     * Set the {@link AbstractDelegatingMailboxListener} to use with this {@link MailboxManager} instance. If none is set here a {@link ConcurrentDelegatingMailboxListener} instance will
      * be created lazy
      *
      * @param delegatingListener
      */
     public void setDelegatingMailboxListener(AbstractDelegatingMailboxListener delegatingListener) {
         this.delegatingListener = delegatingListener;
-        dispatcher = new MailboxEventDispatcher<Id>(getDelegationListener());
+        dispatcher = new MailboxEventDispatcher<Id>(getDelegationListener(), eventJournal);
     }
 
     /**
@@ -329,6 +427,9 @@ public class StoreMailboxManager<Id> implements MailboxManager {
 
             StoreMessageManager<Id> m = createMessageManager(mailboxRow, session);
             m.setFetchBatchSize(fetchBatchSize);
+            m.setFetchExecutor(fetchExecutor);
+            m.setFetchMemoryLimit(fetchMemoryLimit);
+            m.setAppendBufferThreshold(appendBufferThreshold);
             return m;
         }
     }
@@ -480,7 +581,7 @@ public class StoreMailboxManager<Id> implements MailboxManager {
             List<MessageRange> movedRanges = new ArrayList<MessageRange>();
             Iterator<MessageRange> ranges = set.split(moveBatchSize).iterator();
             while (ranges.hasNext()) {
-                movedRanges.addAll(fromMailbox.copyTo(ranges.next(), toMailbox, session));
+                movedRanges.addAll(fromMailbox.moveTo(ranges.next(), toMailbox, session));
             }
             return movedRanges;
         } else {
@@ -528,6 +629,107 @@ public class StoreMailboxManager<Id> implements MailboxManager {
         return results;
     }
 
+    @Override
+    public List<MailboxStatus> getStatus(List<MailboxPath> paths, Set<StatusItem> items, MailboxSession session) throws MailboxException {
+        final List<Mailbox<Id>> mailboxes = findMailboxes(paths, session);
+
+        final Set<Counter> counters = EnumSet.noneOf(Counter.class);
+        for (StatusItem item : items) {
+            switch (item) {
+            case MESSAGE_COUNT:
+                counters.add(Counter.MessageCount);
+                break;
+            case RECENT_COUNT:
+                counters.add(Counter.RecentCount);
+                break;
+            case UID_NEXT:
+                counters.add(Counter.LastUid);
+                break;
+            case UNSEEN_COUNT:
+                counters.add(Counter.UnseenCount);
+                break;
+            case HIGHEST_MODSEQ:
+                counters.add(Counter.HighestModSeq);
+                break;
+            default:
+                break;
+            }
+        }
+        List<MailboxCounters> mailboxCounters = null;
+        if (!counters.isEmpty() && !mailboxes.isEmpty()) {
+            mailboxCounters = mailboxSessionMapperFactory.getMessageMapper(session).getMailboxCounters(mailboxes, counters);
+        }
+
+        final List<MailboxStatus> results = new ArrayList<MailboxStatus>(mailboxes.size());
+        for (int i = 0; i < mailboxes.size(); i++) {
+            Mailbox<Id> mailbox = mailboxes.get(i);
+            MailboxCounters values = mailboxCounters == null ? null : mailboxCounters.get(i);
+            long uidNext = counters.contains(Counter.LastUid) ? values.get(Counter.LastUid) + 1 : -1;
+            long uidValidity = items.contains(StatusItem.UID_VALIDITY) ? mailbox.getUidValidity() : -1;
+            MailboxPath mailboxPath = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName());
+            results.add(new SimpleMailboxStatus(mailboxPath, getCounter(values, counters, Counter.MessageCount), getCounter(values, counters, Counter.RecentCount),
+                    uidNext, uidValidity, getCounter(values, counters, Counter.UnseenCount), getCounter(values, counters, Counter.HighestModSeq)));
+        }
+        return results;
+    }
+
+    private long getCounter(MailboxCounters values, Set<Counter> requested, Counter counter) {
+        if (requested.contains(counter)) {
+            return values.get(counter);
+        }
+        return -1;
+    }
+
+    /**
+     * Return the {@link Mailbox}'s for the given {@link MailboxPath}'s in the same order. Paths of mailboxes which
+     * do not exist are skipped. If more than one mailbox of the same user is requested, all mailboxes of the user
+     * are loaded with one call to the {@link MailboxMapper}.
+     * 
+     * @param paths
+     * @param session
+     * @return mailboxes
+     * @throws MailboxException
+     */
+    protected List<Mailbox<Id>> findMailboxes(List<MailboxPath> paths, MailboxSession session) throws MailboxException {
+        final MailboxMapper<Id> mapper = mailboxSessionMapperFactory.getMailboxMapper(session);
+
+        final Map<MailboxPath, List<MailboxPath>> pathsByUser = new HashMap<MailboxPath, List<MailboxPath>>();
+        for (MailboxPath path : paths) {
+            MailboxPath userPath = new MailboxPath(path.getNamespace(), path.getUser(), String.valueOf(SQL_WILDCARD_CHAR));
+            List<MailboxPath> userPaths = pathsByUser.get(userPath);
+            if (userPaths == null) {
+                userPaths = new ArrayList<MailboxPath>();
+                pathsByUser.put(userPath, userPaths);
+            }
+            userPaths.add(path);
+        }
+
+        final Map<MailboxPath, Mailbox<Id>> found = new HashMap<MailboxPath, Mailbox<Id>>();
+        for (Map.Entry<MailboxPath, List<MailboxPath>> entry : pathsByUser.entrySet()) {
+            if (entry.getValue().size() == 1) {
+                MailboxPath path = entry.getValue().get(0);
+                try {
+                    found.put(path, mapper.findMailboxByPath(path));
+                } catch (MailboxNotFoundException e) {
+                    session.getLog().debug("Mailbox '" + path + "' not found.");
+                }
+            } else {
+                for (Mailbox<Id> mailbox : mapper.findMailboxWithPathLike(entry.getKey())) {
+                    found.put(new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName()), mailbox);
+                }
+            }
+        }
+
+        final List<Mailbox<Id>> mailboxes = new ArrayList<Mailbox<Id>>(paths.size());
+        for (MailboxPath path : paths) {
+            Mailbox<Id> mailbox = found.get(path);
+            if (mailbox != null) {
+                mailboxes.add(mailbox);
+            }
+        }
+        return mailboxes;
+    }
+
     @Override
     public boolean mailboxExists(MailboxPath mailboxPath, MailboxSession session) throws MailboxException {
         try {
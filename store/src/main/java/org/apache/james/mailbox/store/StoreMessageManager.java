@@ -19,22 +19,22 @@
 
 package org.apache.james.mailbox.store;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.internet.SharedInputStream;
-import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
@@ -49,21 +49,28 @@ import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.ReadOnlyException;
 import org.apache.james.mailbox.exception.UnsupportedRightException;
+import org.apache.james.mailbox.model.AppendRequest;
 import org.apache.james.mailbox.model.MailboxACL;
 import org.apache.james.mailbox.model.MailboxACL.EditMode;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLEntryKey;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLRight;
 import org.apache.james.mailbox.model.MailboxACL.MailboxACLRights;
+import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
 import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
 import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.MessageMapperFactory;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
@@ -71,6 +78,8 @@ import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
 import org.apache.james.mailbox.store.streaming.CountingInputStream;
+import org.apache.james.mailbox.store.streaming.PartOffsetIndex;
+import org.apache.james.mailbox.store.streaming.SharedContentBuffer;
 import org.apache.james.mailbox.store.transaction.Mapper;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
@@ -110,6 +119,12 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         MINIMAL_PERMANET_FLAGS.add(Flags.Flag.SEEN);
     }
 
+    /**
+     * Messages up to this size (in bytes) are buffered in memory while appending them. Bigger
+     * messages are spilled to a temporary file.
+     */
+    public final static int DEFAULT_APPEND_BUFFER_THRESHOLD = 100 * 1024;
+
     private final Mailbox<Id> mailbox;
 
     private final MailboxEventDispatcher<Id> dispatcher;
@@ -126,6 +141,12 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
 
     private int fetchBatchSize;
 
+    private ExecutorService fetchExecutor;
+
+    private long fetchMemoryLimit = StoreMessageResultIterator.DEFAULT_FETCH_MEMORY_LIMIT;
+
+    private int appendBufferThreshold = DEFAULT_APPEND_BUFFER_THRESHOLD;
+
     public StoreMessageManager(final MessageMapperFactory<Id> mapperFactory, final MessageSearchIndex<Id> index, final MailboxEventDispatcher<Id> dispatcher, final MailboxPathLocker locker, final Mailbox<Id> mailbox, final MailboxACLResolver aclResolver,
             final GroupMembershipResolver groupMembershipResolver) throws MailboxException {
         this.mailbox = mailbox;
@@ -141,6 +162,37 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Set the {@link ExecutorService} which is used to prefetch the next batch of messages while
+     * the current one is consumed. Use <code>null</code> to disable prefetching.
+     * 
+     * @param fetchExecutor
+     */
+    public void setFetchExecutor(ExecutorService fetchExecutor) {
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /**
+     * Set the maximal size (in bytes) of the message content which is held by the current and the
+     * prefetched batch. This is only used if prefetching is enabled.
+     * 
+     * @param fetchMemoryLimit
+     */
+    public void setFetchMemoryLimit(long fetchMemoryLimit) {
+        this.fetchMemoryLimit = fetchMemoryLimit;
+    }
+
+    /**
+     * Set the maximal size (in bytes) of a message which will be buffered in memory while
+     * appending it. Bigger messages will be written to a temporary file. Use <code>0</code>
+     * to always use a temporary file.
+     * 
+     * @param appendBufferThreshold
+     */
+    public void setAppendBufferThreshold(int appendBufferThreshold) {
+        this.appendBufferThreshold = appendBufferThreshold;
+    }
+
     /**
      * Return the {@link MailboxPathLocker}
      * 
@@ -243,24 +295,119 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
      */
     public long appendMessage(final InputStream msgIn, Date internalDate, final MailboxSession mailboxSession, final boolean isRecent, final Flags flagsToBeSet) throws MailboxException {
 
-        File file = null;
-        TeeInputStream tmpMsgIn = null;
-        BodyOffsetInputStream bIn = null;
-        FileOutputStream out = null;
-        SharedFileInputStream contentIn = null;
+        SharedContentBuffer buffer = null;
+
+        if (!isWriteable(mailboxSession)) {
+            throw new ReadOnlyException(new StoreMailboxPath<Id>(getMailboxEntity()), mailboxSession.getPathDelimiter());
+        }
+
+        try {
+            // Copy the message to a buffer which keeps small messages in
+            // memory and only spill big ones to a temporary file. We will work
+            // with the buffer as source for the InputStream
+            buffer = new SharedContentBuffer(appendBufferThreshold);
+
+            final Message<Id> message = parseMessage(msgIn, internalDate, isRecent, flagsToBeSet, mailboxSession, buffer);
+            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<Long>() {
+
+                @Override
+                public Long execute() throws MailboxException {
+                    MessageMetaData data = appendMessageToStore(message, mailboxSession);
+
+                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
+                    uids.put(data.getUid(), data);
+                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
+                    return data.getUid();
+                }
+            }, true);
+
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } finally {
+            // close the content and delete the temporary file if one was created
+            if (buffer != null) {
+                buffer.dispose();
+            }
+        }
+
+    }
+
+    /**
+     * @see org.apache.james.mailbox.MessageManager#appendMessages(java.util.Iterator, org.apache.james.mailbox.MailboxSession)
+     */
+    public List<Long> appendMessages(Iterator<AppendRequest> requests, final MailboxSession mailboxSession) throws MailboxException {
+
+        final List<SharedContentBuffer> buffers = new ArrayList<SharedContentBuffer>();
 
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(new StoreMailboxPath<Id>(getMailboxEntity()), mailboxSession.getPathDelimiter());
         }
 
         try {
-            // Create a temporary file and copy the message to it. We will work
-            // with the file as
-            // source for the InputStream
-            file = File.createTempFile("imap", ".msg");
-            out = new FileOutputStream(file);
+            // Parse all messages before acquiring the lock, so the lock is
+            // only hold while the messages are stored
+            final List<Message<Id>> messages = new ArrayList<Message<Id>>();
+            while (requests.hasNext()) {
+                AppendRequest request = requests.next();
+                SharedContentBuffer buffer = new SharedContentBuffer(appendBufferThreshold);
+                buffers.add(buffer);
+                messages.add(parseMessage(request.getMessage(), request.getInternalDate(), request.isRecent(), request.getFlags(), mailboxSession, buffer));
+            }
+            if (messages.isEmpty()) {
+                return new ArrayList<Long>();
+            }
+            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<List<Long>>() {
+
+                @Override
+                public List<Long> execute() throws MailboxException {
+                    List<MessageMetaData> data = appendMessagesToStore(messages, mailboxSession);
+
+                    List<Long> result = new ArrayList<Long>(data.size());
+                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
+                    for (MessageMetaData metaData : data) {
+                        uids.put(metaData.getUid(), metaData);
+                        result.add(metaData.getUid());
+                    }
+                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
+                    return result;
+                }
+            }, true);
+
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } finally {
+            // close the contents and delete the temporary files if some were created
+            for (SharedContentBuffer buffer : buffers) {
+                buffer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Parse the given message while copying it to the given {@link SharedContentBuffer} and create
+     * a new {@link Message} which uses the buffer as content.
+     * 
+     * @param msgIn
+     * @param internalDate
+     * @param isRecent
+     * @param flagsToBeSet
+     * @param mailboxSession
+     * @param buffer
+     * @return message
+     * @throws IOException
+     * @throws MimeException
+     * @throws MailboxException
+     */
+    private Message<Id> parseMessage(InputStream msgIn, Date internalDate, boolean isRecent, Flags flagsToBeSet, MailboxSession mailboxSession, SharedContentBuffer buffer) throws IOException, MimeException, MailboxException {
+        TeeInputStream tmpMsgIn = null;
+        BodyOffsetInputStream bIn = null;
 
-            tmpMsgIn = new TeeInputStream(msgIn, out);
+        try {
+            tmpMsgIn = new TeeInputStream(msgIn, buffer);
 
             bIn = new BodyOffsetInputStream(tmpMsgIn);
             // Disable line length... This should be handled by the smtp server
@@ -275,11 +422,13 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
             parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
             parser.parse(bIn);
             final HeaderImpl header = new HeaderImpl();
+            final List<MessageResult.Header> resultHeaders = new ArrayList<MessageResult.Header>();
 
             EntityState next = parser.next();
             while (next != EntityState.T_BODY && next != EntityState.T_END_OF_STREAM && next != EntityState.T_START_MULTIPART) {
                 if (next == EntityState.T_FIELD) {
                     header.addField(parser.getField());
+                    resultHeaders.add(new ResultHeader(parser.getField().getName(), parser.getField().getBody().trim()));
                 }
                 next = parser.next();
             }
@@ -336,6 +485,16 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
                 propertyBuilder.setTextualLineCount(lines);
             }
 
+            MimeDescriptor structure = null;
+            if (MimeDescriptorImpl.isComposite(mediaType) && next != EntityState.T_END_OF_STREAM) {
+                // Build the complete MIME structure in the same pass, while the message is copied to the buffer
+                try {
+                    structure = MimeDescriptorImpl.build(parser, next, resultHeaders);
+                } catch (MimeException e) {
+                    // Not parsable, the structure will be computed on demand
+                }
+            }
+
             final Flags flags;
             if (flagsToBeSet == null) {
                 flags = new Flags();
@@ -355,50 +514,49 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
             byte[] discard = new byte[4096];
             while (tmpMsgIn.read(discard) != -1) {
                 // consume the rest of the stream so everything get copied to
-                // the file now
+                // the buffer now
                 // via the TeeInputStream
             }
             int bodyStartOctet = (int) bIn.getBodyStartOffset();
             if (bodyStartOctet == -1) {
                 bodyStartOctet = 0;
             }
-            contentIn = new SharedFileInputStream(file);
-            final int size = (int) file.length();
-
-            final Message<Id> message = createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder);
-            return locker.executeWithLock(mailboxSession, new StoreMailboxPath<Id>(getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<Long>() {
+            buffer.close();
+            final SharedInputStream contentIn = buffer.newSharedInputStream();
+            final int size = (int) buffer.getSize();
 
-                @Override
-                public Long execute() throws MailboxException {
-                    MessageMetaData data = appendMessageToStore(message, mailboxSession);
-
-                    SortedMap<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>();
-                    uids.put(data.getUid(), data);
-                    dispatcher.added(mailboxSession, uids, getMailboxEntity());
-                    return data.getUid();
-                }
-            }, true);
+            if (structure != null) {
+                addStructure(contentIn, structure, propertyBuilder);
+            }
 
-        } catch (IOException e) {
-            throw new MailboxException("Unable to parse message", e);
-        } catch (MimeException e) {
-            throw new MailboxException("Unable to parse message", e);
+            return createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder);
         } finally {
             IOUtils.closeQuietly(bIn);
             IOUtils.closeQuietly(tmpMsgIn);
-            IOUtils.closeQuietly(out);
-            IOUtils.closeQuietly(contentIn);
-
-            // delete the temporary file if one was specified
-            if (file != null) {
-                if (!file.delete()) {
-                    // Don't throw an IOException. The message could be appended
-                    // and the temporary file
-                    // will be deleted hopefully some day
-                }
-            }
         }
+    }
 
+    /**
+     * Store the complete MIME structure and the offsets of all parts, so BODYSTRUCTURE and
+     * part content can be served later without the need to parse the content again
+     * 
+     * @param contentIn
+     * @param structure
+     * @param propertyBuilder
+     * @throws IOException
+     */
+    private void addStructure(SharedInputStream contentIn, MimeDescriptor structure, PropertyBuilder propertyBuilder) throws IOException {
+        propertyBuilder.setMimeStructure(MimeDescriptorCodec.encode(structure));
+
+        InputStream offsetsIn = contentIn.newStream(0, -1);
+        try {
+            final PartOffsetIndex index = PartOffsetIndex.build(offsetsIn, structure);
+            if (index != null && index.size() > 0) {
+                propertyBuilder.setPartOffsets(index.encode());
+            }
+        } finally {
+            IOUtils.closeQuietly(offsetsIn);
+        }
     }
 
     /**
@@ -434,22 +592,42 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         final List<Long> recent;
         final Flags permanentFlags = getPermanentFlags(mailboxSession);
         final long uidValidity = getMailboxEntity().getUidValidity();
-        final long uidNext = mapperFactory.getMessageMapper(mailboxSession).getLastUid(mailbox) + 1;
-        final long highestModSeq = mapperFactory.getMessageMapper(mailboxSession).getHighestModSeq(mailbox);
+
+        // fetch all needed counters with one call to the mapper
+        final Set<Counter> counters = EnumSet.of(Counter.LastUid, Counter.HighestModSeq);
+        switch (fetchGroup) {
+        case UNSEEN_COUNT:
+            counters.add(Counter.UnseenCount);
+            counters.add(Counter.MessageCount);
+            break;
+        case FIRST_UNSEEN:
+            counters.add(Counter.FirstUnseen);
+            counters.add(Counter.MessageCount);
+            break;
+        case NO_UNSEEN:
+            counters.add(Counter.MessageCount);
+            break;
+        default:
+            break;
+        }
+        final MailboxCounters mailboxCounters = mapperFactory.getMessageMapper(mailboxSession).getMailboxCounters(getMailboxEntity(), counters);
+
+        final long uidNext = mailboxCounters.get(Counter.LastUid) + 1;
+        final long highestModSeq = mailboxCounters.get(Counter.HighestModSeq);
         final long messageCount;
         final long unseenCount;
         final Long firstUnseen;
         switch (fetchGroup) {
         case UNSEEN_COUNT:
-            unseenCount = countUnseenMessagesInMailbox(mailboxSession);
-            messageCount = getMessageCount(mailboxSession);
+            unseenCount = mailboxCounters.get(Counter.UnseenCount);
+            messageCount = mailboxCounters.get(Counter.MessageCount);
             firstUnseen = null;
             recent = recent(resetRecent, mailboxSession);
 
             break;
         case FIRST_UNSEEN:
-            firstUnseen = findFirstUnseenMessageUid(mailboxSession);
-            messageCount = getMessageCount(mailboxSession);
+            firstUnseen = mailboxCounters.get(Counter.FirstUnseen);
+            messageCount = mailboxCounters.get(Counter.MessageCount);
             unseenCount = 0;
             recent = recent(resetRecent, mailboxSession);
 
@@ -457,7 +635,7 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         case NO_UNSEEN:
             firstUnseen = null;
             unseenCount = 0;
-            messageCount = getMessageCount(mailboxSession);
+            messageCount = mailboxCounters.get(Counter.MessageCount);
             recent = recent(resetRecent, mailboxSession);
 
             break;
@@ -524,12 +702,22 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(new StoreMailboxPath<Id>(getMailboxEntity()), mailboxSession.getPathDelimiter());
         }
-        final SortedMap<Long, Flags> newFlagsByUid = new TreeMap<Long, Flags>();
-
         trimFlags(flags, mailboxSession);
 
         final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(mailboxSession);
 
+        if (flags.getUserFlags().length == 0) {
+            // only system flags are touched, so the storage can update them without loading the messages
+            UpdatedFlagsList updatedFlags = messageMapper.execute(new Mapper.Transaction<UpdatedFlagsList>() {
+
+                public UpdatedFlagsList run() throws MailboxException {
+                    return messageMapper.updateSystemFlags(getMailboxEntity(), flags, value, replace, set);
+                }
+            });
+            dispatcher.flagsUpdated(mailboxSession, updatedFlags.getUids(), getMailboxEntity(), updatedFlags);
+            return updatedFlags.getNewFlagsByUid();
+        }
+
         Iterator<UpdatedFlags> it = messageMapper.execute(new Mapper.Transaction<Iterator<UpdatedFlags>>() {
 
             public Iterator<UpdatedFlags> run() throws MailboxException {
@@ -537,6 +725,7 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
             }
         });
 
+        final SortedMap<Long, Flags> newFlagsByUid = new TreeMap<Long, Flags>();
         final SortedMap<Long, UpdatedFlags> uFlags = new TreeMap<Long, UpdatedFlags>();
 
         while (it.hasNext()) {
@@ -590,15 +779,50 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
             throw new ReadOnlyException(new StoreMailboxPath<Id>(toMailbox.getMailboxEntity()), session.getPathDelimiter());
         }
 
-        //TODO lock the from mailbox too, in a non-deadlocking manner - how?
-        return locker.executeWithLock(session, new StoreMailboxPath<Id>(toMailbox.getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<List<MessageRange>>() {
+        return executeWithLocks(session, new StoreMailboxPath<Id>(getMailboxEntity()), new StoreMailboxPath<Id>(toMailbox.getMailboxEntity()), new MailboxPathLocker.LockAwareExecution<List<MessageRange>>() {
 
             @Override
             public List<MessageRange> execute() throws MailboxException {
-                SortedMap<Long, MessageMetaData> movedUids = move(set, toMailbox, session);
+                final SortedMap<Long, MessageMetaData> expungedUids = new TreeMap<Long, MessageMetaData>();
+                SortedMap<Long, MessageMetaData> movedUids = move(set, toMailbox, expungedUids, session);
                 dispatcher.added(session, movedUids, toMailbox.getMailboxEntity());
+                dispatcher.expunged(session, expungedUids, getMailboxEntity());
                 return MessageRange.toRanges(new ArrayList<Long>(movedUids.keySet()));
             }
+        });
+    }
+
+    /**
+     * Execute the given {@link MailboxPathLocker.LockAwareExecution} while holding the write lock of both
+     * {@link MailboxPath}'s. The locks are always acquired in the natural order of the paths, so concurrent
+     * operations on the same pair of mailboxes can not deadlock.
+     * 
+     * @param session
+     * @param path
+     * @param otherPath
+     * @param execution
+     * @return result
+     * @throws MailboxException
+     */
+    protected <T> T executeWithLocks(final MailboxSession session, MailboxPath path, MailboxPath otherPath, final MailboxPathLocker.LockAwareExecution<T> execution) throws MailboxException {
+        if (path.equals(otherPath)) {
+            return locker.executeWithLock(session, path, execution, true);
+        }
+        final MailboxPath first;
+        final MailboxPath second;
+        if (path.toString().compareTo(otherPath.toString()) < 0) {
+            first = path;
+            second = otherPath;
+        } else {
+            first = otherPath;
+            second = path;
+        }
+        return locker.executeWithLock(session, first, new MailboxPathLocker.LockAwareExecution<T>() {
+
+            @Override
+            public T execute() throws MailboxException {
+                return locker.executeWithLock(session, second, execution, true);
+            }
         }, true);
     }
 
@@ -613,6 +837,17 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         });
     }
 
+    protected List<MessageMetaData> appendMessagesToStore(final List<Message<Id>> messages, MailboxSession session) throws MailboxException {
+        final MessageMapper<Id> mapper = mapperFactory.getMessageMapper(session);
+        return mapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+
+            public List<MessageMetaData> run() throws MailboxException {
+                return mapper.add(getMailboxEntity(), messages);
+            }
+
+        });
+    }
+
     /**
      * @see org.apache.james.mailbox.MessageManager#getMessageCount(org.apache.james.mailbox.MailboxSession)
      */
@@ -627,7 +862,7 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
      */
     public MessageResultIterator getMessages(final MessageRange set, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException {
         final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(mailboxSession);
-        return new StoreMessageResultIterator<Id>(messageMapper, mailbox, set, fetchBatchSize, fetchGroup);
+        return new StoreMessageResultIterator<Id>(messageMapper, mailbox, set, fetchBatchSize, fetchGroup, fetchExecutor, fetchMemoryLimit);
     }
 
     /**
@@ -689,78 +924,54 @@ public class StoreMessageManager<Id> implements org.apache.james.mailbox.Message
         return index.search(mailboxSession, getMailboxEntity(), query);
     }
 
-    private Iterator<MessageMetaData> copy(final Iterator<Message<Id>> originalRows, final MailboxSession session) throws MailboxException {
-        final List<MessageMetaData> copiedRows = new ArrayList<MessageMetaData>();
-        final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
-
-        while (originalRows.hasNext()) {
-            final Message<Id> originalMessage = originalRows.next();
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.copy(getMailboxEntity(), originalMessage);
-
-                }
-
-            });
-            copiedRows.add(data);
-        }
-        return copiedRows.iterator();
-    }
-
-    private Iterator<MessageMetaData> move(Iterator<Message<Id>> originalRows,
-			MailboxSession session) throws MailboxException {
-        final List<MessageMetaData> movedRows = new ArrayList<MessageMetaData>();
-        final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
-
-        while (originalRows.hasNext()) {
-            final Message<Id> originalMessage = originalRows.next();
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.move(getMailboxEntity(), originalMessage);
-
-                }
-
-            });
-            movedRows.add(data);
-        }
-        return movedRows.iterator();
-	}
-
-
     /**
      * @see org.apache.james.mailbox.store.AbstractStoreMessageManager#copy(org.apache.james.mailbox.model.MessageRange,
      *      org.apache.james.mailbox.store.AbstractStoreMessageManager,
      *      org.apache.james.mailbox.MailboxSession)
      */
-    private SortedMap<Long, MessageMetaData> copy(MessageRange set, final StoreMessageManager<Id> to, final MailboxSession session) throws MailboxException {
-        MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
+    private SortedMap<Long, MessageMetaData> copy(final MessageRange set, final StoreMessageManager<Id> to, final MailboxSession session) throws MailboxException {
+        final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
 
         final SortedMap<Long, MessageMetaData> copiedMessages = new TreeMap<Long, MessageMetaData>();
-        Iterator<Message<Id>> originalRows = messageMapper.findInMailbox(mailbox, set, FetchType.Full, -1);
-        Iterator<MessageMetaData> ids = to.copy(originalRows, session);
-        while (ids.hasNext()) {
-            MessageMetaData data = ids.next();
+        List<MessageMetaData> copiedRows = messageMapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+            public List<MessageMetaData> run() throws MailboxException {
+                return messageMapper.copy(getMailboxEntity(), to.getMailboxEntity(), set);
+            }
+
+        });
+        for (MessageMetaData data : copiedRows) {
             copiedMessages.put(data.getUid(), data);
         }
 
         return copiedMessages;
     }
 
-    private SortedMap<Long, MessageMetaData> move(MessageRange set,
-			final StoreMessageManager<Id> to, final MailboxSession session) throws MailboxException {
-        MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
+    /**
+     * Move the messages of the {@link MessageRange} to the given {@link StoreMessageManager} within one transaction.
+     * The {@link MessageMetaData} of the moved messages as they were stored in this mailbox is put in the given
+     * expunged {@link Map}, so the caller can dispatch the matching events.
+     */
+    private SortedMap<Long, MessageMetaData> move(final MessageRange set, final StoreMessageManager<Id> to, final Map<Long, MessageMetaData> expunged, final MailboxSession session) throws MailboxException {
+        final MessageMapper<Id> messageMapper = mapperFactory.getMessageMapper(session);
 
         final SortedMap<Long, MessageMetaData> movedMessages = new TreeMap<Long, MessageMetaData>();
-        Iterator<Message<Id>> originalRows = messageMapper.findInMailbox(mailbox, set, FetchType.Full, -1);
-        Iterator<MessageMetaData> ids = to.move(originalRows, session);
-        while (ids.hasNext()) {
-            MessageMetaData data = ids.next();
+        List<MessageMetaData> movedRows = messageMapper.execute(new Mapper.Transaction<List<MessageMetaData>>() {
+            public List<MessageMetaData> run() throws MailboxException {
+                Iterator<Message<Id>> originals = messageMapper.findInMailbox(getMailboxEntity(), set, FetchType.Metadata, -1);
+                while (originals.hasNext()) {
+                    Message<Id> original = originals.next();
+                    expunged.put(original.getUid(), new SimpleMessageMetaData(original));
+                }
+                return messageMapper.move(getMailboxEntity(), to.getMailboxEntity(), set);
+            }
+
+        });
+        for (MessageMetaData data : movedRows) {
             movedMessages.put(data.getUid(), data);
         }
 
         return movedMessages;
-	}
-
+    }
 
     /**
      * Return the count of unseen messages
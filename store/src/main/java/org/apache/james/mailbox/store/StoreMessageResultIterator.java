@@ -18,9 +18,15 @@
  ****************************************************************/
 package org.apache.james.mailbox.store;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.mail.Flags;
 
@@ -38,8 +44,32 @@ import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
 
+/**
+ * {@link MessageResultIterator} which reads the {@link Message}s of a {@link MessageRange} in batches.
+ * 
+ * If an {@link ExecutorService} is given, the next batch is fetched in the background while the current
+ * batch is consumed. In this mode the size of the batches also adapts to the {@link FetchType} and to the size
+ * of the messages which were read before, so that the content of the current and the prefetched batch stay
+ * below the configured memory limit. As the {@link MessageMapper} is used from another thread, this mode
+ * should only be used with {@link MessageMapper} implementations which allow that.
+ */
 public class StoreMessageResultIterator<Id> implements MessageResultIterator {
 
+    /**
+     * Default limit (in bytes) for the content of the current and the prefetched batch
+     */
+    public static final long DEFAULT_FETCH_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * Factor which is applied to the batch size if only the metadata of the messages is fetched
+     */
+    private static final int METADATA_BATCH_FACTOR = 10;
+
+    /**
+     * Divisor which is applied to the batch size if the full content of the messages is fetched
+     */
+    private static final int FULL_BATCH_DIVISOR = 10;
+
     private Iterator<Message<Id>> next = null;
     private MailboxException exception;
     private Mailbox<Id> mailbox;
@@ -51,17 +81,63 @@ public class StoreMessageResultIterator<Id> implements MessageResultIterator {
     private Type type;
     private MessageMapper<Id> mapper;
     private FetchType ftype;
+    private ExecutorService executor;
+    private long memoryLimit;
+    private int maxBatchSize;
+    private Future<List<Message<Id>>> prefetched;
+    private boolean closed;
 
     public StoreMessageResultIterator(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange range, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group) {
+        this(mapper, mailbox, range, batchSize, group, null, DEFAULT_FETCH_MEMORY_LIMIT);
+    }
+
+    /**
+     * Create a new iterator which prefetches the next batch with the given {@link ExecutorService}. If the
+     * {@link ExecutorService} is <code>null</code> no prefetching is done and the batch size is not adapted.
+     * 
+     * @param mapper
+     * @param mailbox
+     * @param range
+     * @param batchSize the batch size used if headers or body are fetched. It's increased if only metadata is fetched and decreased if the full content is fetched
+     * @param group
+     * @param executor the {@link ExecutorService} used to fetch the next batch, or <code>null</code>
+     * @param memoryLimit the maximal size (in bytes) of the content of the current and the prefetched batch
+     */
+    public StoreMessageResultIterator(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange range, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group, ExecutorService executor, long memoryLimit) {
         this.mailbox = mailbox;
         this.group = group;
         this.mapper = mapper;
         this.from = range.getUidFrom();
         this.cursor = this.from;
         this.to = range.getUidTo();
-        this.batchSize = batchSize;
         this.type = range.getType();
         this.ftype = getFetchType(group);
+        this.executor = executor;
+        this.memoryLimit = memoryLimit;
+        if (executor == null) {
+            this.batchSize = batchSize;
+        } else {
+            this.batchSize = getBatchSize(ftype, batchSize);
+        }
+        this.maxBatchSize = this.batchSize;
+    }
+
+    /**
+     * Return the batch size to start with for the given {@link FetchType}
+     * 
+     * @param ftype
+     * @param batchSize
+     * @return batchSize
+     */
+    private static int getBatchSize(FetchType ftype, int batchSize) {
+        switch (ftype) {
+        case Metadata:
+            return batchSize * METADATA_BATCH_FACTOR;
+        case Full:
+            return Math.max(1, batchSize / FULL_BATCH_DIVISOR);
+        default:
+            return batchSize;
+        }
     }
 
     /**
@@ -111,40 +187,135 @@ public class StoreMessageResultIterator<Id> implements MessageResultIterator {
 
     @Override
     public boolean hasNext() {
-        if (cursor > to) 
-          return false;
+        if (closed || cursor > to) {
+            cancelPrefetch();
+            return false;
+        }
 
         if (next == null || !next.hasNext()) {
             try {
                 readBatch();
             } catch (MailboxException e) {
                 this.exception = e;
+                cancelPrefetch();
                 return false;
             }
         }
         
-        return next.hasNext();
+        if (next.hasNext()) {
+            return true;
+        }
+        cancelPrefetch();
+        return false;
+    }
+
+    /**
+     * Cancel the fetching of the next batch, if one is still in progress
+     */
+    private void cancelPrefetch() {
+        if (prefetched != null) {
+            prefetched.cancel(true);
+            prefetched = null;
+        }
     }
 
     private void readBatch() throws MailboxException {
+        if (executor == null) {
+            next = mapper.findInMailbox(mailbox, getRange(cursor), ftype, batchSize);
+            return;
+        }
+
+        List<Message<Id>> batch;
+        if (prefetched != null) {
+            try {
+                batch = prefetched.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailboxException("Interrupted while fetching messages of mailbox " + mailbox, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof MailboxException) {
+                    throw (MailboxException) e.getCause();
+                }
+                throw new MailboxException("Unable to fetch messages of mailbox " + mailbox, e);
+            } finally {
+                prefetched = null;
+            }
+        } else {
+            batch = fetch(cursor, batchSize);
+        }
+        next = batch.iterator();
+
+        if (!batch.isEmpty() && type != Type.ONE) {
+            long lastUid = batch.get(batch.size() - 1).getUid();
+            if (lastUid < to) {
+                adaptBatchSize(batch);
+                final long nextCursor = lastUid + 1;
+                final int nextBatchSize = batchSize;
+                prefetched = executor.submit(new Callable<List<Message<Id>>>() {
+                    public List<Message<Id>> call() throws MailboxException {
+                        return fetch(nextCursor, nextBatchSize);
+                    }
+                });
+            }
+        }
+    }
+
+    private List<Message<Id>> fetch(long start, int limit) throws MailboxException {
+        List<Message<Id>> batch = new ArrayList<Message<Id>>();
+        Iterator<Message<Id>> messages = mapper.findInMailbox(mailbox, getRange(start), ftype, limit);
+        while (messages.hasNext()) {
+            batch.add(messages.next());
+        }
+        return batch;
+    }
+
+    /**
+     * Adapt the batch size to the size of the given messages, so that the content of two batches stays below
+     * the memory limit
+     * 
+     * @param batch
+     */
+    private void adaptBatchSize(List<Message<Id>> batch) {
+        if (ftype == FetchType.Metadata) {
+            return;
+        }
+        long size = 0;
+        for (Message<Id> message : batch) {
+            switch (ftype) {
+            case Headers:
+                size += message.getFullContentOctets() - message.getBodyOctets();
+                break;
+            case Body:
+                size += message.getBodyOctets();
+                break;
+            default:
+                size += message.getFullContentOctets();
+                break;
+            }
+        }
+        long averageSize = Math.max(1, size / batch.size());
+        batchSize = (int) Math.max(1, Math.min(maxBatchSize, memoryLimit / 2 / averageSize));
+    }
+
+    private MessageRange getRange(long start) {
         MessageRange range;
         switch (type) {
         default:
         case ALL:
             // In case of all, we start on cursor and don't specify a to
-            range = MessageRange.from(cursor);
+            range = MessageRange.from(start);
             break;
         case FROM:
-            range = MessageRange.from(cursor);
+            range = MessageRange.from(start);
             break;
         case ONE:
-            range = MessageRange.one(cursor);
+            range = MessageRange.one(start);
             break;
         case RANGE:
-            range = MessageRange.range(cursor, to);
+            range = MessageRange.range(start, to);
             break;
         }
-        next = mapper.findInMailbox(mailbox, range, ftype, batchSize);
+        return range;
     }
 
     @Override
@@ -175,6 +346,13 @@ public class StoreMessageResultIterator<Id> implements MessageResultIterator {
         return exception;
     }
 
+    @Override
+    public void close() {
+        cancelPrefetch();
+        next = null;
+        closed = true;
+    }
+
     private static final class UnloadedMessageResult<Id> implements MessageResult {
         private final MailboxException exception;
 
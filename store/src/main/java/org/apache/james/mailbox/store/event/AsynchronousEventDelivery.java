@@ -0,0 +1,365 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.AsyncMailboxListener;
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxListener.Event;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.MailboxPathLockListener;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers events to {@link AsyncMailboxListener}'s by using an {@link ExecutorService}.
+ * 
+ * Every mailbox has its own bounded queue, which is drained by at most one task at a time. So
+ * the events of one mailbox are delivered in the order they were submitted, while events of
+ * different mailboxes are delivered in parallel. The queues of the store events are keyed by the
+ * id of the mailbox, so the order is kept when a mailbox gets renamed.
+ * 
+ * If the queue of a mailbox is full the submitting thread blocks until there is space again. Events
+ * are usually fired while the mailbox lock is held, so in that case the event is queued anyway and
+ * the thread waits after it released the lock. To know about the locks it must be set as
+ * {@link MailboxPathLockListener} of the locker. A thread which holds a lock can only overfill a queue
+ * up to twice its size, after that it waits for space even while holding the lock.
+ */
+public class AsynchronousEventDelivery implements MailboxPathLockListener {
+
+    public final static int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * Maximal count of events which are delivered by one task before the queue is
+     * rescheduled, so one busy mailbox can not starve the others
+     */
+    private final static int MAX_EVENTS_PER_TASK = 100;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(AsynchronousEventDelivery.class);
+
+    /**
+     * Set while events are delivered, so events fired by listeners never block
+     * on a full queue
+     */
+    private final static ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
+    /**
+     * Count of the mailbox locks held by the current thread
+     */
+    private final ThreadLocal<int[]> locks = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Queues which were full when the current thread submitted an event while holding a lock
+     */
+    private final ThreadLocal<List<MailboxQueue>> fullQueues = new ThreadLocal<List<MailboxQueue>>() {
+        protected List<MailboxQueue> initialValue() {
+            return new ArrayList<MailboxQueue>();
+        }
+    };
+
+    private final ConcurrentMap<Object, MailboxQueue> queues = new ConcurrentHashMap<Object, MailboxQueue>();
+    private final ExecutorService executor;
+    private final int queueSize;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    public AsynchronousEventDelivery(ExecutorService executor) {
+        this(executor, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param executor the {@link ExecutorService} used to deliver the events
+     * @param queueSize the maximal count of queued events per mailbox, a thread which holds a lock may queue
+     *            up to twice as many
+     */
+    public AsynchronousEventDelivery(ExecutorService executor, int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be at least 1");
+        }
+        this.executor = executor;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Queue the {@link Event} for delivery to the given {@link MailboxListener}
+     * 
+     * @param listener
+     * @param event
+     */
+    public void deliver(MailboxListener listener, Event event) {
+        final Object key = mailboxKey(event);
+        while (true) {
+            MailboxQueue queue = queues.get(key);
+            if (queue == null) {
+                MailboxQueue newQueue = new MailboxQueue(key);
+                queue = queues.putIfAbsent(key, newQueue);
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
+            if (queue.offer(listener, event)) {
+                return;
+            }
+            // the queue was retired in the meantime, so try again with a new one
+        }
+    }
+
+    /**
+     * Until the lock is released again, submitting an event to a full queue does not block.
+     * 
+     * @see org.apache.james.mailbox.store.MailboxPathLockListener#lockAcquired(org.apache.james.mailbox.model.MailboxPath)
+     */
+    public void lockAcquired(MailboxPath path) {
+        locks.get()[0]++;
+    }
+
+    /**
+     * If the current thread released its last lock, it waits until the queues it overfilled while
+     * holding the lock have space again.
+     * 
+     * @see org.apache.james.mailbox.store.MailboxPathLockListener#lockReleased(org.apache.james.mailbox.model.MailboxPath)
+     */
+    public void lockReleased(MailboxPath path) {
+        int[] held = locks.get();
+        if (--held[0] > 0) {
+            return;
+        }
+        locks.remove();
+        List<MailboxQueue> full = fullQueues.get();
+        if (!full.isEmpty()) {
+            fullQueues.remove();
+            for (int i = 0; i < full.size(); i++) {
+                full.get(i).awaitSpace();
+            }
+        }
+    }
+
+    /**
+     * Return the key of the mailbox of the {@link Event}. Events fired by the store carry the {@link Mailbox},
+     * so they are keyed by its id, which does not change on rename. Other events are keyed by their path.
+     */
+    @SuppressWarnings("rawtypes")
+    static Object mailboxKey(Event event) {
+        Mailbox mailbox = null;
+        if (event instanceof MailboxEventDispatcher.AddedImpl) {
+            mailbox = ((MailboxEventDispatcher.AddedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.ExpungedImpl) {
+            mailbox = ((MailboxEventDispatcher.ExpungedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.FlagsUpdatedImpl) {
+            mailbox = ((MailboxEventDispatcher.FlagsUpdatedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxAddedImpl) {
+            mailbox = ((MailboxEventDispatcher.MailboxAddedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxDeletionImpl) {
+            mailbox = ((MailboxEventDispatcher.MailboxDeletionImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxRenamedEventImpl) {
+            mailbox = ((MailboxEventDispatcher.MailboxRenamedEventImpl) event).getNewMailbox();
+        }
+        if (mailbox != null && mailbox.getMailboxId() != null) {
+            return mailbox.getMailboxId();
+        }
+        return event.getMailboxPath();
+    }
+
+    /**
+     * Return the count of events which are queued but not delivered yet
+     * 
+     * @return pending
+     */
+    public long getPendingEventCount() {
+        return pending.get();
+    }
+
+    /**
+     * Return the count of events which were delivered
+     * 
+     * @return delivered
+     */
+    public long getDeliveredEventCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Return the count of events for which the listener threw an exception
+     * 
+     * @return failed
+     */
+    public long getFailedEventCount() {
+        return failed.get();
+    }
+
+    /**
+     * Return how often a submitting thread needed to wait because the queue of the mailbox was full. If the
+     * thread held a lock, it waited after releasing it
+     * 
+     * @return blocked
+     */
+    public long getBlockedSubmitCount() {
+        return blocked.get();
+    }
+
+    /**
+     * Return the count of mailboxes which have queued events
+     * 
+     * @return queues
+     */
+    public int getQueueCount() {
+        return queues.size();
+    }
+
+    private void deliver(QueuedEvent queued) {
+        try {
+            queued.listener.event(queued.event);
+            delivered.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            LOGGER.error("Unable to deliver event for mailbox " + queued.event.getMailboxPath() + " to " + queued.listener, e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private final static class QueuedEvent {
+        private final MailboxListener listener;
+        private final Event event;
+
+        private QueuedEvent(MailboxListener listener, Event event) {
+            this.listener = listener;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Ordered queue of the events of one mailbox
+     */
+    private final class MailboxQueue implements Runnable {
+        private final Object key;
+        private final LinkedList<QueuedEvent> events = new LinkedList<QueuedEvent>();
+        private boolean scheduled;
+        private boolean retired;
+
+        private MailboxQueue(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Add the event to the queue and schedule the queue if needed
+         * 
+         * @return false if the queue was retired and so can not be used anymore
+         */
+        private boolean offer(MailboxListener listener, Event event) {
+            final boolean schedule;
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                if (events.size() >= queueSize && DELIVERING.get() == null) {
+                    blocked.incrementAndGet();
+                    if (locks.get()[0] > 0 && events.size() < 2 * queueSize) {
+                        // don't wait while holding a lock, but after it was released
+                        List<MailboxQueue> full = fullQueues.get();
+                        if (!full.contains(this)) {
+                            full.add(this);
+                        }
+                    } else {
+                        awaitSpace();
+                        if (retired) {
+                            return false;
+                        }
+                    }
+                }
+                events.add(new QueuedEvent(listener, event));
+                pending.incrementAndGet();
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                schedule();
+            }
+            return true;
+        }
+
+        /**
+         * Wait until the queue has space again or was retired
+         */
+        private synchronized void awaitSpace() {
+            try {
+                while (events.size() >= queueSize && !retired) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                // queue the event anyway, so it does not get lost
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the executor is shutting down, so deliver in the current thread
+                run();
+            }
+        }
+
+        public void run() {
+            final Boolean delivering = DELIVERING.get();
+            DELIVERING.set(Boolean.TRUE);
+            try {
+                for (int i = 0; i < MAX_EVENTS_PER_TASK; i++) {
+                    final QueuedEvent queued;
+                    synchronized (this) {
+                        queued = events.poll();
+                        if (queued == null) {
+                            scheduled = false;
+                            retired = true;
+                            queues.remove(key, this);
+                            notifyAll();
+                            return;
+                        }
+                        notifyAll();
+                    }
+                    deliver(queued);
+                }
+            } finally {
+                if (delivering == null) {
+                    DELIVERING.remove();
+                }
+            }
+            // give the other mailboxes a chance
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.AsyncMailboxListener;
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.MailboxEventDispatcher.AddedImpl;
+import org.apache.james.mailbox.store.MailboxEventDispatcher.ExpungedImpl;
+import org.apache.james.mailbox.store.MailboxEventDispatcher.FlagsUpdatedImpl;
+import org.apache.james.mailbox.store.SimpleMailboxSession;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link MailboxListener} which collects the message events of a mailbox for a configurable window
+ * and delivers them merged to the wrapped {@link MailboxListener}. This allows slow listeners, like a
+ * search index, to process many changes with one bulk operation.
+ * 
+ * While merging:
+ * <ul>
+ * <li>the flags of a message are last-writer-wins, keeping the original old flags</li>
+ * <li>a message which is added and expunged within the window is dropped completely</li>
+ * <li>the flag updates of an expunged message are dropped</li>
+ * </ul>
+ * 
+ * Merged events are delivered in the order added, flags updated, expunged. Every other event flushes
+ * the pending events of its mailbox and is then delivered as is, so the order of the events
+ * is kept. As events are delayed, this listener is an {@link AsyncMailboxListener} itself.
+ * 
+ * The wrapped listener is always called by the scheduler, never by the thread which fired the event,
+ * and the merged events carry their own system {@link MailboxSession}.
+ *
+ * @param <Id>
+ */
+public class CoalescingMailboxListener<Id> implements AsyncMailboxListener {
+
+    public final static long DEFAULT_WINDOW = 500;
+    public final static int DEFAULT_MAX_BATCH_SIZE = 10000;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(CoalescingMailboxListener.class);
+
+    private final ConcurrentMap<Object, Batch> batches = new ConcurrentHashMap<Object, Batch>();
+    private final MailboxListener listener;
+    private final MailboxEventDispatcher<Id> dispatcher;
+    private final ScheduledExecutorService scheduler;
+    private final long window;
+    private final int maxBatchSize;
+
+    public CoalescingMailboxListener(MailboxListener listener, ScheduledExecutorService scheduler) {
+        this(listener, scheduler, DEFAULT_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param listener the {@link MailboxListener} which gets the merged events
+     * @param scheduler used to deliver the merged events once the window is over
+     * @param window the time in milliseconds for which events are collected
+     * @param maxBatchSize the count of messages after which the merged events are delivered, even if the window is not over yet
+     */
+    public CoalescingMailboxListener(MailboxListener listener, ScheduledExecutorService scheduler, long window, int maxBatchSize) {
+        this.listener = listener;
+        this.dispatcher = new MailboxEventDispatcher<Id>(listener);
+        this.scheduler = scheduler;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Return the wrapped {@link MailboxListener}
+     * 
+     * @return listener
+     */
+    public MailboxListener getListener() {
+        return listener;
+    }
+
+    public void event(Event event) {
+        while (true) {
+            final Batch batch = getBatch(AsynchronousEventDelivery.mailboxKey(event));
+            final boolean deliver;
+            synchronized (batch) {
+                if (batch.retired) {
+                    // the batch was retired in the meantime, so try again with a new one
+                    continue;
+                }
+                deliver = add(batch, event);
+            }
+            if (deliver) {
+                batch.submit();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Add the event to the batch
+     * 
+     * @return true if events were handed over for delivery
+     */
+    @SuppressWarnings("unchecked")
+    private boolean add(Batch batch, Event event) {
+        if (event instanceof AddedImpl) {
+            MailboxEventDispatcher<Id>.AddedImpl added = (MailboxEventDispatcher<Id>.AddedImpl) event;
+            batch.start(added.getSession(), added.getMailbox());
+            for (Long uid : added.getUids()) {
+                batch.added.put(uid, added.getMetaData(uid));
+            }
+        } else if (event instanceof FlagsUpdatedImpl) {
+            MailboxEventDispatcher<Id>.FlagsUpdatedImpl flagsUpdated = (MailboxEventDispatcher<Id>.FlagsUpdatedImpl) event;
+            batch.start(flagsUpdated.getSession(), flagsUpdated.getMailbox());
+            for (UpdatedFlags uFlags : flagsUpdated.getUpdatedFlags()) {
+                UpdatedFlags pending = batch.flags.get(uFlags.getUid());
+                if (pending != null) {
+                    uFlags = new UpdatedFlags(uFlags.getUid(), uFlags.getModSeq(), pending.getOldFlags(), uFlags.getNewFlags());
+                }
+                batch.flags.put(uFlags.getUid(), uFlags);
+            }
+        } else if (event instanceof ExpungedImpl) {
+            MailboxEventDispatcher<Id>.ExpungedImpl expunged = (MailboxEventDispatcher<Id>.ExpungedImpl) event;
+            batch.start(expunged.getSession(), expunged.getMailbox());
+            for (Long uid : expunged.getUids()) {
+                batch.flags.remove(uid);
+                if (batch.added.remove(uid) == null) {
+                    batch.expunged.put(uid, expunged.getMetaData(uid));
+                }
+            }
+        } else {
+            // the pending events need to be delivered first to keep the order
+            batch.handOver();
+            batch.outbox.add(event);
+            return true;
+        }
+        if (batch.size() >= maxBatchSize) {
+            batch.handOver();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Deliver all pending events now. This returns after they were delivered to the wrapped {@link MailboxListener}.
+     */
+    public void flush() {
+        for (Batch batch : batches.values()) {
+            synchronized (batch) {
+                batch.handOver();
+            }
+            batch.deliver(true);
+        }
+    }
+
+    private Batch getBatch(Object key) {
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            Batch newBatch = new Batch(key);
+            batch = batches.putIfAbsent(key, newBatch);
+            if (batch == null) {
+                batch = newBatch;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Pending events of one mailbox, and the merged events which are ready for delivery
+     */
+    private final class Batch implements Runnable {
+        private final Object key;
+        private final SortedMap<Long, MessageMetaData> added = new TreeMap<Long, MessageMetaData>();
+        private final SortedMap<Long, UpdatedFlags> flags = new TreeMap<Long, UpdatedFlags>();
+        private final SortedMap<Long, MessageMetaData> expunged = new TreeMap<Long, MessageMetaData>();
+        private final LinkedList<Event> outbox = new LinkedList<Event>();
+        private MailboxSession session;
+        private Mailbox<Id> mailbox;
+        private boolean scheduled;
+        private boolean delivering;
+        private boolean retired;
+
+        private final Runnable delivery = new Runnable() {
+            public void run() {
+                deliver(false);
+            }
+        };
+
+        private Batch(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Remember the latest session and mailbox and schedule the delivery if needed
+         */
+        private void start(MailboxSession session, Mailbox<Id> mailbox) {
+            this.session = session;
+            this.mailbox = mailbox;
+            if (!scheduled) {
+                scheduled = true;
+                try {
+                    scheduler.schedule(this, window, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the scheduler is shutting down, so the events will be delivered with the next flush
+                    scheduled = false;
+                }
+            }
+        }
+
+        private int size() {
+            return added.size() + flags.size() + expunged.size();
+        }
+
+        /**
+         * Move the pending events merged to the outbox. The caller must hold the monitor of the batch.
+         */
+        private void handOver() {
+            if (size() == 0) {
+                return;
+            }
+            final MailboxSession own = SimpleMailboxSession.createSystemSession(session);
+            if (!added.isEmpty()) {
+                outbox.add(dispatcher.new AddedImpl(own, mailbox, new TreeMap<Long, MessageMetaData>(added)));
+                added.clear();
+            }
+            if (!flags.isEmpty()) {
+                List<Long> uids = new ArrayList<Long>();
+                List<UpdatedFlags> uFlags = new ArrayList<UpdatedFlags>();
+                for (UpdatedFlags u : flags.values()) {
+                    // the flags may be the same as before the window
+                    if (u.flagsChanged()) {
+                        uids.add(u.getUid());
+                        uFlags.add(u);
+                    }
+                }
+                if (!uFlags.isEmpty()) {
+                    outbox.add(dispatcher.new FlagsUpdatedImpl(own, mailbox, uids, uFlags));
+                }
+                flags.clear();
+            }
+            if (!expunged.isEmpty()) {
+                Map<Long, MessageMetaData> uids = new TreeMap<Long, MessageMetaData>(expunged);
+                outbox.add(dispatcher.new ExpungedImpl(own, mailbox, uids));
+                expunged.clear();
+            }
+        }
+
+        /**
+         * Deliver the outbox with the scheduler
+         */
+        private void submit() {
+            try {
+                scheduler.execute(delivery);
+            } catch (RejectedExecutionException e) {
+                // the scheduler is shutting down, so deliver in the current thread
+                deliver(false);
+            }
+        }
+
+        /**
+         * Deliver the events of the outbox in order. Only one thread delivers at a time.
+         * 
+         * @param await if true wait for the delivery of another thread to complete, otherwise leave the outbox to it
+         */
+        private void deliver(boolean await) {
+            synchronized (this) {
+                while (delivering) {
+                    if (!await) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                delivering = true;
+            }
+            boolean done = false;
+            try {
+                while (true) {
+                    final Event event;
+                    synchronized (this) {
+                        event = outbox.poll();
+                        if (event == null) {
+                            done = true;
+                            delivered();
+                            return;
+                        }
+                    }
+                    try {
+                        listener.event(event);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to deliver event for mailbox " + event.getMailboxPath() + " to " + listener, e);
+                    }
+                }
+            } finally {
+                if (!done) {
+                    synchronized (this) {
+                        delivered();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Called once the outbox was delivered. The caller must hold the monitor of the batch.
+         */
+        private void delivered() {
+            delivering = false;
+            if (!scheduled && size() == 0 && outbox.isEmpty()) {
+                // remove the batch so the map does not grow with every mailbox ever seen
+                retired = true;
+                batches.remove(key, this);
+            }
+            notifyAll();
+        }
+
+        public void run() {
+            synchronized (this) {
+                scheduled = false;
+                handOver();
+            }
+            deliver(false);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import org.apache.james.mailbox.exception.MailboxException;
+
+/**
+ * Transport which distributes encoded events to the other nodes of a cluster. The events are
+ * encoded with the {@link EventCodec}.
+ * 
+ * Implementations must not deliver a published message back to the {@link Subscriber}'s of the
+ * publishing node, and should deliver the messages of one node in the order they were published.
+ */
+public interface EventBus {
+
+    /**
+     * Publish the encoded event to all other nodes
+     * 
+     * @param message
+     * @throws MailboxException
+     */
+    void publish(byte[] message) throws MailboxException;
+
+    /**
+     * Register the {@link Subscriber} which will receive the events published by other nodes
+     * 
+     * @param subscriber
+     */
+    void subscribe(Subscriber subscriber);
+
+    /**
+     * Receiver of the events of other nodes
+     */
+    interface Subscriber {
+
+        /**
+         * Receive an encoded event which was published by another node
+         * 
+         * @param message
+         */
+        void receive(byte[] message);
+    }
+}
@@ -0,0 +1,519 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxListener.Event;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MailboxSession.SessionType;
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMailboxSession;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary encoding of {@link Event}'s which are sent to other nodes via an {@link EventBus}.
+ * 
+ * Instead of java serialization of the whole event only the mailbox, the id and user of the session,
+ * the uids as {@link MessageRange}'s and the changes of the flags are written. Numbers are written
+ * as variable length integers. The first byte holds the version of the format.
+ * 
+ * Only mailbox ids of the types used by the mailbox implementations ({@link Long}, {@link Integer},
+ * {@link String} and {@link UUID}) can be encoded. As the bytes are received from other nodes every
+ * count is checked against the remaining bytes before anything is allocated for it.
+ * 
+ * Decoded events are the same types which are fired by the {@link MailboxEventDispatcher}, with a
+ * {@link MailboxSession} that only carries the id and user of the original one. Decoded
+ * {@link org.apache.james.mailbox.MailboxListener.Expunged} events don't carry the
+ * {@link MessageMetaData} of the expunged messages.
+ * 
+ * The {@link JournalRecord}'s of the {@link EventJournal} are written with the same encoding of
+ * paths, ids, flags and numbers.
+ */
+public class EventCodec {
+
+    public final static int VERSION = 1;
+
+    private final static int ADDED = 1;
+    private final static int EXPUNGED = 2;
+    private final static int FLAGS_UPDATED = 3;
+    private final static int MAILBOX_ADDED = 4;
+    private final static int MAILBOX_DELETED = 5;
+    private final static int MAILBOX_RENAMED = 6;
+
+    private final static int ID_NONE = 0;
+    private final static int ID_LONG = 1;
+    private final static int ID_STRING = 2;
+    private final static int ID_UUID = 3;
+    private final static int ID_INTEGER = 4;
+
+    /**
+     * Maximal number of uids which are decoded from the ranges of one event
+     */
+    final static int MAX_UIDS = 1 << 22;
+
+    private final static Flag[] SYSTEM_FLAGS = { Flag.ANSWERED, Flag.DELETED, Flag.DRAFT, Flag.FLAGGED, Flag.RECENT, Flag.SEEN, Flag.USER };
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(EventCodec.class);
+
+    private EventCodec() {
+    }
+
+    /**
+     * Encode the given {@link Event}
+     * 
+     * @param event
+     * @return encoded the encoded event, or <code>null</code> if the type of the event is not supported
+     * @throws IOException
+     */
+    public static byte[] encode(Event event) throws IOException {
+        int type;
+        if (event instanceof MailboxListener.Added) {
+            type = ADDED;
+        } else if (event instanceof MailboxListener.Expunged) {
+            type = EXPUNGED;
+        } else if (event instanceof MailboxListener.FlagsUpdated) {
+            type = FLAGS_UPDATED;
+        } else if (event instanceof MailboxListener.MailboxAdded) {
+            type = MAILBOX_ADDED;
+        } else if (event instanceof MailboxListener.MailboxDeletion) {
+            type = MAILBOX_DELETED;
+        } else if (event instanceof MailboxListener.MailboxRenamed) {
+            type = MAILBOX_RENAMED;
+        } else {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeByte(type);
+
+        MailboxSession session = event.getSession();
+        if (session == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeLong(session.getSessionId());
+            writeString(out, session.getUser() == null ? null : session.getUser().getUserName());
+        }
+        writePath(out, event.getMailboxPath());
+
+        Mailbox<?> mailbox = getMailbox(event);
+        if (mailbox == null) {
+            writeVarLong(out, 0);
+            writeId(out, null);
+        } else {
+            writeVarLong(out, mailbox.getUidValidity());
+            writeId(out, mailbox.getMailboxId());
+        }
+
+        switch (type) {
+        case ADDED:
+            MailboxListener.Added added = (MailboxListener.Added) event;
+            List<Long> uids = sorted(added.getUids());
+            writeUids(out, uids);
+            for (int i = 0; i < uids.size(); i++) {
+                MessageMetaData data = added.getMetaData(uids.get(i));
+                writeVarLong(out, data.getModSeq());
+                writeVarLong(out, data.getSize());
+                Date date = data.getInternalDate();
+                writeVarLong(out, date == null ? 0 : date.getTime() + 1);
+                writeFlags(out, data.getFlags());
+            }
+            break;
+        case EXPUNGED:
+            writeUids(out, sorted(((MailboxListener.Expunged) event).getUids()));
+            break;
+        case FLAGS_UPDATED:
+            MailboxListener.FlagsUpdated flagsUpdated = (MailboxListener.FlagsUpdated) event;
+            writeUids(out, sorted(flagsUpdated.getUids()));
+            List<UpdatedFlags> updatedFlags = flagsUpdated.getUpdatedFlags();
+            writeVarLong(out, updatedFlags.size());
+            for (int i = 0; i < updatedFlags.size(); i++) {
+                writeUpdatedFlags(out, updatedFlags.get(i));
+            }
+            break;
+        case MAILBOX_RENAMED:
+            writePath(out, ((MailboxListener.MailboxRenamed) event).getNewPath());
+            break;
+        default:
+            break;
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode an {@link Event} which was encoded with {@link #encode(Event)}
+     * 
+     * @param encoded
+     * @return event
+     * @throws IOException if the given bytes could not be decoded
+     */
+    public static Event decode(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported event version " + version);
+        }
+        int type = in.readUnsignedByte();
+
+        MailboxSession session = null;
+        if (in.readBoolean()) {
+            long sessionId = in.readLong();
+            String user = readString(in);
+            session = new SimpleMailboxSession(sessionId, user, null, LOGGER, new ArrayList<Locale>(), MailboxConstants.DEFAULT_DELIMITER, SessionType.System);
+        }
+        MailboxPath path = readPath(in);
+        long uidValidity = readVarLong(in);
+        Object id = readId(in);
+
+        MailboxEventDispatcher<Object> dispatcher = new MailboxEventDispatcher<Object>(null);
+        switch (type) {
+        case ADDED:
+            List<Long> uids = readUids(in);
+            SortedMap<Long, MessageMetaData> added = new TreeMap<Long, MessageMetaData>();
+            for (int i = 0; i < uids.size(); i++) {
+                long uid = uids.get(i);
+                long modSeq = readVarLong(in);
+                long size = readVarLong(in);
+                long time = readVarLong(in);
+                Flags flags = readFlags(in);
+                added.put(uid, new SimpleMessageMetaData(uid, modSeq, flags, size, time == 0 ? null : new Date(time - 1)));
+            }
+            return dispatcher.new AddedImpl(session, mailbox(path, uidValidity, id), added);
+        case EXPUNGED:
+            Map<Long, MessageMetaData> expunged = new TreeMap<Long, MessageMetaData>();
+            List<Long> expungedUids = readUids(in);
+            for (int i = 0; i < expungedUids.size(); i++) {
+                expunged.put(expungedUids.get(i), null);
+            }
+            return dispatcher.new ExpungedImpl(session, mailbox(path, uidValidity, id), expunged);
+        case FLAGS_UPDATED:
+            List<Long> flagUids = readUids(in);
+            int count = readCount(in);
+            List<UpdatedFlags> updatedFlags = new ArrayList<UpdatedFlags>(count);
+            for (int i = 0; i < count; i++) {
+                updatedFlags.add(readUpdatedFlags(in));
+            }
+            return dispatcher.new FlagsUpdatedImpl(session, mailbox(path, uidValidity, id), flagUids, updatedFlags);
+        case MAILBOX_ADDED:
+            return dispatcher.new MailboxAddedImpl(session, mailbox(path, uidValidity, id));
+        case MAILBOX_DELETED:
+            return dispatcher.new MailboxDeletionImpl(session, mailbox(path, uidValidity, id));
+        case MAILBOX_RENAMED:
+            MailboxPath newPath = readPath(in);
+            return dispatcher.new MailboxRenamedEventImpl(session, path, mailbox(newPath, uidValidity, id));
+        default:
+            throw new IOException("Unknown event type " + type);
+        }
+    }
+
+    private static SimpleMailbox<Object> mailbox(MailboxPath path, long uidValidity, Object id) {
+        SimpleMailbox<Object> mailbox = new SimpleMailbox<Object>(path, uidValidity);
+        mailbox.setMailboxId(id);
+        return mailbox;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Mailbox<?> getMailbox(Event event) {
+        if (event instanceof MailboxEventDispatcher.AddedImpl) {
+            return ((MailboxEventDispatcher.AddedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.ExpungedImpl) {
+            return ((MailboxEventDispatcher.ExpungedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.FlagsUpdatedImpl) {
+            return ((MailboxEventDispatcher.FlagsUpdatedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxAddedImpl) {
+            return ((MailboxEventDispatcher.MailboxAddedImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxDeletionImpl) {
+            return ((MailboxEventDispatcher.MailboxDeletionImpl) event).getMailbox();
+        } else if (event instanceof MailboxEventDispatcher.MailboxRenamedEventImpl) {
+            return ((MailboxEventDispatcher.MailboxRenamedEventImpl) event).getNewMailbox();
+        }
+        return null;
+    }
+
+    static List<Long> sorted(List<Long> uids) {
+        List<Long> sorted = new ArrayList<Long>(uids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Write the sorted uids as ranges of consecutive uids
+     */
+    static void writeUids(DataOutput out, List<Long> uids) throws IOException {
+        List<MessageRange> ranges = MessageRange.toRanges(uids);
+        writeVarLong(out, ranges.size());
+        long last = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            MessageRange range = ranges.get(i);
+            writeVarLong(out, range.getUidFrom() - last);
+            writeVarLong(out, range.getUidTo() - range.getUidFrom());
+            last = range.getUidTo();
+        }
+    }
+
+    static List<Long> readUids(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<Long> uids = new ArrayList<Long>();
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+            long gap = readVarLong(in);
+            long length = readVarLong(in);
+            if (gap < 0 || length < 0 || length >= MAX_UIDS - uids.size() || gap > Long.MAX_VALUE - last - length) {
+                throw new IOException("Invalid uid range");
+            }
+            long from = last + gap;
+            long to = from + length;
+            for (long uid = from; uid <= to; uid++) {
+                uids.add(uid);
+            }
+            last = to;
+        }
+        return uids;
+    }
+
+    /**
+     * Write the old flags and only the flags which were added and removed by the update
+     */
+    static void writeUpdatedFlags(DataOutput out, UpdatedFlags flags) throws IOException {
+        writeVarLong(out, flags.getUid());
+        writeVarLong(out, flags.getModSeq());
+        Flags oldFlags = flags.getOldFlags();
+        Flags newFlags = flags.getNewFlags();
+        writeFlags(out, oldFlags);
+
+        int oldBits = UpdatedFlagsList.toBits(oldFlags);
+        int newBits = UpdatedFlagsList.toBits(newFlags);
+        writeVarLong(out, newBits & ~oldBits);
+        writeVarLong(out, oldBits & ~newBits);
+
+        List<String> addedUserFlags = new ArrayList<String>();
+        for (String flag : newFlags.getUserFlags()) {
+            if (!oldFlags.contains(flag)) {
+                addedUserFlags.add(flag);
+            }
+        }
+        List<String> removedUserFlags = new ArrayList<String>();
+        for (String flag : oldFlags.getUserFlags()) {
+            if (!newFlags.contains(flag)) {
+                removedUserFlags.add(flag);
+            }
+        }
+        writeStrings(out, addedUserFlags);
+        writeStrings(out, removedUserFlags);
+    }
+
+    static UpdatedFlags readUpdatedFlags(DataInputStream in) throws IOException {
+        long uid = readVarLong(in);
+        long modSeq = readVarLong(in);
+        Flags oldFlags = readFlags(in);
+        int addedBits = (int) readVarLong(in);
+        int removedBits = (int) readVarLong(in);
+
+        Flags newFlags = new Flags(oldFlags);
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (UpdatedFlagsList.contains(addedBits, SYSTEM_FLAGS[i])) {
+                newFlags.add(SYSTEM_FLAGS[i]);
+            } else if (UpdatedFlagsList.contains(removedBits, SYSTEM_FLAGS[i])) {
+                newFlags.remove(SYSTEM_FLAGS[i]);
+            }
+        }
+        List<String> addedUserFlags = readStrings(in);
+        for (int i = 0; i < addedUserFlags.size(); i++) {
+            newFlags.add(addedUserFlags.get(i));
+        }
+        List<String> removedUserFlags = readStrings(in);
+        for (int i = 0; i < removedUserFlags.size(); i++) {
+            newFlags.remove(removedUserFlags.get(i));
+        }
+        return new UpdatedFlags(uid, modSeq, oldFlags, newFlags);
+    }
+
+    static void writeFlags(DataOutput out, Flags flags) throws IOException {
+        writeVarLong(out, UpdatedFlagsList.toBits(flags));
+        String[] userFlags = flags.getUserFlags();
+        writeVarLong(out, userFlags.length);
+        for (int i = 0; i < userFlags.length; i++) {
+            out.writeUTF(userFlags[i]);
+        }
+    }
+
+    static Flags readFlags(DataInputStream in) throws IOException {
+        int bits = (int) readVarLong(in);
+        Flags flags = new Flags();
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (UpdatedFlagsList.contains(bits, SYSTEM_FLAGS[i])) {
+                flags.add(SYSTEM_FLAGS[i]);
+            }
+        }
+        int count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            flags.add(in.readUTF());
+        }
+        return flags;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        writeVarLong(out, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            out.writeUTF(values.get(i));
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    static void writePath(DataOutput out, MailboxPath path) throws IOException {
+        writeString(out, path.getNamespace());
+        writeString(out, path.getUser());
+        writeString(out, path.getName());
+    }
+
+    static MailboxPath readPath(DataInputStream in) throws IOException {
+        return new MailboxPath(readString(in), readString(in), readString(in));
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    /**
+     * Write the id of the mailbox. Only the id types used by the mailbox implementations are supported.
+     */
+    static void writeId(DataOutput out, Object id) throws IOException {
+        if (id == null) {
+            out.writeByte(ID_NONE);
+        } else if (id instanceof Long) {
+            out.writeByte(ID_LONG);
+            out.writeLong((Long) id);
+        } else if (id instanceof Integer) {
+            out.writeByte(ID_INTEGER);
+            out.writeInt((Integer) id);
+        } else if (id instanceof String) {
+            out.writeByte(ID_STRING);
+            out.writeUTF((String) id);
+        } else if (id instanceof UUID) {
+            out.writeByte(ID_UUID);
+            out.writeLong(((UUID) id).getMostSignificantBits());
+            out.writeLong(((UUID) id).getLeastSignificantBits());
+        } else {
+            throw new IOException("Unable to encode mailbox id " + id);
+        }
+    }
+
+    static Object readId(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+        case ID_NONE:
+            return null;
+        case ID_LONG:
+            return in.readLong();
+        case ID_INTEGER:
+            return in.readInt();
+        case ID_STRING:
+            return in.readUTF();
+        case ID_UUID:
+            return new UUID(in.readLong(), in.readLong());
+        default:
+            throw new IOException("Unknown mailbox id type " + type);
+        }
+    }
+
+    /**
+     * Read the number of the items which follow. Every item takes at least one byte, so a count which
+     * is bigger than the remaining bytes is rejected before anything is allocated for it.
+     */
+    static int readCount(DataInputStream in) throws IOException {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Invalid count " + count);
+        }
+        return (int) count;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+}
@@ -0,0 +1,87 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.List;
+
+import org.apache.james.mailbox.exception.MailboxException;
+
+/**
+ * Persistent, append-only journal of the events fired by the
+ * {@link org.apache.james.mailbox.store.MailboxEventDispatcher}.
+ * 
+ * Every {@link JournalRecord} gets a monotonic offset. Consumers store the offset up to which they
+ * processed the journal as named cursor, so they can resume from there after a restart.
+ */
+public interface EventJournal {
+
+    /**
+     * Append the {@link JournalRecord} to the journal
+     * 
+     * @param record
+     * @return offset the offset of the appended record
+     * @throws MailboxException
+     */
+    long append(JournalRecord record) throws MailboxException;
+
+    /**
+     * Read up to limit {@link JournalRecord}'s, starting with the given offset
+     * 
+     * @param offset
+     * @param limit
+     * @return records ordered by offset, empty if there are no more records
+     * @throws MailboxException
+     */
+    List<JournalRecord> read(long offset, int limit) throws MailboxException;
+
+    /**
+     * Return the offset which the next appended record will get
+     * 
+     * @return nextOffset
+     * @throws MailboxException
+     */
+    long getNextOffset() throws MailboxException;
+
+    /**
+     * Return the stored cursor for the consumer with the given name
+     * 
+     * @param name
+     * @return offset of the next record to process, or <code>0</code> if no cursor was stored yet
+     * @throws MailboxException
+     */
+    long getCursor(String name) throws MailboxException;
+
+    /**
+     * Store the cursor for the consumer with the given name
+     * 
+     * @param name
+     * @param offset offset of the next record to process
+     * @throws MailboxException
+     */
+    void setCursor(String name, long offset) throws MailboxException;
+
+    /**
+     * Remove records before the given offset, if the implementation supports it. Records may be kept
+     * longer, for example until a whole segment can be removed.
+     * 
+     * @param offset
+     * @throws MailboxException
+     */
+    void purge(long offset) throws MailboxException;
+}
@@ -0,0 +1,449 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.exception.MailboxException;
+
+/**
+ * {@link EventJournal} which stores the {@link JournalRecord}'s in segment files in a directory.
+ * 
+ * Every record is written as length, CRC32 checksum and the serialized record. A new segment is
+ * started once the current one exceeds the configured segment size. The name of a segment contains
+ * the offset of its first record, so whole segments can be purged once all consumers processed them.
+ * 
+ * A record which was only partially written, for example because of a crash, is truncated when the
+ * journal gets opened. Cursors are stored in one small file per consumer. Whenever a cursor is stored,
+ * the segments which all consumers processed are purged, so records before the lowest cursor can not
+ * be delivered again by a rewind.
+ * 
+ * If every append is synced to the disk, concurrent appends share one sync: the first appender syncs all
+ * records written so far, while the others wait for it and return without a sync of their own. Reads do
+ * not block appends, as they only lock the journal to look up the segments.
+ */
+public class FileEventJournal implements EventJournal {
+
+    public final static long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".log";
+    private final static String CURSOR_PREFIX = "cursor-";
+    private final static String CURSOR_SUFFIX = ".pos";
+    private final static int FRAME_HEADER_LENGTH = 8;
+
+    private final File directory;
+    private final long segmentSize;
+    private final boolean sync;
+
+    private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+    private long nextOffset;
+
+    private FileOutputStream segmentOut;
+    private long segmentLength;
+
+    // offset of the next record which was not yet written to the current segment, and of the next
+    // record which was not yet synced to the disk. Syncs are done while holding syncLock only
+    private volatile long writtenOffset;
+    private long syncedOffset;
+    private final Object syncLock = new Object();
+
+    // position after the last read, which allows to continue sequential reads without
+    // scanning the segment from the start again. Guarded by readLock
+    private final Object readLock = new Object();
+    private long lastReadOffset = -1;
+    private long lastReadSegment;
+    private long lastReadPosition;
+
+    public FileEventJournal(File directory) throws MailboxException {
+        this(directory, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * Open the journal stored in the given directory
+     * 
+     * @param directory
+     * @param segmentSize the size in bytes after which a new segment is started
+     * @param sync if <code>true</code> every append is forced to the disk before it returns
+     * @throws MailboxException
+     */
+    public FileEventJournal(File directory, long segmentSize, boolean sync) throws MailboxException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new MailboxException("Unable to open event journal in " + directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        FileUtils.forceMkdir(directory);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                String name = files[i].getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(base, files[i]);
+                    } catch (NumberFormatException e) {
+                        // not a segment of the journal
+                    }
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        Map.Entry<Long, File> last = segments.lastEntry();
+        File file = last.getValue();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long position = 0;
+        long count = 0;
+        try {
+            long length = raf.length();
+            while (position + FRAME_HEADER_LENGTH <= length) {
+                raf.seek(position);
+                int recordLength = raf.readInt();
+                int checksum = raf.readInt();
+                if (recordLength < 0 || position + FRAME_HEADER_LENGTH + recordLength > length) {
+                    break;
+                }
+                byte[] data = new byte[recordLength];
+                raf.readFully(data);
+                if (checksum(data) != checksum) {
+                    break;
+                }
+                position += FRAME_HEADER_LENGTH + recordLength;
+                count++;
+            }
+            if (position < length) {
+                // drop the partial written tail
+                raf.setLength(position);
+            }
+        } finally {
+            raf.close();
+        }
+        nextOffset = last.getKey() + count;
+        writtenOffset = nextOffset;
+        syncedOffset = nextOffset;
+        segmentOut = new FileOutputStream(file, true);
+        segmentLength = position;
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Start a new segment. The caller must hold the monitor of the journal.
+     */
+    private void roll() throws IOException {
+        if (segmentOut != null) {
+            // wait for a running sync, and sync the rest of the segment before it is closed
+            synchronized (syncLock) {
+                if (sync) {
+                    segmentOut.getFD().sync();
+                    syncedOffset = nextOffset;
+                }
+                segmentOut.close();
+            }
+        }
+        File file = segmentFile(nextOffset);
+        segments.put(nextOffset, file);
+        segmentOut = new FileOutputStream(file, true);
+        segmentLength = 0;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventJournal#append(org.apache.james.mailbox.store.event.JournalRecord)
+     */
+    public long append(JournalRecord record) throws MailboxException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream frameOut = new DataOutputStream(bytes);
+            frameOut.writeInt(0);
+            frameOut.writeInt(0);
+            record.write(frameOut);
+            frameOut.flush();
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - FRAME_HEADER_LENGTH;
+            CRC32 crc = new CRC32();
+            crc.update(frame, FRAME_HEADER_LENGTH, length);
+            writeInt(frame, 0, length);
+            writeInt(frame, 4, (int) crc.getValue());
+
+            final long offset;
+            final FileOutputStream target;
+            synchronized (this) {
+                if (segmentOut == null || segmentLength >= segmentSize) {
+                    roll();
+                }
+                // write the whole frame at once
+                segmentOut.write(frame);
+                segmentLength += frame.length;
+                offset = nextOffset++;
+                writtenOffset = nextOffset;
+                target = segmentOut;
+            }
+            if (sync) {
+                sync(target, offset);
+            }
+            return offset;
+        } catch (IOException e) {
+            throw new MailboxException("Unable to append record to event journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Make sure the record with the given offset was synced to the disk. If another append is syncing
+     * already, wait for it, as its sync may contain the record too.
+     */
+    private void sync(FileOutputStream target, long offset) throws IOException {
+        synchronized (syncLock) {
+            if (syncedOffset > offset) {
+                // synced by another append or because the segment was rolled
+                return;
+            }
+            // the segment can not be rolled while the lock is held, so all records before
+            // writtenOffset are in the target segment
+            long written = writtenOffset;
+            target.getFD().sync();
+            syncedOffset = written;
+        }
+    }
+
+    private static void writeInt(byte[] data, int index, int value) {
+        data[index] = (byte) (value >>> 24);
+        data[index + 1] = (byte) (value >>> 16);
+        data[index + 2] = (byte) (value >>> 8);
+        data[index + 3] = (byte) value;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventJournal#read(long, int)
+     */
+    public List<JournalRecord> read(long offset, int limit) throws MailboxException {
+        synchronized (readLock) {
+            return readRecords(offset, limit);
+        }
+    }
+
+    private List<JournalRecord> readRecords(long offset, int limit) throws MailboxException {
+        List<JournalRecord> records = new ArrayList<JournalRecord>();
+        final long nextOffset;
+        final TreeMap<Long, File> segments;
+        synchronized (this) {
+            // records up to nextOffset are complete, as they are written with one call
+            nextOffset = this.nextOffset;
+            if (offset >= nextOffset || this.segments.isEmpty()) {
+                return records;
+            }
+            Long base = this.segments.floorKey(offset);
+            if (base == null) {
+                // the records were purged already, so start with the oldest one
+                base = this.segments.firstKey();
+            }
+            segments = new TreeMap<Long, File>(this.segments.tailMap(base, true));
+        }
+
+        try {
+            Iterator<Map.Entry<Long, File>> it = segments.entrySet().iterator();
+            while (it.hasNext() && records.size() < limit) {
+                Map.Entry<Long, File> segment = it.next();
+                long current = segment.getKey();
+                long position = 0;
+                if (lastReadOffset != -1 && lastReadSegment == current && lastReadOffset <= offset) {
+                    current = lastReadOffset;
+                    position = lastReadPosition;
+                }
+
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.getValue())));
+                try {
+                    IOUtils.skipFully(in, position);
+                    while (records.size() < limit && current < nextOffset) {
+                        int recordLength;
+                        try {
+                            recordLength = in.readInt();
+                        } catch (EOFException e) {
+                            // end of the segment
+                            break;
+                        }
+                        int checksum = in.readInt();
+                        byte[] data = new byte[recordLength];
+                        in.readFully(data);
+                        if (checksum(data) != checksum) {
+                            throw new MailboxException("Corrupt record " + current + " in event journal " + segment.getValue());
+                        }
+                        position += FRAME_HEADER_LENGTH + recordLength;
+                        if (current >= offset) {
+                            records.add(JournalRecord.read(new DataInputStream(new ByteArrayInputStream(data)), current));
+                        }
+                        current++;
+                    }
+                } finally {
+                    in.close();
+                }
+                lastReadOffset = current;
+                lastReadSegment = segment.getKey();
+                lastReadPosition = position;
+            }
+        } catch (IOException e) {
+            throw new MailboxException("Unable to read records from event journal in " + directory, e);
+        }
+        return records;
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventJournal#getNextOffset()
+     */
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    private File cursorFile(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                throw new IllegalArgumentException("Invalid cursor name " + name);
+            }
+        }
+        return new File(directory, CURSOR_PREFIX + name + CURSOR_SUFFIX);
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventJournal#getCursor(java.lang.String)
+     */
+    public long getCursor(String name) throws MailboxException {
+        File file = cursorFile(name);
+        if (!file.exists()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(FileUtils.readFileToString(file, "US-ASCII").trim());
+        } catch (IOException e) {
+            throw new MailboxException("Unable to read cursor " + name + " of event journal in " + directory, e);
+        } catch (NumberFormatException e) {
+            throw new MailboxException("Invalid cursor " + name + " in event journal " + directory, e);
+        }
+    }
+
+    /**
+     * Store the cursor and purge the segments which were processed by all consumers
+     * 
+     * @see org.apache.james.mailbox.store.event.EventJournal#setCursor(java.lang.String, long)
+     */
+    public void setCursor(String name, long offset) throws MailboxException {
+        File file = cursorFile(name);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tmp, String.valueOf(offset), "US-ASCII");
+            if (!tmp.renameTo(file)) {
+                // renameTo does not replace existing files on all platforms
+                FileUtils.deleteQuietly(file);
+                FileUtils.moveFile(tmp, file);
+            }
+        } catch (IOException e) {
+            throw new MailboxException("Unable to store cursor " + name + " of event journal in " + directory, e);
+        }
+        purge(getLowestCursor());
+    }
+
+    /**
+     * Return the lowest cursor of all consumers
+     */
+    private long getLowestCursor() throws MailboxException {
+        long lowest = Long.MAX_VALUE;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                String name = files[i].getName();
+                if (name.startsWith(CURSOR_PREFIX) && name.endsWith(CURSOR_SUFFIX)) {
+                    lowest = Math.min(lowest, getCursor(name.substring(CURSOR_PREFIX.length(), name.length() - CURSOR_SUFFIX.length())));
+                }
+            }
+        }
+        return lowest == Long.MAX_VALUE ? 0 : lowest;
+    }
+
+    /**
+     * Remove all segments which only contain records before the given offset. The segment which
+     * is currently written is never removed.
+     * 
+     * @see org.apache.james.mailbox.store.event.EventJournal#purge(long)
+     */
+    public void purge(long offset) throws MailboxException {
+        // no read may use a segment while it is deleted
+        synchronized (readLock) {
+            synchronized (this) {
+                while (segments.size() > 1) {
+                    Long first = segments.firstKey();
+                    Long second = segments.higherKey(first);
+                    if (second > offset) {
+                        break;
+                    }
+                    File file = segments.remove(first);
+                    if (!file.delete()) {
+                        throw new MailboxException("Unable to delete segment " + file + " of event journal");
+                    }
+                    if (lastReadSegment == first) {
+                        lastReadOffset = -1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the journal
+     */
+    public synchronized void close() {
+        synchronized (syncLock) {
+            IOUtils.closeQuietly(segmentOut);
+        }
+        segmentOut = null;
+    }
+}
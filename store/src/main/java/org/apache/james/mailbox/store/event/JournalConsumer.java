@@ -0,0 +1,199 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deliver the {@link JournalRecord}'s of an {@link EventJournal} to a {@link MailboxListener}.
+ * 
+ * The consumer stores its position as named cursor in the journal, so after a restart it resumes
+ * with the first record which was not processed yet. The cursor is only moved forward after the
+ * listener returned, so every record is delivered at least once. If the listener throws a
+ * {@link RuntimeException} the consumer stops and the same record is delivered again on the next run.
+ * 
+ * If the listener is a {@link CoalescingMailboxListener} it gets flushed before the cursor is stored.
+ * 
+ * Instances are meant to be scheduled with a fixed delay, for example via
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, java.util.concurrent.TimeUnit)}
+ */
+public class JournalConsumer<Id> implements Runnable {
+
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(JournalConsumer.class);
+    private final static String SYSTEM_USER = "journal";
+
+    private final String name;
+    private final EventJournal journal;
+    private final MailboxListener listener;
+    private final MailboxManager mailboxManager;
+    private final MailboxEventDispatcher<Id> dispatcher;
+    private final int batchSize;
+
+    public JournalConsumer(String name, EventJournal journal, MailboxListener listener, MailboxManager mailboxManager) {
+        this(name, journal, listener, mailboxManager, DEFAULT_BATCH_SIZE);
+    }
+
+    public JournalConsumer(String name, EventJournal journal, MailboxListener listener, MailboxManager mailboxManager, int batchSize) {
+        this.name = name;
+        this.journal = journal;
+        this.listener = listener;
+        this.mailboxManager = mailboxManager;
+        this.dispatcher = new MailboxEventDispatcher<Id>(listener);
+        this.batchSize = batchSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Deliver the next batch of records to the listener
+     * 
+     * @return processed the number of records which were delivered
+     * @throws MailboxException
+     */
+    public synchronized int poll() throws MailboxException {
+        long cursor = journal.getCursor(name);
+        List<JournalRecord> records = journal.read(cursor, batchSize);
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, MailboxSession> sessions = new HashMap<String, MailboxSession>();
+        int processed = 0;
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                JournalRecord record = records.get(i);
+                record.replay(dispatcher, getSession(record, sessions));
+                cursor = record.getOffset() + 1;
+                processed++;
+            }
+        } finally {
+            if (processed > 0) {
+                if (listener instanceof CoalescingMailboxListener) {
+                    ((CoalescingMailboxListener<?>) listener).flush();
+                }
+                journal.setCursor(name, cursor);
+            }
+        }
+        return processed;
+    }
+
+    private MailboxSession getSession(JournalRecord record, Map<String, MailboxSession> sessions) throws MailboxException {
+        String user = record.getUser();
+        if (user == null) {
+            user = record.getMailboxPath().getUser();
+        }
+        if (user == null) {
+            user = SYSTEM_USER;
+        }
+        MailboxSession session = sessions.get(user);
+        if (session == null) {
+            session = mailboxManager.createSystemSession(user, LOGGER);
+            sessions.put(user, session);
+        }
+        return session;
+    }
+
+    /**
+     * Deliver all records which are not processed yet
+     */
+    public void run() {
+        try {
+            while (poll() == batchSize) {
+                // continue until all records are processed
+            }
+        } catch (MailboxException e) {
+            LOGGER.error("Unable to process event journal for consumer " + name, e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Listener of journal consumer " + name + " failed, will retry with the next run", e);
+        }
+    }
+
+    /**
+     * Move the cursor back to the first record which was written at or after the given time, so
+     * all later events are delivered again. The cursor is never moved forward.
+     * 
+     * @param timestamp time in milliseconds
+     * @throws MailboxException
+     */
+    public synchronized void rewind(long timestamp) throws MailboxException {
+        long offset = 0;
+        while (true) {
+            List<JournalRecord> records = journal.read(offset, batchSize);
+            if (records.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < records.size(); i++) {
+                JournalRecord record = records.get(i);
+                if (record.getTimestamp() >= timestamp) {
+                    moveBack(record.getOffset());
+                    return;
+                }
+                offset = record.getOffset() + 1;
+            }
+        }
+    }
+
+    /**
+     * Move the cursor back to the first record of the given mailbox which carries a mod-sequence
+     * equal or higher then the given one, so all later events are delivered again. The cursor is never moved
+     * forward. This is useful to rebuild the state of a listener for a mailbox from a known mod-sequence.
+     * 
+     * @param path
+     * @param modSeq
+     * @throws MailboxException
+     */
+    public synchronized void rewind(MailboxPath path, long modSeq) throws MailboxException {
+        long offset = 0;
+        while (true) {
+            List<JournalRecord> records = journal.read(offset, batchSize);
+            if (records.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < records.size(); i++) {
+                JournalRecord record = records.get(i);
+                if (path.equals(record.getMailboxPath()) && record.getHighestModSeq() >= modSeq) {
+                    moveBack(record.getOffset());
+                    return;
+                }
+                offset = record.getOffset() + 1;
+            }
+        }
+    }
+
+    private void moveBack(long offset) throws MailboxException {
+        if (offset < journal.getCursor(name)) {
+            journal.setCursor(name, offset);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+
+/**
+ * Serializable form of an event which was fired by the {@link MailboxEventDispatcher}. It holds
+ * everything that is needed to fire the same event again via {@link #replay(MailboxEventDispatcher, MailboxSession)}.
+ * 
+ * The record is written with the encoding of {@link EventCodec}, so the id of the mailbox needs to be one
+ * of the id types it supports.
+ */
+public final class JournalRecord {
+
+    public enum Type {
+        ADDED, EXPUNGED, FLAGS_UPDATED, MAILBOX_ADDED, MAILBOX_DELETED, MAILBOX_RENAMED
+    }
+
+    private long offset = -1;
+    private final Type type;
+    private final long timestamp;
+    private final String user;
+    private final MailboxPath path;
+    private final long uidValidity;
+    private final Object mailboxId;
+    private final MailboxPath oldPath;
+    private final List<MessageMetaData> metaData;
+    private final List<Long> uids;
+    private final List<UpdatedFlags> updatedFlags;
+
+    private JournalRecord(Type type, long timestamp, String user, MailboxPath path, long uidValidity, Object mailboxId, MailboxPath oldPath, List<MessageMetaData> metaData, List<Long> uids, List<UpdatedFlags> updatedFlags) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.user = user;
+        this.path = path;
+        this.uidValidity = uidValidity;
+        this.mailboxId = mailboxId;
+        this.oldPath = oldPath;
+        this.metaData = metaData;
+        this.uids = uids;
+        this.updatedFlags = updatedFlags;
+    }
+
+    private static JournalRecord create(Type type, MailboxSession session, Mailbox<?> mailbox, MailboxPath oldPath, Collection<MessageMetaData> metaData, List<Long> uids, List<UpdatedFlags> updatedFlags) {
+        String user = null;
+        if (session != null && session.getUser() != null) {
+            user = session.getUser().getUserName();
+        }
+        MailboxPath path = new MailboxPath(mailbox.getNamespace(), mailbox.getUser(), mailbox.getName());
+        List<MessageMetaData> data = Collections.emptyList();
+        if (metaData != null) {
+            data = new ArrayList<MessageMetaData>(metaData);
+        }
+        if (uids == null) {
+            uids = Collections.emptyList();
+        }
+        if (updatedFlags == null) {
+            updatedFlags = Collections.emptyList();
+        }
+        return new JournalRecord(type, System.currentTimeMillis(), user, path, mailbox.getUidValidity(), mailbox.getMailboxId(), oldPath, data, uids, updatedFlags);
+    }
+
+    public static JournalRecord added(MailboxSession session, Mailbox<?> mailbox, Collection<MessageMetaData> metaData) {
+        return create(Type.ADDED, session, mailbox, null, metaData, null, null);
+    }
+
+    public static JournalRecord expunged(MailboxSession session, Mailbox<?> mailbox, Collection<MessageMetaData> metaData) {
+        return create(Type.EXPUNGED, session, mailbox, null, metaData, null, null);
+    }
+
+    public static JournalRecord flagsUpdated(MailboxSession session, Mailbox<?> mailbox, List<Long> uids, List<UpdatedFlags> updatedFlags) {
+        return create(Type.FLAGS_UPDATED, session, mailbox, null, null, uids, updatedFlags);
+    }
+
+    public static JournalRecord mailboxAdded(MailboxSession session, Mailbox<?> mailbox) {
+        return create(Type.MAILBOX_ADDED, session, mailbox, null, null, null, null);
+    }
+
+    public static JournalRecord mailboxDeleted(MailboxSession session, Mailbox<?> mailbox) {
+        return create(Type.MAILBOX_DELETED, session, mailbox, null, null, null, null);
+    }
+
+    public static JournalRecord mailboxRenamed(MailboxSession session, MailboxPath from, Mailbox<?> to) {
+        return create(Type.MAILBOX_RENAMED, session, to, from, null, null, null);
+    }
+
+    /**
+     * Return the offset of the record in the {@link EventJournal}, or <code>-1</code> if it was not
+     * read from a journal
+     * 
+     * @return offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Return the time in milliseconds at which the event was fired
+     * 
+     * @return timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Return the name of the user which triggered the event, may be <code>null</code>
+     * 
+     * @return user
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Return the path of the mailbox. For {@link Type#MAILBOX_RENAMED} this is the new path.
+     * 
+     * @return path
+     */
+    public MailboxPath getMailboxPath() {
+        return path;
+    }
+
+    /**
+     * Return the highest mod-sequence which is carried by this record, or <code>-1</code>
+     * if there is none.
+     * 
+     * @return modSeq
+     */
+    public long getHighestModSeq() {
+        long modSeq = -1;
+        for (int i = 0; i < metaData.size(); i++) {
+            modSeq = Math.max(modSeq, metaData.get(i).getModSeq());
+        }
+        for (int i = 0; i < updatedFlags.size(); i++) {
+            modSeq = Math.max(modSeq, updatedFlags.get(i).getModSeq());
+        }
+        return modSeq;
+    }
+
+    /**
+     * Fire the recorded event again via the given {@link MailboxEventDispatcher}
+     * 
+     * @param dispatcher
+     * @param session
+     */
+    @SuppressWarnings("unchecked")
+    public <Id> void replay(MailboxEventDispatcher<Id> dispatcher, MailboxSession session) {
+        SimpleMailbox<Id> mailbox = new SimpleMailbox<Id>(path, uidValidity);
+        mailbox.setMailboxId((Id) mailboxId);
+
+        switch (type) {
+        case ADDED:
+            dispatcher.added(session, toMap(metaData), mailbox);
+            break;
+        case EXPUNGED:
+            dispatcher.expunged(session, toMap(metaData), mailbox);
+            break;
+        case FLAGS_UPDATED:
+            dispatcher.flagsUpdated(session, uids, mailbox, updatedFlags);
+            break;
+        case MAILBOX_ADDED:
+            dispatcher.mailboxAdded(session, mailbox);
+            break;
+        case MAILBOX_DELETED:
+            dispatcher.mailboxDeleted(session, mailbox);
+            break;
+        case MAILBOX_RENAMED:
+            dispatcher.mailboxRenamed(session, oldPath, mailbox);
+            break;
+        }
+    }
+
+    private static SortedMap<Long, MessageMetaData> toMap(List<MessageMetaData> metaData) {
+        SortedMap<Long, MessageMetaData> map = new TreeMap<Long, MessageMetaData>();
+        for (int i = 0; i < metaData.size(); i++) {
+            MessageMetaData data = metaData.get(i);
+            map.put(data.getUid(), data);
+        }
+        return map;
+    }
+
+    /**
+     * Write the record to the given {@link DataOutput}. Paths, ids, flags and numbers are encoded
+     * like {@link EventCodec} does.
+     * 
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(timestamp);
+        EventCodec.writeString(out, user);
+        EventCodec.writePath(out, path);
+        EventCodec.writeVarLong(out, uidValidity);
+        EventCodec.writeId(out, mailboxId);
+        out.writeBoolean(oldPath != null);
+        if (oldPath != null) {
+            EventCodec.writePath(out, oldPath);
+        }
+
+        EventCodec.writeVarLong(out, metaData.size());
+        for (int i = 0; i < metaData.size(); i++) {
+            MessageMetaData data = metaData.get(i);
+            EventCodec.writeVarLong(out, data.getUid());
+            EventCodec.writeVarLong(out, data.getModSeq());
+            EventCodec.writeVarLong(out, data.getSize());
+            Date date = data.getInternalDate();
+            EventCodec.writeVarLong(out, date == null ? 0 : date.getTime() + 1);
+            EventCodec.writeFlags(out, data.getFlags());
+        }
+
+        EventCodec.writeUids(out, EventCodec.sorted(uids));
+
+        EventCodec.writeVarLong(out, updatedFlags.size());
+        for (int i = 0; i < updatedFlags.size(); i++) {
+            EventCodec.writeUpdatedFlags(out, updatedFlags.get(i));
+        }
+    }
+
+    /**
+     * Read a record which was written with {@link #write(DataOutput)}
+     * 
+     * @param in
+     * @param offset the offset of the record in the {@link EventJournal}
+     * @return record
+     * @throws IOException
+     */
+    public static JournalRecord read(DataInputStream in, long offset) throws IOException {
+        int ordinal = in.readByte();
+        Type[] types = Type.values();
+        if (ordinal < 0 || ordinal >= types.length) {
+            throw new IOException("Unknown record type " + ordinal);
+        }
+        Type type = types[ordinal];
+        long timestamp = in.readLong();
+        String user = EventCodec.readString(in);
+        MailboxPath path = EventCodec.readPath(in);
+        long uidValidity = EventCodec.readVarLong(in);
+        Object mailboxId = EventCodec.readId(in);
+        MailboxPath oldPath = null;
+        if (in.readBoolean()) {
+            oldPath = EventCodec.readPath(in);
+        }
+
+        int count = EventCodec.readCount(in);
+        List<MessageMetaData> metaData = new ArrayList<MessageMetaData>();
+        for (int i = 0; i < count; i++) {
+            long uid = EventCodec.readVarLong(in);
+            long modSeq = EventCodec.readVarLong(in);
+            long size = EventCodec.readVarLong(in);
+            long time = EventCodec.readVarLong(in);
+            Flags flags = EventCodec.readFlags(in);
+            metaData.add(new SimpleMessageMetaData(uid, modSeq, flags, size, time == 0 ? null : new Date(time - 1)));
+        }
+
+        List<Long> uids = EventCodec.readUids(in);
+
+        count = EventCodec.readCount(in);
+        List<UpdatedFlags> updatedFlags = new ArrayList<UpdatedFlags>();
+        for (int i = 0; i < count; i++) {
+            updatedFlags.add(EventCodec.readUpdatedFlags(in));
+        }
+
+        JournalRecord record = new JournalRecord(type, timestamp, user, path, uidValidity, mailboxId, oldPath, metaData, uids, updatedFlags);
+        record.offset = offset;
+        return record;
+    }
+}
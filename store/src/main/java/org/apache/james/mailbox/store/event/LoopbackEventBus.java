@@ -0,0 +1,134 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link EventBus} which connects several nodes within the same JVM. This allows to test and
+ * benchmark a cluster of mailbox managers without a real network transport.
+ * 
+ * The first node is created with {@link #LoopbackEventBus()}, every further node joins it via
+ * {@link #LoopbackEventBus(LoopbackEventBus, Executor)}. If a node has an {@link Executor} the messages
+ * for it are delivered by it, otherwise they are delivered by the publishing thread. Use a single
+ * threaded {@link Executor} to keep the order of the messages.
+ */
+public class LoopbackEventBus implements EventBus {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(LoopbackEventBus.class);
+
+    private final List<LoopbackEventBus> nodes;
+    private final Executor executor;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong publishedBytes = new AtomicLong();
+    private final AtomicLong receivedMessages = new AtomicLong();
+
+    /**
+     * Create the first node of a new loopback cluster
+     */
+    public LoopbackEventBus() {
+        this(null, null);
+    }
+
+    /**
+     * Create a new node which joins the cluster of the given node
+     * 
+     * @param cluster any node of the cluster to join, or <code>null</code> to start a new cluster
+     * @param executor the {@link Executor} which delivers the messages to this node, may be <code>null</code>
+     */
+    public LoopbackEventBus(LoopbackEventBus cluster, Executor executor) {
+        if (cluster == null) {
+            this.nodes = new CopyOnWriteArrayList<LoopbackEventBus>();
+        } else {
+            this.nodes = cluster.nodes;
+        }
+        this.executor = executor;
+        nodes.add(this);
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventBus#publish(byte[])
+     */
+    public void publish(byte[] message) throws MailboxException {
+        publishedMessages.incrementAndGet();
+        publishedBytes.addAndGet(message.length);
+        for (LoopbackEventBus node : nodes) {
+            if (node != this) {
+                node.receive(message.clone());
+            }
+        }
+    }
+
+    /**
+     * @see org.apache.james.mailbox.store.event.EventBus#subscribe(org.apache.james.mailbox.store.event.EventBus.Subscriber)
+     */
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Remove this node from the cluster
+     */
+    public void leave() {
+        nodes.remove(this);
+    }
+
+    private void receive(final byte[] message) {
+        if (executor == null) {
+            deliver(message);
+        } else {
+            executor.execute(new Runnable() {
+                public void run() {
+                    deliver(message);
+                }
+            });
+        }
+    }
+
+    private void deliver(byte[] message) {
+        receivedMessages.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.receive(message);
+            } catch (RuntimeException e) {
+                LOGGER.error("Subscriber failed to receive event", e);
+            }
+        }
+    }
+
+    public long getPublishedMessages() {
+        return publishedMessages.get();
+    }
+
+    public long getPublishedBytes() {
+        return publishedBytes.get();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+}
@@ -0,0 +1,286 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * Base class for providers which lease blocks of values (uids or mod-sequences) from a backing provider
+ * and hand them out from memory. This turns one round-trip to the backend per appended message into one
+ * round-trip per block.
+ * 
+ * The size of the block adapts to the rate in which the values of a {@link Mailbox} are consumed. If a
+ * block was used up in less then half of the target lease time the next block will be twice as big, if it
+ * took more then twice the target lease time it will be half as big. The block size always stays between
+ * the configured minimum and maximum.
+ * 
+ * Gap policy: Values which were leased but not handed out are never reused. This happens if a request needs
+ * more values then left in the current block, if a lease is evicted because the {@link Mailbox} was idle, or
+ * if the JVM is stopped. So the values of a {@link Mailbox} stay strictly increasing but are not dense
+ * anymore, which is allowed for uids and mod-sequences.
+ * 
+ * The values handed out by one instance are strictly increasing per {@link Mailbox}. This is only true across
+ * nodes if every {@link Mailbox} is served by one node at a time, as a node does not know about blocks leased
+ * by other nodes. So only use it in a single node setup or if mailboxes are pinned to nodes.
+ * 
+ * @param <Id>
+ */
+public abstract class AbstractLeasingProvider<Id> {
+
+    public final static int DEFAULT_MIN_BLOCK_SIZE = 10;
+    public final static int DEFAULT_MAX_BLOCK_SIZE = 1000;
+    public final static long DEFAULT_TARGET_LEASE_TIME = 1000;
+    public final static int DEFAULT_MAX_LEASES = 10000;
+
+    // access ordered, so the least recently used lease is the first one. Guarded by its own monitor
+    private final LinkedHashMap<Object, Lease> leases = new LinkedHashMap<Object, Lease>(16, 0.75f, true);
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final long targetLeaseTime;
+    private final int maxLeases;
+
+    /**
+     * @param minBlockSize the number of values which are leased at least at once
+     * @param maxBlockSize the number of values which are leased at most at once, if not a bigger block was requested
+     * @param targetLeaseTime the time in milliseconds a block should last
+     * @param maxLeases the number of leases after which idle leases get evicted
+     */
+    public AbstractLeasingProvider(int minBlockSize, int maxBlockSize, long targetLeaseTime, int maxLeases) {
+        if (minBlockSize < 1 || maxBlockSize < minBlockSize) {
+            throw new IllegalArgumentException("Invalid block size range " + minBlockSize + " - " + maxBlockSize);
+        }
+        this.minBlockSize = minBlockSize;
+        this.maxBlockSize = maxBlockSize;
+        this.targetLeaseTime = targetLeaseTime;
+        this.maxLeases = maxLeases;
+    }
+
+    /**
+     * Reserve count values for the {@link Mailbox} in the backing provider and return the first of them
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return first
+     * @throws MailboxException
+     */
+    protected abstract long reserve(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException;
+
+    /**
+     * Return the last value which was used for the {@link Mailbox} as stored in the backing provider
+     * 
+     * @param session
+     * @param mailbox
+     * @return last
+     * @throws MailboxException
+     */
+    protected abstract long last(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException;
+
+    /**
+     * Hand out count values from the lease of the {@link Mailbox} and return the first of them. A new block
+     * is leased if the current one has not enough values left.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return first
+     * @throws MailboxException
+     */
+    protected long next(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be > 0");
+        }
+        while (true) {
+            Lease lease = getLease(mailbox);
+            synchronized (lease) {
+                if (lease.retired) {
+                    // the lease was evicted while we waited for it, so use a fresh one
+                    continue;
+                }
+                if (lease.next == 0 || lease.last - lease.next + 1 < count) {
+                    renew(session, mailbox, lease, count);
+                }
+                long first = lease.next;
+                lease.next += count;
+                return first;
+            }
+        }
+    }
+
+    /**
+     * Return the last value handed out for the {@link Mailbox}. If the {@link Mailbox} has no lease the value
+     * of the backing provider is returned. In both cases the next value handed out will be higher.
+     * 
+     * @param session
+     * @param mailbox
+     * @return highest
+     * @throws MailboxException
+     */
+    protected long highest(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException {
+        Lease lease = lookup(mailbox);
+        if (lease != null) {
+            synchronized (lease) {
+                if (!lease.retired && lease.next != 0) {
+                    return lease.next - 1;
+                }
+            }
+        }
+        return last(session, mailbox);
+    }
+
+    /**
+     * Return the size of the next block which will be leased for the {@link Mailbox} or <code>0</code> if
+     * there is no lease for it
+     * 
+     * @param mailbox
+     * @return blockSize
+     */
+    public int getBlockSize(Mailbox<Id> mailbox) {
+        Lease lease = lookup(mailbox);
+        if (lease == null) {
+            return 0;
+        }
+        synchronized (lease) {
+            return lease.blockSize;
+        }
+    }
+
+    /**
+     * Return the number of mailboxes which currently hold a lease
+     * 
+     * @return leaseCount
+     */
+    public int getLeaseCount() {
+        synchronized (leases) {
+            return leases.size();
+        }
+    }
+
+    /**
+     * Drop the lease of the {@link Mailbox}. The values left in the lease are lost.
+     * 
+     * @param mailbox
+     */
+    public void release(Mailbox<Id> mailbox) {
+        final Lease lease;
+        synchronized (leases) {
+            lease = leases.remove(key(mailbox));
+        }
+        if (lease != null) {
+            synchronized (lease) {
+                lease.retired = true;
+            }
+        }
+    }
+
+    private void renew(MailboxSession session, Mailbox<Id> mailbox, Lease lease, int count) throws MailboxException {
+        long now = System.currentTimeMillis();
+        if (lease.leasedAt != 0) {
+            long elapsed = now - lease.leasedAt;
+            if (elapsed < targetLeaseTime / 2) {
+                lease.blockSize = Math.min(lease.blockSize * 2, maxBlockSize);
+            } else if (elapsed > targetLeaseTime * 2) {
+                lease.blockSize = Math.max(lease.blockSize / 2, minBlockSize);
+            }
+        }
+        int size = Math.max(lease.blockSize, count);
+        long first = reserve(session, mailbox, size);
+        if (first <= lease.last) {
+            throw new MailboxException("Backing provider returned " + first + " for mailbox " + mailbox + " which is not higher then the already leased " + lease.last);
+        }
+        lease.next = first;
+        lease.last = first + size - 1;
+        lease.leasedAt = now;
+    }
+
+    private Lease lookup(Mailbox<Id> mailbox) {
+        Object key = key(mailbox);
+        synchronized (leases) {
+            return leases.get(key);
+        }
+    }
+
+    private Lease getLease(Mailbox<Id> mailbox) {
+        Object key = key(mailbox);
+        synchronized (leases) {
+            long now = System.currentTimeMillis();
+            Lease lease = leases.get(key);
+            if (lease == null) {
+                if (leases.size() >= maxLeases) {
+                    evictIdle(now);
+                }
+                lease = new Lease(minBlockSize);
+                leases.put(key, lease);
+            }
+            lease.lastUsed = now;
+            return lease;
+        }
+    }
+
+    /**
+     * Evict the least recently used leases which were not used within the target lease time. As the leases
+     * are access ordered, this stops at the first lease which is not idle. The limit is not strict, if no
+     * lease is idle none is evicted. The caller must hold the monitor of the leases.
+     * 
+     * The monitor of an evicted lease is taken before it is retired, so a thread which currently hands out
+     * values of it finishes first and every later user sees it retired. As only idle leases are evicted this
+     * rarely needs to wait.
+     */
+    private void evictIdle(long now) {
+        long idleSince = now - targetLeaseTime;
+        Iterator<Lease> it = leases.values().iterator();
+        while (leases.size() >= maxLeases && it.hasNext()) {
+            Lease lease = it.next();
+            if (lease.lastUsed >= idleSince) {
+                return;
+            }
+            synchronized (lease) {
+                lease.retired = true;
+            }
+            it.remove();
+        }
+    }
+
+    private Object key(Mailbox<Id> mailbox) {
+        Id id = mailbox.getMailboxId();
+        if (id == null) {
+            throw new IllegalArgumentException("Mailbox " + mailbox + " has no id");
+        }
+        return id;
+    }
+
+    private final static class Lease {
+        private long next;
+        private long last;
+        private long leasedAt;
+        // guarded by the monitor of the leases
+        private long lastUsed;
+        private int blockSize;
+        private boolean retired;
+
+        public Lease(int blockSize) {
+            this.blockSize = blockSize;
+        }
+    }
+}
@@ -50,6 +50,37 @@ public abstract class AbstractLockingModSeqProvider<Id> implements ModSeqProvide
         });
     }
     
+    @Override
+    public long nextModSeqs(final MailboxSession session, final Mailbox<Id> mailbox, final int count) throws MailboxException {
+        return locker.executeWithLock(session, new StoreMailboxPath<Id>(mailbox), new LockAwareExecution<Long>() {
+
+            @Override
+            public Long execute() throws MailboxException {
+                return lockedNextModSeqs(session, mailbox, count);
+            }
+        });
+    }
+
+    /**
+     * Reserve count mod-seqs while the {@link Mailbox} is locked and return the first of them.
+     * 
+     * This implementation just calls {@link #lockedNextModSeq(MailboxSession, Mailbox)} count times. Sub-classes
+     * should override it if they are able to reserve the whole block at once.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return firstModSeq
+     * @throws MailboxException
+     */
+    protected long lockedNextModSeqs(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        long first = lockedNextModSeq(session, mailbox);
+        for (int i = 1; i < count; i++) {
+            lockedNextModSeq(session, mailbox);
+        }
+        return first;
+    }
+
     /**
      * Generate the next mod-seq for the given {@link Mailbox} while holding a lock on it.
      * 
@@ -52,6 +52,37 @@ public abstract class AbstractLockingUidProvider<Id> implements UidProvider<Id>{
         });
     }
     
+    @Override
+    public long nextUids(final MailboxSession session, final Mailbox<Id> mailbox, final int count) throws MailboxException {
+        return locker.executeWithLock(session, new StoreMailboxPath<Id>(mailbox), new LockAwareExecution<Long>() {
+
+            @Override
+            public Long execute() throws MailboxException {
+                return lockedNextUids(session, mailbox, count);
+            }
+        });
+    }
+
+    /**
+     * Reserve count uids while the {@link Mailbox} is locked and return the first of them.
+     * 
+     * This implementation just calls {@link #lockedNextUid(MailboxSession, Mailbox)} count times. Sub-classes
+     * should override it if they are able to reserve the whole block at once.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return firstUid
+     * @throws MailboxException
+     */
+    protected long lockedNextUids(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        long first = lockedNextUid(session, mailbox);
+        for (int i = 1; i < count; i++) {
+            lockedNextUid(session, mailbox);
+        }
+        return first;
+    }
+
     /**
      * Generate the next uid to use while the {@link Mailbox} is locked
      * 
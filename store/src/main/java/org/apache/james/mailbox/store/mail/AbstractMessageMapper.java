@@ -21,6 +21,7 @@ package org.apache.james.mailbox.store.mail;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.mail.Flags;
 
@@ -63,6 +64,25 @@ public abstract class AbstractMessageMapper<Id> extends TransactionalMapper impl
     public long getLastUid(Mailbox<Id> mailbox) throws MailboxException {
         return uidProvider.lastUid(mailboxSession, mailbox);
     }
+
+    /**
+     * Fetch every requested counter on its own. Implementations should override this if the storage allows to
+     * fetch the counters more efficient.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.Set)
+     */
+    public MailboxCounters getMailboxCounters(Mailbox<Id> mailbox, Set<Counter> counters) throws MailboxException {
+        return MailboxCounters.fetch(this, mailbox, counters);
+    }
+
+    /**
+     * Fetch the counters of every {@link Mailbox} on its own.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#getMailboxCounters(java.util.List, java.util.Set)
+     */
+    public List<MailboxCounters> getMailboxCounters(List<Mailbox<Id>> mailboxes, Set<Counter> counters) throws MailboxException {
+        return MailboxCounters.fetch(this, mailboxes, counters);
+    }
     
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#updateFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
@@ -110,6 +130,38 @@ public abstract class AbstractMessageMapper<Id> extends TransactionalMapper impl
 
     }
 
+    /**
+     * Update the flags of every message on its own using {@link #updateFlags(Mailbox, Flags, boolean, boolean, MessageRange)}.
+     * The changed messages get the mod-sequences assigned by that method, so they only share one mod-sequence if it
+     * does. Implementations should override this if the storage allows to update the flags of many messages at once.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#updateSystemFlags(org.apache.james.mailbox.store.mail.model.Mailbox, javax.mail.Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)
+     */
+    public UpdatedFlagsList updateSystemFlags(Mailbox<Id> mailbox, Flags flags, boolean value, boolean replace, MessageRange set) throws MailboxException {
+        UpdatedFlagsList updatedFlags = new UpdatedFlagsList(flags, value, replace);
+        Iterator<UpdatedFlags> it = updateFlags(mailbox, flags, value, replace, set);
+        while (it.hasNext()) {
+            UpdatedFlags flag = it.next();
+            updatedFlags.add(flag.getUid(), flag.getModSeq(), flag.getOldFlags());
+        }
+        return updatedFlags;
+    }
+
+    /**
+     * Return the next mod-sequence of the given {@link Mailbox}, or -1 if the mailbox does not support mod-sequences
+     * 
+     * @param mailbox
+     * @return modSeq
+     * @throws MailboxException
+     */
+    protected long nextModSeq(Mailbox<Id> mailbox) throws MailboxException {
+        // if a mailbox does not support mod-sequences the provider may be null
+        if (modSeqProvider != null) {
+            return modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        return -1;
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#add(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Message)
      */
@@ -126,6 +178,30 @@ public abstract class AbstractMessageMapper<Id> extends TransactionalMapper impl
         
     }
 
+    /**
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#add(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.List)
+     */
+    public List<MessageMetaData> add(final Mailbox<Id> mailbox, List<Message<Id>> messages) throws MailboxException {
+        List<MessageMetaData> data = new ArrayList<MessageMetaData>(messages.size());
+        if (messages.isEmpty()) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, mailbox, messages.size());
+
+        // if a mailbox does not support mod-sequences the provider may be null
+        long modSeq = -1;
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, mailbox);
+        }
+        for (Message<Id> message: messages) {
+            message.setUid(uid++);
+            if (modSeqProvider != null) {
+                message.setModSeq(modSeq);
+            }
+            data.add(save(mailbox, message));
+        }
+        return data;
+    }
     
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Message)
@@ -141,9 +217,49 @@ public abstract class AbstractMessageMapper<Id> extends TransactionalMapper impl
         return metaData;
     }
 
-   
-    
-    
+    /**
+     * Copy the messages one by one, but reserve the uids and the mod-sequence for all of them at once. The
+     * originals are read in batches, see {@link MessageBatchReader}.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#copy(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
+     */
+    public List<MessageMetaData> copy(final Mailbox<Id> from, final Mailbox<Id> to, MessageRange set) throws MailboxException {
+        return copyOrMove(from, to, set, false);
+    }
+
+    /**
+     * Move the messages one by one, but reserve the uids and the mod-sequence for all of them at once. The
+     * originals are read in batches, see {@link MessageBatchReader}.
+     * 
+     * @see org.apache.james.mailbox.store.mail.MessageMapper#move(org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.store.mail.model.Mailbox, org.apache.james.mailbox.model.MessageRange)
+     */
+    public List<MessageMetaData> move(final Mailbox<Id> from, final Mailbox<Id> to, MessageRange set) throws MailboxException {
+        return copyOrMove(from, to, set, true);
+    }
+
+    private List<MessageMetaData> copyOrMove(Mailbox<Id> from, Mailbox<Id> to, MessageRange set, boolean move) throws MailboxException {
+        MessageBatchReader<Id> originals = new MessageBatchReader<Id>(this, from, set, move ? getMoveFetchType() : FetchType.Full);
+        List<MessageMetaData> data = new ArrayList<MessageMetaData>(originals.size());
+        if (originals.size() == 0) {
+            return data;
+        }
+        long uid = uidProvider.nextUids(mailboxSession, to, originals.size());
+        long modSeq = -1;
+        if (modSeqProvider != null) {
+            modSeq = modSeqProvider.nextModSeq(mailboxSession, to);
+        }
+        while (originals.hasNext()) {
+            for (Message<Id> original: originals.next()) {
+                if (move) {
+                    data.add(move(from, to, uid++, modSeq, original));
+                } else {
+                    data.add(copy(to, uid++, modSeq, original));
+                }
+            }
+        }
+        return data;
+    }
+
     /**
      * Save the {@link Message} for the given {@link Mailbox} and return the {@link MessageMetaData} 
      * 
@@ -166,5 +282,38 @@ public abstract class AbstractMessageMapper<Id> extends TransactionalMapper impl
      * @throws MailboxException
      */
     protected abstract MessageMetaData copy(Mailbox<Id> mailbox, long uid, long modSeq, Message<Id> original) throws MailboxException;
+
+    /**
+     * Move the Message from one Mailbox to the other, using the given uid and modSeq for the moved Message.
+     * 
+     * This implementation copies the Message and deletes the original afterwards. Sub-classes should override
+     * it if they are able to just re-parent the Message.
+     * 
+     * @param from
+     * @param to
+     * @param uid
+     * @param modSeq
+     * @param original
+     * @return metaData
+     * @throws MailboxException
+     */
+    protected MessageMetaData move(Mailbox<Id> from, Mailbox<Id> to, long uid, long modSeq, Message<Id> original) throws MailboxException {
+        MessageMetaData metaData = copy(to, uid, modSeq, original);
+        delete(from, original);
+        return metaData;
+    }
+
+    /**
+     * Return the {@link FetchType} which is used to read the Messages passed to
+     * {@link #move(Mailbox, Mailbox, long, long, Message)}.
+     * 
+     * This implementation returns {@link FetchType#Full} as the content is copied. Sub-classes which just
+     * re-parent the Message should return {@link FetchType#Metadata}.
+     * 
+     * @return fetchType
+     */
+    protected FetchType getMoveFetchType() {
+        return FetchType.Full;
+    }
     
 }
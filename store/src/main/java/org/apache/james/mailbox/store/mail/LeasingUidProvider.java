@@ -0,0 +1,68 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * {@link UidProvider} which leases blocks of uids from another {@link UidProvider} and hands them out
+ * from memory. See {@link AbstractLeasingProvider} for the gap policy and the restrictions in a multi node setup.
+ *
+ * @param <Id>
+ */
+public class LeasingUidProvider<Id> extends AbstractLeasingProvider<Id> implements UidProvider<Id> {
+
+    private final UidProvider<Id> provider;
+
+    public LeasingUidProvider(UidProvider<Id> provider) {
+        this(provider, DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_TARGET_LEASE_TIME, DEFAULT_MAX_LEASES);
+    }
+
+    public LeasingUidProvider(UidProvider<Id> provider, int minBlockSize, int maxBlockSize, long targetLeaseTime, int maxLeases) {
+        super(minBlockSize, maxBlockSize, targetLeaseTime, maxLeases);
+        this.provider = provider;
+    }
+
+    @Override
+    public long nextUid(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException {
+        return next(session, mailbox, 1);
+    }
+
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        return next(session, mailbox, count);
+    }
+
+    @Override
+    public long lastUid(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException {
+        return highest(session, mailbox);
+    }
+
+    @Override
+    protected long reserve(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException {
+        return provider.nextUids(session, mailbox, count);
+    }
+
+    @Override
+    protected long last(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException {
+        return provider.lastUid(session, mailbox);
+    }
+}
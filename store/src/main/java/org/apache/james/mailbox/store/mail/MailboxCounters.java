@@ -0,0 +1,135 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.MessageMapper.Counter;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * Holds the {@link Counter} values of a {@link org.apache.james.mailbox.store.mail.model.Mailbox} which were
+ * fetched via {@link MessageMapper#getMailboxCounters(org.apache.james.mailbox.store.mail.model.Mailbox, java.util.Set)}
+ */
+public class MailboxCounters {
+
+    private final Map<Counter, Long> values = new EnumMap<Counter, Long>(Counter.class);
+
+    /**
+     * Fetch every requested {@link Counter} with the single value method of the {@link MessageMapper} which
+     * answers it. This is used by mappers which have no cheaper way to read several counters at once.
+     * 
+     * @param mapper
+     * @param mailbox
+     * @param counters
+     * @return counters
+     * @throws MailboxException
+     */
+    public static <Id> MailboxCounters fetch(MessageMapper<Id> mapper, Mailbox<Id> mailbox, Set<Counter> counters) throws MailboxException {
+        MailboxCounters result = new MailboxCounters();
+        for (Counter counter : counters) {
+            switch (counter) {
+            case LastUid:
+                result.set(counter, mapper.getLastUid(mailbox));
+                break;
+            case HighestModSeq:
+                result.set(counter, mapper.getHighestModSeq(mailbox));
+                break;
+            case MessageCount:
+                result.set(counter, mapper.countMessagesInMailbox(mailbox));
+                break;
+            case UnseenCount:
+                result.set(counter, mapper.countUnseenMessagesInMailbox(mailbox));
+                break;
+            case FirstUnseen:
+                result.set(counter, mapper.findFirstUnseenMessageUid(mailbox));
+                break;
+            case RecentCount:
+                result.set(counter, (long) mapper.findRecentMessageUidsInMailbox(mailbox).size());
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetch the counters of every {@link Mailbox} on its own, with
+     * {@link MessageMapper#getMailboxCounters(Mailbox, Set)}
+     * 
+     * @param mapper
+     * @param mailboxes
+     * @param counters
+     * @return counters in the order of the mailboxes
+     * @throws MailboxException
+     */
+    public static <Id> List<MailboxCounters> fetch(MessageMapper<Id> mapper, List<Mailbox<Id>> mailboxes, Set<Counter> counters) throws MailboxException {
+        List<MailboxCounters> result = new ArrayList<MailboxCounters>(mailboxes.size());
+        for (Mailbox<Id> mailbox : mailboxes) {
+            result.add(mapper.getMailboxCounters(mailbox, counters));
+        }
+        return result;
+    }
+
+    /**
+     * Set the value of the given {@link Counter}. A <code>null</code> value is only valid for
+     * {@link Counter#FirstUnseen} and means that there is no unseen message.
+     * 
+     * @param counter
+     * @param value
+     * @return this
+     */
+    public MailboxCounters set(Counter counter, Long value) {
+        values.put(counter, value);
+        return this;
+    }
+
+    /**
+     * Return <code>true</code> if the value of the given {@link Counter} was set
+     * 
+     * @param counter
+     * @return contains
+     */
+    public boolean contains(Counter counter) {
+        return values.containsKey(counter);
+    }
+
+    /**
+     * Return the value of the given {@link Counter}
+     * 
+     * @param counter
+     * @return value
+     * @throws IllegalStateException if the value was not fetched
+     */
+    public Long get(Counter counter) {
+        if (!contains(counter)) {
+            throw new IllegalStateException("Counter " + counter + " was not fetched");
+        }
+        return values.get(counter);
+    }
+
+    @Override
+    public String toString() {
+        return "MailboxCounters" + values;
+    }
+}
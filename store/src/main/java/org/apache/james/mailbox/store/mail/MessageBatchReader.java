@@ -0,0 +1,106 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
+
+/**
+ * Reads the {@link Message}s of a {@link MessageRange} in batches of uids, so only the content of one batch
+ * is held at a time. The uids of all messages are read up front with {@link FetchType#Metadata}, so the
+ * caller knows the count of messages before the first batch, for example to reserve the uids of copies.
+ * 
+ * Messages which are added to the range after the uids were read are not returned.
+ */
+public class MessageBatchReader<Id> {
+
+    public final static int DEFAULT_BATCH_SIZE = 100;
+
+    private final MessageMapper<Id> mapper;
+    private final Mailbox<Id> mailbox;
+    private final FetchType ftype;
+    private final int batchSize;
+    private final List<Long> uids = new ArrayList<Long>();
+    private int position;
+
+    public MessageBatchReader(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange set, FetchType ftype) throws MailboxException {
+        this(mapper, mailbox, set, ftype, DEFAULT_BATCH_SIZE);
+    }
+
+    public MessageBatchReader(MessageMapper<Id> mapper, Mailbox<Id> mailbox, MessageRange set, FetchType ftype, int batchSize) throws MailboxException {
+        this.mapper = mapper;
+        this.mailbox = mailbox;
+        this.ftype = ftype;
+        this.batchSize = batchSize;
+        Iterator<Message<Id>> it = mapper.findInMailbox(mailbox, set, FetchType.Metadata, -1);
+        while (it.hasNext()) {
+            uids.add(it.next().getUid());
+        }
+        Collections.sort(uids);
+    }
+
+    /**
+     * Return the count of messages in the range
+     */
+    public int size() {
+        return uids.size();
+    }
+
+    /**
+     * Return the uids of all messages in the range in ascending order
+     */
+    public List<Long> getUids() {
+        return Collections.unmodifiableList(uids);
+    }
+
+    public boolean hasNext() {
+        return position < uids.size();
+    }
+
+    /**
+     * Read the next batch of messages. Messages which were expunged in the meantime are missing.
+     * 
+     * @return messages
+     * @throws MailboxException
+     */
+    public List<Message<Id>> next() throws MailboxException {
+        List<Long> batch = uids.subList(position, Math.min(position + batchSize, uids.size()));
+        position += batch.size();
+        List<Message<Id>> messages = new ArrayList<Message<Id>>(batch.size());
+        if (batch.isEmpty()) {
+            return messages;
+        }
+        Iterator<Message<Id>> it = mapper.findInMailbox(mailbox, MessageRange.range(batch.get(0), batch.get(batch.size() - 1)), ftype, -1);
+        while (it.hasNext()) {
+            Message<Id> message = it.next();
+            if (Collections.binarySearch(batch, message.getUid()) >= 0) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.james.mailbox.store.mail;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.mail.Flags;
 
@@ -127,6 +128,18 @@ public interface MessageMapper<Id> extends Mapper {
      * @throws StorageException
      */
     MessageMetaData add(Mailbox<Id> mailbox, Message<Id> message) throws MailboxException;
+
+    /**
+     * Add all the given {@link Message}'s to the underlying storage. The messages get a contiguous block of uids, assigned in
+     * the order of the given {@link List}, and share the same mod-sequence. As for {@link #add(Mailbox, Message)} you should
+     * only depend on the returned uids.
+     * 
+     * @param mailbox
+     * @param messages
+     * @return metaData in the same order as the given messages
+     * @throws MailboxException
+     */
+    List<MessageMetaData> add(Mailbox<Id> mailbox, List<Message<Id>> messages) throws MailboxException;
     
     /**
      * Update flags for the given {@link MessageRange}. Only the flags may be modified after a message was saved to a mailbox.
@@ -141,6 +154,26 @@ public interface MessageMapper<Id> extends Mapper {
      */
     Iterator<UpdatedFlags> updateFlags(Mailbox<Id> mailbox, final Flags flags, final boolean value, final boolean replace,
             final MessageRange set) throws MailboxException;
+
+    /**
+     * Update the system flags for the given {@link MessageRange} without loading the messages. Every changed message
+     * gets a new mod-sequence. Implementations which update the messages at once should let all changed messages
+     * share the same mod-sequence, while the default of {@link AbstractMessageMapper} uses the mod-sequences assigned
+     * by {@link #updateFlags(Mailbox, Flags, boolean, boolean, MessageRange)}. The user flags of the given
+     * {@link Flags} are ignored, but if <code>replace</code> is <code>true</code> the user flags of the messages are
+     * removed.
+     * 
+     * The returned {@link UpdatedFlagsList} contains an entry for every message of the range, ordered by uid.
+     * 
+     * @param mailbox
+     * @param flags
+     * @param value
+     * @param replace
+     * @param set
+     * @return updatedFlags
+     * @throws MailboxException
+     */
+    UpdatedFlagsList updateSystemFlags(Mailbox<Id> mailbox, Flags flags, boolean value, boolean replace, MessageRange set) throws MailboxException;
     
     /**
      * Copy the given {@link Message} to a new mailbox and return the uid of the copy. Be aware that the given uid is just a suggestion for the uid of the copied
@@ -151,16 +184,33 @@ public interface MessageMapper<Id> extends Mapper {
      * @throws StorageException
      */
     MessageMetaData copy(Mailbox<Id> mailbox,Message<Id> original) throws MailboxException;
+
+    /**
+     * Copy all messages of the given {@link MessageRange} from one {@link Mailbox} to another. The copies get a contiguous
+     * block of uids, assigned in the order of the original uids, and share the same mod-sequence.
+     * 
+     * @param from the Mailbox to copy from
+     * @param to the Mailbox to copy to
+     * @param set the range of messages to copy
+     * @return metaData of the copies, in the order of the originals
+     * @throws MailboxException
+     */
+    List<MessageMetaData> copy(Mailbox<Id> from, Mailbox<Id> to, MessageRange set) throws MailboxException;
     
     /**
-     * Move the given {@link Message} to a new mailbox and return the uid of the moved. Be aware that the given uid is just a suggestion for the uid of the moved
-     * message. Implementation may choose to use a different one, so only depend on the returned uid!
+     * Move all messages of the given {@link MessageRange} from one {@link Mailbox} to another. The moved messages get a contiguous
+     * block of uids in the target {@link Mailbox}, assigned in the order of the original uids, and share the same mod-sequence. The
+     * originals are removed from the source {@link Mailbox}.
      * 
-     * @param mailbox the Mailbox to move to
-     * @param original the original to move
-     * @throws StorageException
+     * Implementations should just re-parent the messages where the storage allows it, instead of copying the content.
+     * 
+     * @param from the Mailbox to move from
+     * @param to the Mailbox to move to
+     * @param set the range of messages to move
+     * @return metaData of the moved messages in the target Mailbox, in the order of the originals
+     * @throws MailboxException
      */
-    MessageMetaData move(Mailbox<Id> mailbox,Message<Id> original) throws MailboxException;
+    List<MessageMetaData> move(Mailbox<Id> from, Mailbox<Id> to, MessageRange set) throws MailboxException;
     
     
     /**
@@ -181,6 +231,28 @@ public interface MessageMapper<Id> extends Mapper {
      * @throws MailboxException
      */
     long getHighestModSeq(Mailbox<Id> mailbox) throws MailboxException;
+
+    /**
+     * Return the requested {@link Counter}'s of the {@link Mailbox} at once. Implementations should fetch all of
+     * them with as few round trips to the storage as possible.
+     * 
+     * @param mailbox
+     * @param counters the counters to fetch
+     * @return mailboxCounters which contain at least the requested counters
+     * @throws MailboxException
+     */
+    MailboxCounters getMailboxCounters(Mailbox<Id> mailbox, Set<Counter> counters) throws MailboxException;
+
+    /**
+     * Return the requested {@link Counter}'s of all the given {@link Mailbox}'s. Implementations should fetch
+     * the counters of all mailboxes in bulk where the storage allows it.
+     * 
+     * @param mailboxes
+     * @param counters the counters to fetch
+     * @return mailboxCounters in the order of the given mailboxes
+     * @throws MailboxException
+     */
+    List<MailboxCounters> getMailboxCounters(List<Mailbox<Id>> mailboxes, Set<Counter> counters) throws MailboxException;
     
     /**
      * Specify what data needs to get filled in a {@link Message} before returning it
@@ -230,4 +302,40 @@ public interface MessageMapper<Id> extends Mapper {
         Full
     }
 
+    /**
+     * The values which can be fetched via {@link MessageMapper#getMailboxCounters(Mailbox, Set)}
+     */
+    public static enum Counter {
+
+        /**
+         * The last uid which was used in the {@link Mailbox}, see {@link MessageMapper#getLastUid(Mailbox)}
+         */
+        LastUid,
+
+        /**
+         * The highest mod-sequence of the {@link Mailbox}, see {@link MessageMapper#getHighestModSeq(Mailbox)}
+         */
+        HighestModSeq,
+
+        /**
+         * The count of messages, see {@link MessageMapper#countMessagesInMailbox(Mailbox)}
+         */
+        MessageCount,
+
+        /**
+         * The count of unseen messages, see {@link MessageMapper#countUnseenMessagesInMailbox(Mailbox)}
+         */
+        UnseenCount,
+
+        /**
+         * The uid of the first unseen message, see {@link MessageMapper#findFirstUnseenMessageUid(Mailbox)}
+         */
+        FirstUnseen,
+
+        /**
+         * The count of recent messages, see {@link MessageMapper#findRecentMessageUidsInMailbox(Mailbox)}
+         */
+        RecentCount
+    }
+
 }
\ No newline at end of file
@@ -44,6 +44,20 @@ public interface ModSeqProvider<Id> {
      * @throws MailboxException
      */
     public long nextModSeq(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException;
+
+    /**
+     * Reserve a contiguous block of count mod-sequences for the {@link Mailbox} and return the first of them. The caller
+     * may use the returned mod-sequence and the count - 1 following ones. The same rules as for {@link #nextModSeq(MailboxSession, Mailbox)}
+     * apply, so the next call of this method or {@link #nextModSeq(MailboxSession, Mailbox)} must return a higher mod-sequence then
+     * the last one of the reserved block.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count the number of mod-sequences to reserve, must be > 0
+     * @return firstModSeq
+     * @throws MailboxException
+     */
+    public long nextModSeqs(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException;
     
     /**
      * Return the highest mod-sequence which were used for the {@link Mailbox}
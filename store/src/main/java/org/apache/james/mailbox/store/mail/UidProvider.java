@@ -42,6 +42,20 @@ public interface UidProvider<Id> {
      * @throws MailboxException
      */
     public long nextUid(MailboxSession session, Mailbox<Id> mailbox) throws MailboxException;
+
+    /**
+     * Reserve a contiguous block of count uids for the {@link Mailbox} and return the first of them. The caller
+     * may use the returned uid and the count - 1 following ones. The same rules as for {@link #nextUid(MailboxSession, Mailbox)}
+     * apply, so the next call of this method or {@link #nextUid(MailboxSession, Mailbox)} must return a higher uid then the last
+     * one of the reserved block.
+     * 
+     * @param session
+     * @param mailbox
+     * @param count the number of uids to reserve, must be > 0
+     * @return firstUid
+     * @throws MailboxException
+     */
+    public long nextUids(MailboxSession session, Mailbox<Id> mailbox, int count) throws MailboxException;
     
     /**
      * Return the last uid which were used for storing a Message in the {@link Mailbox}
@@ -0,0 +1,415 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.mail.Flags;
+import javax.mail.Flags.Flag;
+
+import org.apache.james.mailbox.model.UpdatedFlags;
+
+/**
+ * Compact {@link List} of {@link UpdatedFlags} which is the result of one bulk update of the system flags of a
+ * {@link org.apache.james.mailbox.model.MessageRange}, see
+ * {@link MessageMapper#updateSystemFlags(org.apache.james.mailbox.store.mail.model.Mailbox, Flags, boolean, boolean, org.apache.james.mailbox.model.MessageRange)}.
+ * 
+ * Only the uid, the mod-sequence and the old flags of every message are stored in primitive arrays. The new
+ * {@link Flags} are calculated from the requested operation, so the {@link UpdatedFlags} are only created when they
+ * are accessed.
+ * 
+ * This class is not thread-safe while messages are added to it.
+ */
+public class UpdatedFlagsList extends AbstractList<UpdatedFlags> {
+
+    private static final Flag[] SYSTEM_FLAGS = { Flag.ANSWERED, Flag.DELETED, Flag.DRAFT, Flag.FLAGGED, Flag.RECENT, Flag.SEEN, Flag.USER };
+    private static final String[] NO_USER_FLAGS = new String[0];
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int bits;
+    private final boolean value;
+    private final boolean replace;
+
+    private long[] uids = new long[INITIAL_CAPACITY];
+    private long[] modSeqs = new long[INITIAL_CAPACITY];
+    private byte[] oldBits = new byte[INITIAL_CAPACITY];
+    // only allocated if one of the messages has user flags
+    private String[][] oldUserFlags;
+    private int size;
+    private boolean sorted = true;
+
+    /**
+     * Create a new empty list for the given update operation
+     * 
+     * @param flags the system flags to add, remove or replace. User flags are ignored
+     * @param value <code>true</code> to add the flags, <code>false</code> to remove them
+     * @param replace <code>true</code> to replace the flags of the messages with the given flags
+     */
+    public UpdatedFlagsList(Flags flags, boolean value, boolean replace) {
+        this.bits = toBits(flags);
+        this.value = value;
+        this.replace = replace;
+    }
+
+    /**
+     * Return the bitmask which represents the system flags of the given {@link Flags}
+     * 
+     * @param flags
+     * @return bits
+     */
+    public static int toBits(Flags flags) {
+        int result = 0;
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (flags.contains(SYSTEM_FLAGS[i])) {
+                result |= 1 << i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the bit which represents the given system {@link Flag}
+     * 
+     * @param flag
+     * @return bit
+     */
+    public static int toBit(Flag flag) {
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if (SYSTEM_FLAGS[i].equals(flag)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return <code>true</code> if the given bitmask contains the given system {@link Flag}
+     * 
+     * @param bits
+     * @param flag
+     * @return contains
+     */
+    public static boolean contains(int bits, Flag flag) {
+        return (bits & toBit(flag)) != 0;
+    }
+
+    private static Flags toFlags(int bits, String[] userFlags) {
+        Flags flags = new Flags();
+        for (int i = 0; i < SYSTEM_FLAGS.length; i++) {
+            if ((bits & (1 << i)) != 0) {
+                flags.add(SYSTEM_FLAGS[i]);
+            }
+        }
+        for (String userFlag : userFlags) {
+            flags.add(userFlag);
+        }
+        return flags;
+    }
+
+    /**
+     * Apply the update operation to the given system flags bitmask
+     * 
+     * @param flagBits
+     * @return newBits
+     */
+    public int apply(int flagBits) {
+        if (replace) {
+            return bits;
+        } else if (value) {
+            return flagBits | bits;
+        } else {
+            return flagBits & ~bits;
+        }
+    }
+
+    /**
+     * Apply the update operation to the given {@link Flags} and return the new {@link Flags}
+     * 
+     * @param oldFlags
+     * @return newFlags
+     */
+    public Flags apply(Flags oldFlags) {
+        return toFlags(apply(toBits(oldFlags)), replace ? NO_USER_FLAGS : oldFlags.getUserFlags());
+    }
+
+    /**
+     * Return <code>true</code> if the update operation changes a message with the given flags
+     * 
+     * @param flagBits
+     * @param hasUserFlags
+     * @return changed
+     */
+    public boolean isChanged(int flagBits, boolean hasUserFlags) {
+        return apply(flagBits) != flagBits || (replace && hasUserFlags);
+    }
+
+    /**
+     * Return <code>true</code> if the update operation changes a message with the given flags
+     * 
+     * @param oldFlags
+     * @return changed
+     */
+    public boolean isChanged(Flags oldFlags) {
+        return isChanged(toBits(oldFlags), oldFlags.getUserFlags().length > 0);
+    }
+
+    /**
+     * Add a message to the list
+     * 
+     * @param uid
+     * @param modSeq the mod-sequence of the message after the update
+     * @param oldFlags the flags of the message before the update
+     */
+    public void add(long uid, long modSeq, Flags oldFlags) {
+        add(uid, modSeq, toBits(oldFlags), oldFlags.getUserFlags());
+    }
+
+    /**
+     * Add a message to the list
+     * 
+     * @param uid
+     * @param modSeq the mod-sequence of the message after the update
+     * @param flagBits the system flags of the message before the update, see {@link #toBits(Flags)}
+     * @param userFlags the user flags of the message before the update, may be <code>null</code>
+     */
+    public void add(long uid, long modSeq, int flagBits, String[] userFlags) {
+        if (size == uids.length) {
+            int capacity = size * 2;
+            uids = Arrays.copyOf(uids, capacity);
+            modSeqs = Arrays.copyOf(modSeqs, capacity);
+            oldBits = Arrays.copyOf(oldBits, capacity);
+            if (oldUserFlags != null) {
+                oldUserFlags = Arrays.copyOf(oldUserFlags, capacity);
+            }
+        }
+        if (size > 0 && uids[size - 1] > uid) {
+            sorted = false;
+        }
+        uids[size] = uid;
+        modSeqs[size] = modSeq;
+        oldBits[size] = (byte) flagBits;
+        if (userFlags != null && userFlags.length > 0) {
+            if (oldUserFlags == null) {
+                oldUserFlags = new String[uids.length][];
+            }
+            oldUserFlags[size] = userFlags;
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Return the uid of the message at the given index
+     * 
+     * @param index
+     * @return uid
+     */
+    public long getUid(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return uids[index];
+    }
+
+    /**
+     * Return <code>true</code> if the flags of the message at the given index were changed by the update
+     * 
+     * @param index
+     * @return changed
+     */
+    public boolean isChanged(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return isChanged(oldBits[index], userFlags(index).length > 0);
+    }
+
+    /**
+     * Return the new {@link Flags} of the message at the given index
+     * 
+     * @param index
+     * @return newFlags
+     */
+    public Flags getNewFlags(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return toFlags(apply(oldBits[index]), replace ? NO_USER_FLAGS : userFlags(index));
+    }
+
+    /**
+     * Return a view of the uids of all messages in ascending order
+     * 
+     * @return uids
+     */
+    public List<Long> getUids() {
+        return new AbstractList<Long>() {
+            @Override
+            public Long get(int index) {
+                return getUid(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Return a view which maps the uid of every message to its new {@link Flags}
+     * 
+     * @return newFlagsByUid
+     */
+    public Map<Long, Flags> getNewFlagsByUid() {
+        return new AbstractMap<Long, Flags>() {
+
+            @Override
+            public Flags get(Object key) {
+                int index = indexOfUid(key);
+                return index < 0 ? null : getNewFlags(index);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return indexOfUid(key) >= 0;
+            }
+
+            @Override
+            public Set<Map.Entry<Long, Flags>> entrySet() {
+                return new AbstractSet<Map.Entry<Long, Flags>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<Long, Flags>> iterator() {
+                        return new Iterator<Map.Entry<Long, Flags>>() {
+                            private int index = 0;
+
+                            public boolean hasNext() {
+                                return index < size;
+                            }
+
+                            public Map.Entry<Long, Flags> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                Map.Entry<Long, Flags> entry = new AbstractMap.SimpleImmutableEntry<Long, Flags>(getUid(index), getNewFlags(index));
+                                index++;
+                                return entry;
+                            }
+
+                            public void remove() {
+                                throw new UnsupportedOperationException("Read-only");
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public UpdatedFlags get(int index) {
+        checkIndex(index);
+        ensureSorted();
+        String[] userFlags = userFlags(index);
+        int flagBits = oldBits[index];
+        Flags oldFlags = toFlags(flagBits, userFlags);
+        if (isChanged(flagBits, userFlags.length > 0)) {
+            return new UpdatedFlags(uids[index], modSeqs[index], oldFlags, toFlags(apply(flagBits), replace ? NO_USER_FLAGS : userFlags));
+        } else {
+            return new UpdatedFlags(uids[index], modSeqs[index], oldFlags, oldFlags);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int indexOfUid(Object key) {
+        if (!(key instanceof Long)) {
+            return -1;
+        }
+        ensureSorted();
+        int index = Arrays.binarySearch(uids, 0, size, (Long) key);
+        return index < 0 ? -1 : index;
+    }
+
+    private String[] userFlags(int index) {
+        if (oldUserFlags == null || oldUserFlags[index] == null) {
+            return NO_USER_FLAGS;
+        }
+        return oldUserFlags[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Sort the messages by uid, as some storages return them in a different order
+     */
+    private void ensureSorted() {
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long uid1 = uids[o1];
+                long uid2 = uids[o2];
+                return uid1 < uid2 ? -1 : (uid1 == uid2 ? 0 : 1);
+            }
+        });
+        long[] sortedUids = new long[uids.length];
+        long[] sortedModSeqs = new long[modSeqs.length];
+        byte[] sortedBits = new byte[oldBits.length];
+        String[][] sortedUserFlags = oldUserFlags == null ? null : new String[oldUserFlags.length][];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            sortedUids[i] = uids[from];
+            sortedModSeqs[i] = modSeqs[from];
+            sortedBits[i] = oldBits[from];
+            if (sortedUserFlags != null) {
+                sortedUserFlags[i] = oldUserFlags[from];
+            }
+        }
+        uids = sortedUids;
+        modSeqs = sortedModSeqs;
+        oldBits = sortedBits;
+        oldUserFlags = sortedUserFlags;
+        sorted = true;
+    }
+}
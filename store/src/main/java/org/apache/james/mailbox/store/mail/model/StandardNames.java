@@ -220,4 +220,26 @@ public class StandardNames {
     * @see #NAMESPACE_RFC_2183
     */
    public static final String MIME_CONTENT_DISPOSITION_PARAMETER_SPACE = MIME_CONTENT_DISPOSITION_SPACE + "/params";
+
+   /**
+    * Namespace for meta-data which is computed by the mailbox itself
+    */
+   public static final String NAMESPACE_JAMES_MAILBOX = "http://james.apache.org/mailbox";
+
+   /**
+    * Namespace for the encoded MIME structure of the message
+    * @see #NAMESPACE_JAMES_MAILBOX
+    */
+   public static final String MIME_STRUCTURE_SPACE = NAMESPACE_JAMES_MAILBOX + "/structure";
+
+   /**
+    * Local name for the encoded MIME structure of the message
+    */
+   public static final String MIME_STRUCTURE_NAME = "mime";
+
+   /**
+    * Local name for the encoded byte offsets of the MIME parts of the message
+    * @see #MIME_STRUCTURE_SPACE
+    */
+   public static final String MIME_PART_OFFSETS_NAME = "offsets";
 }
@@ -38,6 +38,9 @@ import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTE
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_CONTENT_TYPE_PARAMETER_SPACE;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_MEDIA_TYPE_NAME;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_MIME_TYPE_SPACE;
+import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_PART_OFFSETS_NAME;
+import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_STRUCTURE_NAME;
+import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_STRUCTURE_SPACE;
 import static org.apache.james.mailbox.store.mail.model.StandardNames.MIME_SUB_TYPE_NAME;
 
 import java.util.ArrayList;
@@ -55,6 +58,7 @@ import org.apache.james.mailbox.store.mail.model.Property;
 public class PropertyBuilder {
     
     private static final int INITIAL_CAPACITY = 32;
+    private static final int CHUNK_SIZE = 1000;
 
     private Long textualLineCount;
     private final List<SimpleProperty> properties;
@@ -452,6 +456,76 @@ public class PropertyBuilder {
         setProperty(MIME_CONTENT_LANGUAGE_SPACE, MIME_CONTENT_LANGUAGE_NAME, values);
     }
     
+    /**
+     * Gets the encoded MIME structure of the message.
+     * 
+     * @return encoded structure, 
+     * or null if this meta data is not present
+     */
+    public String getMimeStructure() {
+        return getChunkedValue(MIME_STRUCTURE_SPACE, MIME_STRUCTURE_NAME);
+    }
+    
+    /**
+     * Sets the encoded MIME structure of the message.
+     * 
+     * @param value encoded structure,
+     * or null to remove
+     */
+    public void setMimeStructure(String value) {
+        setChunkedValue(MIME_STRUCTURE_SPACE, MIME_STRUCTURE_NAME, value);
+    }
+    
+    /**
+     * Gets the encoded byte offsets of the MIME parts of the message.
+     * 
+     * @return encoded offsets, 
+     * or null if this meta data is not present
+     */
+    public String getPartOffsets() {
+        return getChunkedValue(MIME_STRUCTURE_SPACE, MIME_PART_OFFSETS_NAME);
+    }
+    
+    /**
+     * Sets the encoded byte offsets of the MIME parts of the message.
+     * 
+     * @param value encoded offsets,
+     * or null to remove
+     */
+    public void setPartOffsets(String value) {
+        setChunkedValue(MIME_STRUCTURE_SPACE, MIME_PART_OFFSETS_NAME, value);
+    }
+    
+    /**
+     * Joins the values of a property which was stored by {@link #setChunkedValue(String, String, String)}.
+     */
+    private String getChunkedValue(final String namespace, final String localName) {
+        final List<String> values = getValues(namespace, localName);
+        if (values.isEmpty()) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String value: values) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Sets a property with a possible big value. The value is split into chunks
+     * so every stored property value stays small.
+     */
+    private void setChunkedValue(final String namespace, final String localName, final String value) {
+        List<String> values = null;
+        if (value != null) {
+            values = new ArrayList<String>();
+            for (int i = 0; i < value.length(); i += CHUNK_SIZE) {
+                values.add(value.substring(i, Math.min(value.length(), i + CHUNK_SIZE)));
+            }
+        }
+        setProperty(namespace, localName, values);
+    }
+    
     /**
      * Builds a list of properties.
      * @return not null
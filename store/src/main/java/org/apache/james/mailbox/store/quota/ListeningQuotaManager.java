@@ -23,7 +23,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.AsyncMailboxListener;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.QuotaManager;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -31,6 +31,7 @@ import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.Quota;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.mailbox.store.SimpleMailboxSession;
 import org.apache.james.mailbox.store.StoreMailboxManager;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.Message;
@@ -44,7 +45,7 @@ import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
  *  *
  */
 @SuppressWarnings({ "unchecked", "rawtypes" })
-public abstract class ListeningQuotaManager implements QuotaManager, MailboxListener{
+public abstract class ListeningQuotaManager implements QuotaManager, AsyncMailboxListener{
 
     private MailboxSessionMapperFactory factory;
     private ConcurrentHashMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
@@ -74,16 +75,22 @@ public abstract class ListeningQuotaManager implements QuotaManager, MailboxList
             AtomicLong count = counts.get(id);
             if (count == null) {
                 long mc = 0;
-                List<Mailbox> mailboxes = factory.getMailboxMapper(session).findMailboxWithPathLike(new MailboxPath(session.getPersonalSpace(), id, "%"));
-                for (int i = 0; i < mailboxes.size(); i++) {
-                    mc += factory.getMessageMapper(session).countMessagesInMailbox(mailboxes.get(i));
-                }
-                AtomicLong c = counts.putIfAbsent(id, new AtomicLong(mc));
-                if (c != null) {
-                    count = c;
+                // use own mappers, so the mappers of the session are not touched
+                MailboxSession systemSession = SimpleMailboxSession.createSystemSession(session);
+                try {
+                    List<Mailbox> mailboxes = factory.getMailboxMapper(systemSession).findMailboxWithPathLike(new MailboxPath(session.getPersonalSpace(), id, "%"));
+                    MessageMapper mapper = factory.getMessageMapper(systemSession);
+                    for (int i = 0; i < mailboxes.size(); i++) {
+                        mc += mapper.countMessagesInMailbox(mailboxes.get(i));
+                    }
+                } finally {
+                    factory.endProcessingRequest(systemSession);
                 }
+                AtomicLong mCount = new AtomicLong(mc);
+                AtomicLong c = counts.putIfAbsent(id, mCount);
+                count = c != null ? c : mCount;
             }
-            return QuotaImpl.quota(max, count != null ? count.get() : 0);
+            return QuotaImpl.quota(max, count.get());
         } else {
             return QuotaImpl.unlimited();
         }
@@ -93,21 +100,27 @@ public abstract class ListeningQuotaManager implements QuotaManager, MailboxList
     public Quota getStorageQuota(MailboxSession session) throws MailboxException {
         long max = getMaxStorage(session);
         if (max != Quota.UNLIMITED || calculateWhenUnlimited) {
-            MessageMapper mapper = factory.getMessageMapper(session);
         	String id = session.getUser().getUserName();
             AtomicLong size = sizes.get(id);
             
             if (size == null) {
                 final AtomicLong mSizes = new AtomicLong(0);
-                List<Mailbox> mailboxes = factory.getMailboxMapper(session).findMailboxWithPathLike(new MailboxPath(session.getPersonalSpace(), id, "%"));
-                for (int i = 0; i < mailboxes.size(); i++) {
-                	long messageSizes = 0;
-                    Iterator<Message>  messages = mapper.findInMailbox(mailboxes.get(i), MessageRange.all(), FetchType.Metadata, -1);
-                    
-                    while(messages.hasNext()) {
-                        messageSizes +=  messages.next().getFullContentOctets();
+                // use own mappers, so the mappers of the session are not touched
+                MailboxSession systemSession = SimpleMailboxSession.createSystemSession(session);
+                try {
+                    MessageMapper mapper = factory.getMessageMapper(systemSession);
+                    List<Mailbox> mailboxes = factory.getMailboxMapper(systemSession).findMailboxWithPathLike(new MailboxPath(session.getPersonalSpace(), id, "%"));
+                    for (int i = 0; i < mailboxes.size(); i++) {
+                        long messageSizes = 0;
+                        Iterator<Message>  messages = mapper.findInMailbox(mailboxes.get(i), MessageRange.all(), FetchType.Metadata, -1);
+
+                        while(messages.hasNext()) {
+                            messageSizes +=  messages.next().getFullContentOctets();
+                        }
+                        mSizes.set(mSizes.get() + messageSizes);
                     }
-                    mSizes.set(mSizes.get() + messageSizes);
+                } finally {
+                    factory.endProcessingRequest(systemSession);
                 }
 
                 AtomicLong s = sizes.putIfAbsent(id, mSizes);
@@ -18,13 +18,18 @@
  ****************************************************************/
 package org.apache.james.mailbox.store.search;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
 import javax.mail.Flags;
 
+import org.apache.james.mailbox.AsyncMailboxListener;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.RequestAware;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
@@ -32,6 +37,7 @@ import org.apache.james.mailbox.store.MailboxEventDispatcher.AddedImpl;
 import org.apache.james.mailbox.store.MailboxEventDispatcher.ExpungedImpl;
 import org.apache.james.mailbox.store.MailboxEventDispatcher.FlagsUpdatedImpl;
 import org.apache.james.mailbox.store.MailboxEventDispatcher.MailboxDeletionImpl;
+import org.apache.james.mailbox.store.SimpleMailboxSession;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.MessageMapperFactory;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
@@ -44,7 +50,13 @@ import org.apache.james.mailbox.store.mail.model.Message;
  *
  * @param <Id>
  */
-public abstract class ListeningMessageSearchIndex<Id> implements MessageSearchIndex<Id>, MailboxListener{
+public abstract class ListeningMessageSearchIndex<Id> implements MessageSearchIndex<Id>, AsyncMailboxListener{
+
+    private final static Comparator<UpdatedFlags> UID_COMPARATOR = new Comparator<UpdatedFlags>() {
+        public int compare(UpdatedFlags o1, UpdatedFlags o2) {
+            return Long.valueOf(o1.getUid()).compareTo(o2.getUid());
+        }
+    };
 
     private MessageMapperFactory<Id> factory;
 
@@ -65,29 +77,35 @@ public abstract class ListeningMessageSearchIndex<Id> implements MessageSearchIn
     
     /**
      * Process the {@link org.apache.james.mailbox.MailboxListener.Event} and update the index if
-     * something relevant is received
+     * something relevant is received.
+     * 
+     * The event gets delivered in another thread, so it is processed with its own system session and
+     * mappers, as the mappers of the session which fired the event are not thread-safe.
      */
     @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     public void event(Event event) {
-        final MailboxSession session = event.getSession();
+        if (!(event instanceof MessageEvent || event instanceof MailboxDeletionImpl)) {
+            return;
+        }
+        final MailboxSession session = SimpleMailboxSession.createSystemSession(event.getSession());
 
         try {
             if (event instanceof MessageEvent) {
                 if (event instanceof AddedImpl) {
                     AddedImpl added = (AddedImpl) event;
                     final Mailbox<Id> mailbox = added.getMailbox();
-                    Iterator<Long> uids = added.getUids().iterator();
+                    // fetch consecutive uids with one call
+                    List<MessageRange> ranges = MessageRange.toRanges(added.getUids());
 
-                    while (uids.hasNext()) {
-                        long next = uids.next();
-                        Iterator<Message<Id>> messages = factory.getMessageMapper(session).findInMailbox(mailbox, MessageRange.one(next), FetchType.Full, -1);
+                    for (int i = 0; i < ranges.size(); i++) {
+                        Iterator<Message<Id>> messages = factory.getMessageMapper(session).findInMailbox(mailbox, ranges.get(i), FetchType.Full, -1);
                         while(messages.hasNext()) {
                             Message<Id> message = messages.next();
                             try {
                                 add(session, mailbox, message);
                             } catch (MailboxException e) {
-                                session.getLog().debug("Unable to index message " + message.getUid() + " for mailbox " + mailbox, e);
+                                session.getLog().error("Unable to index message " + message.getUid() + " for mailbox " + mailbox, e);
                             }
                         }
 
@@ -102,20 +120,26 @@ public abstract class ListeningMessageSearchIndex<Id> implements MessageSearchIn
                         try {
                             delete(session, mailbox, range);
                         } catch (MailboxException e) {
-                            session.getLog().debug("Unable to deleted range " + range.toString() + " from index for mailbox " + mailbox, e);
+                            session.getLog().error("Unable to deleted range " + range.toString() + " from index for mailbox " + mailbox, e);
                         }
                     }
                 } else if (event instanceof FlagsUpdatedImpl) {
                     FlagsUpdatedImpl flagsUpdated = (FlagsUpdatedImpl) event;
                     final Mailbox<Id> mailbox = flagsUpdated.getMailbox();
 
-                    Iterator<UpdatedFlags> flags = flagsUpdated.getUpdatedFlags().iterator();
-                    while(flags.hasNext()) {
-                        UpdatedFlags uFlags = flags.next();
-                        try {
-                            update(session, mailbox, MessageRange.one(uFlags.getUid()), uFlags.getNewFlags());
-                        } catch (MailboxException e) {
-                            session.getLog().debug("Unable to update flags for message " + uFlags.getUid() + " in index for mailbox " + mailbox, e);
+                    // update consecutive uids which have the same new flags with one call
+                    List<UpdatedFlags> uFlags = new ArrayList<UpdatedFlags>(flagsUpdated.getUpdatedFlags());
+                    Collections.sort(uFlags, UID_COMPARATOR);
+                    int start = 0;
+                    for (int i = 1; i <= uFlags.size(); i++) {
+                        if (i == uFlags.size() || uFlags.get(i).getUid() != uFlags.get(i - 1).getUid() + 1 || !uFlags.get(i).getNewFlags().equals(uFlags.get(start).getNewFlags())) {
+                            MessageRange range = MessageRange.range(uFlags.get(start).getUid(), uFlags.get(i - 1).getUid());
+                            try {
+                                update(session, mailbox, range, uFlags.get(start).getNewFlags());
+                            } catch (MailboxException e) {
+                                session.getLog().error("Unable to update flags for range " + range + " in index for mailbox " + mailbox, e);
+                            }
+                            start = i;
                         }
                     }
                 }
@@ -124,8 +148,12 @@ public abstract class ListeningMessageSearchIndex<Id> implements MessageSearchIn
                 delete(session, ((MailboxDeletionImpl) event).getMailbox(), MessageRange.all());
             }
         } catch (MailboxException e) {
-            session.getLog().debug("Unable to update index", e);
+            session.getLog().error("Unable to update index", e);
 
+        } finally {
+            if (factory instanceof RequestAware) {
+                ((RequestAware) factory).endProcessingRequest(session);
+            }
         }
     }
 
@@ -0,0 +1,425 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.apache.james.mime4j.codec.Base64OutputStream;
+
+/**
+ * Index of the byte offsets of all MIME body parts of a message, keyed by their part path.
+ * 
+ * The index allows to read the headers and the body of a part directly from the content
+ * of the message, without the need to parse everything which is in front of the part.
+ * Only parts which are children of a multipart are indexed. Everything else needs to be
+ * looked up via {@link PartContentBuilder}.
+ */
+public class PartOffsetIndex {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final static byte VERSION = 1;
+
+    /**
+     * Boundaries are limited to 70 characters by RFC2046, so longer lines
+     * never need to be compared completely
+     */
+    private final static int MAX_BOUNDARY_LINE = 128;
+
+    private final static int NO_BOUNDARY = 0;
+    private final static int BOUNDARY = 1;
+    private final static int CLOSE_BOUNDARY = 2;
+
+    private final Map<String, PartRange> ranges;
+
+    private PartOffsetIndex(Map<String, PartRange> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Return the {@link PartRange} for the part with the given path
+     * 
+     * @param path
+     * @return range or null if the part is not indexed
+     */
+    public PartRange get(int[] path) {
+        if (path == null) {
+            return null;
+        }
+        return ranges.get(key(path));
+    }
+
+    /**
+     * Return the number of indexed parts
+     * 
+     * @return size
+     */
+    public int size() {
+        return ranges.size();
+    }
+
+    /**
+     * Encode the index so it can be stored as property of the message
+     * 
+     * @return encoded
+     * @throws IOException
+     */
+    public String encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new Base64OutputStream(bytes, 0)));
+        try {
+            out.writeByte(VERSION);
+            out.writeInt(ranges.size());
+            for (PartRange range : ranges.values()) {
+                int[] path = range.getPath();
+                out.writeInt(path.length);
+                for (int position : path) {
+                    out.writeInt(position);
+                }
+                out.writeLong(range.getHeaderStart());
+                out.writeLong(range.getBodyStart());
+                out.writeLong(range.getBodyEnd());
+            }
+        } finally {
+            out.close();
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Decode an index which was encoded by {@link #encode()}
+     * 
+     * @param encoded
+     * @return index
+     * @throws IOException if the given value could not be decoded
+     */
+    public static PartOffsetIndex decode(String encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new Base64InputStream(new ByteArrayInputStream(encoded.getBytes(UTF_8)), true)));
+        try {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported part offset index version " + version);
+            }
+            int size = in.readInt();
+            Map<String, PartRange> ranges = new LinkedHashMap<String, PartRange>();
+            for (int i = 0; i < size; i++) {
+                int[] path = new int[in.readInt()];
+                for (int a = 0; a < path.length; a++) {
+                    path[a] = in.readInt();
+                }
+                PartRange range = new PartRange(path, in.readLong(), in.readLong(), in.readLong());
+                ranges.put(key(path), range);
+            }
+            return new PartOffsetIndex(ranges);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Build the index for the given message content by scanning it for the boundaries of
+     * the multiparts in the given {@link MimeDescriptor}. The content is read once, in
+     * a streaming fashion.
+     * 
+     * @param content the full content of the message
+     * @param descriptor the structure of the message
+     * @return index or null if the content does not match the structure
+     * @throws IOException
+     */
+    public static PartOffsetIndex build(InputStream content, MimeDescriptor descriptor) throws IOException {
+        final Map<String, PartRange> ranges = new LinkedHashMap<String, PartRange>();
+        final List<Entity> entities = new ArrayList<Entity>();
+        entities.add(new Entity(descriptor, null, new int[0], 0));
+
+        final LineReader reader = new LineReader(content);
+        int lastNewline = 0;
+        while (reader.readLine()) {
+            final long start = reader.getStart();
+            final int length = reader.getLength();
+            final int newline = reader.getNewline();
+
+            int matched = -1;
+            int type = NO_BOUNDARY;
+            // check the boundaries of all enclosing multiparts, innermost first
+            for (int i = entities.size() - 1; i >= 0 && matched == -1; i--) {
+                final Entity entity = entities.get(i);
+                if (entity.boundary != null && !entity.closed && entity.bodyStart >= 0) {
+                    type = reader.matchBoundary(entity.boundary);
+                    if (type != NO_BOUNDARY) {
+                        matched = i;
+                    }
+                }
+            }
+
+            if (matched != -1) {
+                // the line break in front of the boundary belongs to the boundary
+                final long end = start - lastNewline;
+                while (entities.size() > matched + 1) {
+                    end(entities.remove(entities.size() - 1), end, ranges);
+                }
+                final Entity multipart = entities.get(matched);
+                if (type == CLOSE_BOUNDARY) {
+                    multipart.closed = true;
+                } else {
+                    if (!multipart.parts.hasNext()) {
+                        return null;
+                    }
+                    final int[] path = Arrays.copyOf(multipart.prefix, multipart.prefix.length + 1);
+                    path[multipart.prefix.length] = ++multipart.partCount;
+                    entities.add(new Entity(multipart.parts.next(), path, path, start + length + newline));
+                }
+            } else {
+                final Entity entity = entities.get(entities.size() - 1);
+                if (entity.bodyStart < 0 && length == 0 && newline > 0) {
+                    entity.bodyStart = start + newline;
+                    final MimeDescriptor embedded = entity.descriptor.embeddedMessage();
+                    if (embedded != null && isIdentityEncoding(entity.descriptor.getTransferContentEncoding())) {
+                        entities.add(new Entity(embedded, null, entity.prefix, entity.bodyStart));
+                    }
+                }
+            }
+            lastNewline = newline;
+        }
+
+        final long end = reader.getStart();
+        while (!entities.isEmpty()) {
+            end(entities.remove(entities.size() - 1), end, ranges);
+        }
+        return new PartOffsetIndex(ranges);
+    }
+
+    private static void end(Entity entity, long end, Map<String, PartRange> ranges) {
+        if (entity.path != null) {
+            end = Math.max(end, entity.headerStart);
+            final long bodyStart;
+            if (entity.bodyStart < 0) {
+                bodyStart = end;
+            } else {
+                bodyStart = entity.bodyStart;
+            }
+            ranges.put(key(entity.path), new PartRange(entity.path, entity.headerStart, bodyStart, Math.max(end, bodyStart)));
+        }
+    }
+
+    private static boolean isIdentityEncoding(String encoding) {
+        return encoding == null || "7bit".equalsIgnoreCase(encoding) || "8bit".equalsIgnoreCase(encoding) || "binary".equalsIgnoreCase(encoding);
+    }
+
+    private static String key(int[] path) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                sb.append('.');
+            }
+            sb.append(path[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Byte offsets of a MIME body part, relative to the start of the message
+     */
+    public static final class PartRange {
+        private final int[] path;
+        private final long headerStart;
+        private final long bodyStart;
+        private final long bodyEnd;
+
+        private PartRange(int[] path, long headerStart, long bodyStart, long bodyEnd) {
+            this.path = path;
+            this.headerStart = headerStart;
+            this.bodyStart = bodyStart;
+            this.bodyEnd = bodyEnd;
+        }
+
+        public int[] getPath() {
+            return path;
+        }
+
+        /**
+         * Return the offset of the first byte of the part headers
+         */
+        public long getHeaderStart() {
+            return headerStart;
+        }
+
+        /**
+         * Return the offset of the first byte of the part body. The headers end here, including
+         * the empty line which separates them from the body.
+         */
+        public long getBodyStart() {
+            return bodyStart;
+        }
+
+        /**
+         * Return the offset after the last byte of the part body
+         */
+        public long getBodyEnd() {
+            return bodyEnd;
+        }
+    }
+
+    /**
+     * A MIME entity which is currently parsed
+     */
+    private static final class Entity {
+        private final MimeDescriptor descriptor;
+        private final int[] path;
+        private final int[] prefix;
+        private final long headerStart;
+        private final byte[] boundary;
+        private final Iterator<MimeDescriptor> parts;
+        private long bodyStart = -1;
+        private int partCount;
+        private boolean closed;
+
+        private Entity(MimeDescriptor descriptor, int[] path, int[] prefix, long headerStart) {
+            this.descriptor = descriptor;
+            this.path = path;
+            this.prefix = prefix;
+            this.headerStart = headerStart;
+            String boundary = null;
+            if ("multipart".equalsIgnoreCase(descriptor.getMimeType()) && descriptor.contentTypeParameters() != null) {
+                boundary = descriptor.contentTypeParameters().get("boundary");
+            }
+            if (boundary == null) {
+                this.boundary = null;
+            } else {
+                this.boundary = ("--" + boundary).getBytes(US_ASCII);
+            }
+            this.parts = descriptor.parts();
+        }
+    }
+
+    /**
+     * Reads the content line by line while keeping track of the offsets. Only the start
+     * of every line is kept, as this is enough to detect boundaries.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[8192];
+        private final byte[] line = new byte[MAX_BOUNDARY_LINE];
+        private int pos;
+        private int limit;
+        private long offset;
+        private long start;
+        private int length;
+        private int newline;
+
+        private LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buffer);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            offset++;
+            return buffer[pos++] & 0xff;
+        }
+
+        /**
+         * Read the next line
+         * 
+         * @return false if the end of the content was reached
+         */
+        private boolean readLine() throws IOException {
+            start = offset;
+            length = 0;
+            newline = 0;
+            int b = read();
+            if (b == -1) {
+                return false;
+            }
+            int last = -1;
+            while (b != -1) {
+                if (b == '\n') {
+                    newline = 1;
+                    if (last == '\r') {
+                        length--;
+                        newline = 2;
+                    }
+                    break;
+                }
+                if (length < MAX_BOUNDARY_LINE) {
+                    line[length] = (byte) b;
+                }
+                length++;
+                last = b;
+                b = read();
+            }
+            return true;
+        }
+
+        private long getStart() {
+            return start;
+        }
+
+        private int getLength() {
+            return length;
+        }
+
+        private int getNewline() {
+            return newline;
+        }
+
+        private int matchBoundary(byte[] boundary) {
+            if (length < boundary.length || length > MAX_BOUNDARY_LINE) {
+                return NO_BOUNDARY;
+            }
+            for (int i = 0; i < boundary.length; i++) {
+                if (line[i] != boundary[i]) {
+                    return NO_BOUNDARY;
+                }
+            }
+            int i = boundary.length;
+            if (length >= i + 2 && line[i] == '-' && line[i + 1] == '-') {
+                return CLOSE_BOUNDARY;
+            }
+            for (; i < length; i++) {
+                if (line[i] != ' ' && line[i] != '\t') {
+                    return NO_BOUNDARY;
+                }
+            }
+            return BOUNDARY;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+/**
+ * {@link DeferredFileOutputStream} which keeps the written content in memory as long as
+ * it does not exceed the given threshold. Once the threshold is exceeded the content is
+ * spilled to a temporary file.
+ *
+ * The buffered content can be read back as {@link SharedInputStream} after the buffer was
+ * closed. Call {@link #dispose()} once the content is not needed anymore to close the
+ * streams which were handed out and to remove the temporary file, if one was created.
+ */
+public class SharedContentBuffer extends DeferredFileOutputStream {
+
+    private final static String PREFIX = "imap";
+    private final static String SUFFIX = ".msg";
+
+    private final List<InputStream> streams = new ArrayList<InputStream>();
+
+    /**
+     * Create a new buffer which will spill to disk once more then threshold bytes were written.
+     * Use a threshold of <code>0</code> to always use a temporary file.
+     *
+     * @param threshold
+     */
+    public SharedContentBuffer(int threshold) {
+        super(threshold, PREFIX, SUFFIX, null);
+    }
+
+    /**
+     * Return the number of bytes which were written to this buffer
+     *
+     * @return size
+     */
+    public long getSize() {
+        return getByteCount();
+    }
+
+    /**
+     * Return a {@link SharedInputStream} for the buffered content. This is only valid after
+     * the buffer was closed.
+     *
+     * @return content
+     * @throws IOException
+     */
+    public SharedInputStream newSharedInputStream() throws IOException {
+        final InputStream in;
+        if (isInMemory()) {
+            in = new SharedByteArrayInputStream(getData());
+        } else {
+            in = new SharedFileInputStream(getFile());
+        }
+        streams.add(in);
+        return (SharedInputStream) in;
+    }
+
+    /**
+     * Close the buffer and all streams returned by {@link #newSharedInputStream()} and delete
+     * the temporary file if one was created
+     */
+    public void dispose() {
+        IOUtils.closeQuietly(this);
+        for (int i = 0; i < streams.size(); i++) {
+            IOUtils.closeQuietly(streams.get(i));
+        }
+        streams.clear();
+
+        File file = getFile();
+        if (file != null) {
+            if (!file.delete()) {
+                // Don't throw an IOException. The message could be appended
+                // and the temporary file will be deleted hopefully some day
+            }
+        }
+    }
+}
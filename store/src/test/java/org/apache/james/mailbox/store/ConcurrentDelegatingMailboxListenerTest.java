@@ -0,0 +1,138 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentDelegatingMailboxListenerTest {
+
+    private final static MailboxPath INBOX = new MailboxPath("#private", "user", "INBOX");
+    private final static MailboxPath OTHER = new MailboxPath("#private", "user", "OTHER");
+
+    private ConcurrentDelegatingMailboxListener delegating;
+    private EventCollector listener;
+    private EventCollector global;
+
+    @Before
+    public void setUp() throws Exception {
+        delegating = new ConcurrentDelegatingMailboxListener();
+        listener = new EventCollector();
+        global = new EventCollector();
+        delegating.addGlobalListener(global, null);
+    }
+
+    @Test
+    public void testEventIsDeliveredToPathAndGlobalListeners() throws Exception {
+        delegating.addListener(INBOX, listener, null);
+        // registering twice must not deliver twice
+        delegating.addListener(INBOX, listener, null);
+
+        delegating.event(new MailboxListener.MailboxAdded(null, INBOX));
+        delegating.event(new MailboxListener.MailboxAdded(null, OTHER));
+
+        assertEquals(1, listener.events.size());
+        assertEquals(2, global.events.size());
+    }
+
+    @Test
+    public void testRemovedListenerGetsNoEvents() throws Exception {
+        EventCollector other = new EventCollector();
+        delegating.addListener(INBOX, listener, null);
+        delegating.addListener(INBOX, other, null);
+        delegating.removeListener(INBOX, listener, null);
+
+        delegating.event(new MailboxListener.MailboxAdded(null, INBOX));
+
+        assertTrue(listener.events.isEmpty());
+        assertEquals(1, other.events.size());
+
+        delegating.removeListener(INBOX, other, null);
+        assertTrue(delegating.getListeners().isEmpty());
+    }
+
+    @Test
+    public void testListenersAreMovedOnRename() throws Exception {
+        delegating.addListener(INBOX, listener, null);
+
+        delegating.event(new MailboxListener.MailboxRenamed(null, INBOX) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public MailboxPath getNewPath() {
+                return OTHER;
+            }
+        });
+        delegating.event(new MailboxListener.MailboxAdded(null, INBOX));
+        delegating.event(new MailboxListener.MailboxAdded(null, OTHER));
+
+        assertEquals(2, listener.events.size());
+        assertEquals(OTHER, listener.events.get(1).getMailboxPath());
+    }
+
+    @Test
+    public void testListenersAreMergedOnRename() throws Exception {
+        EventCollector other = new EventCollector();
+        delegating.addListener(INBOX, listener, null);
+        delegating.addListener(OTHER, other, null);
+        delegating.addListener(OTHER, listener, null);
+
+        delegating.event(new MailboxListener.MailboxRenamed(null, INBOX) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public MailboxPath getNewPath() {
+                return OTHER;
+            }
+        });
+        delegating.event(new MailboxListener.MailboxAdded(null, OTHER));
+
+        assertEquals(2, listener.events.size());
+        assertEquals(1, other.events.size());
+        assertEquals(1, delegating.getListeners().size());
+        assertEquals(2, delegating.getListeners().get(OTHER).size());
+    }
+
+    @Test
+    public void testListenersAreRemovedOnDeletion() throws Exception {
+        delegating.addListener(INBOX, listener, null);
+
+        delegating.event(new MailboxListener.MailboxDeletion(null, INBOX));
+        delegating.event(new MailboxListener.MailboxAdded(null, INBOX));
+
+        assertEquals(1, listener.events.size());
+        assertTrue(delegating.getListeners().isEmpty());
+    }
+
+    private final static class EventCollector implements MailboxListener {
+        private final List<Event> events = new ArrayList<Event>();
+
+        public void event(Event event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * Measures the events per second which can be dispatched through an {@link AbstractDelegatingMailboxListener}
+ * from concurrent threads while many listeners are registered, like it is the case with many IDLE sessions.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class DelegatingMailboxListenerBenchmark {
+
+    private final static int MAILBOXES = 1000;
+    private final static int LISTENERS_PER_MAILBOX = 4;
+    private final static long DURATION = 2000;
+    private final static int[] THREADS = { 1, 8, 64 };
+
+    public static void main(String[] args) throws Exception {
+        for (int threads : THREADS) {
+            System.out.println(threads + " threads: HashMapDelegatingMailboxListener " + run(new HashMapDelegatingMailboxListener(), threads) + " events/sec");
+            System.out.println(threads + " threads: ConcurrentDelegatingMailboxListener " + run(new ConcurrentDelegatingMailboxListener(), threads) + " events/sec");
+        }
+    }
+
+    private static long run(final AbstractDelegatingMailboxListener delegating, int threads) throws Exception {
+        final MailboxPath[] paths = new MailboxPath[MAILBOXES];
+        for (int i = 0; i < MAILBOXES; i++) {
+            paths[i] = new MailboxPath("#private", "user" + i, "INBOX");
+            for (int a = 0; a < LISTENERS_PER_MAILBOX; a++) {
+                delegating.addListener(paths[i], new MailboxListener() {
+                    public void event(Event event) {
+                    }
+                }, null);
+            }
+        }
+        delegating.addGlobalListener(new MailboxListener() {
+            public void event(Event event) {
+            }
+        }, null);
+
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.currentTimeMillis() + DURATION;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int offset = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long events = 0;
+                    int i = offset;
+                    while ((events & 1023) != 0 || System.currentTimeMillis() < end) {
+                        delegating.event(new MailboxListener.MailboxAdded(null, paths[i++ % MAILBOXES]));
+                        events++;
+                    }
+                    count.addAndGet(events);
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return count.get() * 1000 / DURATION;
+    }
+}
@@ -0,0 +1,117 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.mailbox.MailboxPathLocker;
+import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * Measures the lock / unlock cycles per second of the {@link MailboxPathLocker} implementations from
+ * concurrent threads, and the heap which is retained after many distinct {@link MailboxPath}'s were locked.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class MailboxPathLockerBenchmark {
+
+    private final static int MAILBOXES = 100000;
+    private final static long DURATION = 2000;
+    private final static int[] THREADS = { 1, 8, 64 };
+
+    @SuppressWarnings("deprecation")
+    public static void main(String[] args) throws Exception {
+        for (int threads : THREADS) {
+            System.out.println(threads + " threads: JVMMailboxPathLocker " + run(new JVMMailboxPathLocker(), threads) + " locks/sec");
+            System.out.println(threads + " threads: ReferenceCountingMailboxPathLocker " + run(new ReferenceCountingMailboxPathLocker(), threads) + " locks/sec");
+        }
+        System.out.println("JVMMailboxPathLocker retains " + retained(new JVMMailboxPathLocker()) + " bytes");
+        System.out.println("ReferenceCountingMailboxPathLocker retains " + retained(new ReferenceCountingMailboxPathLocker()) + " bytes");
+    }
+
+    private static long run(final MailboxPathLocker locker, int threads) throws Exception {
+        final MailboxPath[] paths = new MailboxPath[1000];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = new MailboxPath("#private", "user" + i, "INBOX");
+        }
+        final LockAwareExecution<Void> execution = new LockAwareExecution<Void>() {
+            public Void execute() throws MailboxException {
+                return null;
+            }
+        };
+
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.currentTimeMillis() + DURATION;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int offset = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        long locks = 0;
+                        int i = offset;
+                        while ((locks & 1023) != 0 || System.currentTimeMillis() < end) {
+                            locker.executeWithLock(null, paths[i++ % paths.length], execution, (locks & 3) == 0);
+                            locks++;
+                        }
+                        count.addAndGet(locks);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return count.get() * 1000 / DURATION;
+    }
+
+    private static long retained(MailboxPathLocker locker) throws Exception {
+        LockAwareExecution<Void> execution = new LockAwareExecution<Void>() {
+            public Void execute() throws MailboxException {
+                return null;
+            }
+        };
+        long before = usedMemory();
+        for (int i = 0; i < MAILBOXES; i++) {
+            locker.executeWithLock(null, new MailboxPath("#private", "user" + i, "INBOX"), execution, true);
+        }
+        long after = usedMemory();
+        // keep the locker reachable while measuring
+        locker.executeWithLock(null, new MailboxPath("#private", "user", "INBOX"), execution, true);
+        return after - before;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.Test;
+
+public class MailboxPathLockerMetricsTest {
+
+    private final static long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testLockTimesAreRecordedPerMode() throws Exception {
+        ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
+        LockAwareExecution<Void> execution = new LockAwareExecution<Void>() {
+            public Void execute() throws MailboxException {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        };
+        MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+        locker.executeWithLock(null, path, execution, true);
+        locker.executeWithLock(null, path, execution, false);
+        locker.executeWithLock(null, path, execution, false);
+
+        MailboxPathLockerMetrics metrics = locker.getMetrics();
+        assertEquals(1, metrics.getWriteLockCount());
+        assertEquals(2, metrics.getReadLockCount());
+        assertTrue(metrics.getWriteHoldTime() >= 20);
+        assertTrue(metrics.getReadHoldTime() >= 40);
+        assertTrue(metrics.getMaxReadHoldTime() >= 20);
+
+        metrics.reset();
+        assertEquals(0, metrics.getReadLockCount());
+        assertEquals(0, metrics.getReadHoldTime());
+    }
+
+    @Test
+    public void testMostContendedPathsAreTrackedWithBoundedMemory() {
+        MailboxPathLockerMetrics metrics = new MailboxPathLockerMetrics(1, 3, 2);
+        MailboxPath hot = new MailboxPath("#private", "user", "hot");
+        MailboxPath warm = new MailboxPath("#private", "user", "warm");
+        for (int i = 0; i < 10; i++) {
+            metrics.acquired(hot, true, 10 * MS);
+            metrics.acquired(warm, true, 5 * MS);
+            // uncontended requests are not tracked
+            metrics.acquired(new MailboxPath("#private", "user", "quiet" + i), true, 0);
+            metrics.acquired(new MailboxPath("#private", "user", "cold" + i), true, 2 * MS);
+        }
+
+        String[] paths = metrics.getMostContendedPaths();
+        assertEquals(2, paths.length);
+        assertTrue(paths[0], paths[0].startsWith(hot + " waited 100ms"));
+        assertTrue(paths[1], paths[1].startsWith(warm + " waited 50ms"));
+    }
+}
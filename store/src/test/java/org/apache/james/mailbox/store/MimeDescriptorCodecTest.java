@@ -0,0 +1,104 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.junit.Test;
+
+public class MimeDescriptorCodecTest {
+
+    private final static String MAIL = "Subject: test\r\n" +
+            "Content-Type: multipart/mixed; boundary=\"xxx\"\r\n" +
+            "\r\n" +
+            "--xxx\r\n" +
+            "Content-Type: text/plain; charset=UTF-8\r\n" +
+            "Content-ID: <part1>\r\n" +
+            "\r\n" +
+            "first line\r\n" +
+            "second line\r\n" +
+            "--xxx\r\n" +
+            "Content-Type: message/rfc822\r\n" +
+            "\r\n" +
+            "Subject: embedded\r\n" +
+            "\r\n" +
+            "embedded body\r\n" +
+            "--xxx--\r\n";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(new ByteArrayInputStream(MAIL.getBytes()));
+        String encoded = MimeDescriptorCodec.encode(descriptor);
+        MimeDescriptor decoded = MimeDescriptorCodec.decode(encoded);
+
+        assertDescriptor(descriptor, decoded);
+    }
+
+    @Test
+    public void testOnlyNeededHeadersAreEncoded() throws Exception {
+        String mail = "Subject: test\r\n" +
+                "X-Mailer: dropped\r\n" +
+                "Received: dropped\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "\r\n" +
+                "body\r\n";
+        MimeDescriptor decoded = MimeDescriptorCodec.decode(MimeDescriptorCodec.encode(MimeDescriptorImpl.build(new ByteArrayInputStream(mail.getBytes()))));
+
+        Iterator<MessageResult.Header> headers = decoded.headers();
+        assertEquals("Subject", headers.next().getName());
+        assertEquals("Content-Type", headers.next().getName());
+        assertFalse(headers.hasNext());
+    }
+
+    private void assertDescriptor(MimeDescriptor expected, MimeDescriptor actual) throws Exception {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.getMimeType(), actual.getMimeType());
+        assertEquals(expected.getMimeSubType(), actual.getMimeSubType());
+        assertEquals(expected.getContentID(), actual.getContentID());
+        assertEquals(expected.getTransferContentEncoding(), actual.getTransferContentEncoding());
+        assertEquals(expected.contentTypeParameters(), actual.contentTypeParameters());
+        assertEquals(expected.getDispositionParams(), actual.getDispositionParams());
+        assertEquals(expected.getLanguages(), actual.getLanguages());
+        assertEquals(expected.getBodyOctets(), actual.getBodyOctets());
+        assertEquals(expected.getLines(), actual.getLines());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(IOUtils.toString(expected.getInputStream()), IOUtils.toString(actual.getInputStream()));
+        assertDescriptor(expected.embeddedMessage(), actual.embeddedMessage());
+
+        Iterator<MimeDescriptor> expectedParts = expected.parts();
+        Iterator<MimeDescriptor> actualParts = actual.parts();
+        while (expectedParts.hasNext()) {
+            assertDescriptor(expectedParts.next(), actualParts.next());
+        }
+        assertFalse(actualParts.hasNext());
+    }
+}
@@ -0,0 +1,116 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
+import org.apache.james.mailbox.exception.LockTimeoutException;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.Test;
+
+public class ReferenceCountingMailboxPathLockerTest {
+
+    private final static MailboxPath INBOX = new MailboxPath("#private", "user", "INBOX");
+
+    @Test
+    public void testLocksAreRemovedAfterUse() throws Exception {
+        final ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
+        for (int i = 0; i < 100; i++) {
+            locker.executeWithLock(null, new MailboxPath("#private", "user", "box" + i), new LockAwareExecution<Void>() {
+                public Void execute() throws MailboxException {
+                    assertEquals(1, locker.getLockCount());
+                    return null;
+                }
+            }, i % 2 == 0);
+        }
+        assertEquals(0, locker.getLockCount());
+    }
+
+    @Test
+    public void testLockIsReentrant() throws Exception {
+        final ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker();
+        locker.executeWithLock(null, INBOX, new LockAwareExecution<Void>() {
+            public Void execute() throws MailboxException {
+                return locker.executeWithLock(null, new MailboxPath(INBOX), new LockAwareExecution<Void>() {
+                    public Void execute() throws MailboxException {
+                        assertEquals(1, locker.getLockCount());
+                        return null;
+                    }
+                }, true);
+            }
+        }, true);
+        assertEquals(0, locker.getLockCount());
+    }
+
+    @Test
+    public void testWriteLockTimesOut() throws Exception {
+        final ReferenceCountingMailboxPathLocker locker = new ReferenceCountingMailboxPathLocker(true, 100);
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            public void run() {
+                try {
+                    locker.executeWithLock(null, INBOX, new LockAwareExecution<Void>() {
+                        public Void execute() throws MailboxException {
+                            locked.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return null;
+                        }
+                    }, false);
+                } catch (MailboxException e) {
+                    // ignore
+                }
+            }
+        };
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        try {
+            locker.executeWithLock(null, INBOX, new LockAwareExecution<Void>() {
+                public Void execute() throws MailboxException {
+                    fail("Write lock granted while read lock is held");
+                    return null;
+                }
+            }, true);
+            fail("Expected timeout");
+        } catch (LockTimeoutException e) {
+            assertEquals(INBOX, e.getMailboxPath());
+        }
+        assertEquals(1, locker.getLockCount());
+        assertEquals(1, locker.getMetrics().getTimeoutCount());
+        assertEquals(0, locker.getMetrics().getWriteLockCount());
+
+        release.countDown();
+        holder.join(5000);
+        assertFalse(holder.isAlive());
+        assertEquals(0, locker.getLockCount());
+    }
+}
@@ -1,177 +1,338 @@
-/****************************************************************
- * Licensed to the Apache Software Foundation (ASF) under one   *
- * or more contributor license agreements.  See the NOTICE file *
- * distributed with this work for additional information        *
- * regarding copyright ownership.  The ASF licenses this file   *
- * to you under the Apache License, Version 2.0 (the            *
- * "License"); you may not use this file except in compliance   *
- * with the License.  You may obtain a copy of the License at   *
- *                                                              *
- *   http://www.apache.org/licenses/LICENSE-2.0                 *
- *                                                              *
- * Unless required by applicable law or agreed to in writing,   *
- * software distributed under the License is distributed on an  *
- * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
- * KIND, either express or implied.  See the License for the    *
- * specific language governing permissions and limitations      *
- * under the License.                                           *
- ****************************************************************/
-
-package org.apache.james.mailbox.store;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import javax.mail.Flags;
-import javax.mail.util.SharedByteArrayInputStream;
-
-import junit.framework.Assert;
-
-import org.apache.james.mailbox.exception.MailboxException;
-import org.apache.james.mailbox.model.MessageMetaData;
-import org.apache.james.mailbox.model.MessageRange;
-import org.apache.james.mailbox.model.MessageResult;
-import org.apache.james.mailbox.model.MessageResult.FetchGroup;
-import org.apache.james.mailbox.model.UpdatedFlags;
-import org.apache.james.mailbox.store.mail.MessageMapper;
-import org.apache.james.mailbox.store.mail.model.Mailbox;
-import org.apache.james.mailbox.store.mail.model.Message;
-import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
-import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
-import org.junit.Test;
-
-public class StoreMessageResultIteratorTest {
-
-    @Test
-    public void testBatching() {
-        MessageRange range = MessageRange.range(1, 10);
-        int batchSize = 3;
-        StoreMessageResultIterator<Long> it = new StoreMessageResultIterator<Long>(new MessageMapper<Long>() {
-
-            @Override
-            public void endRequest() {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public <T> T execute(Transaction<T> transaction) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public Iterator<Message<Long>> findInMailbox(Mailbox<Long> mailbox, MessageRange set,
-                    org.apache.james.mailbox.store.mail.MessageMapper.FetchType type, int limit)
-                    throws MailboxException {
-                long start = set.getUidFrom();
-                long end = set.getUidTo();
-                long calcEnd = start + limit;
-                if (calcEnd > end) {
-                    calcEnd = end;
-                }
-
-                List<Message<Long>> messages = new ArrayList<Message<Long>>();
-                long i = start;
-                while (i < calcEnd) {
-                    long uid = i;
-                    SimpleMessage<Long> m = new SimpleMessage<Long>(null, 0, 0, new SharedByteArrayInputStream(
-                            "".getBytes()), new Flags(), new PropertyBuilder(), 1L);
-                    m.setUid(uid);
-                    messages.add(m);
-                    i++;
-                }
-                return messages.iterator();
-            }
-
-            @Override
-            public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(Mailbox<Long> mailbox, MessageRange set)
-                    throws MailboxException {
-                throw new UnsupportedOperationException();
-
-            }
-
-            @Override
-            public long countMessagesInMailbox(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-
-            }
-
-            @Override
-            public long countUnseenMessagesInMailbox(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public void delete(Mailbox<Long> mailbox, Message<Long> message) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public Long findFirstUnseenMessageUid(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public List<Long> findRecentMessageUidsInMailbox(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-
-            }
-
-            @Override
-            public MessageMetaData add(Mailbox<Long> mailbox, Message<Long> message) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public Iterator<UpdatedFlags> updateFlags(Mailbox<Long> mailbox, Flags flags, boolean value,
-                    boolean replace, MessageRange set) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public MessageMetaData copy(Mailbox<Long> mailbox, Message<Long> original) throws MailboxException {
-                throw new UnsupportedOperationException();
-
-            }
-
-            @Override
-            public long getLastUid(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public long getHighestModSeq(Mailbox<Long> mailbox) throws MailboxException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public MessageMetaData move(Mailbox<Long> mailbox, Message<Long> original) throws MailboxException {
-                throw new UnsupportedOperationException();
-
-            }
-
-        }, null, range, batchSize, new FetchGroup() {
-
-            @Override
-            public Set<PartContentDescriptor> getPartContentDescriptors() {
-                return null;
-            }
-
-            @Override
-            public int content() {
-                return FetchGroup.MINIMAL;
-            }
-        });
-
-        long i = 1;
-        while (it.hasNext()) {
-            MessageResult r = it.next();
-            Assert.assertEquals(i++, r.getUid());
-        }
-        Assert.assertEquals(10, i);
-
-    }
-
-}
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import junit.framework.Assert;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.mail.MailboxCounters;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.UpdatedFlagsList;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMessage;
+import org.junit.Test;
+
+public class StoreMessageResultIteratorTest {
+
+    private static final FetchGroup MINIMAL = new FetchGroup() {
+
+        @Override
+        public Set<PartContentDescriptor> getPartContentDescriptors() {
+            return null;
+        }
+
+        @Override
+        public int content() {
+            return FetchGroup.MINIMAL;
+        }
+    };
+
+    private static final FetchGroup FULL = new FetchGroup() {
+
+        @Override
+        public Set<PartContentDescriptor> getPartContentDescriptors() {
+            return null;
+        }
+
+        @Override
+        public int content() {
+            return FetchGroup.FULL_CONTENT;
+        }
+    };
+
+    @Test
+    public void testBatching() {
+        MessageRange range = MessageRange.range(1, 10);
+        int batchSize = 3;
+        StoreMessageResultIterator<Long> it = new StoreMessageResultIterator<Long>(createMessageMapper(), null, range, batchSize, MINIMAL);
+
+        long i = 1;
+        while (it.hasNext()) {
+            MessageResult r = it.next();
+            Assert.assertEquals(i++, r.getUid());
+        }
+        Assert.assertEquals(10, i);
+
+    }
+
+    @Test
+    public void testPrefetching() {
+        MessageRange range = MessageRange.range(1, 50);
+        int batchSize = 1;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            StoreMessageResultIterator<Long> it = new StoreMessageResultIterator<Long>(createMessageMapper(), null, range, batchSize, MINIMAL, executor,
+                    StoreMessageResultIterator.DEFAULT_FETCH_MEMORY_LIMIT);
+
+            long i = 1;
+            while (it.hasNext()) {
+                MessageResult r = it.next();
+                Assert.assertEquals(i++, r.getUid());
+            }
+            Assert.assertNull(it.getException());
+            Assert.assertEquals(50, i);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() {
+        MessageRange range = MessageRange.range(1, 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the first 10 messages are big, all others are small
+            TestMessageMapper mapper = new TestMessageMapper() {
+                @Override
+                protected int getSize(long uid) {
+                    return uid <= 10 ? 250 : 50;
+                }
+            };
+            // full content starts with a batch size of 10 and keeps two batches below 1000 bytes
+            StoreMessageResultIterator<Long> it = new StoreMessageResultIterator<Long>(mapper, null, range, 100, FULL, executor, 1000);
+
+            long i = 1;
+            while (it.hasNext()) {
+                MessageResult r = it.next();
+                Assert.assertEquals(i++, r.getUid());
+            }
+            Assert.assertNull(it.getException());
+            Assert.assertEquals(100, i);
+
+            List<Integer> limits = mapper.getLimits();
+            Assert.assertEquals(10, limits.get(0).intValue());
+            Assert.assertEquals(2, limits.get(1).intValue());
+            Assert.assertEquals(10, limits.get(2).intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseCancelsPrefetching() throws Exception {
+        MessageRange range = MessageRange.range(1, 50);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final CountDownLatch prefetching = new CountDownLatch(1);
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            TestMessageMapper mapper = new TestMessageMapper() {
+                @Override
+                public Iterator<Message<Long>> findInMailbox(Mailbox<Long> mailbox, MessageRange set, FetchType type, int limit) throws MailboxException {
+                    if (set.getUidFrom() > 1) {
+                        prefetching.countDown();
+                        try {
+                            new CountDownLatch(1).await();
+                        } catch (InterruptedException e) {
+                            cancelled.countDown();
+                            throw new MailboxException("Interrupted", e);
+                        }
+                    }
+                    return super.findInMailbox(mailbox, set, type, limit);
+                }
+            };
+            StoreMessageResultIterator<Long> it = new StoreMessageResultIterator<Long>(mapper, null, range, 1, MINIMAL, executor,
+                    StoreMessageResultIterator.DEFAULT_FETCH_MEMORY_LIMIT);
+
+            Assert.assertTrue(it.hasNext());
+            Assert.assertEquals(1, it.next().getUid());
+            Assert.assertTrue(prefetching.await(10, TimeUnit.SECONDS));
+
+            it.close();
+            Assert.assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+            Assert.assertFalse(it.hasNext());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MessageMapper<Long> createMessageMapper() {
+        return new TestMessageMapper();
+    }
+
+    private static class TestMessageMapper implements MessageMapper<Long> {
+
+        private final List<Integer> limits = new CopyOnWriteArrayList<Integer>();
+
+        /**
+         * Return the limits which were passed to {@link #findInMailbox(Mailbox, MessageRange, FetchType, int)}
+         */
+        public List<Integer> getLimits() {
+            return limits;
+        }
+
+        /**
+         * Return the size of the message with the given uid
+         */
+        protected int getSize(long uid) {
+            return 0;
+        }
+
+        @Override
+        public void endRequest() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T execute(Transaction<T> transaction) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<Message<Long>> findInMailbox(Mailbox<Long> mailbox, MessageRange set,
+                org.apache.james.mailbox.store.mail.MessageMapper.FetchType type, int limit)
+                throws MailboxException {
+            limits.add(limit);
+            long start = set.getUidFrom();
+            long end = set.getUidTo();
+            long calcEnd = start + limit;
+            if (calcEnd > end) {
+                calcEnd = end;
+            }
+
+            List<Message<Long>> messages = new ArrayList<Message<Long>>();
+            long i = start;
+            while (i < calcEnd) {
+                long uid = i;
+                SimpleMessage<Long> m = new SimpleMessage<Long>(null, getSize(uid), 0, new SharedByteArrayInputStream(
+                        "".getBytes()), new Flags(), new PropertyBuilder(), 1L);
+                m.setUid(uid);
+                messages.add(m);
+                i++;
+            }
+            return messages.iterator();
+        }
+
+        @Override
+        public Map<Long, MessageMetaData> expungeMarkedForDeletionInMailbox(Mailbox<Long> mailbox, MessageRange set)
+                throws MailboxException {
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public long countMessagesInMailbox(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public long countUnseenMessagesInMailbox(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(Mailbox<Long> mailbox, Message<Long> message) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Long findFirstUnseenMessageUid(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Long> findRecentMessageUidsInMailbox(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public MessageMetaData add(Mailbox<Long> mailbox, Message<Long> message) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageMetaData> add(Mailbox<Long> mailbox, List<Message<Long>> messages) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<UpdatedFlags> updateFlags(Mailbox<Long> mailbox, Flags flags, boolean value,
+                boolean replace, MessageRange set) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public UpdatedFlagsList updateSystemFlags(Mailbox<Long> mailbox, Flags flags, boolean value,
+                boolean replace, MessageRange set) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MessageMetaData copy(Mailbox<Long> mailbox, Message<Long> original) throws MailboxException {
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public long getLastUid(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getHighestModSeq(Mailbox<Long> mailbox) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MailboxCounters getMailboxCounters(Mailbox<Long> mailbox, Set<Counter> counters) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MailboxCounters> getMailboxCounters(List<Mailbox<Long>> mailboxes, Set<Counter> counters) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageMetaData> copy(Mailbox<Long> from, Mailbox<Long> to, MessageRange set) throws MailboxException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MessageMetaData> move(Mailbox<Long> from, Mailbox<Long> to, MessageRange set) throws MailboxException {
+            throw new UnsupportedOperationException();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,232 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.AsyncMailboxListener;
+import org.apache.james.mailbox.MailboxListener.Event;
+import org.apache.james.mailbox.MailboxListener.MailboxAdded;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsynchronousEventDeliveryTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEventsOfMailboxAreDeliveredInOrder() throws Exception {
+        final int mailboxes = 5;
+        final int events = 200;
+        final CountDownLatch latch = new CountDownLatch(mailboxes * events);
+        final Map<MailboxPath, List<Event>> received = Collections.synchronizedMap(new HashMap<MailboxPath, List<Event>>());
+        AsyncMailboxListener listener = new AsyncMailboxListener() {
+            public void event(Event event) {
+                List<Event> list = received.get(event.getMailboxPath());
+                synchronized (list) {
+                    list.add(event);
+                }
+                latch.countDown();
+            }
+        };
+
+        AsynchronousEventDelivery delivery = new AsynchronousEventDelivery(executor, 10);
+        Map<MailboxPath, List<Event>> sent = new HashMap<MailboxPath, List<Event>>();
+        for (int i = 0; i < mailboxes; i++) {
+            MailboxPath path = new MailboxPath("#private", "user", "INBOX" + i);
+            sent.put(path, new ArrayList<Event>());
+            received.put(path, new ArrayList<Event>());
+        }
+        for (int a = 0; a < events; a++) {
+            for (MailboxPath path : sent.keySet()) {
+                Event event = new MailboxAdded(null, path);
+                sent.get(path).add(event);
+                delivery.deliver(listener, event);
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(sent, received);
+        // the counter is updated after the listener returned
+        long timeout = System.currentTimeMillis() + 5000;
+        while (delivery.getDeliveredEventCount() < mailboxes * events && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(mailboxes * events, delivery.getDeliveredEventCount());
+        assertEquals(0, delivery.getFailedEventCount());
+    }
+
+    @Test
+    public void testFullQueueBlocksSubmitter() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(3);
+        final AsyncMailboxListener listener = new AsyncMailboxListener() {
+            public void event(Event event) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.countDown();
+            }
+        };
+        final AsynchronousEventDelivery delivery = new AsynchronousEventDelivery(executor, 1);
+        final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+
+        // the first event is in delivery, the second one is queued and the third one needs to wait
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        Thread blocked = new Thread() {
+            public void run() {
+                delivery.deliver(listener, new MailboxAdded(null, path));
+            }
+        };
+        blocked.start();
+        blocked.join(500);
+        assertTrue(blocked.isAlive());
+        assertEquals(1, delivery.getBlockedSubmitCount());
+
+        release.countDown();
+        blocked.join(5000);
+        assertFalse(blocked.isAlive());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullQueueBlocksSubmitterOnlyAfterLockWasReleased() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(3);
+        final AsyncMailboxListener listener = new AsyncMailboxListener() {
+            public void event(Event event) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.countDown();
+            }
+        };
+        final AsynchronousEventDelivery delivery = new AsynchronousEventDelivery(executor, 1);
+        final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+        final CountDownLatch submitted = new CountDownLatch(1);
+
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        Thread locked = new Thread() {
+            public void run() {
+                delivery.lockAcquired(path);
+                try {
+                    delivery.deliver(listener, new MailboxAdded(null, path));
+                    submitted.countDown();
+                } finally {
+                    delivery.lockReleased(path);
+                }
+            }
+        };
+        locked.start();
+        // the event is queued without waiting, but the thread waits after it released the lock
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        locked.join(500);
+        assertTrue(locked.isAlive());
+        assertEquals(1, delivery.getBlockedSubmitCount());
+
+        release.countDown();
+        locked.join(5000);
+        assertFalse(locked.isAlive());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueueIsOverfilledOnlyUpToTwiceItsSizeWhileLockIsHeld() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(4);
+        final AsyncMailboxListener listener = new AsyncMailboxListener() {
+            public void event(Event event) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.countDown();
+            }
+        };
+        final AsynchronousEventDelivery delivery = new AsynchronousEventDelivery(executor, 1);
+        final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+        final CountDownLatch overfilled = new CountDownLatch(1);
+        final CountDownLatch submitted = new CountDownLatch(1);
+
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        delivery.deliver(listener, new MailboxAdded(null, path));
+        Thread locked = new Thread() {
+            public void run() {
+                delivery.lockAcquired(path);
+                try {
+                    delivery.deliver(listener, new MailboxAdded(null, path));
+                    overfilled.countDown();
+                    delivery.deliver(listener, new MailboxAdded(null, path));
+                    submitted.countDown();
+                } finally {
+                    delivery.lockReleased(path);
+                }
+            }
+        };
+        locked.start();
+        // the first event overfills the queue, the second one waits although the lock is held
+        assertTrue(overfilled.await(5, TimeUnit.SECONDS));
+        assertFalse(submitted.await(500, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        locked.join(5000);
+        assertFalse(locked.isAlive());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,160 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.util.EventCollector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingMailboxListenerTest {
+
+    private final static long WINDOW = 60 * 1000;
+
+    private MailboxSession session = new MockMailboxSession("test");
+    private Mailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "test", "INBOX"), 1);
+    private ScheduledExecutorService scheduler;
+    private EventCollector collector;
+    private CoalescingMailboxListener<Long> coalescing;
+    private MailboxEventDispatcher<Long> dispatcher;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        collector = new EventCollector();
+        coalescing = new CoalescingMailboxListener<Long>(collector, scheduler, WINDOW, 1000);
+        dispatcher = new MailboxEventDispatcher<Long>(coalescing);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testEventsAreMerged() {
+        dispatcher.added(session, metaData(1, 2, 3), mailbox);
+        dispatcher.added(session, metaData(4, 5), mailbox);
+        dispatcher.flagsUpdated(session, Arrays.asList(1L), mailbox, Arrays.asList(update(1, new Flags(), new Flags(Flags.Flag.SEEN))));
+        dispatcher.flagsUpdated(session, Arrays.asList(1L), mailbox, Arrays.asList(update(1, new Flags(Flags.Flag.SEEN), new Flags(Flags.Flag.FLAGGED))));
+        assertTrue(collector.events.isEmpty());
+
+        coalescing.flush();
+
+        List<MailboxListener.Event> events = collector.events;
+        assertEquals(2, events.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ((MailboxListener.Added) events.get(0)).getUids());
+        UpdatedFlags uFlags = ((MailboxListener.FlagsUpdated) events.get(1)).getUpdatedFlags().get(0);
+        assertEquals(new Flags(), uFlags.getOldFlags());
+        assertEquals(new Flags(Flags.Flag.FLAGGED), uFlags.getNewFlags());
+    }
+
+    @Test
+    public void testAddedAndExpungedCancelOut() {
+        dispatcher.added(session, metaData(1, 2), mailbox);
+        dispatcher.flagsUpdated(session, Arrays.asList(2L), mailbox, Arrays.asList(update(2, new Flags(), new Flags(Flags.Flag.DELETED))));
+        dispatcher.expunged(session, metaData(2, 10), mailbox);
+        coalescing.flush();
+
+        List<MailboxListener.Event> events = collector.events;
+        assertEquals(2, events.size());
+        assertEquals(Arrays.asList(1L), ((MailboxListener.Added) events.get(0)).getUids());
+        assertEquals(Arrays.asList(10L), ((MailboxListener.Expunged) events.get(1)).getUids());
+    }
+
+    @Test
+    public void testOtherEventFlushesPendingEvents() {
+        dispatcher.added(session, metaData(1), mailbox);
+        MailboxListener.MailboxDeletion deletion = new MailboxListener.MailboxDeletion(session, new MailboxPath("#private", "test", "INBOX"));
+        coalescing.event(deletion);
+        coalescing.flush();
+
+        List<MailboxListener.Event> events = collector.events;
+        assertEquals(2, events.size());
+        assertTrue(events.get(0) instanceof MailboxListener.Added);
+        assertEquals(deletion, events.get(1));
+    }
+
+    @Test
+    public void testFullBatchIsDeliveredByScheduler() throws Exception {
+        final List<Thread> threads = new ArrayList<Thread>();
+        final List<MailboxSession> sessions = new ArrayList<MailboxSession>();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        coalescing = new CoalescingMailboxListener<Long>(new MailboxListener() {
+            public void event(Event event) {
+                synchronized (threads) {
+                    threads.add(Thread.currentThread());
+                    sessions.add(event.getSession());
+                }
+                delivered.countDown();
+            }
+        }, scheduler, WINDOW, 2);
+        dispatcher = new MailboxEventDispatcher<Long>(coalescing);
+
+        dispatcher.added(session, metaData(1, 2, 3), mailbox);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+        synchronized (threads) {
+            assertEquals(1, threads.size());
+            assertNotSame(Thread.currentThread(), threads.get(0));
+            assertNotSame(session, sessions.get(0));
+            assertEquals(MailboxSession.SessionType.System, sessions.get(0).getType());
+            assertEquals(session.getUser().getUserName(), sessions.get(0).getUser().getUserName());
+        }
+    }
+
+    private SortedMap<Long, MessageMetaData> metaData(long... uids) {
+        SortedMap<Long, MessageMetaData> map = new TreeMap<Long, MessageMetaData>();
+        for (long uid : uids) {
+            map.put(uid, new SimpleMessageMetaData(uid, uid, new Flags(), 10, new Date()));
+        }
+        return map;
+    }
+
+    private UpdatedFlags update(long uid, Flags oldFlags, Flags newFlags) {
+        return new UpdatedFlags(uid, uid, oldFlags, newFlags);
+    }
+}
@@ -0,0 +1,108 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import java.util.Date;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.store.ConcurrentDelegatingMailboxListener;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+
+/**
+ * Measures the events per second which can be fanned out to the other nodes of a {@link LoopbackEventBus}
+ * cluster, including encoding, decoding and the dispatching to one IDLE listener per mailbox and node.
+ * 
+ * This is not run as part of the build. Run it via its main method.
+ */
+public class EventBusBenchmark {
+
+    private final static int MAILBOXES = 1000;
+    private final static int UIDS_PER_EVENT = 10;
+    private final static long DURATION = 2000;
+    private final static int[] NODES = { 2, 4, 8 };
+
+    public static void main(String[] args) throws Exception {
+        for (int nodes : NODES) {
+            run(nodes);
+        }
+    }
+
+    private static void run(int nodes) throws Exception {
+        MailboxPath[] paths = new MailboxPath[MAILBOXES];
+        @SuppressWarnings("unchecked")
+        SimpleMailbox<Long>[] mailboxes = new SimpleMailbox[MAILBOXES];
+        for (int i = 0; i < MAILBOXES; i++) {
+            paths[i] = new MailboxPath("#private", "user" + i, "INBOX");
+            mailboxes[i] = new SimpleMailbox<Long>(paths[i], 1);
+            mailboxes[i].setMailboxId((long) i);
+        }
+
+        ExecutorService[] executors = new ExecutorService[nodes];
+        LoopbackEventBus first = null;
+        ConcurrentDelegatingMailboxListener publisher = null;
+        for (int n = 0; n < nodes; n++) {
+            executors[n] = Executors.newSingleThreadExecutor();
+            LoopbackEventBus bus = new LoopbackEventBus(first, n == 0 ? null : executors[n]);
+            ConcurrentDelegatingMailboxListener node = new ConcurrentDelegatingMailboxListener();
+            node.setEventBus(bus);
+            for (int i = 0; i < MAILBOXES; i++) {
+                node.addListener(paths[i], new MailboxListener() {
+                    public void event(Event event) {
+                    }
+                }, null);
+            }
+            if (first == null) {
+                first = bus;
+                publisher = node;
+            }
+        }
+
+        MailboxEventDispatcher<Long> dispatcher = new MailboxEventDispatcher<Long>(publisher);
+        MockMailboxSession session = new MockMailboxSession("user");
+        long events = 0;
+        long uid = 1;
+        long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() - start < DURATION) {
+            SortedMap<Long, MessageMetaData> data = new TreeMap<Long, MessageMetaData>();
+            for (int i = 0; i < UIDS_PER_EVENT; i++, uid++) {
+                data.put(uid, new SimpleMessageMetaData(uid, uid, new Flags(Flags.Flag.RECENT), 4096, new Date()));
+            }
+            dispatcher.added(session, data, mailboxes[(int) (events % MAILBOXES)]);
+            events++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            executors[n].shutdown();
+            executors[n].awaitTermination(1, TimeUnit.MINUTES);
+        }
+        long duration = System.currentTimeMillis() - start;
+        System.out.println(nodes + " nodes: " + (events * 1000 / duration) + " events/sec, " + (first.getPublishedBytes() / first.getPublishedMessages()) + " bytes/event");
+    }
+}
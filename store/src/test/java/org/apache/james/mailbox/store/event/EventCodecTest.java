@@ -0,0 +1,202 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.util.EventCollector;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventCodecTest {
+
+    private final static int EXPUNGED = 2;
+    private final static int MAILBOX_ADDED = 4;
+
+    private MailboxSession session = new MockMailboxSession("test");
+    private SimpleMailbox<UUID> mailbox = new SimpleMailbox<UUID>(new MailboxPath("#private", "test", "INBOX"), 42);
+    private EventCollector collector;
+    private MailboxEventDispatcher<UUID> dispatcher;
+
+    @Before
+    public void setUp() {
+        mailbox.setMailboxId(UUID.randomUUID());
+        collector = new EventCollector();
+        dispatcher = new MailboxEventDispatcher<UUID>(collector);
+    }
+
+    @Test
+    public void testAdded() throws Exception {
+        SortedMap<Long, MessageMetaData> data = new TreeMap<Long, MessageMetaData>();
+        Flags flags = new Flags(Flags.Flag.SEEN);
+        flags.add("custom");
+        data.put(1L, new SimpleMessageMetaData(1, 10, flags, 1000, new Date(1234)));
+        data.put(2L, new SimpleMessageMetaData(2, 11, new Flags(), 2000, new Date(5678)));
+        dispatcher.added(session, data, mailbox);
+
+        MailboxEventDispatcher<?>.AddedImpl added = (MailboxEventDispatcher<?>.AddedImpl) roundTrip();
+        assertEquals(Arrays.asList(1L, 2L), added.getUids());
+        assertEquals(mailbox.getMailboxId(), added.getMailbox().getMailboxId());
+        assertEquals(42, added.getMailbox().getUidValidity());
+        assertEquals(mailbox.getName(), added.getMailbox().getName());
+        assertEquals(session.getSessionId(), added.getSession().getSessionId());
+        assertEquals("test", added.getSession().getUser().getUserName());
+        MessageMetaData metaData = added.getMetaData(1);
+        assertEquals(10, metaData.getModSeq());
+        assertEquals(1000, metaData.getSize());
+        assertEquals(new Date(1234), metaData.getInternalDate());
+        assertEquals(flags, metaData.getFlags());
+    }
+
+    @Test
+    public void testExpungedCarriesOnlyUids() throws Exception {
+        SortedMap<Long, MessageMetaData> data = new TreeMap<Long, MessageMetaData>();
+        for (long uid = 1; uid <= 1000; uid++) {
+            data.put(uid, new SimpleMessageMetaData(uid, uid, new Flags(), 1000, new Date()));
+        }
+        dispatcher.expunged(session, data, mailbox);
+
+        byte[] encoded = EventCodec.encode(collector.events.get(0));
+        // a single range of uids
+        assertTrue(encoded.length < 100);
+        MailboxListener.Expunged expunged = (MailboxListener.Expunged) EventCodec.decode(encoded);
+        assertEquals(new ArrayList<Long>(data.keySet()), expunged.getUids());
+        assertNull(expunged.getMetaData(1));
+    }
+
+    @Test
+    public void testFlagsUpdated() throws Exception {
+        Flags oldFlags = new Flags(Flags.Flag.SEEN);
+        oldFlags.add("old");
+        Flags newFlags = new Flags(Flags.Flag.FLAGGED);
+        newFlags.add("new");
+        List<UpdatedFlags> uFlags = Arrays.asList(new UpdatedFlags(5, 20, oldFlags, newFlags));
+        dispatcher.flagsUpdated(session, Arrays.asList(5L), mailbox, uFlags);
+
+        MailboxListener.FlagsUpdated updated = (MailboxListener.FlagsUpdated) roundTrip();
+        assertEquals(Arrays.asList(5L), updated.getUids());
+        UpdatedFlags decoded = updated.getUpdatedFlags().get(0);
+        assertEquals(5, decoded.getUid());
+        assertEquals(20, decoded.getModSeq());
+        assertEquals(oldFlags, decoded.getOldFlags());
+        assertEquals(newFlags, decoded.getNewFlags());
+    }
+
+    @Test
+    public void testMailboxEvents() throws Exception {
+        MailboxPath oldPath = new MailboxPath("#private", "test", "old");
+        dispatcher.mailboxRenamed(null, oldPath, mailbox);
+
+        MailboxListener.MailboxRenamed renamed = (MailboxListener.MailboxRenamed) roundTrip();
+        assertNull(renamed.getSession());
+        assertEquals(oldPath, renamed.getMailboxPath());
+        assertEquals(new MailboxPath("#private", "test", "INBOX"), renamed.getNewPath());
+
+        collector.events.clear();
+        dispatcher.mailboxDeleted(session, mailbox);
+        assertTrue(roundTrip() instanceof MailboxListener.MailboxDeletion);
+    }
+
+    @Test
+    public void testUnknownIdTypeIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, MAILBOX_ADDED);
+        // the tag which was used for java serialized ids
+        out.writeByte(5);
+        assertNotDecoded(bytes);
+    }
+
+    @Test
+    public void testCountBiggerThanFrameIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, EXPUNGED);
+        EventCodec.writeId(out, null);
+        EventCodec.writeVarLong(out, Integer.MAX_VALUE);
+        EventCodec.writeVarLong(out, 1);
+        EventCodec.writeVarLong(out, 0);
+        assertNotDecoded(bytes);
+    }
+
+    @Test
+    public void testOversizedUidRangeIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, EXPUNGED);
+        EventCodec.writeId(out, null);
+        EventCodec.writeVarLong(out, 1);
+        EventCodec.writeVarLong(out, 1);
+        EventCodec.writeVarLong(out, EventCodec.MAX_UIDS);
+        assertNotDecoded(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedIdIsNotEncoded() throws Exception {
+        SimpleMailbox<Object> other = new SimpleMailbox<Object>(new MailboxPath("#private", "test", "INBOX"), 42);
+        other.setMailboxId(new Date());
+        new MailboxEventDispatcher<Object>(collector).mailboxAdded(session, other);
+        roundTrip();
+    }
+
+    private DataOutputStream header(ByteArrayOutputStream bytes, int type) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(EventCodec.VERSION);
+        out.writeByte(type);
+        out.writeBoolean(false);
+        EventCodec.writePath(out, new MailboxPath("#private", "test", "INBOX"));
+        EventCodec.writeVarLong(out, 42);
+        return out;
+    }
+
+    private void assertNotDecoded(ByteArrayOutputStream bytes) throws Exception {
+        try {
+            EventCodec.decode(bytes.toByteArray());
+            fail("Invalid event was decoded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private MailboxListener.Event roundTrip() throws Exception {
+        return EventCodec.decode(EventCodec.encode(collector.events.get(0)));
+    }
+}
@@ -0,0 +1,249 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.mail.Flags;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.util.EventCollector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileEventJournalTest {
+
+    private MailboxSession session = new MockMailboxSession("test");
+    private SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "test", "INBOX"), 1);
+    private File directory;
+    private FileEventJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "test");
+        directory.delete();
+        mailbox.setMailboxId(10L);
+        journal = new FileEventJournal(directory, 1024, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testDispatchedEventsAreReplayed() throws Exception {
+        MailboxEventDispatcher<Long> dispatcher = new MailboxEventDispatcher<Long>(new EventCollector(), journal);
+        dispatcher.added(session, metaData(1, 2), mailbox);
+        dispatcher.flagsUpdated(session, Arrays.asList(1L), mailbox, Arrays.asList(new UpdatedFlags(1, 3, new Flags(), new Flags(Flags.Flag.SEEN))));
+        dispatcher.expunged(session, metaData(2), mailbox);
+
+        List<JournalRecord> records = journal.read(0, 10);
+        assertEquals(3, records.size());
+        assertEquals(3, records.get(1).getHighestModSeq());
+
+        EventCollector collector = new EventCollector();
+        MailboxEventDispatcher<Long> replay = new MailboxEventDispatcher<Long>(collector);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).getOffset());
+            records.get(i).replay(replay, session);
+        }
+
+        List<MailboxListener.Event> events = collector.events;
+        assertEquals(Arrays.asList(1L, 2L), ((MailboxListener.Added) events.get(0)).getUids());
+        MailboxEventDispatcher<?>.AddedImpl added = (MailboxEventDispatcher<?>.AddedImpl) events.get(0);
+        assertEquals(Long.valueOf(10), added.getMailbox().getMailboxId());
+        assertEquals(mailbox.getName(), added.getMailbox().getName());
+        assertEquals(new Flags(Flags.Flag.SEEN), added.getMetaData(1).getFlags());
+        assertEquals(new Flags(Flags.Flag.SEEN), ((MailboxListener.FlagsUpdated) events.get(1)).getUpdatedFlags().get(0).getNewFlags());
+        assertEquals(Arrays.asList(2L), ((MailboxListener.Expunged) events.get(2)).getUids());
+    }
+
+    @Test
+    public void testReadFromOffsetOverSegments() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, journal.append(JournalRecord.added(session, mailbox, metaData(i).values())));
+        }
+        assertTrue(directory.list().length > 1);
+
+        List<JournalRecord> records = journal.read(20, 25);
+        assertEquals(25, records.size());
+        assertEquals(20, records.get(0).getOffset());
+        records = journal.read(45, 25);
+        assertEquals(5, records.size());
+        assertEquals(49, records.get(4).getOffset());
+        assertTrue(journal.read(50, 25).isEmpty());
+    }
+
+    @Test
+    public void testCursorAndRecordsSurviveReopen() throws Exception {
+        journal.append(JournalRecord.mailboxAdded(session, mailbox));
+        journal.append(JournalRecord.mailboxDeleted(session, mailbox));
+        journal.setCursor("index", 1);
+        journal.close();
+
+        journal = new FileEventJournal(directory, 1024, false);
+        assertEquals(1, journal.getCursor("index"));
+        assertEquals(0, journal.getCursor("quota"));
+        assertEquals(2, journal.getNextOffset());
+        assertEquals(JournalRecord.Type.MAILBOX_DELETED, journal.read(1, 10).get(0).getType());
+    }
+
+    @Test
+    public void testPartialRecordIsTruncated() throws Exception {
+        journal.append(JournalRecord.mailboxAdded(session, mailbox));
+        journal.close();
+
+        File segment = directory.listFiles()[0];
+        long length = segment.length();
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[] { 0, 0, 1, 0, 1, 2 });
+        out.close();
+
+        journal = new FileEventJournal(directory, 1024, false);
+        assertEquals(length, segment.length());
+        assertEquals(1, journal.getNextOffset());
+        assertEquals(1, journal.append(JournalRecord.mailboxDeleted(session, mailbox)));
+        assertEquals(2, journal.read(0, 10).size());
+    }
+
+    @Test
+    public void testPurgeRemovesProcessedSegments() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            journal.append(JournalRecord.added(session, mailbox, metaData(i).values()));
+        }
+        int segments = directory.list().length;
+        journal.purge(40);
+
+        assertTrue(directory.list().length < segments);
+        List<JournalRecord> records = journal.read(0, 100);
+        assertTrue(records.get(0).getOffset() <= 40);
+        assertEquals(49, records.get(records.size() - 1).getOffset());
+    }
+
+    @Test
+    public void testStoredCursorsPurgeSegmentsProcessedByAllConsumers() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            journal.append(JournalRecord.added(session, mailbox, metaData(i).values()));
+        }
+        long size = segmentSize();
+        journal.setCursor("quota", 0);
+        journal.setCursor("index", 45);
+        // quota did not process anything yet
+        assertEquals(size, segmentSize());
+
+        journal.setCursor("quota", 45);
+        assertTrue(segmentSize() < size);
+        List<JournalRecord> records = journal.read(0, 100);
+        assertTrue(records.get(0).getOffset() <= 45);
+        assertEquals(49, records.get(records.size() - 1).getOffset());
+    }
+
+    private long segmentSize() {
+        long size = 0;
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(".log")) {
+                size += files[i].length();
+            }
+        }
+        return size;
+    }
+
+    @Test
+    public void testConcurrentSyncedAppends() throws Exception {
+        journal.close();
+        journal = new FileEventJournal(directory, 1024, true);
+        final int threads = 4;
+        final int appends = 50;
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] appenders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            appenders[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int a = 0; a < appends; a++) {
+                            journal.append(JournalRecord.added(session, mailbox, metaData(a).values()));
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            appenders[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            appenders[i].join();
+        }
+        assertTrue(failures.isEmpty());
+
+        List<JournalRecord> records = journal.read(0, threads * appends + 1);
+        assertEquals(threads * appends, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).getOffset());
+        }
+    }
+
+    @Test
+    public void testAppendFailureDoesNotStopDispatch() throws Exception {
+        EventJournal failing = new FileEventJournal(directory, 1024, false) {
+            @Override
+            public long append(JournalRecord record) throws MailboxException {
+                throw new MailboxException("disk full");
+            }
+        };
+        EventCollector collector = new EventCollector();
+        MailboxEventDispatcher<Long> dispatcher = new MailboxEventDispatcher<Long>(collector, failing);
+        dispatcher.added(session, metaData(1), mailbox);
+        dispatcher.expunged(session, metaData(1), mailbox);
+        assertEquals(2, collector.events.size());
+    }
+
+    private SortedMap<Long, MessageMetaData> metaData(long... uids) {
+        SortedMap<Long, MessageMetaData> data = new TreeMap<Long, MessageMetaData>();
+        for (int i = 0; i < uids.length; i++) {
+            data.put(uids[i], new SimpleMessageMetaData(uids[i], uids[i], new Flags(Flags.Flag.SEEN), 100, new Date()));
+        }
+        return data;
+    }
+}
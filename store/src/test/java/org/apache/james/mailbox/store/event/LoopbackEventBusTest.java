@@ -0,0 +1,107 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.DistributedMailboxListener;
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.store.ConcurrentDelegatingMailboxListener;
+import org.apache.james.mailbox.store.MailboxEventDispatcher;
+import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.util.EventCollector;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoopbackEventBusTest {
+
+    private final static MailboxPath INBOX = new MailboxPath("#private", "test", "INBOX");
+
+    private MailboxSession session = new MockMailboxSession("test");
+    private SimpleMailbox<Long> mailbox = new SimpleMailbox<Long>(INBOX, 1);
+    private ConcurrentDelegatingMailboxListener nodeA;
+    private ConcurrentDelegatingMailboxListener nodeB;
+
+    @Before
+    public void setUp() {
+        mailbox.setMailboxId(1L);
+        LoopbackEventBus busA = new LoopbackEventBus();
+        LoopbackEventBus busB = new LoopbackEventBus(busA, null);
+        nodeA = new ConcurrentDelegatingMailboxListener();
+        nodeA.setEventBus(busA);
+        nodeB = new ConcurrentDelegatingMailboxListener();
+        nodeB.setEventBus(busB);
+    }
+
+    @Test
+    public void testEventsReachListenersOfOtherNode() throws Exception {
+        EventCollector idle = new EventCollector();
+        nodeB.addListener(INBOX, idle, null);
+        EventCollector local = new EventCollector();
+        nodeA.addListener(INBOX, local, null);
+
+        added(nodeA, 1);
+
+        assertEquals(1, local.events.size());
+        assertEquals(1, idle.events.size());
+        assertTrue(idle.events.get(0) instanceof MailboxListener.Added);
+    }
+
+    @Test
+    public void testOnlyDistributedGlobalListenersReceiveRemoteEvents() throws Exception {
+        EventCollector index = new EventCollector();
+        nodeB.addGlobalListener(index, null);
+        DistributedCollector cache = new DistributedCollector();
+        nodeB.addGlobalListener(cache, null);
+
+        added(nodeA, 1);
+        assertEquals(0, index.events.size());
+        assertEquals(1, cache.events.size());
+
+        // events of node B are still delivered to every global listener of node B, and not echoed back
+        added(nodeB, 2);
+        assertEquals(1, index.events.size());
+        assertEquals(2, cache.events.size());
+    }
+
+    private void added(MailboxListener node, long uid) {
+        SortedMap<Long, MessageMetaData> data = new TreeMap<Long, MessageMetaData>();
+        data.put(uid, new SimpleMessageMetaData(uid, uid, new Flags(), 10, new Date()));
+        new MailboxEventDispatcher<Long>(node).added(session, data, mailbox);
+    }
+
+    private final static class DistributedCollector extends EventCollector implements DistributedMailboxListener {
+
+        public void remoteEvent(Event event) {
+            event(event);
+        }
+    }
+}
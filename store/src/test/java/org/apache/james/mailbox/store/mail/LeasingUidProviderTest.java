@@ -0,0 +1,129 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LeasingUidProviderTest {
+
+    private CountingUidProvider backend;
+    private SimpleMailbox<Long> mailbox;
+    private MailboxSession session;
+
+    @Before
+    public void setUp() {
+        backend = new CountingUidProvider();
+        mailbox = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "INBOX"), 1);
+        mailbox.setMailboxId(1L);
+        session = new MockMailboxSession("user");
+    }
+
+    @Test
+    public void testUidsAreStrictlyIncreasingAndLeasedInBlocks() throws MailboxException {
+        LeasingUidProvider<Long> provider = new LeasingUidProvider<Long>(backend, 10, 10, 1000, 100);
+        long last = 0;
+        for (int i = 0; i < 100; i++) {
+            long uid = provider.nextUid(session, mailbox);
+            assertTrue(uid > last);
+            last = uid;
+        }
+        assertEquals(100, last);
+        assertEquals(10, backend.calls);
+        assertEquals(100, provider.lastUid(session, mailbox));
+    }
+
+    @Test
+    public void testBlockSizeGrowsWithAppendRate() throws MailboxException {
+        LeasingUidProvider<Long> provider = new LeasingUidProvider<Long>(backend, 10, 80, 60000, 100);
+        for (int i = 0; i < 1000; i++) {
+            provider.nextUid(session, mailbox);
+        }
+        assertEquals(80, provider.getBlockSize(mailbox));
+        assertTrue(backend.calls < 20);
+    }
+
+    @Test
+    public void testBigRequestAbandonsRestOfBlock() throws MailboxException {
+        LeasingUidProvider<Long> provider = new LeasingUidProvider<Long>(backend, 10, 10, 1000, 100);
+        assertEquals(1, provider.nextUid(session, mailbox));
+        assertEquals(11, provider.nextUids(session, mailbox, 50));
+        assertEquals(61, provider.nextUid(session, mailbox));
+        assertEquals(61, provider.lastUid(session, mailbox));
+    }
+
+    @Test
+    public void testReleasedLeaseIsNotReused() throws MailboxException {
+        LeasingUidProvider<Long> provider = new LeasingUidProvider<Long>(backend, 10, 10, 1000, 100);
+        assertEquals(1, provider.nextUid(session, mailbox));
+        provider.release(mailbox);
+        assertEquals(0, provider.getLeaseCount());
+        assertEquals(10, provider.lastUid(session, mailbox));
+        assertEquals(11, provider.nextUid(session, mailbox));
+    }
+
+    @Test
+    public void testIdleLeasesAreEvicted() throws Exception {
+        LeasingUidProvider<Long> provider = new LeasingUidProvider<Long>(backend, 10, 10, 10, 2);
+        SimpleMailbox<Long> other = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "other"), 1);
+        other.setMailboxId(2L);
+        SimpleMailbox<Long> third = new SimpleMailbox<Long>(new MailboxPath("#private", "user", "third"), 1);
+        third.setMailboxId(3L);
+
+        provider.nextUid(session, mailbox);
+        provider.nextUid(session, other);
+        Thread.sleep(50);
+        // the first mailbox was used last, so the other one gets evicted
+        provider.nextUid(session, mailbox);
+        provider.nextUid(session, third);
+
+        assertEquals(2, provider.getLeaseCount());
+        assertEquals(0, provider.getBlockSize(other));
+        assertEquals(10, provider.getBlockSize(mailbox));
+    }
+
+    private final static class CountingUidProvider implements UidProvider<Long> {
+        private long last;
+        private int calls;
+
+        public synchronized long nextUid(MailboxSession session, Mailbox<Long> mailbox) throws MailboxException {
+            return nextUids(session, mailbox, 1);
+        }
+
+        public synchronized long nextUids(MailboxSession session, Mailbox<Long> mailbox, int count) throws MailboxException {
+            calls++;
+            long first = last + 1;
+            last += count;
+            return first;
+        }
+
+        public synchronized long lastUid(MailboxSession session, Mailbox<Long> mailbox) throws MailboxException {
+            return last;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.model.MessageResult.Header;
+import org.apache.james.mailbox.store.MimeDescriptorImpl;
+import org.junit.Test;
+
+public class PartOffsetIndexTest {
+
+    private static final String INNER_MAIL = "From: John Smith <john@example.org>\r\n"
+            + "Subject: Custard!\r\n"
+            + "Content-Type: multipart/mixed;boundary=1729\r\n\r\n"
+            + "This is the preamble\r\n"
+            + "--1729\r\n"
+            + "Content-Type: text/plain;charset=us-ascii\r\n\r\n"
+            + "Custard!Custard!Custard!\r\n"
+            + "\r\n--1729\r\n"
+            + "Content-Type: text/html;charset=us-ascii\r\n\r\n"
+            + "<html><body><p>Custard!</p></body></html>\r\n"
+            + "\r\n--1729--\r\n";
+
+    private static final String MULTIPART_MIXED = "From: Samual Smith <samual@example.org>\r\n"
+            + "Subject: Rhubarb!\r\n"
+            + "Content-Type: multipart/mixed;boundary=4242\r\n\r\n"
+            + "This is the preamble\r\n"
+            + "--4242\r\n"
+            + "Content-Type: text/html;charset=us-ascii\r\n"
+            + "Content-ID: <html>\r\n\r\n"
+            + "<html><body><p>Rhubarb!</p></body></html>\r\n"
+            + "\r\n--4242\r\n"
+            + "Content-Type: message/rfc822\r\n\r\n"
+            + INNER_MAIL
+            + "\r\n--4242\r\n"
+            + "Content-Type: text/plain;charset=us-ascii\r\n\r\n"
+            + "Rhubarb!Rhubard!Rhubard!\r\n"
+            + "\r\n--4242--\r\n"
+            + "This is the epilogue\r\n";
+
+    @Test
+    public void testRangesMatchPartContentBuilder() throws Exception {
+        PartOffsetIndex index = PartOffsetIndex.decode(build().encode());
+        assertEquals(5, index.size());
+
+        int[][] paths = { { 1 }, { 2 }, { 3 }, { 2, 1 }, { 2, 2 } };
+        for (int[] path : paths) {
+            PartOffsetIndex.PartRange range = index.get(path);
+            assertNotNull(range);
+
+            assertEquals(mimeBody(path), substring(range.getBodyStart(), range.getBodyEnd()));
+            assertEquals(mimeHeaders(path), headers(substring(range.getHeaderStart(), range.getBodyStart())));
+        }
+    }
+
+    @Test
+    public void testNotIndexedPart() throws Exception {
+        PartOffsetIndex index = build();
+        assertNull(index.get(new int[] { 4 }));
+        assertNull(index.get(new int[] { 1, 1 }));
+    }
+
+    private PartOffsetIndex build() throws Exception {
+        return PartOffsetIndex.build(new ByteArrayInputStream(MULTIPART_MIXED.getBytes("US-ASCII")),
+                MimeDescriptorImpl.build(new ByteArrayInputStream(MULTIPART_MIXED.getBytes("US-ASCII"))));
+    }
+
+    private String substring(long start, long end) {
+        return MULTIPART_MIXED.substring((int) start, (int) end);
+    }
+
+    private PartContentBuilder to(int[] path) throws Exception {
+        PartContentBuilder builder = new PartContentBuilder();
+        builder.parse(new ByteArrayInputStream(MULTIPART_MIXED.getBytes("US-ASCII")));
+        for (int position : path) {
+            builder.to(position);
+        }
+        return builder;
+    }
+
+    private String mimeBody(int[] path) throws Exception {
+        return IOUtils.toString(to(path).getMimeBodyContent().getInputStream(), "US-ASCII");
+    }
+
+    private String mimeHeaders(int[] path) throws Exception {
+        return toString(to(path).getMimeHeaders());
+    }
+
+    private String headers(String content) throws Exception {
+        PartContentBuilder builder = new PartContentBuilder();
+        builder.parse(new ByteArrayInputStream(content.getBytes("US-ASCII")));
+        return toString(builder.getMimeHeaders());
+    }
+
+    private String toString(List<Header> headers) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (Header header : headers) {
+            sb.append(header.getName()).append(": ").append(header.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SharedContentBufferTest {
+    private String mail = "Subject: test\r\n\r\nbody";
+
+    @Test
+    public void testKeepSmallContentInMemory() throws IOException {
+        SharedContentBuffer buffer = new SharedContentBuffer(1024);
+        try {
+            buffer.write(mail.getBytes());
+            buffer.close();
+
+            assertTrue(buffer.isInMemory());
+            assertNull(buffer.getFile());
+            assertEquals(mail.length(), buffer.getSize());
+            assertContent(buffer.newSharedInputStream());
+        } finally {
+            buffer.dispose();
+        }
+    }
+
+    @Test
+    public void testSpillBigContentToFile() throws IOException {
+        SharedContentBuffer buffer = new SharedContentBuffer(8);
+        File file = null;
+        try {
+            buffer.write(mail.getBytes());
+            buffer.close();
+
+            assertFalse(buffer.isInMemory());
+            file = buffer.getFile();
+            assertTrue(file.exists());
+            assertEquals(mail.length(), buffer.getSize());
+            SharedInputStream in = buffer.newSharedInputStream();
+            assertContent(in);
+            IOUtils.closeQuietly((InputStream) in);
+        } finally {
+            buffer.dispose();
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDisposeClosesContent() throws IOException {
+        SharedContentBuffer buffer = new SharedContentBuffer(8);
+        buffer.write(mail.getBytes());
+        buffer.close();
+        File file = buffer.getFile();
+        InputStream in = (InputStream) buffer.newSharedInputStream();
+
+        buffer.dispose();
+        assertFalse(file.exists());
+        try {
+            in.read();
+            fail("Content was not closed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testZeroThresholdAlwaysUseFile() throws IOException {
+        SharedContentBuffer buffer = new SharedContentBuffer(0);
+        try {
+            buffer.write(mail.getBytes());
+            buffer.close();
+
+            assertFalse(buffer.isInMemory());
+        } finally {
+            buffer.dispose();
+        }
+    }
+
+    private void assertContent(SharedInputStream in) throws IOException {
+        assertEquals(mail, IOUtils.toString(in.newStream(0, -1)));
+        assertEquals("body", IOUtils.toString(in.newStream(17, -1)));
+    }
+}
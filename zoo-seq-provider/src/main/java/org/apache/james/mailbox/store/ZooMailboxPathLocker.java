@@ -0,0 +1,194 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import com.google.common.base.Preconditions;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.recipes.locks.InterProcessMutex;
+import com.netflix.curator.framework.recipes.locks.InterProcessReadWriteLock;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.james.mailbox.MailboxPathLocker;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/**
+ * {@link MailboxPathLocker} which locks a {@link MailboxPath} across all nodes which share a ZooKeeper
+ * ensemble, by using one {@link InterProcessReadWriteLock} per {@link MailboxPath}.
+ * 
+ * Threads of the same JVM first compete for the local lock of {@link ReferenceCountingMailboxPathLocker},
+ * so only one local writer at a time talks to ZooKeeper. If the current thread already holds the ZooKeeper
+ * lock of the {@link MailboxPath} in a mode which covers the request, as for nested executions, only the local
+ * lock is taken. The ZooKeeper lock is not shared between threads, because Curator locks need to be released
+ * by the thread which acquired them. A read lock can not be upgraded to a write lock, so a thread which holds
+ * the read lock of a {@link MailboxPath} and asks for its write lock gets a {@link MailboxException}.
+ * 
+ * The locks are only safe as long as the ZooKeeper session is alive. The parent nodes of the locks are
+ * not removed, use a Curator ChildReaper if this is a problem.
+ */
+public class ZooMailboxPathLocker extends ReferenceCountingMailboxPathLocker {
+
+    public static final String DEFAULT_LOCK_PATH = "/mailbox-locks";
+
+    private final CuratorFramework client;
+    private final String lockPath;
+    private final ThreadLocal<Map<String, Held>> held = new ThreadLocal<Map<String, Held>>() {
+        @Override
+        protected Map<String, Held> initialValue() {
+            return new HashMap<String, Held>();
+        }
+    };
+
+    public ZooMailboxPathLocker(CuratorFramework client) {
+        this(client, DEFAULT_LOCK_PATH, 0);
+    }
+
+    /**
+     * @param client
+     * @param lockPath the ZooKeeper path below which the locks are created
+     * @param timeout the time in milliseconds to wait for a lock. Use <code>0</code> to wait without limit
+     */
+    public ZooMailboxPathLocker(CuratorFramework client, String lockPath, long timeout) {
+        super(false, timeout);
+        Preconditions.checkNotNull(client, "Curator client is null");
+        Preconditions.checkNotNull(lockPath, "Lock path is null");
+        this.client = client;
+        this.lockPath = lockPath;
+    }
+
+    @Override
+    protected void lock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
+        checkUpgrade(path, writeLock);
+        super.lock(session, path, writeLock);
+        boolean locked = false;
+        try {
+            locked = acquire(path, writeLock, -1);
+        } finally {
+            if (!locked) {
+                super.unlock(session, path, writeLock);
+            }
+        }
+    }
+
+    @Override
+    protected boolean tryLock(MailboxSession session, MailboxPath path, boolean writeLock, long timeout) throws MailboxException {
+        checkUpgrade(path, writeLock);
+        long start = System.currentTimeMillis();
+        if (!super.tryLock(session, path, writeLock, timeout)) {
+            return false;
+        }
+        boolean locked = false;
+        try {
+            locked = acquire(path, writeLock, Math.max(0, timeout - (System.currentTimeMillis() - start)));
+        } finally {
+            if (!locked) {
+                super.unlock(session, path, writeLock);
+            }
+        }
+        return locked;
+    }
+
+    @Override
+    protected void unlock(MailboxSession session, MailboxPath path, boolean writeLock) throws MailboxException {
+        try {
+            release(path);
+        } finally {
+            super.unlock(session, path, writeLock);
+        }
+    }
+
+    /**
+     * Fail if the current thread holds the read lock of the {@link MailboxPath} and asks for its write lock. Neither the
+     * local nor the ZooKeeper lock can be upgraded, so the thread would wait for itself.
+     */
+    private void checkUpgrade(MailboxPath path, boolean writeLock) throws MailboxException {
+        if (writeLock) {
+            Held h = held.get().get(lockPath(path));
+            if (h != null && !h.write) {
+                throw new MailboxException("Unable to upgrade the read lock of " + path + " to a write lock");
+            }
+        }
+    }
+
+    /**
+     * Acquire the ZooKeeper lock for the {@link MailboxPath}, waiting at most timeout milliseconds. A negative timeout
+     * waits without limit.
+     */
+    private boolean acquire(MailboxPath path, boolean writeLock, long timeout) throws MailboxException {
+        String key = lockPath(path);
+        Map<String, Held> locks = held.get();
+        Held h = locks.get(key);
+        if (h != null && (h.write || !writeLock)) {
+            // the thread already holds the lock in ZooKeeper
+            h.depth++;
+            return true;
+        }
+        InterProcessReadWriteLock lock = new InterProcessReadWriteLock(client, key);
+        InterProcessMutex mutex = writeLock ? lock.writeLock() : lock.readLock();
+        try {
+            if (timeout < 0) {
+                mutex.acquire();
+            } else if (!mutex.acquire(timeout, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (Exception e) {
+            throw new MailboxException("Unable to lock " + path + " in ZooKeeper", e);
+        }
+        locks.put(key, new Held(mutex, writeLock));
+        return true;
+    }
+
+    private void release(MailboxPath path) throws MailboxException {
+        String key = lockPath(path);
+        Map<String, Held> locks = held.get();
+        Held h = locks.get(key);
+        if (h == null || --h.depth > 0) {
+            return;
+        }
+        locks.remove(key);
+        try {
+            h.mutex.release();
+        } catch (Exception e) {
+            throw new MailboxException("Unable to unlock " + path + " in ZooKeeper", e);
+        }
+    }
+
+    private String lockPath(MailboxPath path) throws MailboxException {
+        try {
+            return lockPath + "/" + URLEncoder.encode(path.getNamespace() + ":" + path.getUser() + ":" + path.getName(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new MailboxException("Unable to encode " + path, e);
+        }
+    }
+
+    private final static class Held {
+        private final InterProcessMutex mutex;
+        private final boolean write;
+        private int depth = 1;
+
+        public Held(InterProcessMutex mutex, boolean write) {
+            this.mutex = mutex;
+            this.write = write;
+        }
+    }
+}
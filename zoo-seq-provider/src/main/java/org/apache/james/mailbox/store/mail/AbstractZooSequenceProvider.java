@@ -0,0 +1,106 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import com.google.common.base.Preconditions;
+import com.netflix.curator.RetryPolicy;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.recipes.atomic.AtomicValue;
+import com.netflix.curator.framework.recipes.atomic.DistributedAtomicLong;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * Base class for ZooKeeper based sequences, which keep one {@link DistributedAtomicLong} per {@link Mailbox}.
+ * 
+ * The values are always taken from the result of the modifying operation, so an other node which increments the
+ * same sequence at the same time can not interfere and no extra read is needed.
+ */
+public abstract class AbstractZooSequenceProvider<E> {
+
+    private final CuratorFramework client;
+    private final RetryPolicy retryPolicy;
+
+    public AbstractZooSequenceProvider(CuratorFramework client, RetryPolicy retryPolicy) {
+        Preconditions.checkNotNull(client, "Curator client is null");
+        Preconditions.checkNotNull(retryPolicy, "Retry policy is null");
+        this.client = client;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Return the ZooKeeper path of the sequence for the given {@link Mailbox}
+     * 
+     * @param mailbox
+     * @return path
+     */
+    protected abstract String path(Mailbox<E> mailbox);
+
+    /**
+     * Add count to the sequence of the {@link Mailbox} and return the first of the reserved values
+     * 
+     * @param session
+     * @param mailbox
+     * @param count
+     * @return first
+     * @throws MailboxException
+     */
+    protected long add(MailboxSession session, Mailbox<E> mailbox, int count) throws MailboxException {
+        AtomicValue<Long> value;
+        try {
+            value = counter(mailbox).add((long) count);
+        } catch (Exception e) {
+            throw new MailboxException("Exception incrementing " + path(mailbox) + " for session " + session, e);
+        }
+        if (value == null || !value.succeeded()) {
+            throw new MailboxException("Failed incrementing " + path(mailbox) + " for session " + session);
+        }
+        return value.postValue() - count + 1;
+    }
+
+    /**
+     * Return the current value of the sequence of the {@link Mailbox}
+     * 
+     * @param session
+     * @param mailbox
+     * @return current
+     * @throws MailboxException
+     */
+    protected long get(MailboxSession session, Mailbox<E> mailbox) throws MailboxException {
+        AtomicValue<Long> value;
+        try {
+            value = counter(mailbox).get();
+        } catch (Exception e) {
+            throw new MailboxException("Exception getting " + path(mailbox) + " for session " + session, e);
+        }
+        if (value == null || !value.succeeded()) {
+            throw new MailboxException("Failed getting " + path(mailbox) + " for session " + session);
+        }
+        return value.postValue();
+    }
+
+    private DistributedAtomicLong counter(Mailbox<E> mailbox) throws MailboxException {
+        if (!client.isStarted()) {
+            throw new MailboxException("Curator client is closed.");
+        }
+        // creating a DistributedAtomicLong does not talk to ZooKeeper, so there is no need to cache it
+        return new DistributedAtomicLong(client, path(mailbox), retryPolicy);
+    }
+}
@@ -0,0 +1,66 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import com.netflix.curator.RetryPolicy;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.retry.RetryOneTime;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * ZooKeeper based implementation of a distributed mod-sequence generator.
+ */
+public class ZooModSeqProvider<E> extends AbstractZooSequenceProvider<E> implements ModSeqProvider<E> {
+
+    public static final String MODSEQ_PATH_SUFFIX = "-modseq";
+
+    public ZooModSeqProvider(CuratorFramework client) {
+        this(client, new RetryOneTime(1));
+    }
+
+    public ZooModSeqProvider(CuratorFramework client, RetryPolicy retryPolicy) {
+        super(client, retryPolicy);
+    }
+
+    @Override
+    public long nextModSeq(MailboxSession session, Mailbox<E> mailbox) throws MailboxException {
+        return add(session, mailbox, 1);
+    }
+
+    @Override
+    public long nextModSeqs(MailboxSession session, Mailbox<E> mailbox, int count) throws MailboxException {
+        return add(session, mailbox, count);
+    }
+
+    @Override
+    public long highestModSeq(MailboxSession session, Mailbox<E> mailbox) throws MailboxException {
+        return get(session, mailbox);
+    }
+
+    @Override
+    protected String path(Mailbox<E> mailbox) {
+        return pathForMailbox(mailbox);
+    }
+
+    public static String pathForMailbox(Mailbox<?> mailbox) {
+        return mailbox.getMailboxId().toString() + MODSEQ_PATH_SUFFIX;
+    }
+}
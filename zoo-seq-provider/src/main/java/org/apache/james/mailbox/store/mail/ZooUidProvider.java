@@ -18,11 +18,8 @@
  ****************************************************************/
 package org.apache.james.mailbox.store.mail;
 
-import com.google.common.base.Preconditions;
 import com.netflix.curator.RetryPolicy;
 import com.netflix.curator.framework.CuratorFramework;
-import com.netflix.curator.framework.recipes.atomic.AtomicValue;
-import com.netflix.curator.framework.recipes.atomic.DistributedAtomicLong;
 import com.netflix.curator.retry.RetryOneTime;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -31,66 +28,39 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 /**
  * ZooKeeper based implementation of a distributed sequential UID generator.
  */
-public class ZooUidProvider<E> implements UidProvider<E> {
-    // TODO: use ZK paths to store uid and modSeq, etc.
+public class ZooUidProvider<E> extends AbstractZooSequenceProvider<E> implements UidProvider<E> {
 
     public static final String UID_PATH_SUFFIX = "-uid";
-    private final CuratorFramework client;
-    private final RetryPolicy retryPolicy;
 
     public ZooUidProvider(CuratorFramework client) {
         this(client, new RetryOneTime(1));
     }
 
     public ZooUidProvider(CuratorFramework client, RetryPolicy retryPolicy) {
-        Preconditions.checkNotNull(client, "Curator client is null");
-        Preconditions.checkNotNull(retryPolicy, "Retry policy is null");
-        this.client = client;
-        this.retryPolicy = retryPolicy;
+        super(client, retryPolicy);
     }
 
     @Override
-    public long nextUid(MailboxSession session, Mailbox mailbox) throws MailboxException {
-        if (client.isStarted()) {
-            DistributedAtomicLong uid = new DistributedAtomicLong(client, pathForMailbox(mailbox), retryPolicy);
-            AtomicValue<Long> value = null;
-            try {
-                uid.increment();
-                value = uid.get();
-            } catch (Exception e) {
-                throw new MailboxException("Exception incrementing UID for session " + session, e);
-            } finally {
-                if (value != null && value.succeeded()) {
-                    return value.postValue();
-                } else {
-                    throw new MailboxException("Failed getting next UID for " + session);
-                }
-            }
-        }
-        throw new MailboxException("Curator client is closed.");
+    public long nextUid(MailboxSession session, Mailbox<E> mailbox) throws MailboxException {
+        return add(session, mailbox, 1);
+    }
+
+    @Override
+    public long nextUids(MailboxSession session, Mailbox<E> mailbox, int count) throws MailboxException {
+        return add(session, mailbox, count);
     }
 
     @Override
     public long lastUid(MailboxSession session, Mailbox<E> mailbox) throws MailboxException {
-        if (client.isStarted()) {
-            DistributedAtomicLong uid = new DistributedAtomicLong(client, pathForMailbox(mailbox), retryPolicy);
-            AtomicValue<Long> value = null;
-            try {
-                value = uid.get();
-            } catch (Exception e) {
-                throw new MailboxException("Exception getting last UID for session " + session, e);
-            } finally {
-                if (value != null && value.succeeded()) {
-                    return value.postValue();
-                } else {
-                    throw new MailboxException("Failed getting last UID for " + session);
-                }
-            }
-        }
-        throw new MailboxException("Curator client is closed.");
+        return get(session, mailbox);
+    }
+
+    @Override
+    protected String path(Mailbox<E> mailbox) {
+        return pathForMailbox(mailbox);
     }
 
-    public static String pathForMailbox(Mailbox mailbox) {
+    public static String pathForMailbox(Mailbox<?> mailbox) {
         return mailbox.getMailboxId().toString() + UID_PATH_SUFFIX;
     }
 }
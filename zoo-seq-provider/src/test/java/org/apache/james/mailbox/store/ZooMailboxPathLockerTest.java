@@ -0,0 +1,176 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import com.netflix.curator.RetryPolicy;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryOneTime;
+import com.netflix.curator.test.TestingServer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.james.mailbox.MailboxPathLocker.LockAwareExecution;
+import org.apache.james.mailbox.exception.LockTimeoutException;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for the ZooKeeper based locker. Each locker uses its own client, so they act like two nodes.
+ */
+public class ZooMailboxPathLockerTest {
+
+    private static final int ZOO_TEST_PORT = 3125;
+    private final RetryPolicy retryPolicy = new RetryOneTime(1);
+    private final MailboxPath path = new MailboxPath("#private", "user", "INBOX");
+    private TestingServer testServer;
+    private CuratorFramework client1;
+    private CuratorFramework client2;
+    private ZooMailboxPathLocker locker1;
+    private ZooMailboxPathLocker locker2;
+
+    @Before
+    public void setUp() throws Exception {
+        testServer = new TestingServer(ZOO_TEST_PORT);
+        client1 = newClient();
+        client2 = newClient();
+        locker1 = new ZooMailboxPathLocker(client1, ZooMailboxPathLocker.DEFAULT_LOCK_PATH, 500);
+        locker2 = new ZooMailboxPathLocker(client2, ZooMailboxPathLocker.DEFAULT_LOCK_PATH, 500);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client1.close();
+        client2.close();
+        testServer.close();
+    }
+
+    private CuratorFramework newClient() {
+        CuratorFramework client = CuratorFrameworkFactory.builder().connectString("localhost:" + ZOO_TEST_PORT).retryPolicy(retryPolicy).
+                namespace("JAMES").build();
+        client.start();
+        return client;
+    }
+
+    @Test
+    public void testWriteLockIsExclusiveAcrossNodes() throws Exception {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    locker1.executeWithLock(null, path, new LockAwareExecution<Void>() {
+                        public Void execute() throws MailboxException {
+                            locked.countDown();
+                            try {
+                                done.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return null;
+                        }
+                    });
+                } catch (MailboxException e) {
+                    locked.countDown();
+                }
+            }
+        };
+        holder.start();
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        try {
+            locker2.executeWithLock(null, path, new LockAwareExecution<Void>() {
+                public Void execute() throws MailboxException {
+                    fail("Lock must be held by the other node");
+                    return null;
+                }
+            });
+            fail("Lock must time out");
+        } catch (LockTimeoutException e) {
+            // expected
+        }
+        done.countDown();
+        holder.join();
+
+        assertEquals("ok", locker2.executeWithLock(null, path, new LockAwareExecution<String>() {
+            public String execute() throws MailboxException {
+                return "ok";
+            }
+        }));
+    }
+
+    @Test
+    public void testReadLockIsSharedAcrossNodes() throws Exception {
+        assertEquals("ok", locker1.executeWithLock(null, path, new LockAwareExecution<String>() {
+            public String execute() throws MailboxException {
+                return locker2.executeWithLock(null, path, new LockAwareExecution<String>() {
+                    public String execute() throws MailboxException {
+                        return "ok";
+                    }
+                }, false);
+            }
+        }, false));
+    }
+
+    @Test
+    public void testNestedLockUsesHeldLock() throws Exception {
+        assertEquals("ok", locker1.executeWithLock(null, path, new LockAwareExecution<String>() {
+            public String execute() throws MailboxException {
+                return locker1.executeWithLock(null, path, new LockAwareExecution<String>() {
+                    public String execute() throws MailboxException {
+                        return "ok";
+                    }
+                }, false);
+            }
+        }, true));
+        assertEquals(0, locker1.getLockCount());
+    }
+
+    @Test
+    public void testNestedWriteLockInReadLockIsRejected() throws Exception {
+        try {
+            locker1.executeWithLock(null, path, new LockAwareExecution<Void>() {
+                public Void execute() throws MailboxException {
+                    return locker1.executeWithLock(null, path, new LockAwareExecution<Void>() {
+                        public Void execute() throws MailboxException {
+                            fail("Read lock must not be upgraded");
+                            return null;
+                        }
+                    }, true);
+                }
+            }, false);
+            fail("Upgrade must be rejected");
+        } catch (LockTimeoutException e) {
+            fail("Upgrade must be rejected without waiting");
+        } catch (MailboxException e) {
+            // expected
+        }
+        assertEquals(0, locker1.getLockCount());
+
+        // the read lock was released, so the other node can take the write lock
+        assertEquals("ok", locker2.executeWithLock(null, path, new LockAwareExecution<String>() {
+            public String execute() throws MailboxException {
+                return "ok";
+            }
+        }, true));
+    }
+}
@@ -0,0 +1,84 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import com.netflix.curator.RetryPolicy;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryOneTime;
+import com.netflix.curator.test.TestingServer;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for mod-sequence provider.
+ */
+public class ZooModSeqProviderTest {
+
+    private static final int ZOO_TEST_PORT = 3124;
+    private final RetryPolicy retryPolicy = new RetryOneTime(1);
+    private TestingServer testServer;
+    private CuratorFramework client;
+    private ZooModSeqProvider<Long> provider;
+    private ZooUidProvider<Long> uidProvider;
+    private SimpleMailbox<Long> mailbox;
+
+    @Before
+    public void setUp() throws Exception {
+        testServer = new TestingServer(ZOO_TEST_PORT);
+        client = CuratorFrameworkFactory.builder().connectString("localhost:" + ZOO_TEST_PORT).retryPolicy(retryPolicy).
+                namespace("JAMES").build();
+        client.start();
+        provider = new ZooModSeqProvider<Long>(client, retryPolicy);
+        uidProvider = new ZooUidProvider<Long>(client, retryPolicy);
+        mailbox = new SimpleMailbox<Long>(new MailboxPath("namespacetest", "namespaceuser", "INBOX"), 1L);
+        mailbox.setMailboxId(123L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        testServer.close();
+    }
+
+    @Test
+    public void testNextModSeq() throws Exception {
+        assertEquals(0, provider.highestModSeq(null, mailbox));
+        assertEquals(1, provider.nextModSeq(null, mailbox));
+        assertEquals(2, provider.nextModSeq(null, mailbox));
+        assertEquals(2, provider.highestModSeq(null, mailbox));
+    }
+
+    @Test
+    public void testNextModSeqs() throws Exception {
+        assertEquals(1, provider.nextModSeqs(null, mailbox, 5));
+        assertEquals(6, provider.nextModSeq(null, mailbox));
+    }
+
+    @Test
+    public void testModSeqIsIndependentOfUid() throws Exception {
+        uidProvider.nextUids(null, mailbox, 10);
+        assertEquals(1, provider.nextModSeq(null, mailbox));
+        assertEquals(10, uidProvider.lastUid(null, mailbox));
+    }
+}
@@ -103,4 +103,17 @@ public class ZooUidProviderTest {
         result = longProvider.nextUid(null, mailboxLong);
         assertEquals("Next UID is 1", 1, result);
     }
+
+    /**
+     * Test of nextUids method, of class ZooUidProvider.
+     */
+    @Test
+    public void testNextUids() throws Exception {
+        System.out.println("Testing nextUids");
+        long result = uuidProvider.nextUids(null, mailboxUUID, 10);
+        assertEquals("First UID is 1", 1, result);
+        result = uuidProvider.nextUid(null, mailboxUUID);
+        assertEquals("Next UID is 11", 11, result);
+        assertEquals("Last UID is 11", 11, uuidProvider.lastUid(null, mailboxUUID));
+    }
 }